@@ -0,0 +1,52 @@
+package orgstats.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import orgstats.OrgCollection;
+
+/**
+ * Time to add a batch of users to random orgs with OrgCollection.addUser().  Every iteration 
+ * starts from orgs without users so the user columns don't grow without bounds.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = AddUserBenchmark.BATCH_SIZE)
+@Measurement(iterations = 10, batchSize = AddUserBenchmark.BATCH_SIZE)
+@Fork(1)
+@State(Scope.Thread)
+public class AddUserBenchmark {
+
+	static final int BATCH_SIZE = 1000000;
+
+	private OrgCollection orgCollection;
+	private int next;
+	private int userId;
+
+	@Setup(Level.Iteration)
+	public void copyOrgs(OrgDataSet dataSet) {
+		orgCollection = dataSet.copyOrgs();
+	}
+
+	@Benchmark
+	public boolean addUser(OrgDataSet dataSet) {
+
+		next = next + 1;
+		if (next == dataSet.orgIds.length) {
+			next = 0;
+		}
+		userId = userId + 1;
+		return orgCollection.addUser(userId, dataSet.orgIds[next], 10, 1000l);
+	}
+}
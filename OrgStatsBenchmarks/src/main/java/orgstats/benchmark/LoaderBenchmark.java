@@ -0,0 +1,44 @@
+package orgstats.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import orgstats.OrgCollection;
+import orgstats.load.CompactOrgDataLoader;
+import orgstats.load.OrgDataLoaderException;
+import orgstats.load.OrgUserDataFileLoader;
+import orgstats.load.UserLoadMode;
+
+/**
+ * Time to load the org and user data files with OrgUserDataFileLoader.loadData() and
+ * CompactOrgDataLoader.loadData().
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoaderBenchmark {
+
+	@Benchmark
+	public OrgCollection loadUsers(OrgDataSet dataSet) throws OrgDataLoaderException {
+		return dataSet.loadData();
+	}
+
+	@Benchmark
+	public OrgCollection loadAggregatesOnly(OrgDataSet dataSet) throws OrgDataLoaderException {
+		return new OrgUserDataFileLoader(dataSet.orgFile, dataSet.userFile, UserLoadMode.AGGREGATES_ONLY, 1).loadData();
+	}
+
+	@Benchmark
+	public OrgCollection loadCompact(OrgDataSet dataSet) throws OrgDataLoaderException {
+		return new CompactOrgDataLoader(dataSet.orgFile, dataSet.userFile, 1).loadData();
+	}
+}
@@ -0,0 +1,58 @@
+package orgstats.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import orgstats.metrics.LatencySampler;
+
+/**
+ * The cost of recording a latency around nothing, the overhead added to each getOrg().  Timing
+ * every call is compared with the sampling OrgCollection uses, on one thread and on several
+ * threads sharing one sampler.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+	private final LatencySampler everyCall = new LatencySampler(1);
+	private final LatencySampler sampled = new LatencySampler();
+
+	/**
+	 * Times and counts every call.
+	 */
+	@Benchmark
+	public void recordEveryCall() {
+		everyCall.end(everyCall.start());
+	}
+
+	/**
+	 * Times one call in LatencySampler.SAMPLE_RATE.
+	 */
+	@Benchmark
+	public void recordSampled() {
+		sampled.end(sampled.start());
+	}
+
+	/**
+	 * The same as recordSampled() from four threads at once.
+	 */
+	@Benchmark
+	@Threads(4)
+	public void recordSampledContended() {
+		sampled.end(sampled.start());
+	}
+}
@@ -0,0 +1,242 @@
+package orgstats.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import orgstats.OrgBean;
+import orgstats.UsageMetric;
+
+/**
+ * Queries and total rollups on a loaded OrgCollection.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OrgCollectionBenchmark {
+
+	private int next;
+
+	/**
+	 * Looks up orgs in random order.
+	 */
+	@Benchmark
+	public OrgBean getOrg(OrgDataSet dataSet) {
+		return dataSet.orgCollection.getOrg(nextOrgId(dataSet));
+	}
+
+	/**
+	 * Looks up orgs in random order in a collection that records its metrics.
+	 */
+	@Benchmark
+	public OrgBean getMeteredOrg(OrgDataSet dataSet) {
+		return dataSet.meteredCollection.getOrg(nextOrgId(dataSet));
+	}
+
+	/**
+	 * Collects the subtree of orgs in random order, for the top level orgs that is the whole tree.
+	 */
+	@Benchmark
+	public List<OrgBean> getOrgTree(OrgDataSet dataSet) {
+		return dataSet.orgCollection.getOrgTree(nextOrgId(dataSet), true);
+	}
+
+	/**
+	 * Returns the pre-order view of the subtree of orgs in random order from the sealed collection.
+	 */
+	@Benchmark
+	public List<OrgBean> getSealedOrgTree(OrgDataSet dataSet) {
+		return dataSet.sealedCollection.getOrgTree(nextOrgId(dataSet), true);
+	}
+
+	/**
+	 * Looks up orgs in random order in the CompactOrgCollection, which creates a view of each.
+	 */
+	@Benchmark
+	public OrgBean getCompactOrg(OrgDataSet dataSet) {
+		return dataSet.compactCollection.getOrg(nextOrgId(dataSet));
+	}
+
+	/**
+	 * Returns the pre-order view of the subtree of orgs in random order from the CompactOrgCollection.
+	 */
+	@Benchmark
+	public List<OrgBean> getCompactOrgTree(OrgDataSet dataSet) {
+		return dataSet.compactCollection.getOrgTree(nextOrgId(dataSet), true);
+	}
+
+	/**
+	 * Reads the totals of the whole subtree of orgs in random order from the CompactOrgCollection.
+	 */
+	@Benchmark
+	public long sumCompactOrgTree(OrgDataSet dataSet) {
+
+		long numBytes = 0;
+		for (OrgBean orgBean : dataSet.compactCollection.getOrgTree(nextOrgId(dataSet), true)) {
+			numBytes += orgBean.getNumBytes();
+		}
+		return numBytes;
+	}
+
+	/**
+	 * Reads the totals of the whole subtree of orgs in random order from the sealed collection.
+	 */
+	@Benchmark
+	public long sumSealedOrgTree(OrgDataSet dataSet) {
+
+		long numBytes = 0;
+		for (OrgBean orgBean : dataSet.sealedCollection.getOrgTree(nextOrgId(dataSet), true)) {
+			numBytes += orgBean.getNumBytes();
+		}
+		return numBytes;
+	}
+
+	/**
+	 * Checks if orgs in random order are below other orgs in random order in the sealed collection.
+	 */
+	@Benchmark
+	public boolean isDescendant(OrgDataSet dataSet) {
+		return dataSet.sealedCollection.isDescendant(nextOrgId(dataSet), nextOrgId(dataSet));
+	}
+
+	/**
+	 * Checks if orgs in random order are below other orgs in random order by walking their parents.
+	 */
+	@Benchmark
+	public boolean isDescendantWalk(OrgDataSet dataSet) {
+		return dataSet.orgCollection.isDescendant(nextOrgId(dataSet), nextOrgId(dataSet));
+	}
+
+	/**
+	 * Finds the 20 orgs with the most bytes below orgs in random order in the sealed collection.
+	 */
+	@Benchmark
+	public List<OrgBean> getTopOrgs(OrgDataSet dataSet) {
+		return dataSet.sealedCollection.getTopOrgs(nextOrgId(dataSet), false, UsageMetric.BYTES, 20);
+	}
+
+	/**
+	 * Finds the 20 orgs with the most bytes below orgs in random order by walking the tree.
+	 */
+	@Benchmark
+	public List<OrgBean> getTopOrgsWalk(OrgDataSet dataSet) {
+		return dataSet.orgCollection.getTopOrgs(nextOrgId(dataSet), false, UsageMetric.BYTES, 20);
+	}
+
+	/**
+	 * Finds the 20 orgs with the most bytes in the sealed collection.
+	 */
+	@Benchmark
+	public List<OrgBean> getTopOrgsOfAll(OrgDataSet dataSet) {
+		return dataSet.sealedCollection.getTopOrgs(UsageMetric.BYTES, 20);
+	}
+
+	/**
+	 * Finds the orgs of the sealed collection with more bytes than the 100th largest org.
+	 */
+	@Benchmark
+	public List<OrgBean> getOrgsOver(OrgDataSet dataSet) {
+		return dataSet.sealedCollection.getOrgsOver(UsageMetric.BYTES, dataSet.bytesThreshold);
+	}
+
+	/**
+	 * Finds the orgs with more bytes than the 100th largest org by walking the tree.
+	 */
+	@Benchmark
+	public List<OrgBean> getOrgsOverWalk(OrgDataSet dataSet) {
+		return dataSet.orgCollection.getOrgsOver(UsageMetric.BYTES, dataSet.bytesThreshold);
+	}
+
+	/**
+	 * Reads the median bytes per user of the subtree of orgs in random order from the sealed
+	 * collection, where the distributions were merged when it was sealed.
+	 */
+	@Benchmark
+	public long getBytesPerUserMedian(OrgDataSet dataSet) {
+		return dataSet.sealedCollection.getOrg(nextOrgId(dataSet)).getTotalUsageSketch(UsageMetric.BYTES).getQuantile(0.5);
+	}
+
+	/**
+	 * Reads the median bytes per user of the subtree of orgs in random order by merging the
+	 * distributions of the tree.
+	 */
+	@Benchmark
+	public long getBytesPerUserMedianWalk(OrgDataSet dataSet) {
+		return dataSet.orgCollection.getOrg(nextOrgId(dataSet)).getTotalUsageSketch(UsageMetric.BYTES).getQuantile(0.5);
+	}
+
+	/**
+	 * Collects the whole tree of the first top level org.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public List<OrgBean> getTopLevelOrgTree(OrgDataSet dataSet) {
+		return dataSet.orgCollection.getOrgTree(dataSet.orgCollection.getTopLevelOrgs().get(0).getOrgId(), true);
+	}
+
+	/**
+	 * Reads the cached totals of orgs in random order.
+	 */
+	@Benchmark
+	public void getTotals(OrgDataSet dataSet, Blackhole blackhole) {
+
+		OrgBean orgBean = dataSet.orgs.get(nextIndex(dataSet));
+		blackhole.consume(orgBean.getTotalNumUsers());
+		blackhole.consume(orgBean.getTotalNumFiles());
+		blackhole.consume(orgBean.getTotalNumBytes());
+	}
+
+	/**
+	 * Adds usage to an org, which updates the cached totals of its ancestors, and reads the 
+	 * totals of its top level org.
+	 */
+	@Benchmark
+	public long addUsageAndGetTotals(OrgDataSet dataSet) {
+
+		OrgBean orgBean = dataSet.orgs.get(nextIndex(dataSet));
+		orgBean.addUsage(0, 1, 1l);
+		while (orgBean.getParentOrg() != null) {
+			orgBean = orgBean.getParentOrg();
+		}
+		return orgBean.getTotalNumBytes();
+	}
+
+	/**
+	 * Invalidates the totals of every org and computes them again.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void computeTotals(OrgDataSet dataSet) {
+
+		for (OrgBean orgBean : dataSet.orgs) {
+			orgBean.invalidateTotals();
+		}
+		dataSet.orgCollection.computeTotals();
+	}
+
+	private int nextIndex(OrgDataSet dataSet) {
+
+		next = next + 1;
+		if (next == dataSet.orgIds.length) {
+			next = 0;
+		}
+		return next;
+	}
+
+	private int nextOrgId(OrgDataSet dataSet) {
+		return dataSet.orgIds[nextIndex(dataSet)];
+	}
+}
@@ -0,0 +1,110 @@
+package orgstats.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import orgstats.OrgBean;
+import orgstats.OrgCollection;
+import orgstats.UsageMetric;
+import orgstats.load.CompactOrgDataLoader;
+import orgstats.load.OrgDataLoaderException;
+import orgstats.load.OrgUserDataFileLoader;
+
+/**
+ * Org and user data files generated with the TestFilesGenerator for a tree shape and org count,
+ * and the OrgCollection loaded from them, once as loaded, once with its metrics enabled, once 
+ * sealed and once as a CompactOrgCollection.  The files are removed 
+ * after the trial.
+ */
+@State(Scope.Benchmark)
+public class OrgDataSet {
+
+	@Param({ "FLAT", "DEEP", "BUSHY" })
+	public TreeShape treeShape;
+
+	@Param({ "10000", "100000" })
+	public int orgCount;
+
+	File dataDirectory;
+	File orgFile;
+	File userFile;
+	OrgCollection orgCollection;
+	OrgCollection meteredCollection;
+	OrgCollection sealedCollection;
+	OrgCollection compactCollection;
+	List<OrgBean> orgs;
+	int[] orgIds;
+	long bytesThreshold;
+
+	@Setup
+	public void generateData() throws IOException, OrgDataLoaderException {
+
+		Logger.getLogger("orgstats").setLevel(Level.WARNING);
+		dataDirectory = File.createTempFile("OrgDataSet", "");
+		if (!dataDirectory.delete() || !dataDirectory.mkdir()) {
+			throw new IOException("Unable to create " + dataDirectory);
+		}
+		orgFile = new File(dataDirectory, "Orgs.txt");
+		userFile = new File(dataDirectory, "Users.txt");
+		treeShape.generateData(dataDirectory, orgFile.getName(), userFile.getName(), orgCount);
+
+		orgCollection = loadData();
+		meteredCollection = loadData();
+		meteredCollection.enableMetrics();
+		sealedCollection = loadData();
+		sealedCollection.seal();
+		compactCollection = new CompactOrgDataLoader(orgFile, userFile, 1).loadData();
+		orgs = new ArrayList<OrgBean>();
+		for (OrgBean topLevelOrg : orgCollection.getTopLevelOrgs()) {
+			orgs.addAll(orgCollection.getOrgTree(topLevelOrg.getOrgId(), true));
+		}
+		Collections.shuffle(orgs, new Random(1));
+		orgIds = new int[orgs.size()];
+		for (int i = 0; i < orgIds.length; i++) {
+			orgIds[i] = orgs.get(i).getOrgId();
+		}
+		List<OrgBean> topOrgs = sealedCollection.getTopOrgs(UsageMetric.BYTES, 100);
+		bytesThreshold = topOrgs.get(topOrgs.size() - 1).getTotalNumBytes();
+	}
+
+	@TearDown
+	public void deleteData() {
+
+		orgFile.delete();
+		userFile.delete();
+		dataDirectory.delete();
+	}
+
+	/**
+	 * Loads a new OrgCollection with every user from the data files.
+	 */
+	OrgCollection loadData() throws OrgDataLoaderException {
+		return new OrgUserDataFileLoader(orgFile, userFile).loadData();
+	}
+
+	/**
+	 * Returns a new OrgCollection with the same orgs and no users.
+	 */
+	OrgCollection copyOrgs() {
+
+		List<OrgBean> orgBeans = new ArrayList<OrgBean>(orgs.size());
+		for (OrgBean orgBean : orgs) {
+			orgBeans.add(new OrgBean(orgBean.getOrgId(), orgBean.getParentOrgId(), orgBean.getName()));
+		}
+		OrgCollection orgCollectionCopy = new OrgCollection();
+		orgCollectionCopy.addAll(orgBeans);
+		return orgCollectionCopy;
+	}
+}
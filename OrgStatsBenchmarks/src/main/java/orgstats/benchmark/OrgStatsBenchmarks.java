@@ -0,0 +1,23 @@
+package orgstats.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so the results include the allocation rate and 
+ * the bytes allocated per operation.  Takes the usual JMH options, for example:
+ * <p>
+ *  java -jar target/benchmarks.jar LoaderBenchmark -p treeShape=FLAT -p orgCount=10000
+ */
+public class OrgStatsBenchmarks {
+
+	public static void main(String[] args) throws Exception {
+
+		new Runner(new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
@@ -0,0 +1,149 @@
+package orgstats.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import orgstats.OrgBean;
+import orgstats.OrgCollection;
+import orgstats.OrgTreeVisitor;
+import orgstats.OrgTreeWalker;
+
+/**
+ * Whole tree walks with the OrgTreeWalker on a chain of orgs, which overflows the thread stack 
+ * when it is walked by recursion, and on a fan of orgs with one very long child list.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class OrgTreeWalkBenchmark {
+
+	/**
+	 * CHAIN: every org is the only child of the org before it.  FAN: every org is a child of the
+	 * first org, in descending org id order.
+	 */
+	@Param({ "CHAIN", "FAN" })
+	public String shape;
+
+	@Param({ "1000000" })
+	public int orgCount;
+
+	private OrgCollection orgCollection;
+	private List<OrgBean> orgs;
+	private OrgTreeWalker walker = new OrgTreeWalker();
+	private OrgTreeWalker sortingWalker = new OrgTreeWalker(true);
+
+	@Setup
+	public void createTree() {
+
+		orgs = new ArrayList<OrgBean>(orgCount);
+		orgs.add(new OrgBean(1, 0, null));
+		if ("CHAIN".equals(shape)) {
+			for (int orgId = 2; orgId <= orgCount; orgId++) {
+				orgs.add(new OrgBean(orgId, orgId - 1, null));
+			}
+		} else {
+			for (int orgId = orgCount; orgId >= 2; orgId--) {
+				orgs.add(new OrgBean(orgId, 1, null));
+			}
+		}
+		orgCollection = new OrgCollection();
+		orgCollection.addAll(orgs);
+		for (OrgBean orgBean : orgs) {
+			orgBean.addUsage(1, orgBean.getOrgId() % 100, orgBean.getOrgId() * 1000l);
+		}
+		orgCollection.computeTotals();
+	}
+
+	/**
+	 * Counts the pre-order and post-order visits of the whole tree.
+	 */
+	@Benchmark
+	public int walk() {
+
+		final int[] visitCount = new int[1];
+		walker.walk(orgCollection.getTopLevelOrgs(), new OrgTreeVisitor<RuntimeException>() {
+			public boolean preVisit(OrgBean orgBean, int depth) {
+				visitCount[0]++;
+				return true;
+			}
+
+			public void postVisit(OrgBean orgBean, int depth) {
+				visitCount[0]++;
+			}
+		});
+		return visitCount[0];
+	}
+
+	/**
+	 * Walks the whole tree with the children of each org sorted by org id, the order the output
+	 * file is written in.  The children of the FAN are sorted in a copy on every walk.
+	 */
+	@Benchmark
+	public int walkSorted() {
+
+		final int[] maxDepth = new int[1];
+		sortingWalker.walk(orgCollection.getTopLevelOrgs(), new OrgTreeVisitor<RuntimeException>() {
+			public boolean preVisit(OrgBean orgBean, int depth) {
+				maxDepth[0] = Math.max(maxDepth[0], depth);
+				return true;
+			}
+
+			public void postVisit(OrgBean orgBean, int depth) {
+			}
+		});
+		return maxDepth[0];
+	}
+
+	/**
+	 * Invalidates the totals of every org and computes them again in one post-order walk.
+	 */
+	@Benchmark
+	public long computeTotals() {
+
+		for (int i = orgs.size() - 1; i >= 0; i--) {
+			orgs.get(i).invalidateTotals();
+		}
+		orgCollection.computeTotals();
+		return orgs.get(0).getTotalNumBytes();
+	}
+
+	/**
+	 * Invalidates the totals of every org and computes them again with fork/join tasks on the
+	 * common pool, the FAN's child list is split in ranges and the CHAIN is walked on one thread
+	 * below OrgTotalsTask.MAX_FORK_DEPTH.
+	 */
+	@Benchmark
+	public long computeTotalsForkJoin() {
+
+		for (int i = orgs.size() - 1; i >= 0; i--) {
+			orgs.get(i).invalidateTotals();
+		}
+		orgCollection.computeTotals(ForkJoinPool.commonPool());
+		return orgs.get(0).getTotalNumBytes();
+	}
+
+	/**
+	 * Collects the whole tree of the first org into a list.
+	 */
+	@Benchmark
+	public List<OrgBean> getOrgTree() {
+		return orgCollection.getOrgTree(1, true);
+	}
+}
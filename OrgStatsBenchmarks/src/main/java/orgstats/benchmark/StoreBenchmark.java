@@ -0,0 +1,52 @@
+package orgstats.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import orgstats.store.OrgStatsFileStore;
+import orgstats.store.OrgStatsStoreException;
+
+/**
+ * Time to write the output file with OrgStatsFileStore.storeData().
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StoreBenchmark {
+
+	private File outputFile;
+	private OrgStatsFileStore orgStatsStore;
+
+	@Setup
+	public void createStore() throws IOException, OrgStatsStoreException {
+
+		outputFile = File.createTempFile("StoreBenchmark", ".txt");
+		orgStatsStore = new OrgStatsFileStore(outputFile);
+	}
+
+	@TearDown
+	public void deleteOutput() {
+		outputFile.delete();
+	}
+
+	@Benchmark
+	public void storeData(OrgDataSet dataSet) throws OrgStatsStoreException {
+		orgStatsStore.storeData(dataSet.orgCollection);
+	}
+}
@@ -0,0 +1,62 @@
+package orgstats.benchmark;
+
+import java.io.File;
+
+import orgstats.TestFilesGenerator;
+
+/**
+ * Org tree shapes the benchmark data is generated in, each with about the org count asked for.
+ * Every org has 0 to 10 users.
+ */
+public enum TreeShape {
+
+	/**
+	 * One top level org with every other org as its child.
+	 */
+	FLAT {
+		@Override
+		void generateData(File dataDirectory, String orgDataFilename, String userDataFilename, int orgCount) {
+			TestFilesGenerator.generateData(dataDirectory, orgDataFilename, userDataFilename, false, 
+					1, orgCount - 1, MAX_USER_COUNT, 0, MAX_FILE_COUNT, MAX_BYTE_COUNT);
+		}
+	},
+
+	/**
+	 * Top level orgs that each have a chain of 1000 orgs below them.
+	 */
+	DEEP {
+		@Override
+		void generateData(File dataDirectory, String orgDataFilename, String userDataFilename, int orgCount) {
+			TestFilesGenerator.generateData(dataDirectory, orgDataFilename, userDataFilename, false, 
+					Math.max(1, orgCount / CHAIN_LENGTH), 1, MAX_USER_COUNT, CHAIN_LENGTH - 2, 
+					MAX_FILE_COUNT, MAX_BYTE_COUNT);
+		}
+	},
+
+	/**
+	 * One top level org where every org above the last level has 10 children.
+	 */
+	BUSHY {
+		@Override
+		void generateData(File dataDirectory, String orgDataFilename, String userDataFilename, int orgCount) {
+			int levels = Math.max(0, (int) Math.round(Math.log10(orgCount)) - 1);
+			TestFilesGenerator.generateData(dataDirectory, orgDataFilename, userDataFilename, false, 
+					1, 10, MAX_USER_COUNT, levels, MAX_FILE_COUNT, MAX_BYTE_COUNT);
+		}
+	};
+
+	private static final int CHAIN_LENGTH = 1000;
+	private static final int MAX_USER_COUNT = 10;
+	private static final int MAX_FILE_COUNT = 20000;
+	private static final long MAX_BYTE_COUNT = 10737418240l;
+
+	/**
+	 * Generates an org data file and a user data file in the directory.
+	 *
+	 * @param dataDirectory		the directory the files are created in
+	 * @param orgDataFilename	the name of the org data file
+	 * @param userDataFilename	the name of the user data file
+	 * @param orgCount			the approximate number of orgs
+	 */
+	abstract void generateData(File dataDirectory, String orgDataFilename, String userDataFilename, int orgCount);
+}
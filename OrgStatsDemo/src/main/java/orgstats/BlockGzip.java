@@ -0,0 +1,189 @@
+package orgstats;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A gzip file made of independent gzip members of whole lines, so it can be split at the
+ * members and each member decompressed on its own thread.  Every member has the same 20 byte
+ * header with an extra field "OS" that holds the length of the whole member:
+ * <p>
+ *  1f 8b 08 04 00000000 00 ff		gzip header with FEXTRA<br>
+ *  08 00 'O' 'S' 04 00 length		XLEN, the subfield id, its size and the member length<br>
+ *  deflate data, CRC32, ISIZE		as in any gzip member
+ * <p>
+ * A gzip reader reads the members one after the other, e.g. gunzip or GZIPInputStream, so a
+ * block gzip file is also a gzip file.  See BlockGzipOutputStream for writing one and
+ * DataCompression for finding out how a file is compressed.
+ */
+public final class BlockGzip {
+
+	/**
+	 * The length of the header of each member.
+	 */
+	public static final int HEADER_LENGTH = 20;
+
+	/**
+	 * The length of the CRC32 and ISIZE after the deflate data of each member.
+	 */
+	public static final int TRAILER_LENGTH = 8;
+
+	/**
+	 * The default number of bytes of lines compressed into one member.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+	/**
+	 * The largest number of bytes of lines in one member.  BlockGzipOutputStream doesn't grow a
+	 * block past it for a long line, so a larger length in a trailer is corrupt and is rejected
+	 * before a buffer that long is allocated.
+	 */
+	public static final int MAX_BLOCK_SIZE = 16 * DEFAULT_BLOCK_SIZE;
+
+	// Deflate can't compress more than about 1032 to 1, a larger length in a trailer is corrupt.
+	private static final int MAX_DEFLATE_RATIO = 1032;
+
+	private static final byte[] HEADER = { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 8, 0, 'O', 'S', 4, 0 };
+
+	private BlockGzip() {
+	}
+
+	/**
+	 * Returns the length of the member starting at the offset, or -1 if the bytes aren't the
+	 * header of a block gzip member.
+	 *
+	 * @param bytes			the bytes read from the file
+	 * @param offset		the position of the member in the bytes
+	 * @param length		the number of bytes read from the offset
+	 * @return				the length of the member including its header and trailer
+	 */
+	public static int memberLength(byte[] bytes, int offset, int length) {
+
+		if (length < HEADER_LENGTH) {
+			return -1;
+		}
+		for (int i = 0; i < HEADER.length; i++) {
+			// The modified time and extra flags of the header can be anything.
+			if (bytes[offset + i] != HEADER[i] && (i < 4 || i > 9)) {
+				return -1;
+			}
+		}
+		int memberLength = getInt(bytes, offset + HEADER.length);
+		return memberLength < HEADER_LENGTH + TRAILER_LENGTH ? -1 : memberLength;
+	}
+
+	/**
+	 * Returns the number of bytes a member decompresses to, from its trailer.
+	 *
+	 * @param member		the bytes of the member
+	 * @param length		the length of the member
+	 * @return				the uncompressed length
+	 * @throws IOException	if the length is over MAX_BLOCK_SIZE or more than the compressed data
+	 * 						can inflate to
+	 */
+	public static int uncompressedLength(byte[] member, int length) throws IOException {
+
+		int uncompressedLength = getInt(member, length - 4);
+		if (uncompressedLength < 0 || uncompressedLength > MAX_BLOCK_SIZE 
+				|| uncompressedLength > (long) length * MAX_DEFLATE_RATIO) {
+			throw new IOException("Invalid block gzip member, uncompressed length " + uncompressedLength);
+		}
+		return uncompressedLength;
+	}
+
+	/**
+	 * Decompresses a member and checks its CRC32.
+	 *
+	 * @param member		the bytes of the member
+	 * @param length		the length of the member
+	 * @param inflater		an Inflater for raw deflate data (nowrap), reset before it is used
+	 * @param output		receives the uncompressed bytes, at least uncompressedLength() long
+	 * @return				the uncompressed length
+	 * @throws IOException	if the member isn't valid
+	 */
+	public static int inflateMember(byte[] member, int length, Inflater inflater, byte[] output) throws IOException {
+
+		int uncompressedLength = uncompressedLength(member, length);
+		inflater.reset();
+		inflater.setInput(member, HEADER_LENGTH, length - HEADER_LENGTH - TRAILER_LENGTH);
+		try {
+			int inflated = 0;
+			while (inflated < uncompressedLength && !inflater.finished()) {
+				int count = inflater.inflate(output, inflated, uncompressedLength - inflated);
+				if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				inflated = inflated + count;
+			}
+			if (inflated != uncompressedLength || !inflater.finished()) {
+				throw new IOException("Invalid block gzip member, expected " + uncompressedLength + " bytes");
+			}
+		} catch (DataFormatException formatEx) {
+			throw new IOException("Invalid block gzip member", formatEx);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(output, 0, uncompressedLength);
+		if ((int) crc.getValue() != getInt(member, length - TRAILER_LENGTH)) {
+			throw new IOException("Invalid block gzip member, CRC32 doesn't match");
+		}
+		return uncompressedLength;
+	}
+
+	/**
+	 * Compresses bytes into one member.
+	 *
+	 * @param bytes			the bytes to compress
+	 * @param offset		the position of the first byte
+	 * @param length		the number of bytes to compress
+	 * @param deflater		a Deflater for raw deflate data (nowrap), reset before it is used
+	 * @param member		receives the member, grown if it isn't long enough
+	 * @return				the member, the same array if it was long enough
+	 */
+	public static byte[] deflateMember(byte[] bytes, int offset, int length, Deflater deflater, byte[] member) {
+
+		deflater.reset();
+		deflater.setInput(bytes, offset, length);
+		deflater.finish();
+		int memberLength = HEADER_LENGTH;
+		while (!deflater.finished()) {
+			if (member.length - memberLength < TRAILER_LENGTH + 64) {
+				member = Arrays.copyOf(member, Math.max(member.length * 2, HEADER_LENGTH + TRAILER_LENGTH + 1024));
+			}
+			memberLength = memberLength + deflater.deflate(member, memberLength, member.length - memberLength - TRAILER_LENGTH);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes, offset, length);
+		System.arraycopy(HEADER, 0, member, 0, HEADER.length);
+		putInt(member, memberLength, (int) crc.getValue());
+		putInt(member, memberLength + 4, length);
+		memberLength = memberLength + TRAILER_LENGTH;
+		putInt(member, HEADER.length, memberLength);
+		return member;
+	}
+
+	/**
+	 * Returns the length of a member written by deflateMember().
+	 *
+	 * @param member		the member
+	 * @return				the length of the member
+	 */
+	public static int writtenLength(byte[] member) {
+		return getInt(member, HEADER.length);
+	}
+
+	private static int getInt(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 | (bytes[offset + 2] & 0xff) << 16
+				| (bytes[offset + 3] & 0xff) << 24;
+	}
+
+	private static void putInt(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte) value;
+		bytes[offset + 1] = (byte) (value >>> 8);
+		bytes[offset + 2] = (byte) (value >>> 16);
+		bytes[offset + 3] = (byte) (value >>> 24);
+	}
+}
@@ -0,0 +1,172 @@
+package orgstats;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a block gzip file, see BlockGzip.  The bytes are collected in a block and each full 
+ * block is compressed into one member up to its last line separator, the rest of the last line 
+ * starts the next block.  A line longer than the block grows the block, so a member always
+ * ends at the end of a line or of the file, up to BlockGzip.MAX_BLOCK_SIZE, which the readers
+ * check the members against.
+ * <p>
+ * main() compresses a data file, plain or gzip, into a block gzip file that the loaders can
+ * decompress on several threads.
+ */
+public class BlockGzipOutputStream extends FilterOutputStream {
+
+	private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+	private byte[] block;
+	private byte[] member;
+	private int filled;
+	private boolean closed;
+
+	/**
+	 * Constructs a stream with members of BlockGzip.DEFAULT_BLOCK_SIZE bytes of lines.
+	 *
+	 * @param out			the stream the members are written to
+	 */
+	public BlockGzipOutputStream(OutputStream out) {
+		this(out, BlockGzip.DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Constructs a stream with members of blockSize bytes of lines.
+	 *
+	 * @param out			the stream the members are written to
+	 * @param blockSize		the number of bytes compressed into one member, at most 
+	 * 						BlockGzip.MAX_BLOCK_SIZE
+	 */
+	public BlockGzipOutputStream(OutputStream out, int blockSize) {
+		super(out);
+		this.block = new byte[Math.max(64, Math.min(blockSize, BlockGzip.MAX_BLOCK_SIZE))];
+		this.member = new byte[block.length / 2];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+
+		if (filled == block.length) {
+			writeMember(false);
+		}
+		block[filled++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+
+		while (length > 0) {
+			if (filled == block.length) {
+				writeMember(false);
+			}
+			int count = Math.min(length, block.length - filled);
+			System.arraycopy(bytes, offset, block, filled, count);
+			filled = filled + count;
+			offset = offset + count;
+			length = length - count;
+		}
+	}
+
+	/**
+	 * Flushes the members written so far, the bytes of a block are only compressed when the
+	 * block is full or by close().
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Writes the rest of the bytes as the last member and closes the stream.
+	 */
+	@Override
+	public void close() throws IOException {
+
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (filled > 0) {
+				writeMember(true);
+			}
+			out.flush();
+		} finally {
+			deflater.end();
+			out.close();
+		}
+	}
+
+	/*
+	 * Compresses the block up to its last newline, or all of it at the end of the file, and
+	 * moves the rest to the start of the block.  A block without a newline is grown instead,
+	 * and a line that doesn't fit in MAX_BLOCK_SIZE can't be written.
+	 */
+	private void writeMember(boolean endOfFile) throws IOException {
+
+		int length = filled;
+		if (!endOfFile) {
+			length = 0;
+			for (int i = filled - 1; i >= 0; i--) {
+				if (block[i] == '\n') {
+					length = i + 1;
+					break;
+				}
+			}
+			if (length == 0) {
+				if (block.length >= BlockGzip.MAX_BLOCK_SIZE) {
+					throw new IOException("Line longer than " + BlockGzip.MAX_BLOCK_SIZE 
+							+ " bytes can't be written to a block gzip file");
+				}
+				block = Arrays.copyOf(block, Math.min(block.length * 2, BlockGzip.MAX_BLOCK_SIZE));
+				return;
+			}
+		}
+		member = BlockGzip.deflateMember(block, 0, length, deflater, member);
+		out.write(member, 0, BlockGzip.writtenLength(member));
+		System.arraycopy(block, length, block, 0, filled - length);
+		filled = filled - length;
+	}
+
+	/**
+	 * Compresses a data file into a block gzip file.
+	 * <p>
+	 * Usage: java orgstats.BlockGzipOutputStream inputFile outputFile
+	 *
+	 * @param args			the input file, plain or gzip, and the block gzip file to write
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length != 2) {
+			System.out.println("Usage: java orgstats.BlockGzipOutputStream inputFile outputFile");
+			return;
+		}
+		FileInputStream fileInput = new FileInputStream(args[0]);
+		InputStream input = null;
+		OutputStream output = null;
+		try {
+			input = DataCompression.detect(fileInput.getChannel()).decompress(Channels.newInputStream(fileInput.getChannel()));
+			output = new BlockGzipOutputStream(new FileOutputStream(args[1]));
+			byte[] buffer = new byte[64 * 1024];
+			int read;
+			while ((read = input.read(buffer)) >= 0) {
+				output.write(buffer, 0, read);
+			}
+		} finally {
+			if (output != null) {
+				output.close();
+			}
+			if (input != null) {
+				input.close();
+			}
+			fileInput.close();
+		}
+	}
+}
@@ -0,0 +1,642 @@
+package orgstats;
+
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import orgstats.metrics.OrgCollectionMetrics;
+import orgstats.metrics.OrgStatsMetrics;
+
+/**
+ * Sealed OrgCollection that stores the organizations in parallel primitive arrays instead of
+ * OrgBeans, so millions of organizations take a fraction of the heap.  The organizations are
+ * numbered in pre-order: each organization is followed by the organizations below it, which
+ * end at its tree end, so its first child is the next organization and its next sibling is
+ * at its tree end.  Walking a tree reads the arrays in order.  The names are encoded in one
+ * byte array with an offset per organization.
+ * <p>
+ * Only the usage totals of each organization are kept, like UserLoadMode.AGGREGATES_ONLY, so 
+ * getTopUsers() doesn't return any users.  The
+ * OrgBeans returned are read-only views created when they are read, so two views of the same
+ * organization are equal but not the same object.  A collection is built with a Builder.
+ */
+public class CompactOrgCollection extends OrgCollection {
+
+	private static final Logger logger = Logger.getLogger(CompactOrgCollection.class.getName());
+	private static final Charset NAME_CHARSET = Charset.forName("UTF-8");
+	private static final int NOT_FOUND = -1;
+
+	/**
+	 * The estimated heap of an organization, see getEstimatedHeapBytes().
+	 */
+	public static final int COMPACT_ORG_HEAP_BYTES = 61;
+
+	/**
+	 * The estimated heap per organization of the rankings, the sorted indexes of each 
+	 * UsageMetric and the long totals of USERS and FILES (28 bytes).
+	 */
+	public static final int COMPACT_RANKINGS_HEAP_BYTES = 28;
+
+	// Columns in pre-order, parentIndexes is -1 for top level organizations.
+	private final int size;
+	private final int[] orgIds;
+	private final int[] parentIndexes;
+	private final int[] treeEnds;
+	private final int[] numUsers;
+	private final int[] numFiles;
+	private final long[] numBytes;
+	private final int[] totalNumUsers;
+	private final int[] totalNumFiles;
+	private final long[] totalNumBytes;
+
+	// The name of the organization at index is names[nameOffsets[index], nameOffsets[index + 1]).
+	private final byte[] names;
+	private final int[] nameOffsets;
+
+	private final IntIntHashMap indexes;
+	// parentOrgId of the top level organizations whose parent doesn't exist, by index.
+	private final IntIntHashMap missingParentOrgIds;
+	private final int[] topLevelIndexes;
+	private final int treeDepth;
+
+	/*
+	 * Takes the columns in pre-order from Builder.build() and computes the totals.
+	 */
+	private CompactOrgCollection(int size, int[] orgIds, int[] parentIndexes, int[] treeEnds,
+			int[] numUsers, int[] numFiles, long[] numBytes, byte[] names, int[] nameOffsets,
+			IntIntHashMap indexes, IntIntHashMap missingParentOrgIds, int treeDepth) {
+
+		this.size = size;
+		this.orgIds = orgIds;
+		this.parentIndexes = parentIndexes;
+		this.treeEnds = treeEnds;
+		this.numUsers = numUsers;
+		this.numFiles = numFiles;
+		this.numBytes = numBytes;
+		this.names = names;
+		this.nameOffsets = nameOffsets;
+		this.indexes = indexes;
+		this.missingParentOrgIds = missingParentOrgIds;
+		this.treeDepth = treeDepth;
+
+		// Each organization is after its parent, so going backwards adds every total before it is read.
+		totalNumUsers = Arrays.copyOf(numUsers, size);
+		totalNumFiles = Arrays.copyOf(numFiles, size);
+		totalNumBytes = Arrays.copyOf(numBytes, size);
+		for (int index = size - 1; index >= 0; index--) {
+			int parentIndex = parentIndexes[index];
+			if (parentIndex >= 0) {
+				totalNumUsers[parentIndex] = totalNumUsers[parentIndex] + totalNumUsers[index];
+				totalNumFiles[parentIndex] = totalNumFiles[parentIndex] + totalNumFiles[index];
+				totalNumBytes[parentIndex] = totalNumBytes[parentIndex] + totalNumBytes[index];
+			}
+		}
+
+		int topLevelCount = 0;
+		for (int index = 0; index < size; index++) {
+			if (parentIndexes[index] < 0) {
+				topLevelCount++;
+			}
+		}
+		topLevelIndexes = new int[topLevelCount];
+		int topLevel = 0;
+		for (int index = 0; index < size; index = treeEnds[index]) {
+			topLevelIndexes[topLevel++] = index;
+		}
+	}
+
+	/**
+	 * Returns a view of the organization for the given unique orgId.
+	 *
+	 * @param orgId		the unique identifier for the organization
+	 * @return OrgBean	a read-only OrgBean if the organization exists, otherwise null
+	 */
+	@Override
+	public OrgBean getOrg(int orgId) {
+
+		OrgCollectionMetrics collectionMetrics = getMetrics();
+		if (collectionMetrics == null) {
+			int index = indexes.get(orgId);
+			return index < 0 ? null : new OrgView(index);
+		}
+		long startNanos = collectionMetrics.getOrgLatency().start();
+		int index = indexes.get(orgId);
+		OrgBean orgBean = index < 0 ? null : new OrgView(index);
+		collectionMetrics.getOrgLatency().end(startNanos);
+		return orgBean;
+	}
+
+	/**
+	 * Returns the organizations below the organization for orgId in pre-order as a list of
+	 * views over one range of the columns, without copying.
+	 *
+	 * @param orgId			the unique identifier for the organization
+	 * @param inclusive		the designator to include the organization identified by orgId
+	 * @return				an unmodifiable list of the organizations, empty if orgId doesn't exist
+	 */
+	@Override
+	public List<OrgBean> getOrgTree(int orgId, boolean inclusive) {
+
+		OrgCollectionMetrics collectionMetrics = getMetrics();
+		if (collectionMetrics == null) {
+			return orgRange(orgId, inclusive);
+		}
+		long startNanos = collectionMetrics.getOrgTreeLatency().start();
+		List<OrgBean> orgTree = orgRange(orgId, inclusive);
+		collectionMetrics.getOrgTreeLatency().end(startNanos);
+		return orgTree;
+	}
+
+	/*
+	 * Returns the list of getOrgTree() without recording the latency.
+	 */
+	private List<OrgBean> orgRange(int orgId, boolean inclusive) {
+
+		int index = indexes.get(orgId);
+		if (index < 0) {
+			return Collections.emptyList();
+		}
+		return new OrgRange(inclusive ? index : index + 1, treeEnds[index]);
+	}
+
+	/**
+	 * Returns one page of the organizations below the organization for orgId, see
+	 * OrgCollection.getOrgTreeIterator().  Organizations below maxDepth are skipped by
+	 * jumping to their tree end.
+	 */
+	@Override
+	public Iterator<OrgBean> getOrgTreeIterator(int orgId, boolean inclusive, int offset, int limit, int maxDepth) {
+
+		if (offset < 0 || limit < 0 || maxDepth < 0) {
+			throw new IllegalArgumentException("Invalid org tree page: offset=" + offset
+					+ " limit=" + limit + " maxDepth=" + maxDepth);
+		}
+		int index = indexes.get(orgId);
+		if (index < 0) {
+			return Collections.<OrgBean>emptyList().iterator();
+		}
+		if (maxDepth == ALL_LEVELS) {
+			int start = (int) Math.min(treeEnds[index], (long) (inclusive ? index : index + 1) + offset);
+			int end = (int) Math.min(treeEnds[index], (long) start + limit);
+			return new OrgRange(start, end).iterator();
+		}
+		return new PageIterator(index, inclusive, offset, limit, maxDepth);
+	}
+
+	/**
+	 * Returns true if the organization for orgId is in the range of the organization for
+	 * ancestorOrgId, see OrgCollection.isDescendant().
+	 */
+	@Override
+	public boolean isDescendant(int orgId, int ancestorOrgId) {
+
+		int index = indexes.get(orgId);
+		int ancestorIndex = indexes.get(ancestorOrgId);
+		return index >= 0 && ancestorIndex >= 0 && index > ancestorIndex && index < treeEnds[ancestorIndex];
+	}
+
+	/**
+	 * Returns views of the count organizations below the organization for orgId with the 
+	 * largest totals, see OrgCollection.getTopOrgs().
+	 */
+	@Override
+	public List<OrgBean> getTopOrgs(int orgId, boolean inclusive, UsageMetric metric, int count) {
+
+		checkCount(count);
+		int index = indexes.get(orgId);
+		if (index < 0) {
+			return Collections.<OrgBean>emptyList();
+		}
+		return getOrgs(getRanking(metric).top(inclusive ? index : index + 1, treeEnds[index], count));
+	}
+
+	/**
+	 * Returns views of the organizations below the organization for orgId with a total over 
+	 * the threshold, see OrgCollection.getOrgsOver().
+	 */
+	@Override
+	public List<OrgBean> getOrgsOver(int orgId, boolean inclusive, UsageMetric metric, long threshold) {
+
+		int index = indexes.get(orgId);
+		if (index < 0) {
+			return Collections.<OrgBean>emptyList();
+		}
+		return getOrgs(getRanking(metric).over(inclusive ? index : index + 1, treeEnds[index], threshold));
+	}
+
+	/**
+	 * Returns views of the top level organizations.
+	 */
+	@Override
+	public List<OrgBean> getTopLevelOrgs() {
+		return new OrgList(topLevelIndexes);
+	}
+
+	@Override
+	public int getOrgCount() {
+		return size;
+	}
+
+	@Override
+	public int getTreeDepth() {
+		return treeDepth;
+	}
+
+	/**
+	 * Returns an estimate of the heap used by the arrays and the names, COMPACT_ORG_HEAP_BYTES
+	 * per organization as measured in doc/Performance.txt, and by the rankings built by the
+	 * first top or threshold queries, COMPACT_RANKINGS_HEAP_BYTES per organization.
+	 */
+	@Override
+	public long getEstimatedHeapBytes() {
+		return (long) size * (COMPACT_ORG_HEAP_BYTES + COMPACT_RANKINGS_HEAP_BYTES);
+	}
+
+	/**
+	 * Returns true, the collection is built sealed.
+	 */
+	@Override
+	public boolean isSealed() {
+		return true;
+	}
+
+	/**
+	 * Ranks the organizations by the total columns of the metric.
+	 */
+	@Override
+	UsageRanking createRanking(UsageMetric metric) {
+
+		long[] totals;
+		if (metric == UsageMetric.BYTES) {
+			totals = totalNumBytes;
+		} else {
+			int[] intTotals = metric == UsageMetric.USERS ? totalNumUsers : totalNumFiles;
+			totals = new long[size];
+			for (int index = 0; index < size; index++) {
+				totals[index] = intTotals[index];
+			}
+		}
+		return new UsageRanking(totals, orgIds);
+	}
+
+	/**
+	 * Returns views of the organizations at the indexes, created as they are read.
+	 */
+	@Override
+	List<OrgBean> getOrgs(int[] treeIndexes) {
+		return new OrgList(treeIndexes);
+	}
+
+	/*
+	 * Returns the indexes of the children of the organization at index in order.
+	 */
+	private int[] childIndexes(int index) {
+
+		int childCount = 0;
+		for (int child = index + 1; child < treeEnds[index]; child = treeEnds[child]) {
+			childCount++;
+		}
+		int[] children = new int[childCount];
+		int next = 0;
+		for (int child = index + 1; child < treeEnds[index]; child = treeEnds[child]) {
+			children[next++] = child;
+		}
+		return children;
+	}
+
+	/*
+	 * Read-only OrgBean for the organization at an index.  The name and the lists are read
+	 * from the collection when they are asked for.
+	 */
+	private final class OrgView extends OrgBean {
+
+		private final int index;
+
+		OrgView(int index) {
+			super(orgIds[index], parentIndexes[index] >= 0 ? orgIds[parentIndexes[index]]
+					: missingParentOrgIds.get(index), numUsers[index], numFiles[index], numBytes[index],
+					totalNumUsers[index], totalNumFiles[index], totalNumBytes[index]);
+			this.index = index;
+		}
+
+		@Override
+		public String getName() {
+
+			int length = nameOffsets[index + 1] - nameOffsets[index];
+			return length == 0 ? null : new String(names, nameOffsets[index], length, NAME_CHARSET);
+		}
+
+		@Override
+		public List<OrgBean> getChildOrgs() {
+			return new OrgList(childIndexes(index));
+		}
+
+		@Override
+		public OrgBean getParentOrg() {
+			return parentIndexes[index] < 0 ? null : new OrgView(parentIndexes[index]);
+		}
+	}
+
+	/*
+	 * Views of the organizations in [start, end) of the pre-order.
+	 */
+	private final class OrgRange extends AbstractList<OrgBean> implements RandomAccess {
+
+		private final int start;
+		private final int end;
+
+		OrgRange(int start, int end) {
+			this.start = start;
+			this.end = Math.max(start, end);
+		}
+
+		@Override
+		public OrgBean get(int i) {
+
+			if (i < 0 || i >= end - start) {
+				throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size());
+			}
+			return new OrgView(start + i);
+		}
+
+		@Override
+		public int size() {
+			return end - start;
+		}
+	}
+
+	/*
+	 * Views of the organizations at a list of indexes.
+	 */
+	private final class OrgList extends AbstractList<OrgBean> implements RandomAccess {
+
+		private final int[] listIndexes;
+
+		OrgList(int[] listIndexes) {
+			this.listIndexes = listIndexes;
+		}
+
+		@Override
+		public OrgBean get(int i) {
+			return new OrgView(listIndexes[i]);
+		}
+
+		@Override
+		public int size() {
+			return listIndexes.length;
+		}
+	}
+
+	/*
+	 * Iterates the organizations of a tree down to maxDepth in pre-order.  The tree ends of the
+	 * organizations above the current one are kept on a stack, so the depth is the stack size.
+	 */
+	private final class PageIterator implements Iterator<OrgBean> {
+
+		private final int end;
+		private final int maxDepth;
+		private int[] openTreeEnds;
+		private int depth;
+		private int next;
+		private int remaining;
+
+		PageIterator(int index, boolean inclusive, int offset, int limit, int maxDepth) {
+
+			this.end = treeEnds[index];
+			this.maxDepth = maxDepth;
+			this.openTreeEnds = new int[Math.min(maxDepth, treeDepth) + 1];
+			this.next = index;
+			this.remaining = limit;
+			if (!inclusive) {
+				advance();
+			}
+			for (int skipped = 0; skipped < offset && next < end; skipped++) {
+				advance();
+			}
+		}
+
+		public boolean hasNext() {
+			return remaining > 0 && next < end;
+		}
+
+		public OrgBean next() {
+
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			OrgBean orgBean = new OrgView(next);
+			remaining--;
+			advance();
+			return orgBean;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/*
+		 * Moves to the first child of the current organization, or past its tree at maxDepth,
+		 * and closes the trees that end there.
+		 */
+		private void advance() {
+
+			if (depth < maxDepth) {
+				openTreeEnds[depth++] = treeEnds[next];
+				next = next + 1;
+			} else {
+				next = treeEnds[next];
+			}
+			while (depth > 0 && next >= openTreeEnds[depth - 1]) {
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Collects the organizations and their usage in the order they are read and builds a
+	 * CompactOrgCollection.  Like OrgCollection.addAll() the organizations can be added in
+	 * any order and organizations whose parent doesn't exist are top level organizations.
+	 * The usage is added after the organizations.  A Builder is used by one thread.
+	 */
+	public static class Builder {
+
+		private static final int MIN_CAPACITY = 16;
+
+		// Columns in the order the organizations are added.
+		private int size;
+		private int[] orgIds = new int[MIN_CAPACITY];
+		private int[] parentOrgIds = new int[MIN_CAPACITY];
+		private int[] numUsers = new int[MIN_CAPACITY];
+		private int[] numFiles = new int[MIN_CAPACITY];
+		private long[] numBytes = new long[MIN_CAPACITY];
+		private byte[] names = new byte[MIN_CAPACITY * 8];
+		private int[] nameOffsets = new int[MIN_CAPACITY + 1];
+		private final IntIntHashMap indexes = new IntIntHashMap(MIN_CAPACITY, NOT_FOUND);
+
+		/**
+		 * Adds an organization.  A later organization with the same orgId replaces the
+		 * earlier one for getOrg() and as a parent, like OrgCollection.
+		 *
+		 * @param orgId			the unique identifier for the organization
+		 * @param parentOrgId	the parent organization identifier, 0 for a top level organization
+		 * @param name			the organization name, stored as UTF-8
+		 */
+		public void addOrg(int orgId, int parentOrgId, String name) {
+
+			if (size == orgIds.length) {
+				grow();
+			}
+			byte[] nameBytes = name == null ? new byte[0] : name.getBytes(NAME_CHARSET);
+			int nameOffset = nameOffsets[size];
+			if (nameOffset + nameBytes.length > names.length) {
+				names = Arrays.copyOf(names, Math.max(names.length * 2, nameOffset + nameBytes.length));
+			}
+			System.arraycopy(nameBytes, 0, names, nameOffset, nameBytes.length);
+			nameOffsets[size + 1] = nameOffset + nameBytes.length;
+			orgIds[size] = orgId;
+			parentOrgIds[size] = parentOrgId;
+			indexes.put(orgId, size);
+			size = size + 1;
+		}
+
+		/**
+		 * Adds user usage to the organization identified by orgId.
+		 *
+		 * @param orgId			the unique identifier for the organization the users belong to
+		 * @param userCount		the number of users to add
+		 * @param fileCount		the total number of files for the users
+		 * @param byteCount		the total number of bytes for the users
+		 * @return boolean		true if the usage was added, false if the organization wasn't added
+		 */
+		public boolean addUsage(int orgId, int userCount, int fileCount, long byteCount) {
+
+			int index = indexes.get(orgId);
+			if (index >= 0) {
+				numUsers[index] = numUsers[index] + userCount;
+				numFiles[index] = numFiles[index] + fileCount;
+				numBytes[index] = numBytes[index] + byteCount;
+				return true;
+			}
+			OrgStatsMetrics.LOADER.addOrphanUsers(userCount);
+			logger.log(Level.FINE, "Usage not added to OrgBean.  Org doesn't exist. orgId=" + orgId);
+			return false;
+		}
+
+		/**
+		 * Links the organizations to their parents, numbers them in pre-order and copies the
+		 * columns in that order into a CompactOrgCollection.  Organizations that are only
+		 * linked to each other in a cycle can't be reached from a top level organization and
+		 * are left out.
+		 *
+		 * @return		the collection of the organizations added
+		 */
+		public CompactOrgCollection build() {
+
+			// Link the children of each organization in the order they were added, top level
+			// organizations are linked as the children of -1.
+			int[] parentIndexes = new int[size];
+			int[] firstChildren = new int[size];
+			int[] nextSiblings = new int[size];
+			Arrays.fill(firstChildren, NOT_FOUND);
+			int firstTopLevel = NOT_FOUND;
+			IntIntHashMap missingParentOrgIds = new IntIntHashMap(0, 0);
+			for (int index = size - 1; index >= 0; index--) {
+				int parentOrgId = parentOrgIds[index];
+				int parentIndex = parentOrgId == 0 || parentOrgId == orgIds[index] ? NOT_FOUND : indexes.get(parentOrgId);
+				parentIndexes[index] = parentIndex;
+				if (parentIndex >= 0) {
+					nextSiblings[index] = firstChildren[parentIndex];
+					firstChildren[parentIndex] = index;
+				} else {
+					nextSiblings[index] = firstTopLevel;
+					firstTopLevel = index;
+				}
+			}
+
+			// Number the organizations in pre-order without recursion, each tree ends when it
+			// is left for its next sibling or its parent.
+			int[] preOrderIndexes = new int[size];
+			Arrays.fill(preOrderIndexes, NOT_FOUND);
+			int[] addedIndexes = new int[size];
+			int[] treeEnds = new int[size];
+			int count = 0;
+			int depth = 0;
+			int treeDepth = 0;
+			int index = firstTopLevel;
+			while (index != NOT_FOUND) {
+				preOrderIndexes[index] = count;
+				addedIndexes[count] = index;
+				count++;
+				treeDepth = Math.max(treeDepth, depth + 1);
+				if (firstChildren[index] != NOT_FOUND) {
+					index = firstChildren[index];
+					depth++;
+					continue;
+				}
+				while (index != NOT_FOUND) {
+					treeEnds[preOrderIndexes[index]] = count;
+					if (nextSiblings[index] != NOT_FOUND) {
+						index = nextSiblings[index];
+						break;
+					}
+					index = parentIndexes[index];
+					depth--;
+				}
+			}
+			if (count < size) {
+				logger.log(Level.WARNING, (size - count) + " orgs not added.  Their parents are in a cycle.");
+			}
+
+			// The last organization added for an orgId is the one found, like OrgCollection.
+			IntIntHashMap compactIndexes = new IntIntHashMap(count, NOT_FOUND);
+			for (int added = 0; added < size; added++) {
+				if (preOrderIndexes[added] != NOT_FOUND) {
+					compactIndexes.put(orgIds[added], preOrderIndexes[added]);
+				}
+			}
+
+			int[] compactParentIndexes = new int[count];
+			int[] compactOrgIds = new int[count];
+			int[] compactNumUsers = new int[count];
+			int[] compactNumFiles = new int[count];
+			long[] compactNumBytes = new long[count];
+			int[] compactNameOffsets = new int[count + 1];
+			byte[] compactNames = new byte[nameOffsets[size]];
+			for (int preOrder = 0; preOrder < count; preOrder++) {
+				int added = addedIndexes[preOrder];
+				compactOrgIds[preOrder] = orgIds[added];
+				compactParentIndexes[preOrder] = parentIndexes[added] >= 0 ? preOrderIndexes[parentIndexes[added]] : NOT_FOUND;
+				if (parentIndexes[added] < 0 && parentOrgIds[added] != 0) {
+					missingParentOrgIds.put(preOrder, parentOrgIds[added]);
+				}
+				compactNumUsers[preOrder] = numUsers[added];
+				compactNumFiles[preOrder] = numFiles[added];
+				compactNumBytes[preOrder] = numBytes[added];
+				int nameLength = nameOffsets[added + 1] - nameOffsets[added];
+				System.arraycopy(names, nameOffsets[added], compactNames, compactNameOffsets[preOrder], nameLength);
+				compactNameOffsets[preOrder + 1] = compactNameOffsets[preOrder] + nameLength;
+			}
+			return new CompactOrgCollection(count, compactOrgIds, compactParentIndexes, treeEnds, compactNumUsers,
+					compactNumFiles, compactNumBytes, Arrays.copyOf(compactNames, compactNameOffsets[count]),
+					compactNameOffsets, compactIndexes, missingParentOrgIds, treeDepth);
+		}
+
+		private void grow() {
+
+			int capacity = orgIds.length * 2;
+			orgIds = Arrays.copyOf(orgIds, capacity);
+			parentOrgIds = Arrays.copyOf(parentOrgIds, capacity);
+			numUsers = Arrays.copyOf(numUsers, capacity);
+			numFiles = Arrays.copyOf(numFiles, capacity);
+			numBytes = Arrays.copyOf(numBytes, capacity);
+			nameOffsets = Arrays.copyOf(nameOffsets, capacity + 1);
+		}
+	}
+}
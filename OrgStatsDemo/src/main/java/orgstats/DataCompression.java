@@ -0,0 +1,99 @@
+package orgstats;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * How a data file is compressed.  The loaders find out from the first bytes of the file, see
+ * detect(), and the stores from the extension of the output file, see forOutputFile().
+ */
+public enum DataCompression {
+
+	/**
+	 * Not compressed.
+	 */
+	NONE,
+
+	/**
+	 * A gzip file, decompressed in order on one thread.
+	 */
+	GZIP,
+
+	/**
+	 * A gzip file of independent members of whole lines that can be decompressed on several
+	 * threads, see BlockGzip.
+	 */
+	BLOCK_GZIP;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String GZIP_EXTENSION = ".gz";
+
+	/**
+	 * Returns the compression of a file from its first bytes, without changing the position
+	 * of the channel.
+	 *
+	 * @param channel		the FileChannel of the file
+	 * @return				BLOCK_GZIP if the file starts with a block gzip member, GZIP if it
+	 * 						starts with the gzip magic bytes, otherwise NONE
+	 * @throws IOException	if any unexpected I/O error occurs
+	 */
+	public static DataCompression detect(FileChannel channel) throws IOException {
+
+		ByteBuffer header = ByteBuffer.allocate(BlockGzip.HEADER_LENGTH);
+		while (header.hasRemaining()) {
+			if (channel.read(header, header.position()) <= 0) {
+				break;
+			}
+		}
+		byte[] bytes = header.array();
+		if (header.position() < 2 || bytes[0] != (byte) 0x1f || bytes[1] != (byte) 0x8b) {
+			return NONE;
+		}
+		return BlockGzip.memberLength(bytes, 0, header.position()) > 0 ? BLOCK_GZIP : GZIP;
+	}
+
+	/**
+	 * Returns the compression to write an output file with, BLOCK_GZIP for a name that ends
+	 * with ".gz" since it can be read as a gzip file, otherwise NONE.
+	 *
+	 * @param outputFile	the file to write
+	 * @return				the compression for the file
+	 */
+	public static DataCompression forOutputFile(File outputFile) {
+		return outputFile.getName().toLowerCase().endsWith(GZIP_EXTENSION) ? BLOCK_GZIP : NONE;
+	}
+
+	/**
+	 * Returns a stream that decompresses the input, the input itself for NONE.  A block gzip 
+	 * file is read as a gzip file.
+	 *
+	 * @param input			the stream of the file
+	 * @return				the stream of the uncompressed bytes
+	 * @throws IOException	if the gzip header isn't valid
+	 */
+	public InputStream decompress(InputStream input) throws IOException {
+		return this == NONE ? input : new GZIPInputStream(input, BUFFER_SIZE);
+	}
+
+	/**
+	 * Returns a stream that compresses the bytes written to it into the output, the output
+	 * itself for NONE.
+	 *
+	 * @param output		the stream of the file
+	 * @return				the stream to write the uncompressed bytes to
+	 * @throws IOException	if the gzip header can't be written
+	 */
+	public OutputStream compress(OutputStream output) throws IOException {
+
+		if (this == GZIP) {
+			return new GZIPOutputStream(output, BUFFER_SIZE);
+		}
+		return this == BLOCK_GZIP ? new BlockGzipOutputStream(output) : output;
+	}
+}
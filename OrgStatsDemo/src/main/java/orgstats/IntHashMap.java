@@ -0,0 +1,205 @@
+package orgstats;
+
+import java.util.Arrays;
+
+/**
+ * Hash map keyed by primitive int values using open addressing with linear probing.
+ * <p>
+ * Keys are stored in an int array so lookups do not box the key into an Integer.
+ * This is used for the id indexes where the number of lookups is proportional to
+ * the number of lines in the data files.
+ * <p>
+ * Null values are not supported, a null return from get() means the key is not mapped.
+ *
+ * @param <V>	the type of the mapped values
+ */
+public class IntHashMap<V> {
+
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private int[] keys;
+	private Object[] values;
+	private int size;
+	private int resizeThreshold;
+	private int mask;
+
+	/**
+	 * Constructs an empty map with a default capacity.
+	 */
+	public IntHashMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs an empty map that can hold expectedSize entries without resizing.
+	 *
+	 * @param expectedSize		the number of entries expected in the map
+	 */
+	public IntHashMap(int expectedSize) {
+		allocate(tableSizeFor(expectedSize));
+	}
+
+	/**
+	 * Returns the value mapped to the key.
+	 *
+	 * @param key		the key to look up
+	 * @return V		the mapped value or null if the key is not mapped
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+
+		int slot = mix(key) & mask;
+		while (values[slot] != null) {
+			if (keys[slot] == key) {
+				return (V) values[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns whether or not the key is mapped to a value.
+	 *
+	 * @param key		the key to look up
+	 * @return boolean	true if the key is mapped, otherwise false
+	 */
+	public boolean containsKey(int key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Maps the key to the value, replacing any previous value for the key.
+	 *
+	 * @param key		the key to map
+	 * @param value		the value to map to the key, can't be null
+	 * @return V		the previous value for the key or null if the key was not mapped
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+
+		if (value == null) {
+			throw new IllegalArgumentException("Null values are not supported.");
+		}
+
+		int slot = mix(key) & mask;
+		while (values[slot] != null) {
+			if (keys[slot] == key) {
+				V previous = (V) values[slot];
+				values[slot] = value;
+				return previous;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		size = size + 1;
+		if (size > resizeThreshold) {
+			resize(keys.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the mapping for the key.
+	 *
+	 * @param key		the key to remove
+	 * @return V		the removed value or null if the key was not mapped
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+
+		int slot = mix(key) & mask;
+		while (values[slot] != null) {
+			if (keys[slot] == key) {
+				V previous = (V) values[slot];
+				deleteSlot(slot);
+				size = size - 1;
+				return previous;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Removes all mappings from the map.
+	 */
+	public void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/*
+	 * Backward shift deletion so that probe chains stay intact without tombstones.
+	 */
+	private void deleteSlot(int slot) {
+
+		int gap = slot;
+		int current = (slot + 1) & mask;
+		while (values[current] != null) {
+			int home = mix(keys[current]) & mask;
+			// Move the entry into the gap if its home slot is not between the gap and its current slot.
+			if (((current - home) & mask) >= ((current - gap) & mask)) {
+				keys[gap] = keys[current];
+				values[gap] = values[current];
+				gap = current;
+			}
+			current = (current + 1) & mask;
+		}
+		values[gap] = null;
+	}
+
+	private void resize(int newLength) {
+
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(newLength);
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] != null) {
+				int slot = mix(oldKeys[i]) & mask;
+				while (values[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private void allocate(int length) {
+		keys = new int[length];
+		values = new Object[length];
+		mask = length - 1;
+		resizeThreshold = (int) (length * LOAD_FACTOR);
+	}
+
+	/*
+	 * Returns a power of two table length that keeps expectedSize under the load factor.
+	 */
+	private static int tableSizeFor(int expectedSize) {
+
+		int length = DEFAULT_CAPACITY;
+		while (length * LOAD_FACTOR < expectedSize) {
+			length = length * 2;
+		}
+		return length;
+	}
+
+	/*
+	 * Spreads sequential ids across the table (ids in the data files are usually sequential).
+	 */
+	private static int mix(int key) {
+		int hash = key * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,146 @@
+package orgstats;
+
+/**
+ * Hash map from primitive int keys to primitive int values using open addressing with
+ * linear probing, see IntHashMap.  Used where both the key and the value are ids or
+ * positions, so neither is boxed.
+ */
+class IntIntHashMap {
+
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private final int missingValue;
+	private int[] keys;
+	private int[] values;
+	private boolean[] used;
+	private int size;
+	private int resizeThreshold;
+	private int mask;
+
+	/**
+	 * Constructs an empty map that can hold expectedSize entries without resizing.
+	 *
+	 * @param expectedSize		the number of entries expected in the map
+	 * @param missingValue		the value get() returns for keys that aren't mapped
+	 */
+	IntIntHashMap(int expectedSize, int missingValue) {
+
+		this.missingValue = missingValue;
+		int length = DEFAULT_CAPACITY;
+		while (length * LOAD_FACTOR < expectedSize) {
+			length = length * 2;
+		}
+		allocate(length);
+	}
+
+	/**
+	 * Returns the value mapped to the key or the missing value if the key isn't mapped.
+	 */
+	int get(int key) {
+
+		int slot = mix(key) & mask;
+		while (used[slot]) {
+			if (keys[slot] == key) {
+				return values[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return missingValue;
+	}
+
+	/**
+	 * Maps the key to the value, replacing any previous value for the key.
+	 */
+	void put(int key, int value) {
+
+		int slot = mix(key) & mask;
+		while (used[slot]) {
+			if (keys[slot] == key) {
+				values[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		used[slot] = true;
+		size = size + 1;
+		if (size > resizeThreshold) {
+			resize(keys.length * 2);
+		}
+	}
+
+	/**
+	 * Removes the mapping for the key, returns the removed value or the missing value.
+	 */
+	int remove(int key) {
+
+		int slot = mix(key) & mask;
+		while (used[slot]) {
+			if (keys[slot] == key) {
+				int previous = values[slot];
+				deleteSlot(slot);
+				size = size - 1;
+				return previous;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return missingValue;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/*
+	 * Backward shift deletion so that probe chains stay intact without tombstones.
+	 */
+	private void deleteSlot(int slot) {
+
+		int gap = slot;
+		int current = (slot + 1) & mask;
+		while (used[current]) {
+			int home = mix(keys[current]) & mask;
+			if (((current - home) & mask) >= ((current - gap) & mask)) {
+				keys[gap] = keys[current];
+				values[gap] = values[current];
+				gap = current;
+			}
+			current = (current + 1) & mask;
+		}
+		used[gap] = false;
+	}
+
+	private void resize(int newLength) {
+
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		boolean[] oldUsed = used;
+		allocate(newLength);
+		for (int i = 0; i < oldUsed.length; i++) {
+			if (oldUsed[i]) {
+				int slot = mix(oldKeys[i]) & mask;
+				while (used[slot]) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+				used[slot] = true;
+			}
+		}
+	}
+
+	private void allocate(int length) {
+		keys = new int[length];
+		values = new int[length];
+		used = new boolean[length];
+		mask = length - 1;
+		resizeThreshold = (int) (length * LOAD_FACTOR);
+	}
+
+	private static int mix(int key) {
+		int hash = key * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -1,182 +1,764 @@
-package orgstats;
-
-import java.util.ArrayList;
-import java.util.List;
-
-/**
- * Organization that contains users and children organizations and 
- * provides user usage rollup statistics.
- */
-public class OrgBean implements Comparable<OrgBean> {
-
-	private int orgId;
-	private int parentOrgId;
-	private String name;
-	private final List<UserBean> users;
-	private final List<OrgBean> childOrgs;
-	
-	/**
-	 * Contructs organization with id only and empty child and user lists.
-	 * ParentId defaults to 0 and the name defaults to null.
-	 * 
-	 * @param orgId			the unique identifier for the organization
-	 */
-	public OrgBean(int orgId) {
-		this.orgId = orgId;
-		this.childOrgs = new ArrayList<OrgBean>();
-		this.users = new ArrayList<UserBean>();
-	}
-	
-	/**
-	 * Contructs organization with empty child and user lists.
-	 * 
-	 * @param orgId			the unique identifier for the organization.
-	 * @param parentOrgId	the organizations parent unique identifier.
-	 * @param name			the organization name
-	 */
-	public OrgBean(int orgId, int parentOrgId, String name) {
-		this(orgId);
-		this.parentOrgId = parentOrgId;
-		this.name = name;
-	}
-		
-	/**
-	 * Returns the total number of users for the organization.
-	 * This includes all users in child organizations, recursively.
-	 * 
-	 * @return	the total number of users in the organization, including child organizations.
-	 */
-	public int getTotalNumUsers() {
-		
-		int totalNumUsers = this.getUsers().size();
-		
-		for (OrgBean childOrg : this.getChildOrgs()) {
-			totalNumUsers = totalNumUsers + childOrg.getTotalNumUsers();
-		}		
-		return totalNumUsers;
-	}
-	
-	/**
-	 * Returns the total number of files for the users in the organization.
-	 * This includes all user file counts in child organizations, recursively.
-	 * 
-	 * @return	the total number of files for the entire organization, including child organizations
-	 */
-	public int getTotalNumFiles() {
-		
-		int totalNumFiles = 0;
-		
-		for (UserBean userBean : this.getUsers()) {
-			totalNumFiles = totalNumFiles + userBean.getNumFiles();
-		}
-		for (OrgBean childOrg : this.getChildOrgs()) {
-			totalNumFiles = totalNumFiles + childOrg.getTotalNumFiles();
-		}		
-		return totalNumFiles;
-	}
-	
-	/**
-	 * Returns the total number of bytes for the organization.
-	 * This includes all bytes in child organizations, recursively.
-	 * 
-	 * @return	the total number of bytes for the entire organization, including child organizations.
-	 */
-	public long getTotalNumBytes() {
-		
-		long totalNumBytes = 0;
-		
-		for (UserBean userBean : this.getUsers()) {
-			totalNumBytes = totalNumBytes + userBean.getNumBytes();
-		}
-		for (OrgBean childOrg : this.getChildOrgs()) {
-			totalNumBytes = totalNumBytes + childOrg.getTotalNumBytes();
-		}
-		return totalNumBytes;	
-	}
-
-	public List<OrgBean> getChildOrgs() {
-		return childOrgs;
-	}
-	
-	public List<UserBean> getUsers() {
-		return users;
-	}
-	
-	public int getOrgId() {
-		return orgId;
-	}
-	
-	public void setOrgId(int orgId) {
-		this.orgId = orgId;
-	}
-	
-	public int getParentOrgId() {
-		return parentOrgId;
-	}
-	
-	public void setParentOrgId(int parentOrgId) {
-		this.parentOrgId = parentOrgId;
-	}
-	
-	public String getName() {
-		return name;
-	}
-	
-	public void setName(String name) {
-		this.name = name;
-	}
-	
-	@Override
-	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + orgId;
-		return result;
-	}
-
-	@Override
-	public boolean equals(Object obj) {
-		if (this == obj)
-			return true;
-		if (obj == null)
-			return false;
-		if (getClass() != obj.getClass())
-			return false;
-		OrgBean other = (OrgBean) obj;
-		if (orgId != other.orgId)
-			return false;
-		return true;
-	}
-
-	/**
-	 * Compares two org beans by the organization id.
-	 * 
-	 * @param other		the OrgBean to be compared
-	 * @return			the value 0 if this OrgBean's orgId is numerically equal to the argument's orgId;
-	 * 					a value less than 0 if the OrgBean's orgId is numerically less than the argument's orgId;
-	 * 					a value more than 0 if the OrgBean's orgId is numerically greater than the argument's orgId
-	 */
-	@Override
-	public int compareTo(OrgBean other) {
-		return Integer.valueOf(this.orgId).compareTo(Integer.valueOf(other.orgId));
-	}
-	
-	@Override
-	public String toString() {
-		return "OrgBean [orgId=" + orgId + ", parentOrgId=" + parentOrgId
-				+ ", name=" + name + "]";
-	}
-	
-	
-	/**
-	 * Returns a String object that represents the organization by id 
-	 * and usages statistics (total user, total files, total bytes).
-	 * 
-	 * @return	a string representation of the object with usage stats
-	 */
-	public String getStatsString() {
-		return  name + "(" + orgId +")  Total Users: " + this.getTotalNumUsers() 
-				+ " Total Files: " + this.getTotalNumFiles() + " Total Bytes: " + this.getTotalNumBytes();
-	}
-	  	
-}
+package orgstats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Organization that contains users and children organizations and 
+ * provides user usage rollup statistics.
+ */
+public class OrgBean implements Comparable<OrgBean> {
+
+	private static final OrgTreeWalker TOTALS_WALKER = new OrgTreeWalker();
+
+	// The views of CompactOrgCollection are sealed, so they never add to their user columns.
+	private static final UserColumns NO_USERS = new UserColumns();
+	
+	/**
+	 * Computes the totals of the OrgBeans it is walked over, see computeTotals() and 
+	 * startTotals().
+	 */
+	static final OrgTreeVisitor<RuntimeException> TOTALS_VISITOR = new OrgTreeVisitor<RuntimeException>() {
+		public boolean preVisit(OrgBean orgBean, int depth) {
+			return orgBean.startTotals(depth);
+		}
+
+		public void postVisit(OrgBean orgBean, int depth) {
+			orgBean.finishTotals(depth);
+		}
+	};
+	
+	private int orgId;
+	private int parentOrgId;
+	private String name;
+	private final UserColumns users;
+	private final List<UserBean> usersView;
+	private List<OrgBean> childOrgs;
+	private OrgBean parentOrg;
+	private boolean sealed;
+	
+	// Usage of the organization's own users, including users that aren't stored, see addUsage()
+	private int numUsers;
+	private int numFiles;
+	private long numBytes;
+	
+	// Distributions of the organization's own users, null until a user is added, see getUsageSketch()
+	private UsageSketch fileSketch;
+	private UsageSketch byteSketch;
+	
+	// Distributions of the organization's tree, merged when the organization is sealed
+	private UsageSketch totalFileSketch;
+	private UsageSketch totalByteSketch;
+	
+	// Cached subtree totals, see computeTotals()
+	private boolean totalsValid;
+	private int totalNumUsers;
+	private int totalNumFiles;
+	private long totalNumBytes;
+	
+	// Position in the pre-order of the sealed OrgCollection, see OrgCollection.seal()
+	private int treeIndex = -1;
+	private int treeEnd = -1;
+	
+	/**
+	 * Contructs organization with id only and empty child and user lists.
+	 * ParentId defaults to 0 and the name defaults to null.
+	 * 
+	 * @param orgId			the unique identifier for the organization
+	 */
+	public OrgBean(int orgId) {
+		this.orgId = orgId;
+		this.childOrgs = new ArrayList<OrgBean>();
+		this.users = new UserColumns();
+		this.usersView = users.asList(this);
+	}
+	
+	/**
+	 * Contructs organization with empty child and user lists.
+	 * 
+	 * @param orgId			the unique identifier for the organization.
+	 * @param parentOrgId	the organizations parent unique identifier.
+	 * @param name			the organization name
+	 */
+	public OrgBean(int orgId, int parentOrgId, String name) {
+		this(orgId);
+		this.parentOrgId = parentOrgId;
+		this.name = name;
+	}
+		
+	/**
+	 * Contructs a sealed organization with its usage and totals and without child or user 
+	 * lists, for the views of CompactOrgCollection.  The view overrides getName(), 
+	 * getChildOrgs() and getParentOrg() to read them from the collection.
+	 */
+	OrgBean(int orgId, int parentOrgId, int numUsers, int numFiles, long numBytes, 
+			int totalNumUsers, int totalNumFiles, long totalNumBytes) {
+		this.orgId = orgId;
+		this.parentOrgId = parentOrgId;
+		this.users = NO_USERS;
+		this.usersView = Collections.emptyList();
+		this.childOrgs = Collections.emptyList();
+		this.numUsers = numUsers;
+		this.numFiles = numFiles;
+		this.numBytes = numBytes;
+		this.totalNumUsers = totalNumUsers;
+		this.totalNumFiles = totalNumFiles;
+		this.totalNumBytes = totalNumBytes;
+		this.totalsValid = true;
+		this.sealed = true;
+	}
+		
+	/**
+	 * Returns the total number of users for the organization.
+	 * This includes all users in child organizations, recursively.
+	 * 
+	 * @return	the total number of users in the organization, including child organizations.
+	 */
+	public int getTotalNumUsers() {
+		
+		if (!totalsValid) {
+			computeTotals();
+		}
+		return totalNumUsers;
+	}
+	
+	/**
+	 * Returns the total number of files for the users in the organization.
+	 * This includes all user file counts in child organizations, recursively.
+	 * 
+	 * @return	the total number of files for the entire organization, including child organizations
+	 */
+	public int getTotalNumFiles() {
+		
+		if (!totalsValid) {
+			computeTotals();
+		}
+		return totalNumFiles;
+	}
+	
+	/**
+	 * Returns the total number of bytes for the organization.
+	 * This includes all bytes in child organizations, recursively.
+	 * 
+	 * @return	the total number of bytes for the entire organization, including child organizations.
+	 */
+	public long getTotalNumBytes() {
+		
+		if (!totalsValid) {
+			computeTotals();
+		}
+		return totalNumBytes;	
+	}
+	
+	/**
+	 * Computes and caches the user, file and byte totals for the organization and
+	 * all child organizations in one bottom-up pass.  Child organizations that already 
+	 * have cached totals are not walked again.
+	 */
+	public void computeTotals() {
+		
+		if (sealed) {
+			return;
+		}
+		TOTALS_WALKER.walk(this, TOTALS_VISITOR);
+	}
+	
+	/**
+	 * Starts computing the totals of the organization as it is walked down to, the totals
+	 * of the children are added by finishTotals().  The organizations at depth 0 are always 
+	 * computed, the organizations below them only if their totals aren't cached.
+	 * 
+	 * @param depth		the depth of the organization in the walk
+	 * @return			true if the children have to be walked
+	 */
+	boolean startTotals(int depth) {
+		return depth == 0 || !totalsValid;
+	}
+	
+	/**
+	 * Adds up the totals of the organization as it is left, once every child has totals.  The
+	 * organization reads the totals of the children in its child list, so every child is read
+	 * once and a child that was added to the list directly is counted even though its parent
+	 * organization isn't set.
+	 * 
+	 * @param depth		the depth of the organization in the walk
+	 */
+	void finishTotals(int depth) {
+		sumChildTotals();
+	}
+	
+	/**
+	 * Computes the totals of the organization from its own usage and the cached totals of its
+	 * children, once every child has totals, see finishTotals() and OrgTotalsTask.
+	 */
+	void sumChildTotals() {
+		
+		totalNumUsers = numUsers;
+		totalNumFiles = numFiles;
+		totalNumBytes = numBytes;
+		for (OrgBean childOrg : childOrgs) {
+			addToTotals(childOrg);
+		}
+		totalsValid = true;
+	}
+	
+	/**
+	 * Returns an estimate of the heap used by the organization, its users and its distributions, 
+	 * see OrgCollection.getEstimatedHeapBytes().
+	 */
+	long getEstimatedHeapBytes() {
+		
+		long heapBytes = OrgCollection.ORG_HEAP_BYTES + (long) users.size() * OrgCollection.USER_HEAP_BYTES;
+		if (fileSketch != null) {
+			heapBytes = heapBytes + OrgCollection.SKETCH_HEAP_BYTES;
+		}
+		return heapBytes;
+	}
+	
+	/**
+	 * Returns true if the totals of the organization are cached.
+	 */
+	boolean hasTotals() {
+		return totalsValid;
+	}
+	
+	private void addToTotals(OrgBean childOrg) {
+		totalNumUsers = totalNumUsers + childOrg.totalNumUsers;
+		totalNumFiles = totalNumFiles + childOrg.totalNumFiles;
+		totalNumBytes = totalNumBytes + childOrg.totalNumBytes;
+	}
+	
+	/**
+	 * Discards the cached totals for the organization and its parent organizations.  
+	 * This only needs to be called on the organization whose child list was changed directly, 
+	 * addUser(), addUsage() and addChildOrg() keep the cached totals current.  A child added to
+	 * the list directly is counted in the totals, but its parent organization isn't set, so
+	 * changes to it don't reach this organization's cached totals, use addChildOrg() for that.
+	 */
+	public void invalidateTotals() {
+		
+		checkNotSealed();
+		OrgBean orgBean = this;
+		while (orgBean != null && orgBean.totalsValid) {
+			orgBean.totalsValid = false;
+			orgBean = orgBean.parentOrg;
+		}
+	}
+	
+	/**
+	 * Adds a user to the organization and adds the user usage to any cached totals 
+	 * of the organization and its parent organizations.
+	 * 
+	 * @param userBean		the UserBean to add to the organization
+	 */
+	public void addUser(UserBean userBean) {
+		addUser(userBean.getUserId(), userBean.getNumFiles(), userBean.getNumBytes());
+	}
+	
+	/**
+	 * Adds a user to the organization without a UserBean and adds the user usage to any 
+	 * cached totals of the organization and its parent organizations.
+	 * 
+	 * @param userId		the unique identifier for the user
+	 * @param numFiles		the total number of files for the user
+	 * @param numBytes		the total number of bytes for the user
+	 */
+	public void addUser(int userId, int numFiles, long numBytes) {
+		
+		checkNotSealed();
+		users.add(userId, numFiles, numBytes);
+		addToSketches(numFiles, numBytes);
+		addUsage(1, numFiles, numBytes);
+	}
+	
+	/**
+	 * Adds the usage of one user to the organization without storing the user, like 
+	 * addUsage() for one user, and adds the user to the distributions of the organization.
+	 * 
+	 * @param numFiles		the total number of files for the user
+	 * @param numBytes		the total number of bytes for the user
+	 */
+	public void addUserUsage(int numFiles, long numBytes) {
+		
+		checkNotSealed();
+		addToSketches(numFiles, numBytes);
+		addUsage(1, numFiles, numBytes);
+	}
+	
+	/**
+	 * Removes a stored user from the organization and subtracts the user usage from any 
+	 * cached totals of the organization and its parent organizations.
+	 * 
+	 * @param userId		the unique identifier for the user
+	 * @return				true if the user was removed, false if the user isn't stored 
+	 * 						in the organization
+	 */
+	public boolean removeUser(int userId) {
+		
+		checkNotSealed();
+		int index = users.indexOf(userId);
+		if (index < 0) {
+			return false;
+		}
+		int fileCount = users.getNumFiles(index);
+		long byteCount = users.getNumBytes(index);
+		users.remove(index);
+		removeFromSketches(fileCount, byteCount);
+		addUsage(-1, -fileCount, -byteCount);
+		return true;
+	}
+	
+	/**
+	 * Returns the index of a stored user in the user columns, e.g. to check a user delta 
+	 * before it is applied.
+	 * 
+	 * @param userId		the unique identifier for the user
+	 * @return				the index of the user or -1 if the user isn't stored in the organization
+	 */
+	int indexOfUser(int userId) {
+		
+		checkNotSealed();
+		return users.indexOf(userId);
+	}
+	
+	/**
+	 * Replaces the file and byte counts of a stored user and adds the differences to the 
+	 * organization usage and any cached totals of the organization and its parent organizations.
+	 * 
+	 * @param userId		the unique identifier for the user
+	 * @param numFiles		the new total number of files for the user
+	 * @param numBytes		the new total number of bytes for the user
+	 * @return				true if the user was changed, false if the user isn't stored 
+	 * 						in the organization
+	 */
+	public boolean updateUser(int userId, int numFiles, long numBytes) {
+		
+		checkNotSealed();
+		int index = users.indexOf(userId);
+		if (index < 0) {
+			return false;
+		}
+		int fileDifference = numFiles - users.getNumFiles(index);
+		long byteDifference = numBytes - users.getNumBytes(index);
+		removeFromSketches(users.getNumFiles(index), users.getNumBytes(index));
+		addToSketches(numFiles, numBytes);
+		users.set(index, numFiles, numBytes);
+		addUsage(0, fileDifference, byteDifference);
+		return true;
+	}
+	
+	/**
+	 * Adds user usage to the organization without storing the users, e.g. when only the
+	 * usage statistics are needed.  The usage is added to any cached totals of the 
+	 * organization and its parent organizations.  The users aren't added to the distributions
+	 * of the organization, see addUserUsage() and addUsage(int, int, long, UsageSketch, UsageSketch).
+	 * 
+	 * @param userCount		the number of users to add
+	 * @param fileCount		the total number of files for the users
+	 * @param byteCount		the total number of bytes for the users
+	 */
+	public void addUsage(int userCount, int fileCount, long byteCount) {
+		
+		checkNotSealed();
+		numUsers = numUsers + userCount;
+		numFiles = numFiles + fileCount;
+		numBytes = numBytes + byteCount;
+		patchTotals(userCount, fileCount, byteCount);
+	}
+	
+	/**
+	 * Adds the usage of users without storing them, like addUsage(), and adds the distributions
+	 * of their file and byte counts to the distributions of the organization.  The sketches are
+	 * copied.
+	 * 
+	 * @param userCount		the number of users to add
+	 * @param fileCount		the total number of files for the users
+	 * @param byteCount		the total number of bytes for the users
+	 * @param fileSketch	the distribution of the file counts of the users
+	 * @param byteSketch	the distribution of the byte counts of the users
+	 */
+	public void addUsage(int userCount, int fileCount, long byteCount, UsageSketch fileSketch, UsageSketch byteSketch) {
+		
+		checkNotSealed();
+		if (fileSketch.getCount() > 0 || byteSketch.getCount() > 0) {
+			createSketches();
+			this.fileSketch.merge(fileSketch);
+			this.byteSketch.merge(byteSketch);
+		}
+		addUsage(userCount, fileCount, byteCount);
+	}
+	
+	/**
+	 * Returns the distribution of a value per user for the organization's own users that were 
+	 * added with addUser(), addUserUsage() or with their sketches.  The sketch of a sealed
+	 * organization is returned, otherwise a copy.
+	 * 
+	 * @param metric		FILES or BYTES
+	 * @return				the distribution of the files or bytes per user
+	 */
+	public UsageSketch getUsageSketch(UsageMetric metric) {
+		
+		checkSketchMetric(metric);
+		UsageSketch sketch = metric == UsageMetric.BYTES ? byteSketch : fileSketch;
+		if (sketch == null) {
+			return UsageSketch.EMPTY;
+		}
+		return sealed ? sketch : new UsageSketch(sketch);
+	}
+	
+	/**
+	 * Returns the distribution of a value per user for the users of the organization and all of
+	 * the organizations below it.  The distributions of a sealed organization were merged from
+	 * the bottom of the tree up when it was sealed, so they are returned without reading its
+	 * tree, otherwise the tree is walked and the distributions of its organizations merged.
+	 * 
+	 * @param metric		FILES or BYTES
+	 * @return				the read-only distribution of the files or bytes per user
+	 */
+	public UsageSketch getTotalUsageSketch(final UsageMetric metric) {
+		
+		checkSketchMetric(metric);
+		if (sealed) {
+			UsageSketch totalSketch = metric == UsageMetric.BYTES ? totalByteSketch : totalFileSketch;
+			return totalSketch == null ? UsageSketch.EMPTY : totalSketch;
+		}
+		final UsageSketch totalSketch = new UsageSketch();
+		TOTALS_WALKER.walk(Collections.singletonList(this), new OrgTreeVisitor<RuntimeException>() {
+			public boolean preVisit(OrgBean orgBean, int depth) {
+				UsageSketch sketch = metric == UsageMetric.BYTES ? orgBean.byteSketch : orgBean.fileSketch;
+				if (sketch != null) {
+					totalSketch.merge(sketch);
+				}
+				return true;
+			}
+
+			public void postVisit(OrgBean orgBean, int depth) {
+			}
+		});
+		totalSketch.seal();
+		return totalSketch;
+	}
+	
+	/**
+	 * Adds a child organization and adds the child totals to any cached totals 
+	 * of the organization and its parent organizations.
+	 * 
+	 * @param childOrg		the OrgBean to add as a child of the organization
+	 */
+	public void addChildOrg(OrgBean childOrg) {
+		
+		checkNotSealed();
+		childOrgs.add(childOrg);
+		childOrg.parentOrg = this;
+		if (totalsValid) {
+			patchTotals(childOrg.getTotalNumUsers(), childOrg.getTotalNumFiles(), childOrg.getTotalNumBytes());
+		}
+	}
+	
+	/**
+	 * Makes the organization read-only once its totals are computed, so it can be read by
+	 * several threads.  The child list becomes unmodifiable, the user columns are trimmed, the
+	 * distributions of the sealed children are merged into the distributions of the tree, the
+	 * index of the user ids is dropped and the methods that change the organization throw an
+	 * IllegalStateException.
+	 */
+	void seal() {
+		
+		if (!totalsValid) {
+			computeTotals();
+		}
+		users.trimToSize();
+		users.dropPositions();
+		if (fileSketch != null) {
+			fileSketch.seal();
+			byteSketch.seal();
+		}
+		totalFileSketch = mergeTotalSketch(fileSketch, UsageMetric.FILES);
+		totalByteSketch = mergeTotalSketch(byteSketch, UsageMetric.BYTES);
+		childOrgs = Collections.unmodifiableList(childOrgs);
+		sealed = true;
+	}
+	
+	/**
+	 * Records the position of the organization in the pre-order of its sealed collection.  
+	 * The organization and all of the organizations below it are at [treeIndex, treeEnd).
+	 */
+	void setTreeRange(int treeIndex, int treeEnd) {
+		this.treeIndex = treeIndex;
+		this.treeEnd = treeEnd;
+	}
+	
+	/**
+	 * Returns the position of the organization in the pre-order of its sealed collection,
+	 * or -1 if the organization hasn't been numbered.
+	 */
+	int getTreeIndex() {
+		return treeIndex;
+	}
+	
+	/**
+	 * Returns the position after the last organization below this one in the pre-order 
+	 * of its sealed collection, or -1 if the organization hasn't been numbered.
+	 */
+	int getTreeEnd() {
+		return treeEnd;
+	}
+	
+	/**
+	 * Returns true once the organization is read-only, see OrgCollection.seal().
+	 * 
+	 * @return		true if the organization can't be changed
+	 */
+	public boolean isSealed() {
+		return sealed;
+	}
+	
+	/*
+	 * Adds the usage differences to the cached totals up the parent chain.  Totals are 
+	 * only cached for an organization when they are cached for all of its children, 
+	 * so the walk stops at the first organization without cached totals.
+	 */
+	private void patchTotals(int users, int files, long bytes) {
+		
+		OrgBean orgBean = this;
+		while (orgBean != null && orgBean.totalsValid) {
+			orgBean.totalNumUsers = orgBean.totalNumUsers + users;
+			orgBean.totalNumFiles = orgBean.totalNumFiles + files;
+			orgBean.totalNumBytes = orgBean.totalNumBytes + bytes;
+			orgBean = orgBean.parentOrg;
+		}
+	}
+	
+	/*
+	 * Merges the distribution of the organization's own users with the distributions of the 
+	 * trees of its sealed children.  A sketch is shared instead of copied when there is only 
+	 * one, so a chain of organizations without users of their own has one sketch.
+	 */
+	private UsageSketch mergeTotalSketch(UsageSketch ownSketch, UsageMetric metric) {
+		
+		UsageSketch totalSketch = ownSketch != null && ownSketch.getCount() > 0 ? ownSketch : null;
+		boolean copied = false;
+		for (OrgBean childOrg : childOrgs) {
+			UsageSketch childSketch = childOrg.getTotalUsageSketch(metric);
+			if (childSketch.getCount() == 0) {
+				continue;
+			}
+			if (totalSketch == null) {
+				totalSketch = childSketch;
+			} else {
+				if (!copied) {
+					totalSketch = new UsageSketch(totalSketch);
+					copied = true;
+				}
+				totalSketch.merge(childSketch);
+			}
+		}
+		if (copied) {
+			totalSketch.seal();
+		}
+		return totalSketch;
+	}
+	
+	/*
+	 * Creates the distributions for the first user, both are created together.
+	 */
+	private void createSketches() {
+		
+		if (fileSketch == null) {
+			fileSketch = new UsageSketch();
+			byteSketch = new UsageSketch();
+		}
+	}
+	
+	private void addToSketches(int fileCount, long byteCount) {
+		
+		createSketches();
+		fileSketch.add(fileCount);
+		byteSketch.add(byteCount);
+	}
+	
+	/*
+	 * Removes a user's counts, the distributions don't exist if the users were added as totals.
+	 */
+	private void removeFromSketches(int fileCount, long byteCount) {
+		
+		if (fileSketch != null) {
+			fileSketch.remove(fileCount);
+			byteSketch.remove(byteCount);
+		}
+	}
+	
+	private static void checkSketchMetric(UsageMetric metric) {
+		if (metric == UsageMetric.USERS) {
+			throw new IllegalArgumentException("There is no distribution of " + metric + " per user.");
+		}
+	}
+	
+	private void checkNotSealed() {
+		if (sealed) {
+			throw new IllegalStateException("OrgBean is sealed and can't be changed. orgId=" + orgId);
+		}
+	}
+
+	public List<OrgBean> getChildOrgs() {
+		return childOrgs;
+	}
+	
+	/**
+	 * Returns the users of the organization as UserBeans.  The users are stored in
+	 * columns (see getUserColumns()) and each UserBean is created when it is read, so
+	 * changes to the returned UserBeans are not stored.
+	 * 
+	 * @return		a List view of the users in the organization
+	 */
+	public List<UserBean> getUsers() {
+		return usersView;
+	}
+	
+	/**
+	 * Returns the users of the organization stored in primitive columns.
+	 * 
+	 * @return UserColumns		the user ids, file counts and byte counts of the users
+	 */
+	public UserColumns getUserColumns() {
+		return users;
+	}
+	
+	/**
+	 * Returns the number of users in the organization, not including child organizations.
+	 * This includes users added with addUsage() that aren't stored.
+	 * 
+	 * @return		the number of users in the organization
+	 */
+	public int getNumUsers() {
+		return numUsers;
+	}
+	
+	/**
+	 * Returns the number of files for the users in the organization, not including 
+	 * child organizations.
+	 * 
+	 * @return		the number of files for the users in the organization
+	 */
+	public int getNumFiles() {
+		return numFiles;
+	}
+	
+	/**
+	 * Returns the number of bytes for the users in the organization, not including 
+	 * child organizations.
+	 * 
+	 * @return		the number of bytes for the users in the organization
+	 */
+	public long getNumBytes() {
+		return numBytes;
+	}
+	
+	/**
+	 * Returns the parent organization once the organization is added to a parent.
+	 * 
+	 * @return OrgBean		the parent OrgBean or null for top level organizations
+	 */
+	public OrgBean getParentOrg() {
+		return parentOrg;
+	}
+	
+	public int getOrgId() {
+		return orgId;
+	}
+	
+	public void setOrgId(int orgId) {
+		checkNotSealed();
+		this.orgId = orgId;
+	}
+	
+	public int getParentOrgId() {
+		return parentOrgId;
+	}
+	
+	public void setParentOrgId(int parentOrgId) {
+		checkNotSealed();
+		this.parentOrgId = parentOrgId;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public void setName(String name) {
+		checkNotSealed();
+		this.name = name;
+	}
+	
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + orgId;
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		OrgBean other = (OrgBean) obj;
+		if (orgId != other.orgId)
+			return false;
+		return true;
+	}
+
+	/**
+	 * Compares two org beans by the organization id.
+	 * 
+	 * @param other		the OrgBean to be compared
+	 * @return			the value 0 if this OrgBean's orgId is numerically equal to the argument's orgId;
+	 * 					a value less than 0 if the OrgBean's orgId is numerically less than the argument's orgId;
+	 * 					a value more than 0 if the OrgBean's orgId is numerically greater than the argument's orgId
+	 */
+	@Override
+	public int compareTo(OrgBean other) {
+		return Integer.valueOf(this.orgId).compareTo(Integer.valueOf(other.orgId));
+	}
+	
+	@Override
+	public String toString() {
+		return "OrgBean [orgId=" + orgId + ", parentOrgId=" + parentOrgId
+				+ ", name=" + getName() + "]";
+	}
+	
+	
+	/**
+	 * Returns a String object that represents the organization by id 
+	 * and usages statistics (total user, total files, total bytes).
+	 * 
+	 * @return	a string representation of the object with usage stats
+	 */
+	public String getStatsString() {
+		return  getName() + "(" + orgId +")  Total Users: " + this.getTotalNumUsers() 
+				+ " Total Files: " + this.getTotalNumFiles() + " Total Bytes: " + this.getTotalNumBytes();
+	}
+	
+	/**
+	 * Returns the median, 95th percentile and largest files and bytes per user for the users of
+	 * the organization and all of the organizations below it, see getTotalUsageSketch().
+	 * 
+	 * @return		the distribution of the usage per user
+	 */
+	public String getDistributionString() {
+		
+		UsageSketch files = getTotalUsageSketch(UsageMetric.FILES);
+		UsageSketch bytes = getTotalUsageSketch(UsageMetric.BYTES);
+		return getName() + "(" + orgId + ")  Users: " + files.getCount() 
+				+ " Files per User: p50 " + files.getQuantile(0.5) + " p95 " + files.getQuantile(0.95) 
+				+ " max " + files.getQuantile(1) 
+				+ " Bytes per User: p50 " + bytes.getQuantile(0.5) + " p95 " + bytes.getQuantile(0.95) 
+				+ " max " + bytes.getQuantile(1);
+	}
+	  	
+}
@@ -1,179 +1,960 @@
-package orgstats;
-
-import java.util.ArrayList;
-import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
-/**
- * Represents a group of Organizations where each organization has users and 
- * a possibility to have no to many child organizations in a tree structure.
- * <p>
- * There can only be one organization in the entire tree and a user can
- * only be associated to one organization.
- */
-public class OrgCollection {
-	
-	private static final Logger logger = Logger.getLogger(OrgCollection.class.getName());
-	public List<OrgBean> orgList;
-	
-	/**
-	 * Create a collection with no OrgBean elements.
-	 */
-	public OrgCollection() {
-		orgList = new ArrayList<OrgBean>();
-	}
-		
-	/**
-	 * Adds an OrgBean to the OrgCollection and associates it to the correct parent,
-	 * if it doesn't exist in the "tree" then the OrgBean is placed at the top level.
-	 * 
-	 * @param orgBean		the OrgBean to add to the collection.
-	 */
-	public void add(OrgBean orgBean) {
-		
-		// Organizations with a parentOrgId set to 0 are top level orgs.
-		if (orgBean.getParentOrgId() == 0) {
-			orgList.add(orgBean);				
-		} else {
-			// Find parent and add to it.
-			OrgBean parentOrgBean = getOrg(orgBean.getParentOrgId());
-			if (parentOrgBean != null) {
-				parentOrgBean.getChildOrgs().add(orgBean);
-			} else {
-				// If parent doesn't exist, then assign to top of list to be reassigned later if it exists.
-				orgList.add(orgBean);
-			}
-		}
-		// Find any "dangling" children on top node to reattach to current parent.
-		findAndMoveChildOrgsFromTopLevel(orgBean);
-	}
-	
-	/**
-	 * Returns the OrgBean for the given unique orgId not matter where it exists in 
-	 * the organization tree.
-	 * 
-	 * @param orgId		the unique identifier for the OrgBean
-	 * @return OrgBean	an OrgBean if it exists in the tree, otherwise null
-	 */
-	public OrgBean getOrg(int orgId) {
-		return findOrgBean(orgId, this.orgList);
-	}
-		
-	/**
-	 * Retrieves all the child OrgBeans for a given orgId recursively through the tree
-	 * The OrgBean specified by the orgId may or may not be included in the return list.
-	 * 
-	 * @param orgId			the unique identifier for the OrgBean
-	 * @param inclusive		the designator to include the OrgBean identified by orgId
-	 * @return				a list of all the children OrgBeans for the OrgBean for the orgId.  If 
-	 * 						inclusive is true, the OrgBean identified by orgId is also returned in the list.  
-	 * 						If there are no beans, an empty List is returned.
-	 */
-	public List<OrgBean> getOrgTree(int orgId, boolean inclusive) {
-		
-		List<OrgBean> orgBeans = new ArrayList<OrgBean>();
-		OrgBean orgBean = getOrg(orgId);
-		
-		if (orgBean != null) {
-			if (inclusive) {
-				orgBeans.add(orgBean);
-			}
-			orgBeans.addAll(findAllChildOrgs(orgBean));
-		}
-		return orgBeans;
-	}
-	
-	/**
-	 * Adds a UserBean to the correct OrgBean in the org tree for the orgId specified
-	 * on the UserBean.  
-	 * 
-	 * @param userBean		the UserBean that is added to the orgId specified on the bean
-	 * @return boolean		true if UserBean was added to org bean false if the UserBean is null
-	 * 						or the OrgBean cannot be found.
-	 */
-	public boolean addUser(UserBean userBean) {
-		
-		boolean userAdded = false;
-		if (userBean != null) {
-			OrgBean userOrg = getOrg(userBean.getOrgId());
-			if (userOrg != null) {
-				userOrg.getUsers().add(userBean);
-				userAdded = true;
-			} else {
-				logger.log(Level.WARNING, "User not added to OrgBean.  Org doesn't exit." + userBean);
-			}
-		} else {
-			logger.log(Level.WARNING, "UserBean not added to OrgBean.  UserBean is null.");
-		}
-		return userAdded;
-	}
-	
-	/**
-	 * Returns a list of OrgBeans for the top level OrgBeans.
-	 * 
-	 * @return		a list of OrgBeans that are at the top of the org tree.
-	 */
-	public List<OrgBean> getTopLevelOrgs() {
-		return orgList;
-	}
-	
-		
-	/* Finds any "dangling" children on top node and reattaches it to correct OrgBean in tree.
-	 * It is not necessary to go through entire tree as they are listed on the top level.
-	 * 
-	 * @param orgBean		the OrgBean that may be a parent to top level "dangling" child nodes
-	 */
-	private void findAndMoveChildOrgsFromTopLevel(OrgBean orgBean) {
-
-		for (OrgBean currentOrgBean : orgList) {
-			if (orgBean.getOrgId() == currentOrgBean.getParentOrgId()) {
-				orgList.remove(currentOrgBean);
-				orgBean.getChildOrgs().add(currentOrgBean);
-				break;
-			}
-		}
-	}
-	
-	/*
-	 * Returns all the child OrgBeans and recursively their child OrgBeans
-	 * for a partical orgBean.
-	 * 
-	 * @param orgBean	the OrgBean to retrieve child OrgBeans
-	 * @return			a list of all child OrgBeans recursively
-	 */
-	private List<OrgBean> findAllChildOrgs(OrgBean orgBean) {
-		
-		List<OrgBean> childOrgs = new ArrayList<OrgBean>();
-		for (OrgBean childOrg : orgBean.getChildOrgs()) {
-			childOrgs.add(childOrg);
-			childOrgs.addAll(findAllChildOrgs(childOrg));
-		}
-		return childOrgs;
-	}
-	
-	/*
-	 * Recursively finds the OrgBean identified by orgId starting from a level specified
-	 * by the List of OrgBeans passed.
-	 * 
-	 * @param orgId			the unique identifier for the OrgBean to find
-	 * @param orgBeans		the list of OrgBeans to start the search
-	 * @return OrgBean		the OrgBean found in the tree identified by orgId, null if not found 
-	 */
-	private OrgBean findOrgBean(int orgId, List<OrgBean> orgBeans) {
-		
-		for (OrgBean currentOrgBean : orgBeans) {
-			if (orgId == currentOrgBean.getOrgId()) {
-				return currentOrgBean;
-			} else {
-				// Check children
-				currentOrgBean = findOrgBean(orgId, currentOrgBean.getChildOrgs());
-				if (currentOrgBean != null) {
-					return currentOrgBean;
-				}
-			}
-		}
-		return null;
-	}
-	
-}
+package orgstats;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import orgstats.metrics.OrgCollectionMetrics;
+import orgstats.metrics.OrgStatsMetrics;
+
+/**
+ * Represents a group of Organizations where each organization has users and 
+ * a possibility to have no to many child organizations in a tree structure.
+ * <p>
+ * There can only be one organization in the entire tree and a user can
+ * only be associated to one organization.
+ * <p>
+ * A collection is built on one thread.  Once it is sealed it can't be changed and can be 
+ * read by any number of threads, see PublishedOrgCollection for replacing it while it is read.
+ * Sealing also numbers the organizations in pre-order, so each tree is one range of a flat 
+ * array and getOrgTree() and isDescendant() don't walk the tree.  CompactOrgCollection is a
+ * sealed collection stored in arrays instead of OrgBeans.
+ * <p>
+ * The largest orgs of a tree and the orgs over a threshold by users, files or bytes are found
+ * in an index of the orgs sorted by their totals for a sealed collection, built on the first
+ * query for each UsageMetric, see getTopOrgs() and getOrgsOver().
+ * <p>
+ * Once enableMetrics() is called, the latency of a sample of the getOrg() and getOrgTree()
+ * calls and the size of the collection are recorded in its own OrgCollectionMetrics.
+ */
+public class OrgCollection {
+	
+	/**
+	 * The maxDepth of getOrgTreeIterator() for every level of the tree.
+	 */
+	public static final int ALL_LEVELS = Integer.MAX_VALUE;
+
+	/**
+	 * The number of OrgBeans from which computeTotals() computes the totals in parallel.
+	 */
+	public static final int PARALLEL_TOTALS_THRESHOLD = 50000;
+
+	/**
+	 * The estimated heap of a sealed OrgBean without users, see getEstimatedHeapBytes().
+	 */
+	public static final int ORG_HEAP_BYTES = 273;
+
+	/**
+	 * The estimated heap of a user stored in the user columns of an OrgBean.
+	 */
+	public static final int USER_HEAP_BYTES = 16;
+
+	/**
+	 * The estimated heap of the file and byte distributions of an OrgBean and its tree.
+	 */
+	public static final int SKETCH_HEAP_BYTES = 350;
+
+	/**
+	 * The estimated heap per OrgBean of the rankings of a sealed collection, the totals, orgIds
+	 * and sorted indexes of each UsageMetric (16 bytes per metric).
+	 */
+	public static final int RANKINGS_HEAP_BYTES = 48;
+	
+	private static final Logger logger = Logger.getLogger(OrgCollection.class.getName());
+	private static final OrgTreeWalker TREE_WALKER = new OrgTreeWalker();
+	public List<OrgBean> orgList;
+	private final IntHashMap<OrgBean> orgIndex;
+	private final IntHashMap<List<OrgBean>> orphansByParentId;
+	private boolean sealed;
+	private List<OrgBean> preOrderOrgs;
+	private int treeDepth;
+	private final AtomicReferenceArray<UsageRanking> rankings = 
+			new AtomicReferenceArray<UsageRanking>(UsageMetric.values().length);
+	// Null until enableMetrics() is called, so the lookups only read the field.
+	private volatile OrgCollectionMetrics metrics;
+	
+	/**
+	 * Create a collection with no OrgBean elements.
+	 */
+	public OrgCollection() {
+		orgList = new ArrayList<OrgBean>();
+		orgIndex = new IntHashMap<OrgBean>();
+		orphansByParentId = new IntHashMap<List<OrgBean>>();
+	}
+		
+	/**
+	 * Adds an OrgBean to the OrgCollection and associates it to the correct parent,
+	 * if it doesn't exist in the "tree" then the OrgBean is placed at the top level.
+	 * 
+	 * @param orgBean		the OrgBean to add to the collection.
+	 */
+	public void add(OrgBean orgBean) {
+		addAll(Collections.singletonList(orgBean));
+	}
+	
+	/**
+	 * Adds a group of OrgBeans to the OrgCollection in two phases.  All of the OrgBeans 
+	 * are indexed first and then linked to their parents in one pass, so the order of
+	 * the OrgBeans doesn't matter.  OrgBeans whose parent doesn't exist are placed at the 
+	 * top level until the parent is added.
+	 * 
+	 * @param orgBeans		the OrgBeans to add to the collection.
+	 */
+	public void addAll(Collection<OrgBean> orgBeans) {
+		
+		checkNotSealed();
+		for (OrgBean orgBean : orgBeans) {
+			orgIndex.put(orgBean.getOrgId(), orgBean);
+		}
+		
+		boolean orphansAdopted = false;
+		for (OrgBean orgBean : orgBeans) {
+			
+			// Organizations with a parentOrgId set to 0 are top level orgs.
+			OrgBean parentOrgBean = null;
+			if (orgBean.getParentOrgId() != 0 && orgBean.getParentOrgId() != orgBean.getOrgId()) {
+				parentOrgBean = orgIndex.get(orgBean.getParentOrgId());
+			}
+			
+			if (parentOrgBean != null) {
+				parentOrgBean.addChildOrg(orgBean);
+			} else {
+				// If parent doesn't exist, then assign to top of list to be reassigned later if it exists.
+				orgList.add(orgBean);
+				if (orgBean.getParentOrgId() != 0) {
+					addOrphan(orgBean);
+				}
+			}
+			
+			// Reattach any "dangling" children added before the current org.
+			List<OrgBean> orphans = orphansByParentId.remove(orgBean.getOrgId());
+			if (orphans != null) {
+				for (OrgBean orphan : orphans) {
+					orgBean.addChildOrg(orphan);
+				}
+				orphansAdopted = true;
+			}
+		}
+		if (orphansAdopted) {
+			removeAdoptedOrgsFromTopLevel();
+		}
+	}
+	
+	/**
+	 * Returns the OrgBean for the given unique orgId not matter where it exists in 
+	 * the organization tree.  The lookup uses the id index, so it doesn't depend on 
+	 * the size or depth of the tree.
+	 * 
+	 * @param orgId		the unique identifier for the OrgBean
+	 * @return OrgBean	an OrgBean if it exists in the tree, otherwise null
+	 */
+	public OrgBean getOrg(int orgId) {
+		
+		OrgCollectionMetrics collectionMetrics = metrics;
+		if (collectionMetrics == null) {
+			return orgIndex.get(orgId);
+		}
+		long startNanos = collectionMetrics.getOrgLatency().start();
+		OrgBean orgBean = orgIndex.get(orgId);
+		collectionMetrics.getOrgLatency().end(startNanos);
+		return orgBean;
+	}
+		
+	/**
+	 * Retrieves all the child OrgBeans for a given orgId recursively through the tree
+	 * The OrgBean specified by the orgId may or may not be included in the return list.
+	 * The OrgBeans are in pre-order, each OrgBean is followed by its children.
+	 * <p>
+	 * For a sealed collection the list is an unmodifiable view of the pre-order of the
+	 * collection, so it is returned without copying.  Otherwise the tree is walked into 
+	 * a new list.
+	 * 
+	 * @param orgId			the unique identifier for the OrgBean
+	 * @param inclusive		the designator to include the OrgBean identified by orgId
+	 * @return				a list of all the children OrgBeans for the OrgBean for the orgId.  If 
+	 * 						inclusive is true, the OrgBean identified by orgId is also returned in the list.  
+	 * 						If there are no beans, an empty List is returned.
+	 */
+	public List<OrgBean> getOrgTree(int orgId, boolean inclusive) {
+		
+		OrgCollectionMetrics collectionMetrics = metrics;
+		if (collectionMetrics == null) {
+			return collectOrgTree(orgId, inclusive);
+		}
+		long startNanos = collectionMetrics.getOrgTreeLatency().start();
+		List<OrgBean> orgTree = collectOrgTree(orgId, inclusive);
+		collectionMetrics.getOrgTreeLatency().end(startNanos);
+		return orgTree;
+	}
+	
+	/*
+	 * Returns the list of getOrgTree() without recording the latency.
+	 */
+	private List<OrgBean> collectOrgTree(int orgId, boolean inclusive) {
+		
+		OrgBean orgBean = orgIndex.get(orgId);
+		if (orgBean == null) {
+			return new ArrayList<OrgBean>();
+		}
+		if (orgBean.getTreeIndex() >= 0) {
+			int start = inclusive ? orgBean.getTreeIndex() : orgBean.getTreeIndex() + 1;
+			return preOrderOrgs.subList(start, orgBean.getTreeEnd());
+		}
+		
+		List<OrgBean> orgBeans = new ArrayList<OrgBean>();
+		if (inclusive) {
+			orgBeans.add(orgBean);
+		}
+		TREE_WALKER.walk(orgBean.getChildOrgs(), new PreOrderCollector(orgBeans));
+		return orgBeans;
+	}
+	
+	/**
+	 * Returns the OrgBeans of getOrgTree() as they are iterated instead of in a list, so the 
+	 * first OrgBeans are returned right away and the memory used doesn't depend on the size 
+	 * of the tree.  Every OrgBean below the OrgBean for orgId is returned in pre-order.
+	 * 
+	 * @param orgId			the unique identifier for the OrgBean
+	 * @param inclusive		the designator to include the OrgBean identified by orgId
+	 * @return				an iterator over the OrgBeans in the tree, without OrgBeans if the 
+	 * 						orgId doesn't exist
+	 */
+	public Iterator<OrgBean> getOrgTreeIterator(int orgId, boolean inclusive) {
+		return getOrgTreeIterator(orgId, inclusive, 0, Integer.MAX_VALUE, ALL_LEVELS);
+	}
+	
+	/**
+	 * Returns one page of the OrgBeans of getOrgTree() as they are iterated, limited to the 
+	 * levels of the tree down to maxDepth.  The OrgBeans are in pre-order, so the pages of a
+	 * tree can be read with increasing offsets.  The tree must not be changed while it is 
+	 * iterated.
+	 * <p>
+	 * The offset is skipped without walking the tree for a sealed collection when all levels
+	 * are returned, otherwise the OrgBeans before the offset are walked.
+	 * 
+	 * @param orgId			the unique identifier for the OrgBean
+	 * @param inclusive		the designator to include the OrgBean identified by orgId
+	 * @param offset		the number of OrgBeans to skip
+	 * @param limit			the maximum number of OrgBeans to return
+	 * @param maxDepth		the number of levels below the OrgBean for orgId to return, 1 for 
+	 * 						only its child OrgBeans or ALL_LEVELS
+	 * @return				an iterator over the OrgBeans in the page, without OrgBeans if the 
+	 * 						orgId doesn't exist
+	 */
+	public Iterator<OrgBean> getOrgTreeIterator(int orgId, boolean inclusive, int offset, int limit, int maxDepth) {
+		
+		if (offset < 0 || limit < 0 || maxDepth < 0) {
+			throw new IllegalArgumentException("Invalid org tree page: offset=" + offset 
+					+ " limit=" + limit + " maxDepth=" + maxDepth);
+		}
+		OrgBean orgBean = orgIndex.get(orgId);
+		if (orgBean == null) {
+			return Collections.<OrgBean>emptyList().iterator();
+		}
+		if (orgBean.getTreeIndex() >= 0 && maxDepth == ALL_LEVELS) {
+			List<OrgBean> orgTree = collectOrgTree(orgId, inclusive);
+			int start = Math.min(offset, orgTree.size());
+			int end = (int) Math.min(orgTree.size(), (long) start + limit);
+			return orgTree.subList(start, end).iterator();
+		}
+		return new OrgTreeIterator(orgBean, inclusive, offset, limit, maxDepth);
+	}
+	
+	/**
+	 * Returns true if the OrgBean for orgId is anywhere below the OrgBean for ancestorOrgId
+	 * in the tree.  For a sealed collection this compares the pre-order ranges of the two 
+	 * OrgBeans, otherwise the parents of the OrgBean are walked.
+	 * 
+	 * @param orgId				the unique identifier for the OrgBean that may be a descendant
+	 * @param ancestorOrgId		the unique identifier for the OrgBean that may be an ancestor
+	 * @return					true if both OrgBeans exist and the first is a descendant of the 
+	 * 							second, false for the same org
+	 */
+	public boolean isDescendant(int orgId, int ancestorOrgId) {
+		
+		OrgBean orgBean = orgIndex.get(orgId);
+		OrgBean ancestorOrg = orgIndex.get(ancestorOrgId);
+		if (orgBean == null || ancestorOrg == null || orgBean == ancestorOrg) {
+			return false;
+		}
+		if (orgBean.getTreeIndex() >= 0 && ancestorOrg.getTreeIndex() >= 0) {
+			return orgBean.getTreeIndex() > ancestorOrg.getTreeIndex() 
+					&& orgBean.getTreeIndex() < ancestorOrg.getTreeEnd();
+		}
+		for (OrgBean parentOrg = orgBean.getParentOrg(); parentOrg != null; parentOrg = parentOrg.getParentOrg()) {
+			if (parentOrg == ancestorOrg) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the count OrgBeans below the OrgBean for orgId with the largest totals of the 
+	 * metric.  For a sealed collection the OrgBeans are read from the ranking of the metric, 
+	 * otherwise the tree is walked and the largest OrgBeans are kept in a bounded heap.
+	 * 
+	 * @param orgId			the unique identifier for the OrgBean
+	 * @param inclusive		the designator to include the OrgBean identified by orgId
+	 * @param metric		the total the OrgBeans are ranked by
+	 * @param count			the maximum number of OrgBeans to return
+	 * @return				the OrgBeans, largest total first and by orgId for equal totals, 
+	 * 						an empty list if the orgId doesn't exist
+	 */
+	public List<OrgBean> getTopOrgs(int orgId, boolean inclusive, UsageMetric metric, int count) {
+		
+		checkCount(count);
+		OrgBean orgBean = orgIndex.get(orgId);
+		if (orgBean == null) {
+			return new ArrayList<OrgBean>();
+		}
+		if (orgBean.getTreeIndex() >= 0) {
+			int start = inclusive ? orgBean.getTreeIndex() : orgBean.getTreeIndex() + 1;
+			return getOrgs(getRanking(metric).top(start, orgBean.getTreeEnd(), count));
+		}
+		return topOrgs(collectOrgTree(orgId, inclusive), metric, count);
+	}
+	
+	/**
+	 * Returns the count OrgBeans of the collection with the largest totals of the metric, see 
+	 * getTopOrgs(int, boolean, UsageMetric, int).
+	 * 
+	 * @param metric		the total the OrgBeans are ranked by
+	 * @param count			the maximum number of OrgBeans to return
+	 * @return				the OrgBeans, largest total first and by orgId for equal totals
+	 */
+	public List<OrgBean> getTopOrgs(UsageMetric metric, int count) {
+		
+		checkCount(count);
+		if (isSealed()) {
+			return getOrgs(getRanking(metric).top(0, getOrgCount(), count));
+		}
+		return topOrgs(collectAllOrgs(), metric, count);
+	}
+	
+	/**
+	 * Returns the OrgBeans below the OrgBean for orgId whose total of the metric is over the
+	 * threshold.  For a sealed collection either the OrgBeans over the threshold in the ranking 
+	 * of the metric or the OrgBeans of the tree are read, whichever are fewer, otherwise the 
+	 * tree is walked.
+	 * 
+	 * @param orgId			the unique identifier for the OrgBean
+	 * @param inclusive		the designator to include the OrgBean identified by orgId
+	 * @param metric		the total the OrgBeans are compared by
+	 * @param threshold		the total the OrgBeans must exceed
+	 * @return				the OrgBeans, largest total first and by orgId for equal totals, 
+	 * 						an empty list if the orgId doesn't exist
+	 */
+	public List<OrgBean> getOrgsOver(int orgId, boolean inclusive, UsageMetric metric, long threshold) {
+		
+		OrgBean orgBean = orgIndex.get(orgId);
+		if (orgBean == null) {
+			return new ArrayList<OrgBean>();
+		}
+		if (orgBean.getTreeIndex() >= 0) {
+			int start = inclusive ? orgBean.getTreeIndex() : orgBean.getTreeIndex() + 1;
+			return getOrgs(getRanking(metric).over(start, orgBean.getTreeEnd(), threshold));
+		}
+		return orgsOver(collectOrgTree(orgId, inclusive), metric, threshold);
+	}
+	
+	/**
+	 * Returns the OrgBeans of the collection whose total of the metric is over the threshold, 
+	 * see getOrgsOver(int, boolean, UsageMetric, long).
+	 * 
+	 * @param metric		the total the OrgBeans are compared by
+	 * @param threshold		the total the OrgBeans must exceed
+	 * @return				the OrgBeans, largest total first and by orgId for equal totals
+	 */
+	public List<OrgBean> getOrgsOver(UsageMetric metric, long threshold) {
+		
+		if (isSealed()) {
+			return getOrgs(getRanking(metric).over(0, getOrgCount(), threshold));
+		}
+		return orgsOver(collectAllOrgs(), metric, threshold);
+	}
+	
+	/**
+	 * Returns the count users of the OrgBean for orgId and every OrgBean below it with the 
+	 * largest file or byte counts.  The users aren't indexed, so the users of the tree are 
+	 * read and the largest are kept in a bounded heap.  There are no users when only the 
+	 * aggregates were loaded.
+	 * 
+	 * @param orgId			the unique identifier for the OrgBean
+	 * @param metric		FILES or BYTES
+	 * @param count			the maximum number of users to return
+	 * @return				the users, largest first and by userId for equal values, an empty 
+	 * 						list if the orgId doesn't exist
+	 */
+	public List<UserBean> getTopUsers(int orgId, UsageMetric metric, int count) {
+		
+		checkCount(count);
+		if (metric == UsageMetric.USERS) {
+			throw new IllegalArgumentException("Users can't be ranked by " + metric);
+		}
+		// The heap is sized by the users of the tree, not by a count that can be far larger.
+		List<OrgBean> orgTree = collectOrgTree(orgId, true);
+		int userCount = 0;
+		for (OrgBean orgBean : orgTree) {
+			userCount = userCount + orgBean.getUserColumns().size();
+		}
+		PriorityQueue<UserBean> heap = new PriorityQueue<UserBean>(Math.max(1, Math.min(count, userCount)), 
+				Collections.reverseOrder(metric.userComparator()));
+		long lowestValue = Long.MIN_VALUE;
+		int lowestUserId = 0;
+		for (OrgBean orgBean : orgTree) {
+			UserColumns users = orgBean.getUserColumns();
+			for (int index = 0; index < users.size(); index++) {
+				long value = metric.getValue(users, index);
+				int userId = users.getUserId(index);
+				
+				// A UserBean is only created for a user that is kept.
+				if (heap.size() < count || (count > 0 
+						&& UsageMetric.compareRanks(value, userId, lowestValue, lowestUserId) < 0)) {
+					heap.add(new UserBean(userId, orgBean.getOrgId(), users.getNumFiles(index), users.getNumBytes(index)));
+					if (heap.size() > count) {
+						heap.poll();
+					}
+					lowestValue = metric.getValue(heap.peek());
+					lowestUserId = heap.peek().getUserId();
+				}
+			}
+		}
+		List<UserBean> topUsers = new ArrayList<UserBean>(heap);
+		Collections.sort(topUsers, metric.userComparator());
+		return topUsers;
+	}
+	
+	/**
+	 * Adds a UserBean to the correct OrgBean in the org tree for the orgId specified
+	 * on the UserBean.  
+	 * 
+	 * @param userBean		the UserBean that is added to the orgId specified on the bean
+	 * @return boolean		true if UserBean was added to org bean false if the UserBean is null
+	 * 						or the OrgBean cannot be found.
+	 */
+	public boolean addUser(UserBean userBean) {
+		
+		checkNotSealed();
+		boolean userAdded = false;
+		if (userBean != null) {
+			OrgBean userOrg = orgIndex.get(userBean.getOrgId());
+			if (userOrg != null) {
+				userOrg.addUser(userBean);
+				userAdded = true;
+			} else {
+				OrgStatsMetrics.LOADER.addOrphanUsers(1);
+				logger.log(Level.WARNING, "User not added to OrgBean.  Org doesn't exit." + userBean);
+			}
+		} else {
+			logger.log(Level.WARNING, "UserBean not added to OrgBean.  UserBean is null.");
+		}
+		return userAdded;
+	}
+	
+	/**
+	 * Adds a user to the OrgBean identified by orgId without constructing a UserBean.  A user
+	 * whose OrgBean cannot be found is only logged at FINE, the loaders log how many users 
+	 * weren't added once they have read the user file.
+	 * 
+	 * @param userId		the unique identifier for the user
+	 * @param orgId			the unique identifier for the OrgBean the user belongs to
+	 * @param numFiles		the total number of files for the user
+	 * @param numBytes		the total number of bytes for the user
+	 * @return boolean		true if the user was added, false if the OrgBean cannot be found
+	 */
+	public boolean addUser(int userId, int orgId, int numFiles, long numBytes) {
+		
+		checkNotSealed();
+		OrgBean userOrg = orgIndex.get(orgId);
+		if (userOrg != null) {
+			userOrg.addUser(userId, numFiles, numBytes);
+			return true;
+		}
+		OrgStatsMetrics.LOADER.addOrphanUsers(1);
+		logger.log(Level.FINE, "User not added to OrgBean.  Org doesn't exist." 
+				+ new UserBean(userId, orgId, numFiles, numBytes));
+		return false;
+	}
+	
+	/**
+	 * Adds user usage to the OrgBean identified by orgId without storing the users.
+	 * This is used when only the usage statistics are needed.
+	 * 
+	 * @param orgId			the unique identifier for the OrgBean the users belong to
+	 * @param userCount		the number of users to add
+	 * @param fileCount		the total number of files for the users
+	 * @param byteCount		the total number of bytes for the users
+	 * @return boolean		true if the usage was added, false if the OrgBean cannot be found
+	 */
+	public boolean addUsage(int orgId, int userCount, int fileCount, long byteCount) {
+		
+		checkNotSealed();
+		OrgBean userOrg = orgIndex.get(orgId);
+		if (userOrg != null) {
+			userOrg.addUsage(userCount, fileCount, byteCount);
+			return true;
+		}
+		OrgStatsMetrics.LOADER.addOrphanUsers(userCount);
+		logger.log(Level.FINE, "Usage not added to OrgBean.  Org doesn't exist. orgId=" + orgId);
+		return false;
+	}
+	
+	/**
+	 * Adds the usage of one user to the OrgBean identified by orgId without storing the user,
+	 * and adds the user to the distributions of the OrgBean, see OrgBean.addUserUsage().
+	 * 
+	 * @param orgId			the unique identifier for the OrgBean the user belongs to
+	 * @param numFiles		the total number of files for the user
+	 * @param numBytes		the total number of bytes for the user
+	 * @return boolean		true if the usage was added, false if the OrgBean cannot be found
+	 */
+	public boolean addUserUsage(int orgId, int numFiles, long numBytes) {
+		
+		checkNotSealed();
+		OrgBean userOrg = orgIndex.get(orgId);
+		if (userOrg != null) {
+			userOrg.addUserUsage(numFiles, numBytes);
+			return true;
+		}
+		OrgStatsMetrics.LOADER.addOrphanUsers(1);
+		logger.log(Level.FINE, "Usage not added to OrgBean.  Org doesn't exist. orgId=" + orgId);
+		return false;
+	}
+	
+	/**
+	 * Adds the usage of users to the OrgBean identified by orgId without storing the users, 
+	 * with the distributions of their file and byte counts, see OrgBean.addUsage().
+	 * 
+	 * @param orgId			the unique identifier for the OrgBean the users belong to
+	 * @param userCount		the number of users to add
+	 * @param fileCount		the total number of files for the users
+	 * @param byteCount		the total number of bytes for the users
+	 * @param fileSketch	the distribution of the file counts of the users
+	 * @param byteSketch	the distribution of the byte counts of the users
+	 * @return boolean		true if the usage was added, false if the OrgBean cannot be found
+	 */
+	public boolean addUsage(int orgId, int userCount, int fileCount, long byteCount, 
+			UsageSketch fileSketch, UsageSketch byteSketch) {
+		
+		checkNotSealed();
+		OrgBean userOrg = orgIndex.get(orgId);
+		if (userOrg != null) {
+			userOrg.addUsage(userCount, fileCount, byteCount, fileSketch, byteSketch);
+			return true;
+		}
+		OrgStatsMetrics.LOADER.addOrphanUsers(userCount);
+		logger.log(Level.FINE, "Usage not added to OrgBean.  Org doesn't exist. orgId=" + orgId);
+		return false;
+	}
+	
+	/**
+	 * Applies a change from a delta feed to the stored users and patches the cached totals of
+	 * the organizations involved and their parent organizations, so the cost depends on the
+	 * depth of the tree and not on its size.  Applying the changes gives the same totals as
+	 * reloading the changed user file.
+	 * <p>
+	 * Only ADDED changes can be applied to a collection loaded without storing the users,
+	 * the other changes need the user's current counts.
+	 *
+	 * @param userDelta		the change to apply
+	 * @return boolean		true if the change was applied, false if an OrgBean cannot be found,
+	 * 						the user isn't in the OrgBean or an added user is already in it
+	 */
+	public boolean applyDelta(UserDelta userDelta) {
+
+		checkNotSealed();
+		OrgBean userOrg = orgIndex.get(userDelta.getOrgId());
+		if (userOrg == null) {
+			logger.log(Level.WARNING, "User delta not applied.  Org doesn't exist. " + userDelta);
+			return false;
+		}
+
+		boolean applied;
+		switch (userDelta.getType()) {
+		case ADDED:
+			applied = userOrg.indexOfUser(userDelta.getUserId()) < 0;
+			if (applied) {
+				userOrg.addUser(userDelta.getUserId(), userDelta.getNumFiles(), userDelta.getNumBytes());
+			}
+			break;
+		case REMOVED:
+			applied = userOrg.removeUser(userDelta.getUserId());
+			break;
+		case UPDATED:
+			applied = userOrg.updateUser(userDelta.getUserId(), userDelta.getNumFiles(), userDelta.getNumBytes());
+			break;
+		case MOVED:
+			OrgBean newUserOrg = orgIndex.get(userDelta.getNewOrgId());
+			if (newUserOrg == null) {
+				logger.log(Level.WARNING, "User delta not applied.  New org doesn't exist. " + userDelta);
+				return false;
+			}
+			UserColumns users = userOrg.getUserColumns();
+			int index = userOrg.indexOfUser(userDelta.getUserId());
+			applied = index >= 0 && newUserOrg.indexOfUser(userDelta.getUserId()) < 0;
+			if (applied) {
+				int fileCount = users.getNumFiles(index);
+				long byteCount = users.getNumBytes(index);
+				userOrg.removeUser(userDelta.getUserId());
+				newUserOrg.addUser(userDelta.getUserId(), fileCount, byteCount);
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown user delta type " + userDelta.getType());
+		}
+		if (!applied) {
+			logger.log(Level.WARNING, "User delta not applied.  User doesn't match the org. " + userDelta);
+		}
+		return applied;
+	}
+
+	/**
+	 * Computes the cached user, file and byte totals for every OrgBean in the
+	 * collection in one bottom-up pass.  Totals are kept current as OrgBeans and 
+	 * UserBeans are added afterwards.  A collection of PARALLEL_TOTALS_THRESHOLD or more
+	 * OrgBeans is computed on the common ForkJoinPool when it has more than one thread, see 
+	 * computeTotals(ForkJoinPool).
+	 */
+	public void computeTotals() {
+		
+		if (isSealed()) {
+			return;
+		}
+		if (orgIndex.size() < PARALLEL_TOTALS_THRESHOLD || ForkJoinPool.getCommonPoolParallelism() < 2) {
+			TREE_WALKER.walk(orgList, OrgBean.TOTALS_VISITOR);
+		} else {
+			computeTotals(ForkJoinPool.commonPool());
+		}
+	}
+	
+	/**
+	 * Computes the cached totals for every OrgBean in the collection with fork/join tasks on 
+	 * the pool, the org trees and the large subtrees are computed in parallel and the small 
+	 * subtrees each on one thread, see OrgTotalsTask.  The collection must not be changed until 
+	 * this returns.
+	 * 
+	 * @param pool		the pool the totals are computed on
+	 * @return			the number of OrgBeans whose totals were computed, the OrgBeans with 
+	 * 					cached totals are skipped
+	 */
+	public int computeTotals(ForkJoinPool pool) {
+		
+		if (isSealed()) {
+			return 0;
+		}
+		return pool.invoke(new OrgTotalsTask(orgList));
+	}
+	
+	/**
+	 * Makes the collection read-only so it can be read by several threads without locking.
+	 * The totals of every OrgBean are computed, the lists of OrgBeans become unmodifiable 
+	 * and the methods that add to the collection or change an OrgBean throw an 
+	 * IllegalStateException.  The OrgBeans are numbered in pre-order, see getOrgTree(), and 
+	 * the size of the collection is recorded in its metrics if they are enabled.  Sealing a
+	 * sealed collection does nothing.
+	 * <p>
+	 * The collection still has to be handed to other threads safely, e.g. through 
+	 * PublishedOrgCollection.
+	 */
+	public void seal() {
+		
+		if (isSealed()) {
+			return;
+		}
+		computeTotals();
+		final List<OrgBean> preOrder = new ArrayList<OrgBean>(orgIndex.size());
+		
+		// Each OrgBean is numbered before its children and its range ends after its last child.
+		TREE_WALKER.walk(orgList, new OrgTreeVisitor<RuntimeException>() {
+			public boolean preVisit(OrgBean orgBean, int depth) {
+				orgBean.setTreeRange(preOrder.size(), -1);
+				preOrder.add(orgBean);
+				treeDepth = Math.max(treeDepth, depth + 1);
+				return true;
+			}
+
+			public void postVisit(OrgBean orgBean, int depth) {
+				orgBean.setTreeRange(orgBean.getTreeIndex(), preOrder.size());
+				orgBean.seal();
+			}
+		});
+		preOrderOrgs = Collections.unmodifiableList(preOrder);
+		orgList = Collections.unmodifiableList(orgList);
+		orphansByParentId.clear();
+		sealed = true;
+		OrgCollectionMetrics collectionMetrics = metrics;
+		if (collectionMetrics != null) {
+			collectionMetrics.recordSize(preOrder.size(), treeDepth);
+		}
+	}
+	
+	/**
+	 * Starts recording the latency of a sample of the getOrg() and getOrgTree() calls and
+	 * the size of the collection, see OrgCollectionMetrics.  The metrics are off by default
+	 * since even the sampling adds to the cost of a lookup, see doc/Performance.txt.  They
+	 * are kept by the collection, so they can be registered for JMX under the name of the 
+	 * collection with OrgStatsMetrics.register(OrgCollectionMetrics, String).
+	 * 
+	 * @return		the metrics of the collection, the same for every call
+	 */
+	public synchronized OrgCollectionMetrics enableMetrics() {
+		
+		if (metrics == null) {
+			OrgCollectionMetrics collectionMetrics = new OrgCollectionMetrics();
+			collectionMetrics.recordSize(getOrgCount(), getTreeDepth());
+			metrics = collectionMetrics;
+		}
+		return metrics;
+	}
+	
+	/**
+	 * Returns the metrics of the collection, see enableMetrics().
+	 * 
+	 * @return		the metrics of the collection, or null if they aren't enabled
+	 */
+	public OrgCollectionMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Returns true once the collection is read-only, see seal().
+	 * 
+	 * @return		true if the collection can't be changed
+	 */
+	public boolean isSealed() {
+		return sealed;
+	}
+	
+	/**
+	 * Returns the number of OrgBeans in the collection.
+	 * 
+	 * @return		the number of OrgBeans at every level of the tree
+	 */
+	public int getOrgCount() {
+		return orgIndex.size();
+	}
+	
+	/**
+	 * Returns an estimate of the heap used by the OrgBeans, their users and their distributions, 
+	 * from the footprints measured in doc/Performance.txt: ORG_HEAP_BYTES per OrgBean, 
+	 * USER_HEAP_BYTES per stored user and SKETCH_HEAP_BYTES per OrgBean with distributions.
+	 * A sealed collection also counts RANKINGS_HEAP_BYTES per OrgBean up front, since its
+	 * rankings are built by the first top or threshold queries after it is cached.  The
+	 * OrgBeans of a collection that isn't sealed are walked.
+	 * 
+	 * @return		the estimated heap in bytes
+	 */
+	public long getEstimatedHeapBytes() {
+		
+		if (sealed) {
+			long heapBytes = (long) preOrderOrgs.size() * RANKINGS_HEAP_BYTES;
+			for (OrgBean orgBean : preOrderOrgs) {
+				heapBytes = heapBytes + orgBean.getEstimatedHeapBytes();
+			}
+			return heapBytes;
+		}
+		final long[] heapBytes = new long[1];
+		TREE_WALKER.walk(orgList, new OrgTreeVisitor<RuntimeException>() {
+			public boolean preVisit(OrgBean orgBean, int depth) {
+				heapBytes[0] = heapBytes[0] + orgBean.getEstimatedHeapBytes();
+				return true;
+			}
+			
+			public void postVisit(OrgBean orgBean, int depth) {
+			}
+		});
+		return heapBytes[0];
+	}
+	
+	/**
+	 * Returns the number of levels of the deepest org tree, 1 if there are only top level 
+	 * OrgBeans.  The depth of a sealed collection is known, otherwise the tree is walked.
+	 * 
+	 * @return		the number of levels, 0 for an empty collection
+	 */
+	public int getTreeDepth() {
+		
+		if (sealed) {
+			return treeDepth;
+		}
+		final int[] maxDepth = new int[1];
+		TREE_WALKER.walk(orgList, new OrgTreeVisitor<RuntimeException>() {
+			public boolean preVisit(OrgBean orgBean, int depth) {
+				maxDepth[0] = Math.max(maxDepth[0], depth + 1);
+				return true;
+			}
+			
+			public void postVisit(OrgBean orgBean, int depth) {
+			}
+		});
+		return maxDepth[0];
+	}
+	
+	/**
+	 * Returns the ranking of the OrgBeans of a sealed collection by the metric.  The ranking is
+	 * built on the first call, two threads may both build it.
+	 */
+	UsageRanking getRanking(UsageMetric metric) {
+		
+		UsageRanking ranking = rankings.get(metric.ordinal());
+		if (ranking == null) {
+			ranking = createRanking(metric);
+			rankings.set(metric.ordinal(), ranking);
+		}
+		return ranking;
+	}
+	
+	/**
+	 * Ranks the OrgBeans of a sealed collection by the metric in pre-order.
+	 */
+	UsageRanking createRanking(UsageMetric metric) {
+		
+		long[] totals = new long[preOrderOrgs.size()];
+		int[] orgIds = new int[preOrderOrgs.size()];
+		for (int index = 0; index < totals.length; index++) {
+			OrgBean orgBean = preOrderOrgs.get(index);
+			totals[index] = metric.getTotal(orgBean);
+			orgIds[index] = orgBean.getOrgId();
+		}
+		return new UsageRanking(totals, orgIds);
+	}
+	
+	/**
+	 * Returns the OrgBeans for pre-order indexes of a sealed collection.
+	 */
+	List<OrgBean> getOrgs(int[] treeIndexes) {
+		
+		List<OrgBean> orgBeans = new ArrayList<OrgBean>(treeIndexes.length);
+		for (int treeIndex : treeIndexes) {
+			orgBeans.add(preOrderOrgs.get(treeIndex));
+		}
+		return orgBeans;
+	}
+	
+	/*
+	 * Rejects a negative count of a top query.
+	 */
+	static void checkCount(int count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("Invalid count " + count);
+		}
+	}
+	
+	/**
+	 * Returns a list of OrgBeans for the top level OrgBeans.
+	 * 
+	 * @return		a list of OrgBeans that are at the top of the org tree.
+	 */
+	public List<OrgBean> getTopLevelOrgs() {
+		return orgList;
+	}
+	
+		
+	private void checkNotSealed() {
+		if (isSealed()) {
+			throw new IllegalStateException("OrgCollection is sealed and can't be changed.");
+		}
+	}
+	
+	/*
+	 * Records an OrgBean whose parent doesn't exist yet by the parent orgId.
+	 */
+	private void addOrphan(OrgBean orgBean) {
+		
+		List<OrgBean> orphans = orphansByParentId.get(orgBean.getParentOrgId());
+		if (orphans == null) {
+			orphans = new ArrayList<OrgBean>(1);
+			orphansByParentId.put(orgBean.getParentOrgId(), orphans);
+		}
+		orphans.add(orgBean);
+	}
+	
+	/*
+	 * Removes the OrgBeans that have been attached to a parent from the top level in one pass.
+	 */
+	private void removeAdoptedOrgsFromTopLevel() {
+		
+		List<OrgBean> topLevelOrgs = new ArrayList<OrgBean>(orgList.size());
+		for (OrgBean orgBean : orgList) {
+			if (orgBean.getParentOrg() == null) {
+				topLevelOrgs.add(orgBean);
+			}
+		}
+		orgList.clear();
+		orgList.addAll(topLevelOrgs);
+	}
+	
+	/*
+	 * Returns every OrgBean of the collection in pre-order.
+	 */
+	private List<OrgBean> collectAllOrgs() {
+		
+		List<OrgBean> orgBeans = new ArrayList<OrgBean>(orgIndex.size());
+		TREE_WALKER.walk(orgList, new PreOrderCollector(orgBeans));
+		return orgBeans;
+	}
+	
+	/*
+	 * Keeps the count largest OrgBeans in a heap with the smallest at its head.
+	 */
+	private static List<OrgBean> topOrgs(List<OrgBean> orgBeans, UsageMetric metric, int count) {
+		
+		PriorityQueue<OrgBean> heap = new PriorityQueue<OrgBean>(Math.max(1, Math.min(count, orgBeans.size())), 
+				Collections.reverseOrder(metric.orgComparator()));
+		for (OrgBean orgBean : orgBeans) {
+			if (heap.size() < count) {
+				heap.add(orgBean);
+			} else if (count > 0 && metric.orgComparator().compare(orgBean, heap.peek()) < 0) {
+				heap.poll();
+				heap.add(orgBean);
+			}
+		}
+		List<OrgBean> topOrgs = new ArrayList<OrgBean>(heap);
+		Collections.sort(topOrgs, metric.orgComparator());
+		return topOrgs;
+	}
+	
+	/*
+	 * Returns the OrgBeans with a total over the threshold sorted by total.
+	 */
+	private static List<OrgBean> orgsOver(List<OrgBean> orgBeans, UsageMetric metric, long threshold) {
+		
+		List<OrgBean> orgsOver = new ArrayList<OrgBean>();
+		for (OrgBean orgBean : orgBeans) {
+			if (metric.getTotal(orgBean) > threshold) {
+				orgsOver.add(orgBean);
+			}
+		}
+		Collections.sort(orgsOver, metric.orgComparator());
+		return orgsOver;
+	}
+	
+	/*
+	 * Adds every OrgBean of a walk to a list in pre-order.
+	 */
+	private static class PreOrderCollector implements OrgTreeVisitor<RuntimeException> {
+		
+		private final List<OrgBean> orgBeans;
+		
+		PreOrderCollector(List<OrgBean> orgBeans) {
+			this.orgBeans = orgBeans;
+		}
+		
+		public boolean preVisit(OrgBean orgBean, int depth) {
+			orgBeans.add(orgBean);
+			return true;
+		}
+		
+		public void postVisit(OrgBean orgBean, int depth) {
+		}
+	}
+	
+}
@@ -1,150 +1,363 @@
-package orgstats;
-
-import static orgstats.OrgStatsHelper.isInteger;
-
-import java.io.File;
-import java.util.Scanner;
-
-import orgstats.load.OrgDataLoader;
-import orgstats.load.OrgDataLoaderException;
-import orgstats.load.OrgUserDataFileLoader;
-import orgstats.store.OrgStatsFileStore;
-import orgstats.store.OrgStatsStore;
-import orgstats.store.OrgStatsStoreException;
-
-/**
- * Tool for reading hierarchical organizational and related user file and byte usage data
- * into memory in order to produce usage statistics on demand.  After reading the 
- * organizational and user data, it will be written to a third file, which represents
- * the organizational tree. 
- * <p>
- * NOTE:  Files 
- * <p>
- * A very simple user interface will also provide the ability to view the usage statistics
- * for an single organization or a tree of organizations.
- * <p>
- */
-public class OrgStatsTool {
-	
-	private OrgCollection orgCollection;
-	private OrgDataLoader orgDataLoader;
-	private OrgStatsStore orgStatsStore;
-	
-	/**
-	 * Constructs an OrgStats Tool for the input and output files.
-	 * Data is loaded into memory and the output file is written.
-	 * 
-	 * @param orgFile		the File that contains the org data
-	 * @param userFile		the File that contains the user data
-	 * @param outputFile	the File output file to be created after processing
-	 */
-	public OrgStatsTool(File orgFile, File userFile, File outputFile) throws OrgDataLoaderException, OrgStatsStoreException {
-			
-		orgCollection = new OrgCollection();
-		orgDataLoader = new OrgUserDataFileLoader(orgFile, userFile);
-		orgStatsStore = new OrgStatsFileStore(outputFile);
-		initializeData();
-	}
-	
-	/**
-	 * Runs the OrgStatsTool given the input and output filesname as arguments
-	 * 
-	 * @param args[0]		the name of the file containing the org data
-	 * @param args[1]		the name of the file containing the user data
-	 * @param args[2]		the name of the output data file
-	 */
-	public static void main(String[] args) {
-
-		if (args.length == 3) {
-			File orgFile = new File(args[0]);
-			File userFile = new File(args[1]);
-			File outputFile = new File(args[2]);			
-			
-			try {
-				OrgStatsTool orgStatsTool = new OrgStatsTool(orgFile, userFile, outputFile);
-				orgStatsTool.handleStatRequests();
-			} catch (OrgDataLoaderException loaderEx) {
-				System.err.println("OrgStatsTool stopped on loading data..." + loaderEx.getMessage());
-			} catch (OrgStatsStoreException storeEx) {
-				System.err.println("OrgStatsTool stopped on storing data..." + storeEx.getMessage());
-				
-			}
-		}
-	}
-	
-	/**
-	 * Returns the organization tree of data stored in memory.
-	 * 
-	 * @return OrgCollection		a container for OrgBeans
-	 */
-	public OrgCollection getOrgCollection() {
-		return orgCollection;
-	}
-
-	/*
-	 * Initialize the data by reading it into memory and writing it to an output file.
-	 */
-	void initializeData() throws OrgDataLoaderException, OrgStatsStoreException {
-
-		// Load organization and user data in memory
-		orgCollection = orgDataLoader.loadData();
-		
-		// Store organization statistic results in output file
-		orgStatsStore.storeData(orgCollection);
-	}
-	
-	/*
-	 * Simple user interface for displaying the org usage data.
-	 * <p>
-	 * <ul>
-	 * 	<li>[1] Get Individual Org Stats
-	 *  <li>[2] Get Org Tree Stats (Exclusive)
-	 *  <li>[3] Get Org Tree Stats (Inclusive)
-	 * </ul>
-	 */
-	private void handleStatRequests() {
-		
-		Scanner scanner = new Scanner(System.in);
-		while (true) {
-			printMenu();
-		    String input = scanner.next();
-		    if (input.equalsIgnoreCase("q")) {
-		        break;
-		    } else {
-		    	if ("1".equals(input) || "2".equals(input) || "3".equals(input)) {
-		    		System.out.println("Enter OrgId:");
-			    	String orgIdInput = scanner.next();
-			    	if (isInteger(orgIdInput)) { 
-				    	Integer orgId = Integer.valueOf(orgIdInput);
-				    	if ("1".equals(input)) {
-				    		System.out.println(orgCollection.getOrg(orgId).getStatsString());
-				    	} else if ("2".equals(input)) {
-				    		for (OrgBean org : orgCollection.getOrgTree(orgId, false)) {
-				    			System.out.println(org.getStatsString());  
-				    		}
-				    	} else if ("3".equals(input)) {				    	
-				    		for (OrgBean org : orgCollection.getOrgTree(orgId, true)) {
-				    			System.out.println(org.getStatsString());  
-				    		}
-				    	}
-			    	} else {
-			    		System.out.println("Invalid menu selection.\n");
-			    	}
-		    	} else {
-		    		System.out.println("Invalid org id.\n");
-		    	}
-		    }
-		}
-	}
-	
-	/*
-	 * Prints simple menu
-	 */
-	private void printMenu() {
-		System.out.println("\nOrgCollection Stats->Enter a selection:");
-		System.out.println("[1] Get Individual Org Stats");
-		System.out.println("[2] Get Org Tree Stats (Exclusive)");
-		System.out.println("[3] Get Org Tree Stats (Inclusive)");
-		System.out.println("[q] Quit");
-	}
-}
+package orgstats;
+
+import static orgstats.OrgStatsHelper.isInteger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Scanner;
+
+import orgstats.load.CompactOrgDataLoader;
+import orgstats.load.ExternalSortOrgDataLoader;
+import orgstats.load.OrgDataLoader;
+import orgstats.load.OrgDataLoaderException;
+import orgstats.load.OrgStatsSnapshotLoader;
+import orgstats.load.OrgUserDataFileLoader;
+import orgstats.load.UserLoadMode;
+import orgstats.metrics.OrgStatsMetrics;
+import orgstats.server.OrgStatsServer;
+import orgstats.store.OrgStatsFileStore;
+import orgstats.store.OrgStatsSnapshotStore;
+import orgstats.store.OrgStatsStore;
+import orgstats.store.OrgStatsStoreException;
+
+/**
+ * Tool for reading hierarchical organizational and related user file and byte usage data
+ * into memory in order to produce usage statistics on demand.  After reading the 
+ * organizational and user data, it will be written to a third file, which represents
+ * the organizational tree. 
+ * <p>
+ * NOTE:  Files 
+ * <p>
+ * A very simple user interface will also provide the ability to view the usage statistics
+ * for an single organization or a tree of organizations.
+ * <p>
+ */
+public class OrgStatsTool {
+	
+	private static final String AGGREGATES_ONLY_OPTION = "-aggregatesOnly";
+	private static final String THREADS_OPTION = "-threads";
+	private static final String SNAPSHOT_OPTION = "-snapshot";
+	private static final String SERVER_OPTION = "-server";
+	private static final String EXTERNAL_SORT_OPTION = "-externalSort";
+	private static final String COMPACT_OPTION = "-compact";
+	private static final String METRICS_OPTION = "-metrics";
+	private static final int PAGE_SIZE = 20;
+	private static final String USAGE = "Usage: OrgStatsTool [" + AGGREGATES_ONLY_OPTION + "] [" + COMPACT_OPTION + "] [" 
+			+ THREADS_OPTION + " count] [" + EXTERNAL_SORT_OPTION + " memoryMB] [" + SNAPSHOT_OPTION 
+			+ " snapshotFile] [" + SERVER_OPTION + " port] [" + METRICS_OPTION + "] orgFile userFile outputFile";
+	
+	private OrgCollection orgCollection;
+	private OrgDataLoader orgDataLoader;
+	private OrgStatsStore[] orgStatsStores;
+	
+	/**
+	 * Constructs an OrgStats Tool for the input and output files.
+	 * Data is loaded into memory and the output file is written.
+	 * 
+	 * @param orgFile		the File that contains the org data
+	 * @param userFile		the File that contains the user data
+	 * @param outputFile	the File output file to be created after processing
+	 */
+	public OrgStatsTool(File orgFile, File userFile, File outputFile) throws OrgDataLoaderException, OrgStatsStoreException {
+			
+		orgCollection = new OrgCollection();
+		orgDataLoader = new OrgUserDataFileLoader(orgFile, userFile);
+		orgStatsStores = new OrgStatsStore[] { new OrgStatsFileStore(outputFile) };
+		initializeData();
+	}
+	
+	/**
+	 * Constructs an OrgStats Tool that uses the loader and stores given.
+	 * Data is loaded into memory and stored in each store in order.
+	 * 
+	 * @param orgDataLoader		the OrgDataLoader that loads the org and user data
+	 * @param orgStatsStores	the OrgStatsStores that store the org data after loading
+	 */
+	public OrgStatsTool(OrgDataLoader orgDataLoader, OrgStatsStore... orgStatsStores) 
+			throws OrgDataLoaderException, OrgStatsStoreException {
+		
+		this.orgCollection = new OrgCollection();
+		this.orgDataLoader = orgDataLoader;
+		this.orgStatsStores = orgStatsStores;
+		initializeData();
+	}
+	
+	/**
+	 * Runs the OrgStatsTool given the input and output filesname as arguments.
+	 * The file names can be preceded by these options:
+	 * <ul>
+	 * 	<li>-aggregatesOnly:  only keep the usage totals of each org, the users are not stored
+	 * 	<li>-compact:  only keep the usage totals of each org in a CompactOrgCollection, which stores 
+	 * 		the orgs in arrays instead of OrgBeans
+	 * 	<li>-threads count:  the number of threads reading the user file for -aggregatesOnly and -compact
+	 * 	<li>-externalSort memoryMB:  only keep the usage totals of each org and add them up by sorting 
+	 * 		the user file with the memory given, see ExternalSortOrgDataLoader
+	 * 	<li>-snapshot snapshotFile:  load the data from the snapshot file if it was written for the 
+	 * 		current org and user files, otherwise load the data files and write the snapshot file
+	 * 	<li>-server port:  answer the menu requests over TCP on the loopback port, see OrgStatsServer, 
+	 * 		until q is entered
+	 * 	<li>-metrics:  record the load, store and query metrics and register them as MBeans, see 
+	 * 		OrgStatsMetrics
+	 * </ul>
+	 * 
+	 * @param args[0]		the name of the file containing the org data
+	 * @param args[1]		the name of the file containing the user data
+	 * @param args[2]		the name of the output data file
+	 */
+	public static void main(String[] args) {
+
+		UserLoadMode userLoadMode = UserLoadMode.USERS;
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		File snapshotFile = null;
+		int serverPort = -1;
+		long memoryBudget = 0;
+		boolean compact = false;
+		boolean metrics = false;
+		int argIndex = 0;
+		while (argIndex < args.length && args[argIndex].startsWith("-")) {
+			String option = args[argIndex];
+			if (AGGREGATES_ONLY_OPTION.equals(option)) {
+				userLoadMode = UserLoadMode.AGGREGATES_ONLY;
+			} else if (COMPACT_OPTION.equals(option)) {
+				compact = true;
+				userLoadMode = UserLoadMode.AGGREGATES_ONLY;
+			} else if (THREADS_OPTION.equals(option) && argIndex + 1 < args.length && isInteger(args[argIndex + 1])) {
+				argIndex = argIndex + 1;
+				threadCount = Integer.parseInt(args[argIndex]);
+			} else if (SNAPSHOT_OPTION.equals(option) && argIndex + 1 < args.length) {
+				argIndex = argIndex + 1;
+				snapshotFile = new File(args[argIndex]);
+			} else if (SERVER_OPTION.equals(option) && argIndex + 1 < args.length && isInteger(args[argIndex + 1])) {
+				argIndex = argIndex + 1;
+				serverPort = Integer.parseInt(args[argIndex]);
+			} else if (EXTERNAL_SORT_OPTION.equals(option) && argIndex + 1 < args.length && isInteger(args[argIndex + 1])) {
+				argIndex = argIndex + 1;
+				memoryBudget = Long.parseLong(args[argIndex]) * 1024 * 1024;
+				userLoadMode = UserLoadMode.AGGREGATES_ONLY;
+			} else if (METRICS_OPTION.equals(option)) {
+				metrics = true;
+			} else {
+				System.err.println("Unknown option " + option + "\n" + USAGE);
+				return;
+			}
+			argIndex = argIndex + 1;
+		}
+		
+		if (args.length - argIndex == 3) {
+			if (metrics) {
+				OrgStatsMetrics.register();
+			}
+			File orgFile = new File(args[argIndex]);
+			File userFile = new File(args[argIndex + 1]);
+			File outputFile = new File(args[argIndex + 2]);			
+			
+			try {
+				OrgStatsTool orgStatsTool;
+				OrgDataLoader fileLoader;
+				if (memoryBudget > 0) {
+					fileLoader = new ExternalSortOrgDataLoader(orgFile, userFile, memoryBudget);
+				} else if (compact) {
+					fileLoader = new CompactOrgDataLoader(orgFile, userFile, threadCount);
+				} else {
+					fileLoader = new OrgUserDataFileLoader(orgFile, userFile, userLoadMode, threadCount);
+				}
+				OrgStatsSnapshotLoader snapshotLoader = snapshotFile == null ? null 
+						: new OrgStatsSnapshotLoader(snapshotFile, orgFile, userFile, userLoadMode);
+				if (snapshotLoader != null && snapshotLoader.isValid()) {
+					orgStatsTool = new OrgStatsTool(snapshotLoader, new OrgStatsFileStore(outputFile));
+				} else if (snapshotLoader != null) {
+					orgStatsTool = new OrgStatsTool(fileLoader,
+							new OrgStatsFileStore(outputFile), new OrgStatsSnapshotStore(snapshotFile, 
+									orgFile, userFile, userLoadMode == UserLoadMode.USERS));
+				} else {
+					orgStatsTool = new OrgStatsTool(fileLoader, new OrgStatsFileStore(outputFile));
+				}
+				if (metrics) {
+					OrgStatsMetrics.register(orgStatsTool.getOrgCollection().enableMetrics(), orgFile.getName());
+				}
+				if (serverPort >= 0) {
+					orgStatsTool.serveStatRequests(serverPort);
+				} else {
+					orgStatsTool.handleStatRequests();
+				}
+			} catch (OrgDataLoaderException loaderEx) {
+				System.err.println("OrgStatsTool stopped on loading data..." + loaderEx.getMessage());
+			} catch (OrgStatsStoreException storeEx) {
+				System.err.println("OrgStatsTool stopped on storing data..." + storeEx.getMessage());
+				
+			} catch (IOException ioEx) {
+				System.err.println("OrgStatsTool stopped on starting the server..." + ioEx.getMessage());
+			}
+		} else {
+			System.err.println(USAGE);
+		}
+	}
+	
+	/**
+	 * Returns the organization tree of data stored in memory.
+	 * 
+	 * @return OrgCollection		a container for OrgBeans
+	 */
+	public OrgCollection getOrgCollection() {
+		return orgCollection;
+	}
+
+	/*
+	 * Initialize the data by reading it into memory and writing it to an output file.
+	 */
+	void initializeData() throws OrgDataLoaderException, OrgStatsStoreException {
+
+		// Load organization and user data in memory
+		orgCollection = orgDataLoader.loadData();
+		
+		// Store organization statistic results in output file
+		for (OrgStatsStore orgStatsStore : orgStatsStores) {
+			orgStatsStore.storeData(orgCollection);
+		}
+	}
+	
+	/*
+	 * Simple user interface for displaying the org usage data.
+	 * <p>
+	 * <ul>
+	 * 	<li>[1] Get Individual Org Stats
+	 *  <li>[2] Get Org Tree Stats (Exclusive)
+	 *  <li>[3] Get Org Tree Stats (Inclusive)
+	 *  <li>[4] Get Top Orgs by Users, Files or Bytes
+	 *  <li>[5] Get Orgs over a Threshold of Users, Files or Bytes
+	 *  <li>[6] Get Top Users by Files or Bytes
+	 *  <li>[7] Get Org Tree Files and Bytes per User Percentiles
+	 * </ul>
+	 */
+	private void handleStatRequests() {
+		
+		Scanner scanner = new Scanner(System.in);
+		while (true) {
+			printMenu();
+		    String input = scanner.next();
+		    if (input.equalsIgnoreCase("q")) {
+		        break;
+		    } else {
+		    	if ("1".equals(input) || "2".equals(input) || "3".equals(input) || "7".equals(input)) {
+		    		System.out.println("Enter OrgId:");
+			    	String orgIdInput = scanner.next();
+			    	if (isInteger(orgIdInput)) { 
+				    	Integer orgId = Integer.valueOf(orgIdInput);
+				    	if ("1".equals(input)) {
+				    		System.out.println(orgCollection.getOrg(orgId).getStatsString());
+				    	} else if ("2".equals(input)) {
+				    		printOrgTree(orgCollection.getOrgTreeIterator(orgId, false), scanner);
+				    	} else if ("3".equals(input)) {				    	
+				    		printOrgTree(orgCollection.getOrgTreeIterator(orgId, true), scanner);
+				    	} else if (orgCollection.getOrg(orgId) != null) {
+				    		System.out.println(orgCollection.getOrg(orgId).getDistributionString());
+				    	}
+			    	} else {
+			    		System.out.println("Invalid menu selection.\n");
+			    	}
+		    	} else if ("4".equals(input) || "5".equals(input) || "6".equals(input)) {
+		    		handleRankingRequest(input, scanner);
+		    	} else {
+		    		System.out.println("Invalid org id.\n");
+		    	}
+		    }
+		}
+	}
+	
+	/*
+	 * Asks for the org, the metric and the count or threshold of menu options 4 to 6 and 
+	 * prints the orgs or users found.  Options 4 and 5 take orgId 0 for every org.
+	 */
+	private void handleRankingRequest(String input, Scanner scanner) {
+		
+		boolean users = "6".equals(input);
+		System.out.println(users ? "Enter OrgId:" : "Enter OrgId, 0 for every org:");
+		String orgIdInput = scanner.next();
+		System.out.println(users ? "Enter metric (files or bytes):" : "Enter metric (users, files or bytes):");
+		UsageMetric metric = UsageMetric.forName(scanner.next());
+		System.out.println("5".equals(input) ? "Enter threshold:" : "Enter count:");
+		String numberInput = scanner.next();
+		if (!isInteger(orgIdInput) || !isInteger(numberInput) || metric == null 
+				|| (users && metric == UsageMetric.USERS)) {
+			System.out.println("Invalid request.\n");
+			return;
+		}
+		
+		try {
+			int orgId = Integer.parseInt(orgIdInput);
+			if ("4".equals(input)) {
+				int count = Integer.parseInt(numberInput);
+				List<OrgBean> topOrgs = orgId == 0 ? orgCollection.getTopOrgs(metric, count) 
+						: orgCollection.getTopOrgs(orgId, false, metric, count);
+				printOrgTree(topOrgs.iterator(), scanner);
+			} else if ("5".equals(input)) {
+				long threshold = Long.parseLong(numberInput);
+				List<OrgBean> orgsOver = orgId == 0 ? orgCollection.getOrgsOver(metric, threshold) 
+						: orgCollection.getOrgsOver(orgId, false, metric, threshold);
+				printOrgTree(orgsOver.iterator(), scanner);
+			} else {
+				for (UserBean userBean : orgCollection.getTopUsers(orgId, metric, Integer.parseInt(numberInput))) {
+					System.out.println(userBean.getUserId() + ", " + userBean.getOrgId() + ", " 
+							+ userBean.getNumFiles() + ", " + userBean.getNumBytes());
+				}
+			}
+		} catch (NumberFormatException numberEx) {
+			System.out.println("Invalid request.\n");
+		}
+	}
+	
+	/*
+	 * Prints the org tree a page at a time as it is walked, so the first page is printed
+	 * right away for any size of tree.
+	 */
+	private void printOrgTree(Iterator<OrgBean> orgTree, Scanner scanner) {
+		
+		while (orgTree.hasNext()) {
+			for (int line = 0; line < PAGE_SIZE && orgTree.hasNext(); line++) {
+				System.out.println(orgTree.next().getStatsString());
+			}
+			if (orgTree.hasNext()) {
+				System.out.println("[n] Next page, any other key to return to the menu:");
+				if (!"n".equalsIgnoreCase(scanner.next())) {
+					return;
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Answers the menu requests over TCP until q is entered.  The collection is sealed
+	 * when it is published to the server.
+	 */
+	private void serveStatRequests(int port) throws IOException {
+		
+		OrgStatsServer server = new OrgStatsServer(new PublishedOrgCollection(orgCollection), port);
+		server.start();
+		try {
+			System.out.println("Serving org stats on localhost port " + server.getPort() + ", enter q to stop.");
+			Scanner scanner = new Scanner(System.in);
+			while (scanner.hasNext() && !scanner.next().equalsIgnoreCase("q")) {
+				System.out.println("Enter q to stop.");
+			}
+		} finally {
+			server.stop();
+		}
+	}
+	
+	/*
+	 * Prints simple menu
+	 */
+	private void printMenu() {
+		System.out.println("\nOrgCollection Stats->Enter a selection:");
+		System.out.println("[1] Get Individual Org Stats");
+		System.out.println("[2] Get Org Tree Stats (Exclusive)");
+		System.out.println("[3] Get Org Tree Stats (Inclusive)");
+		System.out.println("[4] Get Top Orgs by Users, Files or Bytes");
+		System.out.println("[5] Get Orgs over a Threshold of Users, Files or Bytes");
+		System.out.println("[6] Get Top Users by Files or Bytes");
+		System.out.println("[7] Get Org Tree Files and Bytes per User Percentiles");
+		System.out.println("[q] Quit");
+	}
+}
@@ -0,0 +1,163 @@
+package orgstats;
+
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes the user, file and byte totals of the trees of a range of sibling OrgBeans on a
+ * ForkJoinPool, see OrgCollection.computeTotals(ForkJoinPool).  A task walks the trees of its
+ * range in one walk on its thread until it has started SERIAL_THRESHOLD OrgBeans, so small 
+ * trees are computed without any more tasks.  Then the rest of the range is split in two 
+ * tasks, and a tree the walk stopped in keeps the totals of the subtrees it finished and 
+ * gets a task for its child list.  One very large tree next to thousands of small ones is 
+ * split up as far down as it needs to be and the small ones are shared out in ranges.  The
+ * OrgBean adds its children's totals once their task has joined.
+ * <p>
+ * Every OrgBean is written by the one task that walks it and the parent only reads its
+ * children after joining their task.  The tree must not be changed while the totals are
+ * computed.  The task returns the number of OrgBeans whose totals it computed, OrgBeans with
+ * cached totals are skipped as in OrgBean.computeTotals().
+ */
+final class OrgTotalsTask extends RecursiveTask<Integer> {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The number of OrgBeans a task walks on its thread before it forks more tasks.
+	 */
+	static final int SERIAL_THRESHOLD = 4096;
+
+	/**
+	 * The depth of child list tasks from which trees are walked on one thread whatever their
+	 * size, e.g. for a long chain of single children that can't be split.
+	 */
+	static final int MAX_FORK_DEPTH = 64;
+
+	private static final OrgTreeWalker WALKER = new OrgTreeWalker();
+
+	private final List<OrgBean> orgBeans;
+	private final int fromIndex;
+	private final int toIndex;
+	private final int forkDepth;
+
+	/**
+	 * Constructs a task for the trees of a list of sibling OrgBeans.
+	 *
+	 * @param orgBeans		the top level OrgBeans of a collection or the child list of an OrgBean
+	 */
+	OrgTotalsTask(List<OrgBean> orgBeans) {
+		this(orgBeans, 0, orgBeans.size(), 0);
+	}
+
+	private OrgTotalsTask(List<OrgBean> orgBeans, int fromIndex, int toIndex, int forkDepth) {
+		this.orgBeans = orgBeans;
+		this.fromIndex = fromIndex;
+		this.toIndex = toIndex;
+		this.forkDepth = forkDepth;
+	}
+
+	@Override
+	protected Integer compute() {
+
+		TotalsVisitor visitor = new TotalsVisitor(forkDepth < MAX_FORK_DEPTH ? SERIAL_THRESHOLD : Integer.MAX_VALUE);
+		visitor.treeIndex = fromIndex - 1;
+		try {
+			WALKER.walk(orgBeans.subList(fromIndex, toIndex), visitor);
+		} catch (WalkStoppedException stoppedEx) {
+			// The visitor knows where the walk stopped.
+		}
+		int computedCount = visitor.finishedCount;
+		int stopIndex = visitor.stopIndex;
+		int restIndex = stopIndex < 0 ? toIndex : (visitor.stoppedInTree ? stopIndex + 1 : stopIndex);
+
+		// The rest of the range is left to two tasks and the tree the walk stopped in gets a 
+		// task for its children.
+		OrgTotalsTask firstHalf = null;
+		OrgTotalsTask secondHalf = null;
+		if (restIndex < toIndex) {
+			int middleIndex = toIndex - restIndex > 1 ? (restIndex + toIndex) >>> 1 : toIndex;
+			firstHalf = new OrgTotalsTask(orgBeans, restIndex, middleIndex, forkDepth);
+			firstHalf.fork();
+			if (middleIndex < toIndex) {
+				secondHalf = new OrgTotalsTask(orgBeans, middleIndex, toIndex, forkDepth);
+				secondHalf.fork();
+			}
+		}
+		if (visitor.stoppedInTree) {
+			// The subtrees the walk finished keep their totals, the OrgBeans on its path are
+			// computed again.
+			OrgBean orgBean = orgBeans.get(stopIndex);
+			List<OrgBean> childOrgs = orgBean.getChildOrgs();
+			computedCount = computedCount + new OrgTotalsTask(childOrgs, 0, childOrgs.size(), forkDepth + 1).invoke();
+			orgBean.sumChildTotals();
+			computedCount++;
+		}
+		if (secondHalf != null) {
+			computedCount = computedCount + secondHalf.join();
+		}
+		if (firstHalf != null) {
+			computedCount = computedCount + firstHalf.join();
+		}
+		return computedCount;
+	}
+
+	/*
+	 * Computes totals as OrgBean.TOTALS_VISITOR does, skipping the trees that have cached
+	 * totals, until an OrgBean would be started after budget OrgBeans.  Then the walk is 
+	 * stopped and the OrgBeans it hasn't left don't get totals.
+	 */
+	private static final class TotalsVisitor implements OrgTreeVisitor<WalkStoppedException> {
+
+		private final int budget;
+		private int startedCount;
+		private int finishedCount;
+
+		// The index in the task's list of the tree being walked, and of the tree the walk stopped at
+		private int treeIndex;
+		private int stopIndex = -1;
+		private boolean stoppedInTree;
+
+		TotalsVisitor(int budget) {
+			this.budget = budget;
+		}
+
+		public boolean preVisit(OrgBean orgBean, int depth) throws WalkStoppedException {
+
+			if (depth == 0) {
+				treeIndex++;
+				if (orgBean.hasTotals()) {
+					return false;
+				}
+			}
+			if (startedCount >= budget) {
+				stopIndex = treeIndex;
+				stoppedInTree = depth > 0;
+				throw WalkStoppedException.INSTANCE;
+			}
+			if (!orgBean.startTotals(depth)) {
+				return false;
+			}
+			startedCount++;
+			return true;
+		}
+
+		public void postVisit(OrgBean orgBean, int depth) {
+			orgBean.finishTotals(depth);
+			finishedCount++;
+		}
+	}
+
+	/*
+	 * Stops the walk of a TotalsVisitor, without a stack trace since it is only caught.
+	 */
+	private static final class WalkStoppedException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		static final WalkStoppedException INSTANCE = new WalkStoppedException();
+
+		private WalkStoppedException() {
+			super(null, null, false, false);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package orgstats;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks the tree of an organization in pre-order as it is iterated, see
+ * OrgCollection.getOrgTreeIterator().  Only an iterator for each level down to the current
+ * organization is kept, so the memory used depends on the depth of the tree and not on its size.
+ * <p>
+ * The tree must not be changed while it is iterated, which is always the case for a
+ * sealed collection.
+ */
+class OrgTreeIterator implements Iterator<OrgBean> {
+
+	// Child iterators from the top of the tree down to the level of the last organization.
+	private final Deque<Iterator<OrgBean>> levels = new ArrayDeque<Iterator<OrgBean>>();
+	private final int maxDepth;
+	private final int firstLevelDepth;
+	private int remaining;
+
+	/**
+	 * Constructs an iterator over the tree of the organization.
+	 *
+	 * @param orgBean		the organization at the top of the tree
+	 * @param inclusive		true to start with orgBean, false to start with its first child
+	 * @param offset		the number of organizations to skip
+	 * @param limit			the maximum number of organizations to return
+	 * @param maxDepth		the number of levels below orgBean to return, 1 for only its children
+	 */
+	OrgTreeIterator(OrgBean orgBean, boolean inclusive, int offset, int limit, int maxDepth) {
+
+		this.maxDepth = maxDepth;
+		this.firstLevelDepth = inclusive ? 0 : 1;
+		this.remaining = limit;
+		if (inclusive) {
+			levels.push(Collections.singletonList(orgBean).iterator());
+		} else if (maxDepth > 0) {
+			levels.push(orgBean.getChildOrgs().iterator());
+		}
+		for (int skipped = 0; skipped < offset && hasNextOrg(); skipped++) {
+			nextOrg();
+		}
+	}
+
+	public boolean hasNext() {
+		return remaining > 0 && hasNextOrg();
+	}
+
+	public OrgBean next() {
+
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		remaining = remaining - 1;
+		return nextOrg();
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("An org tree can't be changed through its iterator.");
+	}
+
+	/*
+	 * Drops the levels that have been walked, returns true if an organization is left.
+	 */
+	private boolean hasNextOrg() {
+
+		while (!levels.isEmpty() && !levels.peek().hasNext()) {
+			levels.pop();
+		}
+		return !levels.isEmpty();
+	}
+
+	/*
+	 * Returns the next organization, hasNextOrg() must be true, and goes down to its children 
+	 * if they are within maxDepth.  The organizations of the first level are at firstLevelDepth, 
+	 * 0 for the organization at the top of the tree.
+	 */
+	private OrgBean nextOrg() {
+
+		OrgBean orgBean = levels.peek().next();
+		int childDepth = levels.size() + firstLevelDepth;
+		if (!orgBean.getChildOrgs().isEmpty() && childDepth <= maxDepth) {
+			levels.push(orgBean.getChildOrgs().iterator());
+		}
+		return orgBean;
+	}
+}
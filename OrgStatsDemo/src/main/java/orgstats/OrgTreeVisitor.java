@@ -0,0 +1,30 @@
+package orgstats;
+
+/**
+ * Receives the OrgBeans of a tree walked by OrgTreeWalker.  Each OrgBean is passed to
+ * preVisit() before any of its children and to postVisit() after all of its children.
+ *
+ * @param <E>	the checked exception the visitor can throw, RuntimeException if none
+ */
+public interface OrgTreeVisitor<E extends Exception> {
+
+	/**
+	 * Visits an OrgBean before its children.
+	 *
+	 * @param orgBean		the organization
+	 * @param depth			the level of the organization, 0 for the OrgBeans the walk started with
+	 * @return				true to walk the children of the organization and call postVisit(),
+	 * 						false to skip both
+	 * @throws E			thrown to stop the walk
+	 */
+	boolean preVisit(OrgBean orgBean, int depth) throws E;
+
+	/**
+	 * Visits an OrgBean after all of its children.
+	 *
+	 * @param orgBean		the organization
+	 * @param depth			the level of the organization, 0 for the OrgBeans the walk started with
+	 * @throws E			thrown to stop the walk
+	 */
+	void postVisit(OrgBean orgBean, int depth) throws E;
+}
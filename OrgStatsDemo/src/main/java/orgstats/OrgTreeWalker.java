@@ -0,0 +1,120 @@
+package orgstats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Walks org trees depth first with a stack of child lists instead of recursion, so the depth
+ * of a tree is only limited by the heap.  The OrgBeans are passed to an OrgTreeVisitor in
+ * pre-order and post-order.  The collection and the stores walk their trees with this class,
+ * OrgTreeIterator keeps a similar stack to walk a tree as it is iterated.
+ * <p>
+ * The tree must not be changed below an OrgBean while it is walked, the visitor may change
+ * an OrgBean's own fields.  A walker has no state between walks and can be shared.
+ */
+public class OrgTreeWalker {
+
+	private static final int INITIAL_DEPTH = 16;
+
+	private final boolean sortChildOrgs;
+
+	/**
+	 * Constructs a walker that visits the children of each OrgBean in the order of its child list.
+	 */
+	public OrgTreeWalker() {
+		this(false);
+	}
+
+	/**
+	 * Constructs a walker that can visit the OrgBeans at each level sorted by org id.
+	 *
+	 * @param sortChildOrgs		true to visit the children of each OrgBean by org id, lists that
+	 * 							are not sorted are sorted in a copy so the tree isn't changed
+	 */
+	public OrgTreeWalker(boolean sortChildOrgs) {
+		this.sortChildOrgs = sortChildOrgs;
+	}
+
+	/**
+	 * Walks the tree of an OrgBean, starting with the OrgBean at depth 0.
+	 *
+	 * @param orgBean		the organization at the top of the tree
+	 * @param visitor		the visitor the OrgBeans are passed to
+	 * @throws E			the exception thrown by the visitor, which stops the walk
+	 */
+	public <E extends Exception> void walk(OrgBean orgBean, OrgTreeVisitor<E> visitor) throws E {
+		walk(Collections.singletonList(orgBean), visitor);
+	}
+
+	/**
+	 * Walks the trees of a list of OrgBeans one after the other, each OrgBean in the list at
+	 * depth 0.  Passing OrgCollection.getTopLevelOrgs() walks the whole collection and passing
+	 * the child list of an OrgBean walks its tree without it.
+	 *
+	 * @param orgBeans		the organizations at the top of the trees
+	 * @param visitor		the visitor the OrgBeans are passed to
+	 * @throws E			the exception thrown by the visitor, which stops the walk
+	 */
+	public <E extends Exception> void walk(List<OrgBean> orgBeans, OrgTreeVisitor<E> visitor) throws E {
+
+		// The sibling list of each level, the index of the next sibling and the parent of the level.
+		List<List<OrgBean>> siblingLists = new ArrayList<List<OrgBean>>(INITIAL_DEPTH);
+		int[] nextIndexes = new int[INITIAL_DEPTH];
+		OrgBean[] parentOrgs = new OrgBean[INITIAL_DEPTH];
+		siblingLists.add(getChildOrgs(orgBeans));
+
+		int depth = 0;
+		while (depth >= 0) {
+			List<OrgBean> siblings = siblingLists.get(depth);
+			if (nextIndexes[depth] == siblings.size()) {
+				siblingLists.set(depth, null);
+				depth = depth - 1;
+				if (depth >= 0) {
+					visitor.postVisit(parentOrgs[depth + 1], depth);
+				}
+				continue;
+			}
+			OrgBean orgBean = siblings.get(nextIndexes[depth]);
+			nextIndexes[depth] = nextIndexes[depth] + 1;
+			if (!visitor.preVisit(orgBean, depth)) {
+				continue;
+			}
+			if (orgBean.getChildOrgs().isEmpty()) {
+				visitor.postVisit(orgBean, depth);
+				continue;
+			}
+
+			depth = depth + 1;
+			if (depth == siblingLists.size()) {
+				siblingLists.add(null);
+			}
+			if (depth == nextIndexes.length) {
+				nextIndexes = Arrays.copyOf(nextIndexes, depth * 2);
+				parentOrgs = Arrays.copyOf(parentOrgs, depth * 2);
+			}
+			siblingLists.set(depth, getChildOrgs(orgBean.getChildOrgs()));
+			nextIndexes[depth] = 0;
+			parentOrgs[depth] = orgBean;
+		}
+	}
+
+	/*
+	 * Returns the OrgBeans in the order they are visited, a sorted copy if they have to be sorted.
+	 */
+	private List<OrgBean> getChildOrgs(List<OrgBean> orgBeans) {
+
+		if (!sortChildOrgs) {
+			return orgBeans;
+		}
+		for (int i = 1; i < orgBeans.size(); i++) {
+			if (orgBeans.get(i - 1).compareTo(orgBeans.get(i)) > 0) {
+				List<OrgBean> sortedOrgs = new ArrayList<OrgBean>(orgBeans);
+				Collections.sort(sortedOrgs);
+				return sortedOrgs;
+			}
+		}
+		return orgBeans;
+	}
+}
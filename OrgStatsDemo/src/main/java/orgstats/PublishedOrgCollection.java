@@ -0,0 +1,102 @@
+package orgstats;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import orgstats.load.OrgDataLoader;
+import orgstats.load.OrgDataLoaderException;
+
+/**
+ * Holds the current OrgCollection for threads that query it while the data is reloaded.
+ * <p>
+ * A reload builds a new OrgCollection on the side, seals it and then replaces the current one
+ * with a single reference swap, so readers never block and never see a partly loaded tree.  A
+ * reader that makes several calls and needs them to agree should call get() once and use that
+ * OrgCollection, the getOrg() and getOrgTree() shortcuts each read the current collection.
+ */
+public class PublishedOrgCollection {
+
+	private static final Logger logger = Logger.getLogger(PublishedOrgCollection.class.getName());
+
+	private final AtomicReference<OrgCollection> current;
+	private final Object reloadLock = new Object();
+
+	/**
+	 * Constructs a PublishedOrgCollection that starts with the OrgCollection given.
+	 *
+	 * @param orgCollection		the OrgCollection to publish, it is sealed
+	 */
+	public PublishedOrgCollection(OrgCollection orgCollection) {
+
+		orgCollection.seal();
+		current = new AtomicReference<OrgCollection>(orgCollection);
+	}
+
+	/**
+	 * Constructs a PublishedOrgCollection that starts with the data from the loader.
+	 *
+	 * @param orgDataLoader		the OrgDataLoader that loads the org and user data
+	 */
+	public PublishedOrgCollection(OrgDataLoader orgDataLoader) throws OrgDataLoaderException {
+		this(orgDataLoader.loadData());
+	}
+
+	/**
+	 * Returns the current OrgCollection, which is sealed.
+	 *
+	 * @return OrgCollection		the OrgCollection published last
+	 */
+	public OrgCollection get() {
+		return current.get();
+	}
+
+	/**
+	 * Loads a new OrgCollection and publishes it once it is loaded and sealed.  Readers keep
+	 * using the current OrgCollection until then.  Reloads are done one at a time and the
+	 * current OrgCollection is kept if the loader fails.
+	 *
+	 * @param orgDataLoader		the OrgDataLoader that loads the org and user data
+	 * @return OrgCollection	the OrgCollection that was published
+	 */
+	public OrgCollection reload(OrgDataLoader orgDataLoader) throws OrgDataLoaderException {
+
+		synchronized (reloadLock) {
+			long start = System.currentTimeMillis();
+			OrgCollection orgCollection = orgDataLoader.loadData();
+			publish(orgCollection);
+			logger.log(Level.INFO, "Published reloaded org data in " + (System.currentTimeMillis() - start) + "ms");
+			return orgCollection;
+		}
+	}
+
+	/**
+	 * Seals the OrgCollection and makes it the current one.
+	 *
+	 * @param orgCollection		the OrgCollection to publish
+	 */
+	public void publish(OrgCollection orgCollection) {
+
+		orgCollection.seal();
+		current.set(orgCollection);
+	}
+
+	/**
+	 * Returns the OrgBean for the orgId from the current OrgCollection.
+	 *
+	 * @see OrgCollection#getOrg(int)
+	 */
+	public OrgBean getOrg(int orgId) {
+		return current.get().getOrg(orgId);
+	}
+
+	/**
+	 * Returns the OrgBeans in the tree of the orgId from the current OrgCollection.
+	 *
+	 * @see OrgCollection#getOrgTree(int, boolean)
+	 */
+	public List<OrgBean> getOrgTree(int orgId, boolean inclusive) {
+		return current.get().getOrgTree(orgId, inclusive);
+	}
+}
@@ -0,0 +1,153 @@
+package orgstats;
+
+import java.util.Comparator;
+
+/**
+ * The usage that orgs and users are ranked by in the top and threshold queries of
+ * OrgCollection, see OrgCollection.getTopOrgs().
+ */
+public enum UsageMetric {
+
+	/**
+	 * The number of users, not defined for a single user.
+	 */
+	USERS {
+		long getTotal(OrgBean orgBean) {
+			return orgBean.getTotalNumUsers();
+		}
+
+		long getValue(UserColumns users, int index) {
+			throw new IllegalArgumentException("Users can't be ranked by " + this);
+		}
+
+		long getValue(UserBean userBean) {
+			throw new IllegalArgumentException("Users can't be ranked by " + this);
+		}
+	},
+
+	/**
+	 * The number of files.
+	 */
+	FILES {
+		long getTotal(OrgBean orgBean) {
+			return orgBean.getTotalNumFiles();
+		}
+
+		long getValue(UserColumns users, int index) {
+			return users.getNumFiles(index);
+		}
+
+		long getValue(UserBean userBean) {
+			return userBean.getNumFiles();
+		}
+	},
+
+	/**
+	 * The number of bytes.
+	 */
+	BYTES {
+		long getTotal(OrgBean orgBean) {
+			return orgBean.getTotalNumBytes();
+		}
+
+		long getValue(UserColumns users, int index) {
+			return users.getNumBytes(index);
+		}
+
+		long getValue(UserBean userBean) {
+			return userBean.getNumBytes();
+		}
+	};
+
+	/*
+	 * Orders OrgBeans by their total, largest first, and by orgId for equal totals.
+	 */
+	private final Comparator<OrgBean> orgComparator = new Comparator<OrgBean>() {
+		public int compare(OrgBean orgBean1, OrgBean orgBean2) {
+			return compareRanks(getTotal(orgBean1), orgBean1.getOrgId(), getTotal(orgBean2), orgBean2.getOrgId());
+		}
+	};
+
+	/*
+	 * Orders UserBeans by their value, largest first, and by userId for equal values.
+	 */
+	private final Comparator<UserBean> userComparator = new Comparator<UserBean>() {
+		public int compare(UserBean userBean1, UserBean userBean2) {
+			return compareRanks(getValue(userBean1), userBean1.getUserId(), getValue(userBean2), userBean2.getUserId());
+		}
+	};
+
+	/**
+	 * Returns the total of the metric for an OrgBean and every OrgBean below it.
+	 *
+	 * @param orgBean		the OrgBean
+	 * @return				the cached total of the OrgBean
+	 */
+	abstract long getTotal(OrgBean orgBean);
+
+	/**
+	 * Returns the value of the metric for one user.
+	 *
+	 * @param users			the user columns of an OrgBean
+	 * @param index			the index of the user in the columns
+	 * @return				the value for the user
+	 */
+	abstract long getValue(UserColumns users, int index);
+
+	/**
+	 * Returns the value of the metric for a user.
+	 *
+	 * @param userBean		the user
+	 * @return				the value for the user
+	 */
+	abstract long getValue(UserBean userBean);
+
+	/**
+	 * Returns the Comparator that orders OrgBeans by their total, largest first, and by orgId
+	 * for equal totals.
+	 *
+	 * @return				the Comparator for the metric
+	 */
+	Comparator<OrgBean> orgComparator() {
+		return orgComparator;
+	}
+
+	/**
+	 * Returns the Comparator that orders UserBeans by their value, largest first, and by userId
+	 * for equal values.
+	 *
+	 * @return				the Comparator for the metric
+	 */
+	Comparator<UserBean> userComparator() {
+		return userComparator;
+	}
+
+	/**
+	 * Compares two ranked values, the larger value first and the smaller id for equal values.
+	 *
+	 * @return				a negative number if the first value ranks higher
+	 */
+	static int compareRanks(long value1, int id1, long value2, int id2) {
+
+		if (value1 != value2) {
+			return value1 > value2 ? -1 : 1;
+		}
+		return id1 < id2 ? -1 : (id1 == id2 ? 0 : 1);
+	}
+
+	/**
+	 * Returns the metric for a name in any case, e.g. "bytes".
+	 *
+	 * @param name			the name of the metric
+	 * @return				the metric or null if there is none with the name
+	 */
+	public static UsageMetric forName(String name) {
+
+		for (UsageMetric metric : values()) {
+			if (metric.name().equalsIgnoreCase(name)) {
+				return metric;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,217 @@
+package orgstats;
+
+import java.util.Arrays;
+
+/**
+ * The orgs of a sealed collection ranked by the total of one UsageMetric, for the top and
+ * threshold queries of OrgCollection.  The orgs are identified by their pre-order index, so the
+ * orgs of a tree are the indexes in [start, end), and the indexes are kept sorted by total,
+ * largest first and by orgId for equal totals.
+ * <p>
+ * A query over a large tree scans the sorted indexes and skips the orgs outside the tree, which
+ * stops after the first matches.  A query over a small tree, where most of the matches of the
+ * sorted indexes would be skipped, reads the totals of the tree instead and keeps the largest
+ * in a bounded heap.  A ranking is read-only once constructed.
+ */
+final class UsageRanking {
+
+	private static final int[] NO_INDEXES = new int[0];
+
+	private final long[] totals;
+	private final int[] orgIds;
+	private final int[] sortedIndexes;
+
+	/**
+	 * Constructs the ranking of the orgs and sorts their indexes.  The arrays are kept and
+	 * must not be changed.
+	 *
+	 * @param totals		the total of each org in pre-order
+	 * @param orgIds		the orgId of each org in pre-order
+	 */
+	UsageRanking(long[] totals, int[] orgIds) {
+
+		this.totals = totals;
+		this.orgIds = orgIds;
+		sortedIndexes = new int[totals.length];
+		for (int index = 0; index < sortedIndexes.length; index++) {
+			sortedIndexes[index] = index;
+		}
+		sort(sortedIndexes, sortedIndexes.length);
+	}
+
+	/**
+	 * Returns the indexes of the count orgs in [start, end) with the largest totals.
+	 *
+	 * @param start			the first index of the tree
+	 * @param end			the index after the tree
+	 * @param count			the maximum number of indexes to return
+	 * @return				the indexes, largest total first
+	 */
+	int[] top(int start, int end, int count) {
+
+		int size = Math.max(0, end - start);
+		count = Math.min(count, size);
+		if (count == 0) {
+			return NO_INDEXES;
+		}
+
+		// About count * (orgs / size) sorted indexes are scanned for count matches.
+		if ((long) count * sortedIndexes.length <= (long) size * size) {
+			int[] top = new int[count];
+			int found = 0;
+			for (int i = 0; found < count; i++) {
+				int index = sortedIndexes[i];
+				if (index >= start && index < end) {
+					top[found++] = index;
+				}
+			}
+			return top;
+		}
+
+		// The lowest ranked index of the heap is at its root.
+		int[] heap = new int[count];
+		int heapSize = 0;
+		for (int index = start; index < end; index++) {
+			if (heapSize < count) {
+				heap[heapSize] = index;
+				siftUp(heap, heapSize);
+				heapSize = heapSize + 1;
+			} else if (compare(index, heap[0]) < 0) {
+				heap[0] = index;
+				siftDown(heap, heapSize);
+			}
+		}
+		sort(heap, heapSize);
+		return heap;
+	}
+
+	/**
+	 * Returns the indexes of the orgs in [start, end) with a total over the threshold.
+	 *
+	 * @param start			the first index of the tree
+	 * @param end			the index after the tree
+	 * @param threshold		the total the orgs must exceed
+	 * @return				the indexes, largest total first
+	 */
+	int[] over(int start, int end, long threshold) {
+
+		int size = Math.max(0, end - start);
+		int overCount = countOver(threshold);
+		int[] over = new int[Math.min(size, overCount)];
+		int found = 0;
+		if (overCount <= size) {
+			for (int i = 0; i < overCount; i++) {
+				int index = sortedIndexes[i];
+				if (index >= start && index < end) {
+					over[found++] = index;
+				}
+			}
+		} else {
+			for (int index = start; index < end; index++) {
+				if (totals[index] > threshold) {
+					over[found++] = index;
+				}
+			}
+			sort(over, found);
+		}
+		return found == over.length ? over : Arrays.copyOf(over, found);
+	}
+
+	/*
+	 * Returns the number of orgs with a total over the threshold, the length of the prefix of
+	 * the sorted indexes with a larger total.
+	 */
+	private int countOver(long threshold) {
+
+		int low = 0;
+		int high = sortedIndexes.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (totals[sortedIndexes[middle]] > threshold) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/*
+	 * Compares two indexes, negative if the first ranks higher.
+	 */
+	private int compare(int index1, int index2) {
+		return UsageMetric.compareRanks(totals[index1], orgIds[index1], totals[index2], orgIds[index2]);
+	}
+
+	/*
+	 * Moves the index at position up the heap while it ranks lower than its parent.
+	 */
+	private void siftUp(int[] heap, int position) {
+
+		int index = heap[position];
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			if (compare(index, heap[parent]) <= 0) {
+				break;
+			}
+			heap[position] = heap[parent];
+			position = parent;
+		}
+		heap[position] = index;
+	}
+
+	/*
+	 * Moves the index at the root down the heap while a child ranks lower.
+	 */
+	private void siftDown(int[] heap, int heapSize) {
+
+		int index = heap[0];
+		int position = 0;
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && compare(heap[child + 1], heap[child]) > 0) {
+				child = child + 1;
+			}
+			if (compare(index, heap[child]) >= 0) {
+				break;
+			}
+			heap[position] = heap[child];
+			position = child;
+		}
+		heap[position] = index;
+	}
+
+	/*
+	 * Sorts the first length indexes by rank with a bottom-up merge sort, so the indexes aren't
+	 * boxed for a Comparator.
+	 */
+	private void sort(int[] indexes, int length) {
+
+		int[] source = indexes;
+		int[] target = new int[length];
+		for (int width = 1; width < length; width = 2 * width) {
+			for (int left = 0; left < length; left = left + 2 * width) {
+				int middle = Math.min(left + width, length);
+				int right = Math.min(left + 2 * width, length);
+				int i = left;
+				int j = middle;
+				for (int k = left; k < right; k++) {
+					if (i < middle && (j >= right || compare(source[i], source[j]) <= 0)) {
+						target[k] = source[i++];
+					} else {
+						target[k] = source[j++];
+					}
+				}
+			}
+			int[] swap = source;
+			source = target;
+			target = swap;
+		}
+		if (source != indexes) {
+			System.arraycopy(source, 0, indexes, 0, length);
+		}
+	}
+}
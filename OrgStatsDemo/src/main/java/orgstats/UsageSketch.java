@@ -0,0 +1,246 @@
+package orgstats;
+
+import java.util.Arrays;
+
+/**
+ * Distribution of a per-user value, e.g. the bytes of each user, kept as counts in buckets
+ * whose width grows with the value: one bucket per value below 16, then 8 buckets per power of
+ * two.  A value is reported as the middle of its bucket, within about 6% of the value, and the
+ * sketch never has more than 488 buckets however many values are added.  Sketches of disjoint
+ * sets of users are merged by adding their counts, so the distribution of an org tree is the
+ * merge of the distributions of its orgs.
+ * <p>
+ * Only the buckets between the smallest and largest value are allocated.  A sealed sketch
+ * can't be changed, see OrgBean.getTotalUsageSketch().
+ */
+public class UsageSketch {
+
+	private static final int EXACT_VALUES = 16;
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int[] NO_COUNTS = new int[0];
+
+	/**
+	 * The sketch without values.
+	 */
+	static final UsageSketch EMPTY = new UsageSketch();
+	static {
+		EMPTY.seal();
+	}
+
+	// counts[i] is the count of bucket firstBucket + i.
+	private int firstBucket;
+	private int[] counts = NO_COUNTS;
+	private long count;
+	private boolean sealed;
+
+	/**
+	 * Constructs a sketch without values.
+	 */
+	public UsageSketch() {
+	}
+
+	/**
+	 * Constructs a copy of a sketch that can be changed.
+	 *
+	 * @param other		the sketch to copy
+	 */
+	public UsageSketch(UsageSketch other) {
+
+		firstBucket = other.firstBucket;
+		counts = other.counts.length == 0 ? NO_COUNTS : other.counts.clone();
+		count = other.count;
+	}
+
+	/**
+	 * Adds the value of one user, negative values are added as 0.
+	 *
+	 * @param value		the value of the user
+	 */
+	public void add(long value) {
+
+		checkNotSealed();
+		int bucket = bucketOf(value);
+		ensureBuckets(bucket, bucket);
+		counts[bucket - firstBucket]++;
+		count = count + 1;
+	}
+
+	/**
+	 * Removes the value of one user that was added.  A value that wasn't added is ignored.
+	 *
+	 * @param value		the value of the user
+	 */
+	public void remove(long value) {
+
+		checkNotSealed();
+		int index = bucketOf(value) - firstBucket;
+		if (index >= 0 && index < counts.length && counts[index] > 0) {
+			counts[index]--;
+			count = count - 1;
+		}
+	}
+
+	/**
+	 * Adds the values of another sketch, for a disjoint set of users.
+	 *
+	 * @param other		the sketch to add
+	 */
+	public void merge(UsageSketch other) {
+
+		checkNotSealed();
+		if (other.count == 0) {
+			return;
+		}
+		ensureBuckets(other.firstBucket, other.firstBucket + other.counts.length - 1);
+		int offset = other.firstBucket - firstBucket;
+		for (int i = 0; i < other.counts.length; i++) {
+			counts[offset + i] += other.counts[i];
+		}
+		count = count + other.count;
+	}
+
+	/**
+	 * Returns the number of values in the sketch.
+	 *
+	 * @return			the number of users
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the value below which the fraction of the values falls, e.g. 0.5 for the median
+	 * and 0.95 for the 95th percentile, as the middle of the bucket of the value.
+	 *
+	 * @param fraction	the fraction of the values, 0 for the smallest and 1 for the largest
+	 * @return			the value, 0 for a sketch without values
+	 */
+	public long getQuantile(double fraction) {
+
+		if (fraction < 0 || fraction > 1) {
+			throw new IllegalArgumentException("Invalid quantile " + fraction);
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(fraction * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen = seen + counts[i];
+			if (seen >= rank) {
+				return middleOf(firstBucket + i);
+			}
+		}
+		return middleOf(firstBucket + counts.length - 1);
+	}
+
+	/**
+	 * Returns the number of buckets allocated.
+	 *
+	 * @return			the number of buckets between the smallest and largest value
+	 */
+	public int getBucketCount() {
+		return counts.length;
+	}
+
+	/**
+	 * Returns true once the sketch can't be changed, see seal().
+	 *
+	 * @return			true if the sketch is read-only
+	 */
+	public boolean isSealed() {
+		return sealed;
+	}
+
+	/**
+	 * Drops the empty buckets at both ends and makes the sketch read-only, so it can be read by
+	 * several threads.
+	 */
+	void seal() {
+
+		int start = 0;
+		int end = counts.length;
+		while (start < end && counts[start] == 0) {
+			start++;
+		}
+		while (end > start && counts[end - 1] == 0) {
+			end--;
+		}
+		if (start > 0 || end < counts.length) {
+			counts = start == end ? NO_COUNTS : Arrays.copyOfRange(counts, start, end);
+			firstBucket = firstBucket + start;
+		}
+		sealed = true;
+	}
+
+	@Override
+	public String toString() {
+		return "UsageSketch [count=" + count + ", p50=" + getQuantile(0.5) + ", p95=" + getQuantile(0.95)
+				+ ", max=" + getQuantile(1) + "]";
+	}
+
+	/*
+	 * Returns the bucket of a value: the value below EXACT_VALUES, then SUB_BUCKETS buckets for
+	 * each power of two from the bits after the highest bit.
+	 */
+	static int bucketOf(long value) {
+
+		if (value < EXACT_VALUES) {
+			return value < 0 ? 0 : (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - 2) * SUB_BUCKETS + subBucket;
+	}
+
+	/*
+	 * Returns the smallest value of a bucket.
+	 */
+	static long lowestValueOf(int bucket) {
+
+		if (bucket < EXACT_VALUES) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + 2;
+		return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	/*
+	 * Returns the middle value of a bucket.
+	 */
+	private static long middleOf(int bucket) {
+
+		long lowest = lowestValueOf(bucket);
+		long highest = bucket == bucketOf(Long.MAX_VALUE) ? Long.MAX_VALUE : lowestValueOf(bucket + 1) - 1;
+		return lowest + (highest - lowest) / 2;
+	}
+
+	/*
+	 * Grows the counts to cover the buckets from first to last.
+	 */
+	private void ensureBuckets(int first, int last) {
+
+		if (counts.length == 0) {
+			firstBucket = first;
+			counts = new int[last - first + 1];
+			return;
+		}
+		int lastBucket = firstBucket + counts.length - 1;
+		if (first >= firstBucket && last <= lastBucket) {
+			return;
+		}
+		int newFirst = Math.min(first, firstBucket);
+		int newLast = Math.max(last, lastBucket);
+		int[] newCounts = new int[newLast - newFirst + 1];
+		System.arraycopy(counts, 0, newCounts, firstBucket - newFirst, counts.length);
+		counts = newCounts;
+		firstBucket = newFirst;
+	}
+
+	private void checkNotSealed() {
+		if (sealed) {
+			throw new IllegalStateException("UsageSketch is sealed and can't be changed.");
+		}
+	}
+}
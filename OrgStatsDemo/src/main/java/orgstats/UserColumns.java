@@ -0,0 +1,198 @@
+package orgstats;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stores the users of an organization in growable primitive arrays, one array per
+ * user field, instead of one UserBean object per user.
+ * <p>
+ * The user at an index is read with getUserId(), getNumFiles() and getNumBytes(),
+ * which doesn't create any objects.  asList() provides a List of UserBeans for callers
+ * that need beans, where each bean is created when it is read.
+ * <p>
+ * indexOf() builds an index of the user ids the first time a user is looked up to change it,
+ * so only the organizations that user deltas change pay for it.  The index is dropped when
+ * the organization is sealed, so sealed organizations are never written by their readers.
+ */
+public class UserColumns {
+
+	private static final int[] EMPTY_INTS = new int[0];
+	private static final long[] EMPTY_LONGS = new long[0];
+	private static final int MIN_CAPACITY = 4;
+
+	private int[] userIds = EMPTY_INTS;
+	private int[] numFiles = EMPTY_INTS;
+	private long[] numBytes = EMPTY_LONGS;
+	private int size;
+
+	// Built by indexOf() while the organization can be changed, null once it is sealed
+	private IntIntHashMap positions;
+
+	/**
+	 * Appends a user to the columns.  Users are added through OrgBean.addUser() so the
+	 * organization usage stays current.
+	 *
+	 * @param userId		the unique identifier for the user
+	 * @param fileCount		the total number of files for the user
+	 * @param byteCount		the total number of bytes for the user
+	 */
+	void add(int userId, int fileCount, long byteCount) {
+
+		if (size == userIds.length) {
+			grow();
+		}
+		userIds[size] = userId;
+		numFiles[size] = fileCount;
+		numBytes[size] = byteCount;
+		if (positions != null) {
+			positions.put(userId, size);
+		}
+		size = size + 1;
+	}
+	
+	/**
+	 * Removes the user at the index by moving the last user into its place, so the order of
+	 * the users changes.  Users are removed through OrgBean.removeUser().
+	 *
+	 * @param index			the index of the user to remove
+	 */
+	void remove(int index) {
+		
+		checkIndex(index);
+		int last = size - 1;
+		if (positions != null) {
+			positions.remove(userIds[index]);
+			if (index != last) {
+				positions.put(userIds[last], index);
+			}
+		}
+		userIds[index] = userIds[last];
+		numFiles[index] = numFiles[last];
+		numBytes[index] = numBytes[last];
+		size = last;
+	}
+	
+	/**
+	 * Replaces the file and byte counts of the user at the index.  Users are changed 
+	 * through OrgBean.updateUser().
+	 *
+	 * @param index			the index of the user to change
+	 * @param fileCount		the new number of files for the user
+	 * @param byteCount		the new number of bytes for the user
+	 */
+	void set(int index, int fileCount, long byteCount) {
+		
+		checkIndex(index);
+		numFiles[index] = fileCount;
+		numBytes[index] = byteCount;
+	}
+	
+	/**
+	 * Returns the index of the user with the user id.  The first call indexes all of the users,
+	 * later calls don't depend on the number of users.  Only called through an OrgBean that
+	 * isn't sealed, e.g. by OrgBean.removeUser(), so the index is never built for the columns 
+	 * of a sealed organization.  Empty columns, e.g. the shared columns of the organizations of
+	 * a CompactOrgCollection, aren't indexed.
+	 *
+	 * @param userId		the unique identifier for the user
+	 * @return				the index of the user or -1 if the user isn't in the columns
+	 */
+	int indexOf(int userId) {
+		
+		if (size == 0) {
+			return -1;
+		}
+		if (positions == null) {
+			IntIntHashMap userPositions = new IntIntHashMap(size, -1);
+			for (int i = 0; i < size; i++) {
+				userPositions.put(userIds[i], i);
+			}
+			positions = userPositions;
+		}
+		return positions.get(userId);
+	}
+
+	/**
+	 * Drops the index of the user ids built by indexOf(), when the organization is sealed.
+	 */
+	void dropPositions() {
+		positions = null;
+	}
+
+	public int getUserId(int index) {
+		checkIndex(index);
+		return userIds[index];
+	}
+
+	public int getNumFiles(int index) {
+		checkIndex(index);
+		return numFiles[index];
+	}
+
+	public long getNumBytes(int index) {
+		checkIndex(index);
+		return numBytes[index];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Shrinks the arrays to the number of users, e.g. after loading is complete.
+	 */
+	public void trimToSize() {
+
+		if (size < userIds.length) {
+			userIds = size == 0 ? EMPTY_INTS : Arrays.copyOf(userIds, size);
+			numFiles = size == 0 ? EMPTY_INTS : Arrays.copyOf(numFiles, size);
+			numBytes = size == 0 ? EMPTY_LONGS : Arrays.copyOf(numBytes, size);
+		}
+	}
+
+	/**
+	 * Returns a List view of the users as UserBeans for the organization.  The UserBeans
+	 * are created when they are read, so changes to them are not stored in the columns.
+	 * Adding a UserBean to the List calls addUser() on the organization.
+	 *
+	 * @param orgBean		the organization the users belong to
+	 * @return				a List of UserBeans backed by the columns
+	 */
+	List<UserBean> asList(final OrgBean orgBean) {
+
+		return new AbstractList<UserBean>() {
+
+			@Override
+			public UserBean get(int index) {
+				return new UserBean(getUserId(index), orgBean.getOrgId(), getNumFiles(index), getNumBytes(index));
+			}
+
+			@Override
+			public boolean add(UserBean userBean) {
+				orgBean.addUser(userBean);
+				return true;
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	private void grow() {
+
+		int capacity = Math.max(MIN_CAPACITY, userIds.length + (userIds.length >> 1));
+		userIds = Arrays.copyOf(userIds, capacity);
+		numFiles = Arrays.copyOf(numFiles, capacity);
+		numBytes = Arrays.copyOf(numBytes, capacity);
+	}
+
+	private void checkIndex(int index) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package orgstats;
+
+/**
+ * Represents one change to a user from a delta feed, applied to a loaded OrgCollection with
+ * OrgCollection.applyDelta() instead of reloading the user file.
+ * <p>
+ * Every change names the organization the user is in, so the user is found in the
+ * organization without an index of all users.  A moved user is in orgId and moves to
+ * newOrgId with the same file and byte counts.
+ */
+public class UserDelta {
+
+	/**
+	 * The kinds of changes and the code for each in a delta file.
+	 */
+	public enum Type {
+		ADDED('A'), REMOVED('R'), UPDATED('U'), MOVED('M');
+
+		private final char code;
+
+		private Type(char code) {
+			this.code = code;
+		}
+
+		public char getCode() {
+			return code;
+		}
+
+		/**
+		 * Returns the Type for the code or null if the code isn't a Type.
+		 */
+		public static Type forCode(char code) {
+			for (Type type : values()) {
+				if (type.code == code) {
+					return type;
+				}
+			}
+			return null;
+		}
+	}
+
+	private final Type type;
+	private final int userId;
+	private final int orgId;
+	private final int newOrgId;
+	private final int numFiles;
+	private final long numBytes;
+
+	private UserDelta(Type type, int userId, int orgId, int newOrgId, int numFiles, long numBytes) {
+		this.type = type;
+		this.userId = userId;
+		this.orgId = orgId;
+		this.newOrgId = newOrgId;
+		this.numFiles = numFiles;
+		this.numBytes = numBytes;
+	}
+
+	/**
+	 * A user added to the organization.
+	 *
+	 * @param userId		the unique identifier for the user
+	 * @param orgId			the organization the user is added to
+	 * @param numFiles		the total number of files for the user
+	 * @param numBytes		the total number of bytes for the user
+	 */
+	public static UserDelta added(int userId, int orgId, int numFiles, long numBytes) {
+		return new UserDelta(Type.ADDED, userId, orgId, 0, numFiles, numBytes);
+	}
+
+	/**
+	 * A user removed from the organization.
+	 *
+	 * @param userId		the unique identifier for the user
+	 * @param orgId			the organization the user is in
+	 */
+	public static UserDelta removed(int userId, int orgId) {
+		return new UserDelta(Type.REMOVED, userId, orgId, 0, 0, 0l);
+	}
+
+	/**
+	 * A user whose file and byte counts changed to the new totals.
+	 *
+	 * @param userId		the unique identifier for the user
+	 * @param orgId			the organization the user is in
+	 * @param numFiles		the new total number of files for the user
+	 * @param numBytes		the new total number of bytes for the user
+	 */
+	public static UserDelta updated(int userId, int orgId, int numFiles, long numBytes) {
+		return new UserDelta(Type.UPDATED, userId, orgId, 0, numFiles, numBytes);
+	}
+
+	/**
+	 * A user moved to another organization.
+	 *
+	 * @param userId		the unique identifier for the user
+	 * @param orgId			the organization the user is in
+	 * @param newOrgId		the organization the user moves to
+	 */
+	public static UserDelta moved(int userId, int orgId, int newOrgId) {
+		return new UserDelta(Type.MOVED, userId, orgId, newOrgId, 0, 0l);
+	}
+
+	public Type getType() {
+		return type;
+	}
+	public int getUserId() {
+		return userId;
+	}
+	public int getOrgId() {
+		return orgId;
+	}
+	public int getNewOrgId() {
+		return newOrgId;
+	}
+	public int getNumFiles() {
+		return numFiles;
+	}
+	public long getNumBytes() {
+		return numBytes;
+	}
+
+	@Override
+	public String toString() {
+		return "UserDelta [type=" + type + ", userId=" + userId + ", orgId=" + orgId
+				+ ", newOrgId=" + newOrgId + ", numFiles=" + numFiles + ", numBytes=" + numBytes + "]";
+	}
+}
@@ -0,0 +1,195 @@
+package orgstats.load;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the usage totals of a user data file on several threads.  The file is split
+ * into byte ranges that start at the beginning of a line, each range is parsed into
+ * its own OrgUsageTotals and the totals are added together at the end.  The distributions
+ * of the file and byte counts per user are kept with the totals unless they aren't needed.
+ */
+class ChunkedUserFileReader {
+
+	// More chunks than threads so a thread that finishes early can take another chunk.
+	private static final int CHUNKS_PER_THREAD = 4;
+	private static final long DEFAULT_MIN_CHUNK_SIZE = 1024 * 1024;
+	private static final int ALIGN_BUFFER_SIZE = 256;
+
+	private final int threadCount;
+	private final long minChunkSize;
+	private final boolean keepSketches;
+
+	/**
+	 * Constructs a reader that uses threadCount threads.
+	 * 
+	 * @param threadCount		the number of threads parsing the file
+	 */
+	ChunkedUserFileReader(int threadCount) {
+		this(threadCount, DEFAULT_MIN_CHUNK_SIZE, true);
+	}
+
+	/**
+	 * Constructs a reader that uses threadCount threads and keeps the distributions per user 
+	 * with the totals or not.
+	 * 
+	 * @param threadCount		the number of threads parsing the file
+	 * @param keepSketches		true to keep the distributions, see OrgUsageTotals
+	 */
+	ChunkedUserFileReader(int threadCount, boolean keepSketches) {
+		this(threadCount, DEFAULT_MIN_CHUNK_SIZE, keepSketches);
+	}
+
+	/**
+	 * Constructs a reader that uses threadCount threads and chunks of at least minChunkSize bytes.
+	 * 
+	 * @param threadCount		the number of threads parsing the file
+	 * @param minChunkSize		the minimum number of bytes in a chunk
+	 */
+	ChunkedUserFileReader(int threadCount, long minChunkSize) {
+		this(threadCount, minChunkSize, true);
+	}
+
+	/**
+	 * Constructs a reader that uses threadCount threads and chunks of at least minChunkSize bytes
+	 * and keeps the distributions per user with the totals or not.
+	 * 
+	 * @param threadCount		the number of threads parsing the file
+	 * @param minChunkSize		the minimum number of bytes in a chunk
+	 * @param keepSketches		true to keep the distributions, see OrgUsageTotals
+	 */
+	ChunkedUserFileReader(int threadCount, long minChunkSize, boolean keepSketches) {
+		this.threadCount = threadCount;
+		this.minChunkSize = minChunkSize;
+		this.keepSketches = keepSketches;
+	}
+
+	/**
+	 * Returns the usage totals per orgId for the user data file.  The totals are the same
+	 * as parsing the file on one thread.
+	 * 
+	 * @param channel			the FileChannel of the user data file
+	 * @return					the user count, file count and byte count per orgId
+	 * @throws IOException		if any unexpected I/O error occurs
+	 * @throws OrgDataLoaderException	thrown for the first invalid line in the file
+	 */
+	OrgUsageTotals readTotals(final FileChannel channel) throws IOException, OrgDataLoaderException {
+
+		long[] boundaries = findChunkBoundaries(channel);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, boundaries.length - 1));
+		try {
+			List<Future<OrgUsageTotals>> chunkTotals = new ArrayList<Future<OrgUsageTotals>>();
+			for (int chunk = 0; chunk < boundaries.length - 1; chunk++) {
+				final long start = boundaries[chunk];
+				final long end = boundaries[chunk + 1];
+				chunkTotals.add(executor.submit(new Callable<OrgUsageTotals>() {
+					public OrgUsageTotals call() throws IOException, OrgDataLoaderException {
+						return readChunk(channel, start, end);
+					}
+				}));
+			}
+
+			// Chunks are merged in file order, so an invalid line is reported the same way as on one thread.
+			OrgUsageTotals totals = new OrgUsageTotals(keepSketches);
+			for (Future<OrgUsageTotals> chunkTotal : chunkTotals) {
+				totals.addAll(getChunkTotals(chunkTotal));
+			}
+			return totals;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/*
+	 * Parses channel[start, end) into new totals.
+	 */
+	private OrgUsageTotals readChunk(FileChannel channel, long start, long end)
+			throws IOException, OrgDataLoaderException {
+
+		final OrgUsageTotals totals = new OrgUsageTotals(keepSketches);
+		new DataFileParser().parseUsers(channel, start, end, new UserRecordHandler() {
+			public void handleUser(int userId, int orgId, int numFiles, long numBytes) {
+				totals.addUser(orgId, numFiles, numBytes);
+			}
+		});
+		return totals;
+	}
+
+	private static OrgUsageTotals getChunkTotals(Future<OrgUsageTotals> chunkTotal)
+			throws IOException, OrgDataLoaderException {
+
+		try {
+			return chunkTotal.get();
+		} catch (InterruptedException interruptedEx) {
+			Thread.currentThread().interrupt();
+			throw new OrgDataLoaderException("Interrupted reading user data file", interruptedEx);
+		} catch (ExecutionException executionEx) {
+			Throwable cause = executionEx.getCause();
+			if (cause instanceof OrgDataLoaderException) {
+				throw (OrgDataLoaderException) cause;
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new OrgDataLoaderException("ERROR processing user data file", cause);
+		}
+	}
+
+	/*
+	 * Returns the chunk start positions followed by the file size.  Each start position 
+	 * is moved forward to the start of the next line.
+	 */
+	long[] findChunkBoundaries(FileChannel channel) throws IOException {
+
+		long size = channel.size();
+		long chunkSize = Math.max(minChunkSize, size / ((long) threadCount * CHUNKS_PER_THREAD) + 1);
+		List<Long> boundaries = new ArrayList<Long>();
+		boundaries.add(0L);
+		long position = chunkSize;
+		while (position < size) {
+			position = findLineStart(channel, position);
+			if (position < size) {
+				boundaries.add(position);
+			}
+			position = position + chunkSize;
+		}
+		boundaries.add(size);
+
+		long[] boundaryArray = new long[boundaries.size()];
+		for (int i = 0; i < boundaryArray.length; i++) {
+			boundaryArray[i] = boundaries.get(i);
+		}
+		return boundaryArray;
+	}
+
+	/*
+	 * Returns the position after the first newline at or after position - 1, so a position 
+	 * that is already at the start of a line is returned unchanged.
+	 */
+	private static long findLineStart(FileChannel channel, long position) throws IOException {
+
+		ByteBuffer buffer = ByteBuffer.allocate(ALIGN_BUFFER_SIZE);
+		long readPosition = position - 1;
+		while (true) {
+			buffer.clear();
+			int read = channel.read(buffer, readPosition);
+			if (read <= 0) {
+				return channel.size();
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return readPosition + i + 1;
+				}
+			}
+			readPosition = readPosition + read;
+		}
+	}
+}
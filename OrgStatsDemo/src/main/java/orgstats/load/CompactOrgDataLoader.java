@@ -0,0 +1,134 @@
+package orgstats.load;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import orgstats.CompactOrgCollection;
+import orgstats.DataCompression;
+import orgstats.OrgCollection;
+import orgstats.metrics.OrgStatsMetrics;
+
+/**
+ * Loader that reads an org data file and the usage totals of a user data file into a 
+ * CompactOrgCollection, for millions of organizations.  The orgs are parsed straight into the
+ * columns of a CompactOrgCollection.Builder without creating OrgBeans and the users are added
+ * up like UserLoadMode.AGGREGATES_ONLY, on several threads when threadCount is more than 1.
+ */
+public class CompactOrgDataLoader implements OrgDataLoader {
+
+	private static final Logger logger = Logger.getLogger(CompactOrgDataLoader.class.getName());
+
+	private final File orgFile;
+	private final File userFile;
+	private final int threadCount;
+
+	/**
+	 * Constructs a loader for the org data File and user data File.
+	 * 
+	 * @param orgFile
+	 * @param userFile
+	 * @param threadCount		the number of threads that read the user data File
+	 * 
+	 * @throws OrgDataLoaderException   Thrown if either the orgFile or userFile do not exist.
+	 */
+	public CompactOrgDataLoader(File orgFile, File userFile, int threadCount) throws OrgDataLoaderException {
+
+		// Checks the data files.
+		new OrgUserDataFileLoader(orgFile, userFile);
+		this.orgFile = orgFile;
+		this.userFile = userFile;
+		this.threadCount = Math.max(1, threadCount);
+	}
+
+	/**
+	 * Populates the organizations and their usage totals into a CompactOrgCollection.  The 
+	 * throughput of the load is recorded in OrgStatsMetrics.LOADER.
+	 * 
+	 * @return orgCollection		the CompactOrgCollection containing the organizations
+	 */
+	@Override
+	public OrgCollection loadData() throws OrgDataLoaderException {
+
+		long startNanos = OrgStatsMetrics.LOADER.startLoad();
+		try {
+			CompactOrgCollection.Builder builder = new CompactOrgCollection.Builder();
+			populateOrgs(builder);
+			populateUsage(builder);
+			return builder.build();
+		} finally {
+			OrgStatsMetrics.LOADER.endLoad(startNanos);
+		}
+	}
+
+	private void populateOrgs(final CompactOrgCollection.Builder builder) throws OrgDataLoaderException {
+
+		FileInputStream orgInput = null;
+		try {
+			logger.log(Level.INFO, "Reading org hierarchy data file...");
+			orgInput = new FileInputStream(orgFile);
+			new DataFileParser().parseOrgs(orgInput.getChannel(), new OrgRecordHandler() {
+				public void handleOrg(int orgId, int parentOrgId, String name) {
+					builder.addOrg(orgId, parentOrgId, name);
+				}
+			});
+
+		} catch (IOException ioEx) {
+			String errMsg = "ERROR processing org data file (I/O error)";
+			logger.log(Level.SEVERE, errMsg, ioEx);
+			throw new OrgDataLoaderException(errMsg, ioEx);
+		} finally {
+			try {
+				if (orgInput != null) {
+					orgInput.close();
+				}
+			} catch (IOException ioEx) {
+				logger.log(Level.WARNING, "Error closing org data file", ioEx);
+			}
+		}
+	}
+
+	private void populateUsage(final CompactOrgCollection.Builder builder) throws OrgDataLoaderException {
+
+		FileInputStream userInput = null;
+		try {
+			logger.log(Level.INFO, "Reading user hierarchy data file...");
+			userInput = new FileInputStream(userFile);
+			FileChannel userChannel = userInput.getChannel();
+			if (DataCompression.detect(userChannel) != DataCompression.NONE) {
+				throw new OrgDataLoaderException("Compressed user data files are only read by OrgUserDataFileLoader.");
+			}
+			final long[] orphanUserCount = new long[1];
+			if (threadCount > 1) {
+				orphanUserCount[0] = new ChunkedUserFileReader(threadCount, false).readTotals(userChannel).addTo(builder);
+			} else {
+				new DataFileParser().parseUsers(userChannel, 0, userChannel.size(), new UserRecordHandler() {
+					public void handleUser(int userId, int orgId, int numFiles, long numBytes) {
+						if (!builder.addUsage(orgId, 1, numFiles, numBytes)) {
+							orphanUserCount[0]++;
+						}
+					}
+				});
+			}
+			if (orphanUserCount[0] > 0) {
+				logger.log(Level.WARNING, orphanUserCount[0] + " users not added.  Their orgs don't exist.");
+			}
+
+		} catch (IOException ioEx) {
+			String errMsg = "ERROR processing user data file (I/O error)";
+			logger.log(Level.SEVERE, errMsg, ioEx);
+			throw new OrgDataLoaderException(errMsg, ioEx);
+		} finally {
+			try {
+				if (userInput != null) {
+					userInput.close();
+				}
+			} catch (IOException ioEx) {
+				logger.log(Level.WARNING, "Error closing user data file", ioEx);
+			}
+		}
+	}
+}
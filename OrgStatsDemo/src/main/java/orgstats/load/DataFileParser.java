@@ -0,0 +1,559 @@
+package orgstats.load;
+
+import static orgstats.OrgStatsHelper.containsLetterOrDigit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import orgstats.UserDelta;
+import orgstats.metrics.OrgStatsMetrics;
+
+/**
+ * Parser for org and user data files that reads bytes from a FileChannel into a reusable
+ * buffer and parses the numbers directly into primitives.  No objects are created for a user
+ * line, only the name String is created for an org line.
+ * <p>
+ * Lines are split on ", " and validated the same way as splitting the line as a String,
+ * with the same error messages.  Lines can end with "\n" or "\r\n".
+ * <p>
+ * A block of whole lines that was already read, e.g. by PipelinedFileReader, is parsed in
+ * place without copying it into the buffer.
+ * <p>
+ * A DataFileParser reuses its buffer, so an instance must only be used by one thread at a time.
+ */
+class DataFileParser {
+
+	static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private static final int USER_FIELD_COUNT = 4;
+	private static final int ORG_FIELD_COUNT = 3;
+	private static final int MAX_FIELD_COUNT = 5;
+	private static final byte[] NULL_BYTES = { 'n', 'u', 'l', 'l' };
+	
+	// Maximum digits of each user field that can't overflow an int, or a long for the byte count.
+	private static final int[] SIMPLE_DIGIT_COUNTS = { 9, 9, 9, 18 };
+
+	// Number of fields on a delta line for each UserDelta.Type, in the order of the types.
+	private static final int[] DELTA_FIELD_COUNTS = { 5, 3, 5, 4 };
+
+	// Results of parsing a number field that aren't values.
+	private static final long NOT_A_NUMBER = -1;
+	private static final long OVERFLOW = -2;
+
+	private final Charset charset = Charset.defaultCharset();
+	private final int[] fieldStarts = new int[MAX_FIELD_COUNT];
+	private final int[] fieldEnds = new int[MAX_FIELD_COUNT];
+	private final long[] values = new long[USER_FIELD_COUNT];
+	private byte[] buffer;
+	private ByteBuffer byteBuffer;
+
+	/**
+	 * Constructs a parser with the default buffer size.
+	 */
+	DataFileParser() {
+		this(DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructs a parser with a buffer of the size given.  The buffer grows if a line
+	 * is longer than the buffer.
+	 *
+	 * @param bufferSize		the initial size of the read buffer in bytes
+	 */
+	DataFileParser(int bufferSize) {
+		this.buffer = new byte[bufferSize];
+		this.byteBuffer = ByteBuffer.wrap(buffer);
+	}
+
+	/**
+	 * Parses each line of a user data file with this format:
+	 * <p>
+	 *  userId, orgId, fileCount, byteCount
+	 *
+	 * @param channel			the FileChannel of the user data file
+	 * @param start				the position of the first line to parse
+	 * @param end				the position after the last line to parse
+	 * @param handler			receives the values of each line
+	 * @throws IOException		if any unexpected I/O error occurs
+	 * @throws OrgDataLoaderException	thrown if there are not four data items separated by commas,
+	 *                          the userId, orgId, fileCount, and/or byteCount aren't numbers
+	 */
+	void parseUsers(FileChannel channel, long start, long end, final UserRecordHandler handler)
+			throws IOException, OrgDataLoaderException {
+
+		parseLines(channel, start, end, new LineParser() {
+			public int parseSimpleLine(int lineStart, int filled) throws OrgDataLoaderException {
+				return parseSimpleUserLine(lineStart, filled, handler);
+			}
+			public void parseLine(int lineStart, int lineEnd) throws OrgDataLoaderException {
+				parseUserLine(lineStart, lineEnd, handler);
+			}
+		});
+	}
+
+	/**
+	 * Parses each line of a block of a user data file, see parseUsers(FileChannel, long, long,
+	 * UserRecordHandler).  The last line doesn't need a line separator.
+	 *
+	 * @param block				the bytes of whole lines
+	 * @param length			the number of bytes of the block to parse
+	 * @param handler			receives the values of each line
+	 * @throws OrgDataLoaderException	thrown if there are not four data items separated by commas,
+	 *                          the userId, orgId, fileCount, and/or byteCount aren't numbers
+	 */
+	void parseUsers(byte[] block, int length, final UserRecordHandler handler) throws OrgDataLoaderException {
+
+		parseBlock(block, length, new LineParser() {
+			public int parseSimpleLine(int lineStart, int filled) throws OrgDataLoaderException {
+				return parseSimpleUserLine(lineStart, filled, handler);
+			}
+			public void parseLine(int lineStart, int lineEnd) throws OrgDataLoaderException {
+				parseUserLine(lineStart, lineEnd, handler);
+			}
+		});
+	}
+
+	/**
+	 * Parses each line of an org data file with this format:
+	 * <p>
+	 *  orgId, parentOrgId, orgName
+	 *
+	 * @param channel			the FileChannel of the org data file
+	 * @param handler			receives the values of each line
+	 * @throws IOException		if any unexpected I/O error occurs
+	 * @throws OrgDataLoaderException	thrown if there are not three data items separated by commas,
+	 *                          the orgId, and parentOrgId aren't integers, or the orgName doesn't
+	 *                          contain a number or letter
+	 */
+	void parseOrgs(FileChannel channel, final OrgRecordHandler handler)
+			throws IOException, OrgDataLoaderException {
+
+		parseLines(channel, 0, channel.size(), new LineParser() {
+			public int parseSimpleLine(int lineStart, int filled) {
+				return -1;
+			}
+			public void parseLine(int lineStart, int lineEnd) throws OrgDataLoaderException {
+				parseOrgLine(lineStart, lineEnd, handler);
+			}
+		});
+	}
+
+	/**
+	 * Parses each line of a block of an org data file, see parseOrgs(FileChannel, OrgRecordHandler).
+	 * The last line doesn't need a line separator.
+	 *
+	 * @param block				the bytes of whole lines
+	 * @param length			the number of bytes of the block to parse
+	 * @param handler			receives the values of each line
+	 * @throws OrgDataLoaderException	thrown if there are not three data items separated by commas,
+	 *                          the orgId, and parentOrgId aren't integers, or the orgName doesn't
+	 *                          contain a number or letter
+	 */
+	void parseOrgs(byte[] block, int length, final OrgRecordHandler handler) throws OrgDataLoaderException {
+
+		parseBlock(block, length, new LineParser() {
+			public int parseSimpleLine(int lineStart, int filled) {
+				return -1;
+			}
+			public void parseLine(int lineStart, int lineEnd) throws OrgDataLoaderException {
+				parseOrgLine(lineStart, lineEnd, handler);
+			}
+		});
+	}
+
+	/**
+	 * Parses each line of a user delta file with one of these formats:
+	 * <p>
+	 *  A, userId, orgId, fileCount, byteCount		(user added)<br>
+	 *  R, userId, orgId					(user removed)<br>
+	 *  U, userId, orgId, fileCount, byteCount		(user's counts changed)<br>
+	 *  M, userId, orgId, newOrgId				(user moved)
+	 *
+	 * @param channel			the FileChannel of the user delta file
+	 * @param handler			receives a UserDelta for each line
+	 * @throws IOException		if any unexpected I/O error occurs
+	 * @throws OrgDataLoaderException	thrown if the line doesn't start with A, R, U or M, doesn't
+	 *                          have the number of data items for its type or the numbers aren't valid
+	 */
+	void parseDeltas(FileChannel channel, final UserDeltaHandler handler)
+			throws IOException, OrgDataLoaderException {
+
+		parseLines(channel, 0, channel.size(), new LineParser() {
+			public int parseSimpleLine(int lineStart, int filled) {
+				return -1;
+			}
+			public void parseLine(int lineStart, int lineEnd) throws OrgDataLoaderException {
+				parseDeltaLine(lineStart, lineEnd, handler);
+			}
+		});
+	}
+
+	/*
+	 * Parses a user line starting at lineStart in one pass when it has the usual format, four 
+	 * numbers separated by ", " and small enough that they can't overflow.  Returns the position 
+	 * of the newline at the end of the line, or -1 if the line has to be parsed by parseUserLine(),
+	 * e.g. because it is invalid or the newline isn't in the buffer yet.
+	 */
+	private int parseSimpleUserLine(int lineStart, int filled, UserRecordHandler handler) 
+			throws OrgDataLoaderException {
+		
+		int i = lineStart;
+		for (int field = 0; field < USER_FIELD_COUNT; field++) {
+			int digitsStart = i;
+			long value = 0;
+			while (i < filled) {
+				int digit = buffer[i] - '0';
+				if (digit < 0 || digit > 9) {
+					break;
+				}
+				value = value * 10 + digit;
+				i = i + 1;
+			}
+			int digitCount = i - digitsStart;
+			if (digitCount == 0 || digitCount > SIMPLE_DIGIT_COUNTS[field] || i >= filled) {
+				return -1;
+			}
+			values[field] = value;
+			if (field < USER_FIELD_COUNT - 1) {
+				if (buffer[i] != ',' || i + 1 >= filled || buffer[i + 1] != ' ') {
+					return -1;
+				}
+				i = i + 2;
+			}
+		}
+		if (buffer[i] == '\r') {
+			i = i + 1;
+			if (i >= filled) {
+				return -1;
+			}
+		}
+		if (buffer[i] != '\n') {
+			return -1;
+		}
+		handler.handleUser((int) values[0], (int) values[1], (int) values[2], values[3]);
+		return i;
+	}
+	
+	/*
+	 * Parses the user line in buffer[lineStart, lineEnd) and passes the values to the handler.
+	 */
+	private void parseUserLine(int lineStart, int lineEnd, UserRecordHandler handler)
+			throws OrgDataLoaderException {
+
+		if (splitFields(lineStart, lineEnd) != USER_FIELD_COUNT) {
+			throw userError("not 4 items on line", lineStart, lineEnd);
+		}
+		long userId = parseNumber(0, Integer.MAX_VALUE);
+		long orgId = parseNumber(1, Integer.MAX_VALUE);
+		long fileCount = parseNumber(2, Integer.MAX_VALUE);
+		long byteCount = parseNumber(3, Long.MAX_VALUE);
+
+		// Report the first field that isn't digits before the first field that is too large.
+		for (long invalid = NOT_A_NUMBER; invalid >= OVERFLOW; invalid--) {
+			if (userId == invalid) {
+				throw userError("invalid user id", lineStart, lineEnd);
+			}
+			if (orgId == invalid) {
+				throw userError("invalid org id", lineStart, lineEnd);
+			}
+			if (fileCount == invalid) {
+				throw userError("invalid fileCount", lineStart, lineEnd);
+			}
+			if (byteCount == invalid) {
+				throw userError("invalid fileByte", lineStart, lineEnd);
+			}
+		}
+		handler.handleUser((int) userId, (int) orgId, (int) fileCount, byteCount);
+	}
+
+	/*
+	 * Parses the org line in buffer[lineStart, lineEnd) and passes the values to the handler.
+	 */
+	private void parseOrgLine(int lineStart, int lineEnd, OrgRecordHandler handler)
+			throws OrgDataLoaderException {
+
+		if (splitFields(lineStart, lineEnd) != ORG_FIELD_COUNT) {
+			throw orgError("not 3 items on line", lineStart, lineEnd);
+		}
+		long orgId = parseNumber(0, Integer.MAX_VALUE);
+		if (orgId < 0) {
+			throw orgError("invalid org id", lineStart, lineEnd);
+		}
+		long parentOrgId = isNull(1) ? 0 : parseNumber(1, Integer.MAX_VALUE);
+		if (parentOrgId < 0) {
+			throw orgError("invalid parent org id", lineStart, lineEnd);
+		}
+		String orgName = new String(buffer, fieldStarts[2], fieldEnds[2] - fieldStarts[2], charset);
+		if (!containsLetterOrDigit(orgName)) {
+			throw orgError("invalid org name", lineStart, lineEnd);
+		}
+		handler.handleOrg((int) orgId, (int) parentOrgId, orgName);
+	}
+
+	/*
+	 * Parses the delta line in buffer[lineStart, lineEnd) and passes the UserDelta to the handler.
+	 */
+	private void parseDeltaLine(int lineStart, int lineEnd, UserDeltaHandler handler)
+			throws OrgDataLoaderException {
+
+		int fieldCount = splitFields(lineStart, lineEnd);
+		UserDelta.Type type = null;
+		if (fieldEnds[0] - fieldStarts[0] == 1) {
+			type = UserDelta.Type.forCode((char) buffer[fieldStarts[0]]);
+		}
+		if (type == null) {
+			throw deltaError("invalid delta type", lineStart, lineEnd);
+		}
+		int expectedCount = DELTA_FIELD_COUNTS[type.ordinal()];
+		if (fieldCount != expectedCount) {
+			throw deltaError("not " + expectedCount + " items on line", lineStart, lineEnd);
+		}
+		long userId = parseNumber(1, Integer.MAX_VALUE);
+		if (userId < 0) {
+			throw deltaError("invalid user id", lineStart, lineEnd);
+		}
+		long orgId = parseNumber(2, Integer.MAX_VALUE);
+		if (orgId < 0) {
+			throw deltaError("invalid org id", lineStart, lineEnd);
+		}
+
+		UserDelta userDelta;
+		if (type == UserDelta.Type.REMOVED) {
+			userDelta = UserDelta.removed((int) userId, (int) orgId);
+		} else if (type == UserDelta.Type.MOVED) {
+			long newOrgId = parseNumber(3, Integer.MAX_VALUE);
+			if (newOrgId < 0) {
+				throw deltaError("invalid new org id", lineStart, lineEnd);
+			}
+			userDelta = UserDelta.moved((int) userId, (int) orgId, (int) newOrgId);
+		} else {
+			long fileCount = parseNumber(3, Integer.MAX_VALUE);
+			if (fileCount < 0) {
+				throw deltaError("invalid fileCount", lineStart, lineEnd);
+			}
+			long byteCount = parseNumber(4, Long.MAX_VALUE);
+			if (byteCount < 0) {
+				throw deltaError("invalid fileByte", lineStart, lineEnd);
+			}
+			if (type == UserDelta.Type.ADDED) {
+				userDelta = UserDelta.added((int) userId, (int) orgId, (int) fileCount, byteCount);
+			} else {
+				userDelta = UserDelta.updated((int) userId, (int) orgId, (int) fileCount, byteCount);
+			}
+		}
+		handler.handleDelta(userDelta);
+	}
+
+	/*
+	 * Finds the fields in buffer[lineStart, lineEnd) separated by ", " and returns the number
+	 * of fields.  Like String.split(), trailing empty fields aren't counted.  The positions of
+	 * the first fields are kept in fieldStarts and fieldEnds.
+	 */
+	private int splitFields(int lineStart, int lineEnd) {
+
+		int fieldCount = 0;
+		int nonEmptyFieldCount = 0;
+		int fieldStart = lineStart;
+		int i = lineStart;
+		while (i <= lineEnd) {
+			if (i == lineEnd || (buffer[i] == ',' && i + 1 < lineEnd && buffer[i + 1] == ' ')) {
+				if (fieldCount < fieldStarts.length) {
+					fieldStarts[fieldCount] = fieldStart;
+					fieldEnds[fieldCount] = i;
+				}
+				fieldCount = fieldCount + 1;
+				if (i > fieldStart) {
+					nonEmptyFieldCount = fieldCount;
+				}
+				fieldStart = i + 2;
+				i = i + 2;
+			} else {
+				i = i + 1;
+			}
+		}
+		// A line without a separator is one field, even when it is empty.
+		return fieldCount == 1 ? 1 : nonEmptyFieldCount;
+	}
+
+	/*
+	 * Parses the digits of a field, returns NOT_A_NUMBER if the field is empty or contains
+	 * anything other than digits and OVERFLOW if the value is larger than maxValue.
+	 */
+	private long parseNumber(int field, long maxValue) {
+
+		int start = fieldStarts[field];
+		int end = fieldEnds[field];
+		if (start == end) {
+			return NOT_A_NUMBER;
+		}
+		long value = 0;
+		long limit = maxValue / 10;
+		boolean overflow = false;
+		for (int i = start; i < end; i++) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return NOT_A_NUMBER;
+			}
+			if (value > limit || (value == limit && digit > maxValue % 10)) {
+				overflow = true;
+			}
+			value = value * 10 + digit;
+		}
+		return overflow ? OVERFLOW : value;
+	}
+
+	private boolean isNull(int field) {
+
+		int start = fieldStarts[field];
+		if (fieldEnds[field] - start != NULL_BYTES.length) {
+			return false;
+		}
+		for (int i = 0; i < NULL_BYTES.length; i++) {
+			if (buffer[start + i] != NULL_BYTES[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private OrgDataLoaderException userError(String error, int lineStart, int lineEnd) {
+		OrgStatsMetrics.LOADER.addRejectedLine();
+		return new OrgDataLoaderException("ERROR with User File (" + error + "): "
+				+ new String(buffer, lineStart, lineEnd - lineStart, charset));
+	}
+
+	private OrgDataLoaderException deltaError(String error, int lineStart, int lineEnd) {
+		OrgStatsMetrics.LOADER.addRejectedLine();
+		return new OrgDataLoaderException("ERROR with User Delta File (" + error + "): "
+				+ new String(buffer, lineStart, lineEnd - lineStart, charset));
+	}
+
+	private OrgDataLoaderException orgError(String error, int lineStart, int lineEnd) {
+		OrgStatsMetrics.LOADER.addRejectedLine();
+		return new OrgDataLoaderException("ERROR with Org File (" + error + "): "
+				+ new String(buffer, lineStart, lineEnd - lineStart, charset));
+	}
+
+	/*
+	 * Reads channel[start, end) into the buffer and calls the lineParser for each line.
+	 * Partial lines at the end of the buffer are moved to the start before the next read.
+	 * The lines and bytes are added to the loader metrics once, when parsing ends.
+	 */
+	private void parseLines(FileChannel channel, long start, long end, LineParser lineParser)
+			throws IOException, OrgDataLoaderException {
+
+		long position = start;
+		long lineCount = 0;
+		int filled = 0;
+		int lineStart = 0;
+		int scanFrom = 0;
+		boolean endOfInput = false;
+
+		try {
+			while (true) {
+				int newline = lineParser.parseSimpleLine(lineStart, filled);
+				if (newline >= 0) {
+					lineCount++;
+					lineStart = newline + 1;
+					scanFrom = lineStart;
+					continue;
+				}
+				newline = indexOfNewline(Math.max(scanFrom, lineStart), filled);
+				if (newline >= 0) {
+					lineParser.parseLine(lineStart, trimCarriageReturn(lineStart, newline));
+					lineCount++;
+					lineStart = newline + 1;
+					scanFrom = lineStart;
+				} else if (endOfInput) {
+					if (lineStart < filled) {
+						lineParser.parseLine(lineStart, trimCarriageReturn(lineStart, filled));
+						lineCount++;
+					}
+					return;
+				} else {
+					if (lineStart > 0) {
+						System.arraycopy(buffer, lineStart, buffer, 0, filled - lineStart);
+						filled = filled - lineStart;
+						lineStart = 0;
+					} else if (filled == buffer.length) {
+						buffer = Arrays.copyOf(buffer, buffer.length * 2);
+						byteBuffer = ByteBuffer.wrap(buffer);
+					}
+					scanFrom = filled;
+
+					int length = (int) Math.min(buffer.length - filled, end - position);
+					int read = -1;
+					if (length > 0) {
+						byteBuffer.limit(filled + length);
+						byteBuffer.position(filled);
+						read = channel.read(byteBuffer, position);
+					}
+					if (read < 0) {
+						endOfInput = true;
+					} else {
+						position = position + read;
+						filled = filled + read;
+					}
+				}
+			}
+		} finally {
+			OrgStatsMetrics.LOADER.addLinesRead(lineCount, position - start);
+		}
+	}
+
+	/*
+	 * Calls the lineParser for each line of block[0, length) with the block in place of the 
+	 * buffer.  The lines and bytes are added to the loader metrics once, when parsing ends.
+	 */
+	private void parseBlock(byte[] block, int length, LineParser lineParser) throws OrgDataLoaderException {
+
+		byte[] readBuffer = buffer;
+		buffer = block;
+		long lineCount = 0;
+		int lineStart = 0;
+		try {
+			while (lineStart < length) {
+				int newline = lineParser.parseSimpleLine(lineStart, length);
+				if (newline < 0) {
+					newline = indexOfNewline(lineStart, length);
+					if (newline < 0) {
+						newline = length;
+					}
+					lineParser.parseLine(lineStart, trimCarriageReturn(lineStart, newline));
+				}
+				lineCount++;
+				lineStart = newline + 1;
+			}
+		} finally {
+			buffer = readBuffer;
+			OrgStatsMetrics.LOADER.addLinesRead(lineCount, length);
+		}
+	}
+
+	private int indexOfNewline(int from, int to) {
+
+		for (int i = from; i < to; i++) {
+			if (buffer[i] == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int trimCarriageReturn(int lineStart, int lineEnd) {
+		return lineEnd > lineStart && buffer[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+	}
+
+	/*
+	 * Parses the lines in the buffer.  parseSimpleLine() is tried first for each line and returns
+	 * the position of the newline at the end of the line if it parsed the line, otherwise -1.  
+	 * parseLine() parses one line in buffer[lineStart, lineEnd), without the line separator.
+	 */
+	private interface LineParser {
+		int parseSimpleLine(int lineStart, int filled) throws OrgDataLoaderException;
+		void parseLine(int lineStart, int lineEnd) throws OrgDataLoaderException;
+	}
+}
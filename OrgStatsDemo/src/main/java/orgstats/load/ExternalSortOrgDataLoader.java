@@ -0,0 +1,420 @@
+package orgstats.load;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import orgstats.DataCompression;
+import orgstats.OrgCollection;
+import orgstats.metrics.OrgStatsMetrics;
+
+/**
+ * Loader that adds up the usage of each organization from a user data file of any size within
+ * a fixed memory budget.  The users are read into a buffer that is sorted by orgId and written
+ * to a spill file when it is full, with the users of each org in the buffer added up into one
+ * record.  The sorted spill files are then merged, and the records of each org are added up
+ * again, until one total per org is added to the OrgCollection.  When there are more spill
+ * files than can be merged at once they are merged in several passes.
+ * <p>
+ * Like UserLoadMode.AGGREGATES_ONLY the users aren't stored, only the usage totals of each
+ * organization.  The spill files are created in the spill directory and removed when the
+ * data is loaded.
+ */
+public class ExternalSortOrgDataLoader implements OrgDataLoader {
+
+	private static final Logger logger = Logger.getLogger(ExternalSortOrgDataLoader.class.getName());
+
+	/**
+	 * The smallest memory budget that can be given.
+	 */
+	public static final long MIN_MEMORY_BUDGET = 1024 * 1024;
+
+	// Bytes of the run buffer for each user: the sort key, the file count and the byte count.
+	private static final int BUFFERED_USER_SIZE = 8 + 4 + 8;
+
+	// Spill record: orgId, user count, file count and byte count.
+	private static final int SPILL_RECORD_SIZE = 4 + 4 + 4 + 8;
+	private static final int SPILL_BUFFER_SIZE = 64 * 1024;
+
+	private File orgFile;
+	private File userFile;
+	private File spillDirectory;
+	private int runSize;
+	private int mergeWidth;
+	private int spillFileCount;
+
+	/**
+	 * Constructs a new OrgDataLoader given a org data File, user data File and the memory budget
+	 * for the users.  The spill files are created in the default temporary file directory.
+	 *
+	 * @param orgFile
+	 * @param userFile
+	 * @param memoryBudget		the number of bytes used to sort and merge the users, at least
+	 * 							MIN_MEMORY_BUDGET
+	 *
+	 * @throws OrgDataLoaderException   Thrown if either the orgFile or userFile do not exist.
+	 */
+	public ExternalSortOrgDataLoader(File orgFile, File userFile, long memoryBudget) throws OrgDataLoaderException {
+		this(orgFile, userFile, new File(System.getProperty("java.io.tmpdir")), memoryBudget);
+	}
+
+	/**
+	 * Constructs a new OrgDataLoader given a org data File, user data File, the directory for
+	 * the spill files and the memory budget for the users.
+	 *
+	 * @param orgFile
+	 * @param userFile
+	 * @param spillDirectory	the directory where the sorted users are written
+	 * @param memoryBudget		the number of bytes used to sort and merge the users, at least
+	 * 							MIN_MEMORY_BUDGET
+	 *
+	 * @throws OrgDataLoaderException   Thrown if either the orgFile or userFile do not exist or
+	 * 									the spill directory can't be written.
+	 */
+	public ExternalSortOrgDataLoader(File orgFile, File userFile, File spillDirectory, long memoryBudget)
+			throws OrgDataLoaderException {
+		this(orgFile, userFile, spillDirectory, (int) Math.min(Integer.MAX_VALUE - 8,
+				Math.max(MIN_MEMORY_BUDGET, memoryBudget) / BUFFERED_USER_SIZE),
+				(int) Math.min(1024, Math.max(MIN_MEMORY_BUDGET, memoryBudget) / SPILL_BUFFER_SIZE));
+	}
+
+	/**
+	 * Constructs a loader with the number of users sorted in memory and the number of spill
+	 * files merged at once.  Used by the tests to get many spill files from small files.
+	 */
+	ExternalSortOrgDataLoader(File orgFile, File userFile, File spillDirectory, int runSize, int mergeWidth)
+			throws OrgDataLoaderException {
+
+		if (!spillDirectory.isDirectory() || !spillDirectory.canWrite()) {
+			String errMsg = "Spill directory specified is not valid.";
+			logger.log(Level.SEVERE, errMsg);
+			throw new OrgDataLoaderException(errMsg);
+		}
+		// Checks the data files.
+		new OrgUserDataFileLoader(orgFile, userFile);
+		this.orgFile = orgFile;
+		this.userFile = userFile;
+		this.spillDirectory = spillDirectory;
+		this.runSize = Math.max(1, runSize);
+		this.mergeWidth = Math.max(2, mergeWidth);
+	}
+
+	/**
+	 * Populates the organizations from the org data file and adds the usage totals of the
+	 * users in the user data file to them, see the class comment.  The throughput of the load 
+	 * is recorded in OrgStatsMetrics.LOADER.
+	 *
+	 * @return orgCollection		the OrgCollection containing a tree of OrgBeans
+	 */
+	@Override
+	public OrgCollection loadData() throws OrgDataLoaderException {
+
+		long startNanos = OrgStatsMetrics.LOADER.startLoad();
+		try {
+			return sortAndMergeUsers();
+		} finally {
+			OrgStatsMetrics.LOADER.endLoad(startNanos);
+		}
+	}
+
+	/**
+	 * Returns the number of spill files the user data file was sorted into by the last load, 
+	 * before they were merged.
+	 *
+	 * @return			the number of sorted spill files, 0 before the first load
+	 */
+	int getSpillFileCount() {
+		return spillFileCount;
+	}
+
+	/*
+	 * Loads the orgs and adds the users to them through the spill files.
+	 */
+	private OrgCollection sortAndMergeUsers() throws OrgDataLoaderException {
+
+		OrgCollection orgCollection = new OrgCollection();
+		new OrgUserDataFileLoader(orgFile, userFile).populateOrgs(orgCollection);
+
+		List<File> runs = new ArrayList<File>();
+		FileInputStream userInput = null;
+		try {
+			logger.log(Level.INFO, "Sorting user data file...");
+			long start = System.currentTimeMillis();
+			userInput = new FileInputStream(userFile);
+			FileChannel userChannel = userInput.getChannel();
+			if (DataCompression.detect(userChannel) != DataCompression.NONE) {
+				throw new OrgDataLoaderException("Compressed user data files are only read by OrgUserDataFileLoader.");
+			}
+			RunBuffer runBuffer = new RunBuffer(runs);
+			new DataFileParser().parseUsers(userChannel, 0, userChannel.size(), runBuffer);
+			runBuffer.spill();
+			runBuffer = null;
+			spillFileCount = runs.size();
+			logger.log(Level.INFO, "Sorted user data file into " + runs.size() + " spill files in "
+					+ (System.currentTimeMillis() - start) + "ms");
+
+			mergeRuns(runs, orgCollection);
+
+		} catch (IOException ioEx) {
+			String errMsg = "ERROR processing user data file (I/O error)";
+			logger.log(Level.SEVERE, errMsg, ioEx);
+			throw new OrgDataLoaderException(errMsg, ioEx);
+		} finally {
+			try {
+				if (userInput != null) {
+					userInput.close();
+				}
+			} catch (IOException ioEx) {
+				logger.log(Level.WARNING, "Error closing user data file", ioEx);
+			}
+			for (File run : runs) {
+				if (!run.delete()) {
+					logger.log(Level.WARNING, "Error deleting spill file " + run);
+				}
+			}
+		}
+		orgCollection.computeTotals();
+		return orgCollection;
+	}
+
+	/*
+	 * Merges the spill files mergeWidth at a time until they can be merged in one pass,
+	 * then merges them into the OrgCollection.  Merged spill files are deleted and the new
+	 * ones are added to the runs, so they are deleted if the merge fails.
+	 */
+	private void mergeRuns(List<File> runs, final OrgCollection orgCollection) throws IOException {
+
+		while (runs.size() > mergeWidth) {
+			List<File> mergedRuns = new ArrayList<File>(runs.subList(0, mergeWidth));
+			File run = createSpillFile(runs);
+			final DataOutputStream runOutput = openSpillOutput(run);
+			try {
+				merge(mergedRuns, new TotalsHandler() {
+					public void handleTotals(int orgId, int userCount, int fileCount, long byteCount) throws IOException {
+						writeSpillRecord(runOutput, orgId, userCount, fileCount, byteCount);
+					}
+				});
+			} finally {
+				runOutput.close();
+			}
+			for (File mergedRun : mergedRuns) {
+				runs.remove(mergedRun);
+				mergedRun.delete();
+			}
+		}
+
+		final long[] orphanUserCount = new long[1];
+		merge(runs, new TotalsHandler() {
+			public void handleTotals(int orgId, int userCount, int fileCount, long byteCount) {
+				if (!orgCollection.addUsage(orgId, userCount, fileCount, byteCount)) {
+					orphanUserCount[0] = orphanUserCount[0] + userCount;
+				}
+			}
+		});
+		if (orphanUserCount[0] > 0) {
+			logger.log(Level.WARNING, orphanUserCount[0] + " users not added.  Their orgs don't exist.");
+		}
+	}
+
+	/*
+	 * Merges the sorted spill files and passes the totals of each orgId to the handler once,
+	 * in orgId order.
+	 */
+	private void merge(List<File> runs, TotalsHandler handler) throws IOException {
+
+		PriorityQueue<RunReader> readers = new PriorityQueue<RunReader>(Math.max(1, runs.size()),
+				new Comparator<RunReader>() {
+			public int compare(RunReader reader1, RunReader reader2) {
+				return reader1.orgId < reader2.orgId ? -1 : (reader1.orgId == reader2.orgId ? 0 : 1);
+			}
+		});
+		List<RunReader> openReaders = new ArrayList<RunReader>(runs.size());
+		try {
+			for (File run : runs) {
+				RunReader reader = new RunReader(run);
+				openReaders.add(reader);
+				if (reader.next()) {
+					readers.add(reader);
+				}
+			}
+
+			while (!readers.isEmpty()) {
+				RunReader reader = readers.poll();
+				int orgId = reader.orgId;
+				int userCount = 0;
+				int fileCount = 0;
+				long byteCount = 0;
+				while (true) {
+					userCount = userCount + reader.userCount;
+					fileCount = fileCount + reader.fileCount;
+					byteCount = byteCount + reader.byteCount;
+					if (reader.next()) {
+						readers.add(reader);
+					}
+					if (readers.isEmpty() || readers.peek().orgId != orgId) {
+						break;
+					}
+					reader = readers.poll();
+				}
+				handler.handleTotals(orgId, userCount, fileCount, byteCount);
+			}
+		} finally {
+			for (RunReader reader : openReaders) {
+				reader.close();
+			}
+		}
+	}
+
+	/*
+	 * Creates a spill file and adds it to the runs before anything is written to it.
+	 */
+	private File createSpillFile(List<File> runs) throws IOException {
+
+		File run = File.createTempFile("OrgStatsSpill", ".run", spillDirectory);
+		runs.add(run);
+		return run;
+	}
+
+	private static DataOutputStream openSpillOutput(File run) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), SPILL_BUFFER_SIZE));
+	}
+
+	private static void writeSpillRecord(DataOutputStream runOutput, int orgId, int userCount, int fileCount,
+			long byteCount) throws IOException {
+
+		runOutput.writeInt(orgId);
+		runOutput.writeInt(userCount);
+		runOutput.writeInt(fileCount);
+		runOutput.writeLong(byteCount);
+	}
+
+	/*
+	 * Receives the totals of an orgId from a merge.
+	 */
+	private interface TotalsHandler {
+		void handleTotals(int orgId, int userCount, int fileCount, long byteCount) throws IOException;
+	}
+
+	/*
+	 * Buffers the users of the user data file and writes them to a spill file sorted by orgId
+	 * when the buffer is full.  Each user is kept as a sort key, with the orgId in the high int
+	 * and the position of its counts in the low int, so the buffer is sorted as primitives.
+	 */
+	private final class RunBuffer implements UserRecordHandler {
+
+		private final List<File> runs;
+		private final long[] sortKeys;
+		private final int[] fileCounts;
+		private final long[] byteCounts;
+		private int size;
+
+		RunBuffer(List<File> runs) {
+			this.runs = runs;
+			this.sortKeys = new long[runSize];
+			this.fileCounts = new int[runSize];
+			this.byteCounts = new long[runSize];
+		}
+
+		public void handleUser(int userId, int orgId, int numFiles, long numBytes) throws OrgDataLoaderException {
+
+			if (size == runSize) {
+				try {
+					spill();
+				} catch (IOException ioEx) {
+					throw new OrgDataLoaderException("ERROR writing spill file (I/O error)", ioEx);
+				}
+			}
+			sortKeys[size] = ((long) orgId << 32) | size;
+			fileCounts[size] = numFiles;
+			byteCounts[size] = numBytes;
+			size = size + 1;
+		}
+
+		/*
+		 * Sorts the buffered users and writes one record per orgId to a new spill file.
+		 */
+		void spill() throws IOException {
+
+			if (size == 0) {
+				return;
+			}
+			Arrays.sort(sortKeys, 0, size);
+			DataOutputStream runOutput = openSpillOutput(createSpillFile(runs));
+			try {
+				int i = 0;
+				while (i < size) {
+					int orgId = (int) (sortKeys[i] >>> 32);
+					int userCount = 0;
+					int fileCount = 0;
+					long byteCount = 0;
+					while (i < size && (int) (sortKeys[i] >>> 32) == orgId) {
+						int index = (int) sortKeys[i];
+						userCount = userCount + 1;
+						fileCount = fileCount + fileCounts[index];
+						byteCount = byteCount + byteCounts[index];
+						i = i + 1;
+					}
+					writeSpillRecord(runOutput, orgId, userCount, fileCount, byteCount);
+				}
+			} finally {
+				runOutput.close();
+			}
+			size = 0;
+		}
+	}
+
+	/*
+	 * Reads the records of a spill file, the current record is in the fields.
+	 */
+	private static final class RunReader {
+
+		private final DataInputStream runInput;
+		private long remaining;
+		int orgId;
+		int userCount;
+		int fileCount;
+		long byteCount;
+
+		RunReader(File run) throws IOException {
+			this.remaining = run.length() / SPILL_RECORD_SIZE;
+			this.runInput = new DataInputStream(new BufferedInputStream(new FileInputStream(run), SPILL_BUFFER_SIZE));
+		}
+
+		/*
+		 * Reads the next record, returns false at the end of the file.
+		 */
+		boolean next() throws IOException {
+
+			if (remaining == 0) {
+				return false;
+			}
+			orgId = runInput.readInt();
+			userCount = runInput.readInt();
+			fileCount = runInput.readInt();
+			byteCount = runInput.readLong();
+			remaining = remaining - 1;
+			return true;
+		}
+
+		void close() {
+			try {
+				runInput.close();
+			} catch (IOException ioEx) {
+				logger.log(Level.WARNING, "Error closing spill file", ioEx);
+			}
+		}
+	}
+}
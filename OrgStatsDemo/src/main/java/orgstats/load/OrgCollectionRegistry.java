@@ -0,0 +1,314 @@
+package orgstats.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import orgstats.OrgCollection;
+
+/**
+ * Cache of loaded OrgCollections for a long-running process that loads the same data files again 
+ * and again, e.g. one that constructs an OrgStatsTool for a rotating set of org and user files.
+ * The cache only lives as long as the registry, so separate runs of the tool don't share it.
+ * A collection is kept for the canonical paths, sizes and last modified times of its org and user files, the
+ * UserLoadMode and the class of the loader, so a changed file is loaded again and the
+ * collection loaded from the old file is dropped.
+ * <p>
+ * The collections are evicted in least recently used order once their estimated heap, see
+ * OrgCollection.getEstimatedHeapBytes(), is over the memory budget, and a collection larger
+ * than the budget is returned without being kept.  Threads asking for the same files while
+ * they are loaded wait for the one load instead of parsing the files again, and a load that
+ * fails isn't kept.  The collections are sealed when they are loaded, since they are shared,
+ * so user deltas can't be applied to them.
+ */
+public class OrgCollectionRegistry {
+
+	private static final Logger logger = Logger.getLogger(OrgCollectionRegistry.class.getName());
+
+	private final long memoryBudget;
+
+	// In access order, the least recently used first.  Guarded by the registry.
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+	private long heapBytes;
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+
+	/**
+	 * Constructs an empty registry.
+	 *
+	 * @param memoryBudget		the estimated heap in bytes the cached collections can use
+	 */
+	public OrgCollectionRegistry(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Returns an OrgDataLoader that loads the collection from the registry, e.g. for the
+	 * OrgStatsTool constructor.
+	 *
+	 * @param orgFile			the File that contains the org data
+	 * @param userFile			the File that contains the user data
+	 * @param userLoadMode		what the file loader keeps in memory for the users
+	 * @param fileLoader		the loader that loads the data files when they aren't cached
+	 * @return					the loader of the cached collection
+	 */
+	public OrgDataLoader getLoader(final File orgFile, final File userFile, final UserLoadMode userLoadMode,
+			final OrgDataLoader fileLoader) {
+
+		return new OrgDataLoader() {
+			public OrgCollection loadData() throws OrgDataLoaderException {
+				return OrgCollectionRegistry.this.loadData(orgFile, userFile, userLoadMode, fileLoader);
+			}
+		};
+	}
+
+	/**
+	 * Returns the sealed collection cached for the data files, or loads it with the file loader
+	 * and caches it.  A thread that asks for the files while another thread loads them waits
+	 * for that load.
+	 *
+	 * @param orgFile			the File that contains the org data
+	 * @param userFile			the File that contains the user data
+	 * @param userLoadMode		what the file loader keeps in memory for the users
+	 * @param fileLoader		the loader that loads the data files when they aren't cached
+	 * @return					the sealed collection
+	 * @throws OrgDataLoaderException	if the files can't be found or loaded
+	 */
+	public OrgCollection loadData(File orgFile, File userFile, UserLoadMode userLoadMode, OrgDataLoader fileLoader)
+			throws OrgDataLoaderException {
+
+		Key key = new Key(orgFile, userFile, userLoadMode, fileLoader.getClass());
+		Entry entry;
+		boolean loading = false;
+		synchronized (this) {
+			entry = entries.get(key);
+			if (entry == null) {
+				removeStaleEntries(key);
+				entry = new Entry(fileLoader);
+				entries.put(key, entry);
+				loading = true;
+				missCount++;
+			} else {
+				hitCount++;
+			}
+		}
+
+		if (loading) {
+			entry.load.run();
+		}
+		try {
+			OrgCollection orgCollection = entry.load.get();
+			if (loading) {
+				addLoadedEntry(key, entry, orgCollection.getEstimatedHeapBytes());
+			}
+			return orgCollection;
+		} catch (ExecutionException executionEx) {
+			if (loading) {
+				synchronized (this) {
+					entries.remove(key);
+				}
+			}
+			Throwable cause = executionEx.getCause();
+			if (cause instanceof OrgDataLoaderException) {
+				throw (OrgDataLoaderException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new OrgDataLoaderException("ERROR loading data files", cause);
+		} catch (InterruptedException interruptedEx) {
+			Thread.currentThread().interrupt();
+			throw new OrgDataLoaderException("Interrupted waiting for the data files to be loaded", interruptedEx);
+		}
+	}
+
+	/**
+	 * Returns the estimated heap of the cached collections, see OrgCollection.getEstimatedHeapBytes().
+	 *
+	 * @return		the estimated heap in bytes
+	 */
+	public synchronized long getHeapBytes() {
+		return heapBytes;
+	}
+
+	/**
+	 * Returns the number of collections cached or being loaded.
+	 *
+	 * @return		the number of entries
+	 */
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of loads that returned a cached collection or waited for another load.
+	 *
+	 * @return		the number of hits
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Returns the number of loads that loaded the data files.
+	 *
+	 * @return		the number of misses
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Returns the number of collections dropped to stay within the memory budget, including
+	 * the collections larger than the budget.
+	 *
+	 * @return		the number of evictions
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/*
+	 * Drops the loaded collections of the same files with other sizes or modified times, which
+	 * are never asked for again.
+	 */
+	private void removeStaleEntries(Key key) {
+
+		Iterator<Map.Entry<Key, Entry>> entryIterator = entries.entrySet().iterator();
+		while (entryIterator.hasNext()) {
+			Map.Entry<Key, Entry> staleEntry = entryIterator.next();
+			if (staleEntry.getValue().heapBytes >= 0 && staleEntry.getKey().isSameFiles(key)) {
+				logger.log(Level.INFO, "Org data files changed, dropped the cached org data of " + staleEntry.getKey());
+				heapBytes = heapBytes - staleEntry.getValue().heapBytes;
+				entryIterator.remove();
+			}
+		}
+	}
+
+	/*
+	 * Counts the heap of a loaded collection and evicts the least recently used collections
+	 * until the heap is within the budget, or drops the collection if it is larger than the 
+	 * budget.  Collections still being loaded aren't evicted.
+	 */
+	private synchronized void addLoadedEntry(Key key, Entry entry, long entryHeapBytes) {
+
+		if (entryHeapBytes > memoryBudget) {
+			logger.log(Level.INFO, "Org data of " + key + " not cached, " + entryHeapBytes / (1024 * 1024) 
+					+ " MB is over the memory budget");
+			entries.remove(key);
+			evictionCount++;
+			return;
+		}
+		entry.heapBytes = entryHeapBytes;
+		heapBytes = heapBytes + entryHeapBytes;
+		Iterator<Map.Entry<Key, Entry>> entryIterator = entries.entrySet().iterator();
+		while (heapBytes > memoryBudget && entryIterator.hasNext()) {
+			Map.Entry<Key, Entry> eldestEntry = entryIterator.next();
+			Entry evictedEntry = eldestEntry.getValue();
+			if (evictedEntry.heapBytes < 0 || evictedEntry == entry) {
+				continue;
+			}
+			logger.log(Level.INFO, "Evicted the cached org data of " + eldestEntry.getKey() + " ("
+					+ evictedEntry.heapBytes / (1024 * 1024) + " MB)");
+			heapBytes = heapBytes - evictedEntry.heapBytes;
+			entryIterator.remove();
+			evictionCount++;
+		}
+	}
+
+	/*
+	 * The load of a collection, run by the first thread that asks for it.
+	 */
+	private static final class Entry {
+
+		private final FutureTask<OrgCollection> load;
+
+		// The estimated heap of the collection, -1 while it is loaded.  Guarded by the registry.
+		private long heapBytes = -1;
+
+		Entry(final OrgDataLoader fileLoader) {
+			load = new FutureTask<OrgCollection>(new Callable<OrgCollection>() {
+				public OrgCollection call() throws OrgDataLoaderException {
+					OrgCollection orgCollection = fileLoader.loadData();
+					orgCollection.seal();
+					return orgCollection;
+				}
+			});
+		}
+	}
+
+	/*
+	 * The data files and how they are loaded.
+	 */
+	private static final class Key {
+
+		private final String orgPath;
+		private final long orgLength;
+		private final long orgLastModified;
+		private final String userPath;
+		private final long userLength;
+		private final long userLastModified;
+		private final UserLoadMode userLoadMode;
+		private final String loaderClassName;
+
+		Key(File orgFile, File userFile, UserLoadMode userLoadMode, Class<?> loaderClass) throws OrgDataLoaderException {
+
+			try {
+				this.orgPath = orgFile.getCanonicalPath();
+				this.userPath = userFile.getCanonicalPath();
+			} catch (IOException ioEx) {
+				String errMsg = "ERROR finding data files (I/O error)";
+				logger.log(Level.SEVERE, errMsg, ioEx);
+				throw new OrgDataLoaderException(errMsg, ioEx);
+			}
+			this.orgLength = orgFile.length();
+			this.orgLastModified = orgFile.lastModified();
+			this.userLength = userFile.length();
+			this.userLastModified = userFile.lastModified();
+			this.userLoadMode = userLoadMode;
+			this.loaderClassName = loaderClass.getName();
+		}
+
+		/*
+		 * Returns true if the key is for the same files loaded the same way, whatever their
+		 * sizes and modified times.
+		 */
+		boolean isSameFiles(Key key) {
+			return orgPath.equals(key.orgPath) && userPath.equals(key.userPath) && userLoadMode == key.userLoadMode
+					&& loaderClassName.equals(key.loaderClassName);
+		}
+
+		@Override
+		public boolean equals(Object object) {
+
+			if (!(object instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) object;
+			return isSameFiles(key) && orgLength == key.orgLength && orgLastModified == key.orgLastModified
+					&& userLength == key.userLength && userLastModified == key.userLastModified;
+		}
+
+		@Override
+		public int hashCode() {
+
+			int hash = orgPath.hashCode() * 31 + userPath.hashCode();
+			hash = hash * 31 + (int) (orgLength ^ orgLastModified ^ userLength ^ userLastModified);
+			return hash * 31 + userLoadMode.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return orgPath + ", " + userPath + " (" + userLoadMode + ")";
+		}
+	}
+}
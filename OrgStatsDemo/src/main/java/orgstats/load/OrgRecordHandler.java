@@ -0,0 +1,17 @@
+package orgstats.load;
+
+/**
+ * Receives the values of each line of an org data file from the DataFileParser.
+ */
+interface OrgRecordHandler {
+
+	/**
+	 * Handles the values of one line of org data.
+	 * 
+	 * @param orgId			the unique identifier for the organization
+	 * @param parentOrgId	the parent organization identifier, 0 if the parent is null
+	 * @param name			the organization name
+	 * @throws OrgDataLoaderException	thrown if the org can't be handled
+	 */
+	void handleOrg(int orgId, int parentOrgId, String name) throws OrgDataLoaderException;
+}
@@ -0,0 +1,252 @@
+package orgstats.load;
+
+import static orgstats.store.OrgStatsSnapshotStore.HEADER_SIZE;
+import static orgstats.store.OrgStatsSnapshotStore.MAGIC;
+import static orgstats.store.OrgStatsSnapshotStore.NAME_CHARSET;
+import static orgstats.store.OrgStatsSnapshotStore.ORG_RECORD_SIZE;
+import static orgstats.store.OrgStatsSnapshotStore.USERS_FLAG;
+import static orgstats.store.OrgStatsSnapshotStore.VERSION;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import orgstats.OrgBean;
+import orgstats.OrgCollection;
+
+/**
+ * Loader for restoring a collection of organizations from a snapshot File written by
+ * orgstats.store.OrgStatsSnapshotStore.  The snapshot is memory mapped and read without
+ * parsing any text.
+ * <p>
+ * A snapshot is only valid while the org and user data files have the size and last modified
+ * time they had when it was written, and when users are loaded it must contain the users.
+ * Use isValid() to decide whether to load the snapshot or the data files.
+ */
+public class OrgStatsSnapshotLoader implements OrgDataLoader {
+
+	private static final Logger logger = Logger.getLogger(OrgStatsSnapshotLoader.class.getName());
+
+	private File snapshotFile;
+	private File orgFile;
+	private File userFile;
+	private UserLoadMode userLoadMode;
+
+	/**
+	 * Constructs a new OrgDataLoader given the snapshot File, the org data File and user data File
+	 * the snapshot was written for and what to keep in memory for the users.
+	 *
+	 * @param snapshotFile		the File that contains the snapshot
+	 * @param orgFile			the File that contains the org data
+	 * @param userFile			the File that contains the user data
+	 * @param userLoadMode		USERS to restore every user, AGGREGATES_ONLY to only restore
+	 * 							the usage totals for each organization
+	 */
+	public OrgStatsSnapshotLoader(File snapshotFile, File orgFile, File userFile, UserLoadMode userLoadMode) {
+
+		this.snapshotFile = snapshotFile;
+		this.orgFile = orgFile;
+		this.userFile = userFile;
+		this.userLoadMode = userLoadMode;
+	}
+
+	/**
+	 * Returns true if the snapshot File exists and was written for the current org and user
+	 * data files with this version of the snapshot format.
+	 *
+	 * @return 		true if the snapshot can be loaded
+	 */
+	public boolean isValid() {
+
+		if (!snapshotFile.isFile()) {
+			return false;
+		}
+		FileInputStream snapshotInput = null;
+		try {
+			snapshotInput = new FileInputStream(snapshotFile);
+			String reason = checkHeader(snapshotInput.getChannel());
+			if (reason != null) {
+				logger.log(Level.INFO, "Snapshot file not used, " + reason);
+			}
+			return reason == null;
+		} catch (IOException ioEx) {
+			logger.log(Level.WARNING, "Error reading snapshot file", ioEx);
+			return false;
+		} finally {
+			closeSnapshot(snapshotInput);
+		}
+	}
+
+	/**
+	 * Restores the organizations, their usage and, for USERS, their users from the snapshot File.
+	 *
+	 * @return orgCollection		the OrgCollection containing a tree of OrgBeans
+	 * @throws OrgDataLoaderException	thrown if the snapshot File is not valid for the data files
+	 * 									or can't be read
+	 */
+	@Override
+	public OrgCollection loadData() throws OrgDataLoaderException {
+
+		FileInputStream snapshotInput = null;
+		try {
+			logger.log(Level.INFO, "Reading org snapshot file...");
+			snapshotInput = new FileInputStream(snapshotFile);
+			FileChannel channel = snapshotInput.getChannel();
+			String reason = checkHeader(channel);
+			if (reason != null) {
+				String errMsg = "Snapshot file is not valid, " + reason;
+				logger.log(Level.SEVERE, errMsg);
+				throw new OrgDataLoaderException(errMsg);
+			}
+			return restoreOrgs(channel);
+
+		} catch (IOException ioEx) {
+			String errMsg = "ERROR processing snapshot file (I/O error)";
+			logger.log(Level.SEVERE, errMsg, ioEx);
+			throw new OrgDataLoaderException(errMsg, ioEx);
+		} finally {
+			closeSnapshot(snapshotInput);
+		}
+	}
+
+	/*
+	 * Returns why the snapshot can't be used or null if it can.
+	 */
+	private String checkHeader(FileChannel channel) throws IOException {
+
+		if (channel.size() < HEADER_SIZE) {
+			return "it has no header.";
+		}
+		ByteBuffer header = map(channel, 0, HEADER_SIZE);
+		if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+			return "it is not a version " + VERSION + " snapshot.";
+		}
+		int flags = header.getInt();
+		long orgCount = header.getInt();
+		if (header.getLong() != orgFile.length() || header.getLong() != orgFile.lastModified()
+				|| header.getLong() != userFile.length() || header.getLong() != userFile.lastModified()) {
+			return "the org or user file has changed.";
+		}
+		if ((flags & USERS_FLAG) == 0 && userLoadMode == UserLoadMode.USERS) {
+			return "it has no users.";
+		}
+		long nameByteCount = header.getLong();
+		long userCount = header.getLong();
+		long expectedSize = HEADER_SIZE + orgCount * ORG_RECORD_SIZE + nameByteCount
+				+ ((flags & USERS_FLAG) == 0 ? 0 : userCount * 16);
+		if (channel.size() != expectedSize) {
+			return "it is " + channel.size() + " bytes instead of " + expectedSize + ".";
+		}
+		return null;
+	}
+
+	/*
+	 * Adds the orgs in table order, which links them to their parents, then restores the users
+	 * and usage and checks the totals against the stored totals.  Without UserLoadMode.USERS the
+	 * stored users are only added to the distributions, like a data file load.
+	 */
+	private OrgCollection restoreOrgs(FileChannel channel) throws IOException, OrgDataLoaderException {
+
+		ByteBuffer header = map(channel, 0, HEADER_SIZE);
+		boolean hasUsers = (header.getInt(8) & USERS_FLAG) != 0;
+		int orgCount = header.getInt(12);
+		long nameByteCount = header.getLong(48);
+		long userCount = header.getLong(56);
+
+		long position = HEADER_SIZE;
+		ByteBuffer orgTable = map(channel, position, (long) orgCount * ORG_RECORD_SIZE);
+		position = position + orgTable.capacity();
+		ByteBuffer names = map(channel, position, nameByteCount);
+		position = position + nameByteCount;
+
+		List<OrgBean> orgBeans = new ArrayList<OrgBean>(orgCount);
+		for (int i = 0; i < orgCount; i++) {
+			int record = i * ORG_RECORD_SIZE;
+			byte[] name = new byte[orgTable.getInt(record + 40)];
+			names.get(name);
+			orgBeans.add(new OrgBean(orgTable.getInt(record), orgTable.getInt(record + 4), new String(name, NAME_CHARSET)));
+		}
+		OrgCollection orgCollection = new OrgCollection();
+		orgCollection.addAll(orgBeans);
+
+		IntBuffer userIds = null;
+		IntBuffer userFiles = null;
+		LongBuffer userBytes = null;
+		boolean keepUsers = userLoadMode == UserLoadMode.USERS;
+		if (hasUsers) {
+			userIds = map(channel, position, userCount * 4).asIntBuffer();
+			userFiles = map(channel, position + userCount * 4, userCount * 4).asIntBuffer();
+			userBytes = map(channel, position + userCount * 8, userCount * 8).asLongBuffer();
+		}
+
+		for (int i = 0; i < orgCount; i++) {
+			int record = i * ORG_RECORD_SIZE;
+			OrgBean orgBean = orgBeans.get(i);
+			int numUsers = orgTable.getInt(record + 8);
+			int numFiles = orgTable.getInt(record + 12);
+			long numBytes = orgTable.getLong(record + 16);
+			if (userIds != null) {
+				int orgUserCount = orgTable.getInt(record + 44);
+				for (int j = 0; j < orgUserCount; j++) {
+					int fileCount = userFiles.get();
+					long byteCount = userBytes.get();
+					int userId = userIds.get();
+					if (keepUsers) {
+						orgBean.addUser(userId, fileCount, byteCount);
+					} else {
+						orgBean.addUserUsage(fileCount, byteCount);
+					}
+					numFiles = numFiles - fileCount;
+					numBytes = numBytes - byteCount;
+				}
+				numUsers = numUsers - orgUserCount;
+			}
+			if (numUsers != 0 || numFiles != 0 || numBytes != 0) {
+				orgBean.addUsage(numUsers, numFiles, numBytes);
+			}
+		}
+		orgCollection.computeTotals();
+
+		for (int i = 0; i < orgCount; i++) {
+			int record = i * ORG_RECORD_SIZE;
+			OrgBean orgBean = orgBeans.get(i);
+			if (orgBean.getTotalNumUsers() != orgTable.getInt(record + 24)
+					|| orgBean.getTotalNumFiles() != orgTable.getInt(record + 28)
+					|| orgBean.getTotalNumBytes() != orgTable.getLong(record + 32)) {
+				String errMsg = "ERROR with Snapshot File (invalid totals): " + orgBean.getOrgId();
+				logger.log(Level.SEVERE, errMsg);
+				throw new OrgDataLoaderException(errMsg);
+			}
+		}
+		return orgCollection;
+	}
+
+	/*
+	 * Maps a section of the snapshot read only, a section has to be smaller than 2 GB.
+	 */
+	private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Snapshot section too large to map: " + size + " bytes");
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+	}
+
+	private static void closeSnapshot(FileInputStream snapshotInput) {
+		try {
+			if (snapshotInput != null) {
+				snapshotInput.close();
+			}
+		} catch (IOException ioEx) {
+			logger.log(Level.WARNING, "Error closing snapshot file", ioEx);
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package orgstats.load;
+
+import orgstats.CompactOrgCollection;
+import orgstats.OrgCollection;
+import orgstats.UsageSketch;
+
+/**
+ * User count, file count and byte count per orgId, kept in primitive arrays with 
+ * open addressing on the orgId.  Used to add up part of a user data file before
+ * the totals are added to an OrgCollection.  The distributions of the file and byte 
+ * counts of the users added one at a time are kept with the totals when asked for.
+ */
+class OrgUsageTotals {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private int[] orgIds;
+	private boolean[] used;
+	private int[] numUsers;
+	private int[] numFiles;
+	private long[] numBytes;
+	private UsageSketch[] fileSketches;
+	private UsageSketch[] byteSketches;
+	private final boolean keepSketches;
+	private int size;
+	private int mask;
+
+	OrgUsageTotals() {
+		this(false);
+	}
+
+	/**
+	 * Constructs empty totals.
+	 * 
+	 * @param keepSketches	true to keep the distributions of the users added with addUser()
+	 */
+	OrgUsageTotals(boolean keepSketches) {
+		this.keepSketches = keepSketches;
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Adds usage to the totals for the orgId.
+	 * 
+	 * @param orgId			the organization the usage belongs to
+	 * @param userCount		the number of users to add
+	 * @param fileCount		the number of files to add
+	 * @param byteCount		the number of bytes to add
+	 */
+	void add(int orgId, int userCount, int fileCount, long byteCount) {
+
+		int slot = addSlot(orgId);
+		numUsers[slot] = numUsers[slot] + userCount;
+		numFiles[slot] = numFiles[slot] + fileCount;
+		numBytes[slot] = numBytes[slot] + byteCount;
+	}
+
+	/**
+	 * Adds the usage of one user to the totals and distributions for the orgId.
+	 * 
+	 * @param orgId			the organization the user belongs to
+	 * @param numFiles		the number of files of the user
+	 * @param numBytes		the number of bytes of the user
+	 */
+	void addUser(int orgId, int numFiles, long numBytes) {
+
+		int slot = addSlot(orgId);
+		this.numUsers[slot] = this.numUsers[slot] + 1;
+		this.numFiles[slot] = this.numFiles[slot] + numFiles;
+		this.numBytes[slot] = this.numBytes[slot] + numBytes;
+		if (keepSketches) {
+			sketchesAt(slot);
+			fileSketches[slot].add(numFiles);
+			byteSketches[slot].add(numBytes);
+		}
+	}
+
+	/**
+	 * Adds all of the totals from other to these totals.
+	 * 
+	 * @param other		the totals to add
+	 */
+	void addAll(OrgUsageTotals other) {
+
+		for (int otherSlot = 0; otherSlot < other.orgIds.length; otherSlot++) {
+			if (other.used[otherSlot]) {
+				int slot = addSlot(other.orgIds[otherSlot]);
+				numUsers[slot] = numUsers[slot] + other.numUsers[otherSlot];
+				numFiles[slot] = numFiles[slot] + other.numFiles[otherSlot];
+				numBytes[slot] = numBytes[slot] + other.numBytes[otherSlot];
+				if (keepSketches && other.keepSketches && other.fileSketches[otherSlot] != null) {
+					sketchesAt(slot);
+					fileSketches[slot].merge(other.fileSketches[otherSlot]);
+					byteSketches[slot].merge(other.byteSketches[otherSlot]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the totals of each orgId to the OrgBean in the collection.
+	 * 
+	 * @param orgCollection		the OrgCollection to add the usage to
+	 * @return					the number of users not added because their OrgBean doesn't exist
+	 */
+	long addTo(OrgCollection orgCollection) {
+
+		long orphanUserCount = 0;
+		for (int slot = 0; slot < orgIds.length; slot++) {
+			boolean added = true;
+			if (used[slot] && keepSketches && fileSketches[slot] != null) {
+				added = orgCollection.addUsage(orgIds[slot], numUsers[slot], numFiles[slot], numBytes[slot], 
+						fileSketches[slot], byteSketches[slot]);
+			} else if (used[slot]) {
+				added = orgCollection.addUsage(orgIds[slot], numUsers[slot], numFiles[slot], numBytes[slot]);
+			}
+			if (!added) {
+				orphanUserCount = orphanUserCount + numUsers[slot];
+			}
+		}
+		return orphanUserCount;
+	}
+
+	/**
+	 * Adds the totals of each orgId to the organization in the Builder.
+	 * 
+	 * @param builder		the CompactOrgCollection.Builder to add the usage to
+	 * @return				the number of users not added because their organization doesn't exist
+	 */
+	long addTo(CompactOrgCollection.Builder builder) {
+
+		long orphanUserCount = 0;
+		for (int slot = 0; slot < orgIds.length; slot++) {
+			if (used[slot] && !builder.addUsage(orgIds[slot], numUsers[slot], numFiles[slot], numBytes[slot])) {
+				orphanUserCount = orphanUserCount + numUsers[slot];
+			}
+		}
+		return orphanUserCount;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/*
+	 * Returns the slot of the orgId, which is added if it is new.
+	 */
+	private int addSlot(int orgId) {
+
+		int slot = findSlot(orgId);
+		if (!used[slot]) {
+			used[slot] = true;
+			orgIds[slot] = orgId;
+			size = size + 1;
+			if (size * 2 > orgIds.length) {
+				resize();
+				slot = findSlot(orgId);
+			}
+		}
+		return slot;
+	}
+
+	/*
+	 * Creates the distributions of a slot for its first user.
+	 */
+	private void sketchesAt(int slot) {
+
+		if (fileSketches[slot] == null) {
+			fileSketches[slot] = new UsageSketch();
+			byteSketches[slot] = new UsageSketch();
+		}
+	}
+
+	private int findSlot(int orgId) {
+
+		int hash = orgId * 0x9E3779B9;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (used[slot] && orgIds[slot] != orgId) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void resize() {
+
+		int[] oldOrgIds = orgIds;
+		boolean[] oldUsed = used;
+		int[] oldNumUsers = numUsers;
+		int[] oldNumFiles = numFiles;
+		long[] oldNumBytes = numBytes;
+		UsageSketch[] oldFileSketches = fileSketches;
+		UsageSketch[] oldByteSketches = byteSketches;
+
+		allocate(oldOrgIds.length * 2);
+		for (int oldSlot = 0; oldSlot < oldOrgIds.length; oldSlot++) {
+			if (oldUsed[oldSlot]) {
+				int slot = findSlot(oldOrgIds[oldSlot]);
+				used[slot] = true;
+				orgIds[slot] = oldOrgIds[oldSlot];
+				numUsers[slot] = oldNumUsers[oldSlot];
+				numFiles[slot] = oldNumFiles[oldSlot];
+				numBytes[slot] = oldNumBytes[oldSlot];
+				if (keepSketches) {
+					fileSketches[slot] = oldFileSketches[oldSlot];
+					byteSketches[slot] = oldByteSketches[oldSlot];
+				}
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+
+		orgIds = new int[capacity];
+		used = new boolean[capacity];
+		numUsers = new int[capacity];
+		numFiles = new int[capacity];
+		numBytes = new long[capacity];
+		if (keepSketches) {
+			fileSketches = new UsageSketch[capacity];
+			byteSketches = new UsageSketch[capacity];
+		}
+		mask = capacity - 1;
+	}
+}
@@ -1,207 +1,257 @@
-package orgstats.load;
-
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
-import orgstats.OrgBean;
-import orgstats.OrgCollection;
-import orgstats.UserBean;
-
-import static orgstats.OrgStatsHelper.containsLetterOrDigit;
-import static orgstats.OrgStatsHelper.isInteger;
-
-/**
- * Loader for creating a collection of organizations from an org data file
- * and a use data file.
- */
-public class OrgUserDataFileLoader implements OrgDataLoader {
-	
-	private static final Logger logger = Logger.getLogger(OrgUserDataFileLoader.class.getName());
-	private static final String SEPARATOR = ", ";
-	private static final String NULL_STRING = "null"; 
-	
-	private File orgFile;
-	private File userFile;
-	
-	/**
-	 * Constructs a new OrgDataLoader given a org data File and user data File. 
-	 * 
-	 * @param orgFile
-	 * @param userFile
-	 * 
-	 * @throws OrgDataLoaderException   Thrown if either the orgFile or userFile do not exist.
-	 */
-	public OrgUserDataFileLoader(File orgFile, File userFile) throws OrgDataLoaderException {
-		
-		if (!orgFile.exists() || !orgFile.canRead()) {
-			String errMsg = "Organization file specified is not valid.";
-			logger.log(Level.SEVERE, errMsg);
-			throw new OrgDataLoaderException(errMsg);
-		}
-		
-		if (!userFile.exists() || !userFile.canRead()) {
-			String errMsg = "User file specified is not valid.";
-			logger.log(Level.SEVERE, errMsg);
-			throw new OrgDataLoaderException(errMsg);
-		}
-	
-		this.orgFile = orgFile;
-		this.userFile = userFile;
-	}
-
-	/**
-	 * Populates organization, user, and file usage data into an OrgCollection from two
-	 * separate input files.
-	 * 
-	 * @return orgCollection		the OrgCollection containing a tree of OrgBeans			
-	 */
-	@Override
-	public OrgCollection loadData() throws OrgDataLoaderException {
-
-		OrgCollection orgCollection = new OrgCollection();
-		populateOrgs(orgCollection);
-		populateUsers(orgCollection);
-		return orgCollection;
-	}
-	
-	/**
-	 * Populates the orgCollection with OrgBeans constructed from each line in the data file.
-	 *  
-	 * @param orgCollection		the OrgCollection to be populated with OrgBeans
-	 * @throws OrgDataLoaderException	thrown if there are not three data items separated by commas,
-	 *                          the orgId, and parentOrgId aren't integers, or the orgName doesn't
-	 *                          contain a number or letter
-	 */
-	void populateOrgs(OrgCollection orgCollection) throws OrgDataLoaderException {
-		
-		BufferedReader orgReader = null;
-		try {
-			logger.log(Level.INFO, "Reading org hierarchy data file...");
-			orgReader = new BufferedReader(new FileReader(orgFile));
-			String currentLine;
-			while ((currentLine = orgReader.readLine()) != null) {
-				orgCollection.add(constructOrgBean(currentLine));
-			}
-			
-		} catch (IOException ioEx) {
-			String errMsg = "ERROR processing org data file (I/O error)";
-			logger.log(Level.SEVERE, errMsg, ioEx);
-			throw new OrgDataLoaderException(errMsg, ioEx);	
-		} finally {
-			try {
-				if (orgReader != null) {
-					orgReader.close();
-				}
-			} catch (IOException ioEx) {
-				logger.log(Level.WARNING, "Error closing org data file", ioEx);
-			}
-		}
-	}
-	
-	/**
-	 * Populates the orgCollection with UserBean objects constructed from each line in the data file.
-	 * The UserBean objects are put in the collection on the appropriate OrgBean.
-	 * 
-	 * @param orgCollection 			the OrgCollection to be populated with UserBeans
-	 * @throws OrgDataLoaderException
-	 */
-	void populateUsers(OrgCollection orgCollection) throws OrgDataLoaderException {
-		
-		BufferedReader userReader = null;
-		try {
-			logger.log(Level.INFO, "Reading user hierarchy data file...");
-			userReader = new BufferedReader(new FileReader(userFile));
-			String currentLine;
-			while ((currentLine = userReader.readLine()) != null) {
-				orgCollection.addUser(constructUserBean(currentLine));
-			}
-			
-		} catch (IOException ioEx) {
-			String errMsg = "ERROR processing user data file (I/O error)";
-			logger.log(Level.SEVERE, errMsg, ioEx);
-			throw new OrgDataLoaderException(errMsg, ioEx);	
-		} finally {
-			try {
-				if (userReader != null) {
-					userReader.close();
-				}
-			} catch (IOException ioEx) {
-				logger.log(Level.WARNING, "Error closing user data file", ioEx);
-			}
-		}
-	}
-	
-	/**
-	 * Constructs an OrgBean given a line of data with this format:
-	 * <p>
-	 *  orgId, parentOrgId, orgName
-	 * 
-	 * @param currentLine		the line containing the orgId, parentOrgId, and orgName
-	 * @return OrgBean			the OrgBean constructed using the currentLine data
-	 * @throws OrgDataLoaderException	thrown if there are not three data items separated by commas,
-	 *                          the orgId, and parentOrgId aren't integers, or the orgName doesn't
-	 *                          contain a number or letter
-	 */
-	OrgBean constructOrgBean(String currentLine) throws OrgDataLoaderException {
-		
-		String orgData[] = currentLine.split(SEPARATOR);
-		if (orgData.length != 3) {
-			throw new OrgDataLoaderException("ERROR with Org File (not 3 items on line): "+ currentLine);
-		}
-		if (!isInteger(orgData[0]))  {
-			throw new OrgDataLoaderException("ERROR with Org File (invalid org id): "+ currentLine);
-		}
-		if (!isInteger(orgData[1]) && !NULL_STRING.endsWith(orgData[1])) {
-			throw new OrgDataLoaderException("ERROR with Org File (invalid parent org id): "+ currentLine);
-		}
-		if (!containsLetterOrDigit(orgData[2])) {
-			throw new OrgDataLoaderException("ERROR with Org File (invalid org name): "+ currentLine);
-		}
-		Integer orgId = Integer.valueOf(orgData[0]);
-		Integer parentOrgId = NULL_STRING.equals(orgData[1]) ? 0 : Integer.valueOf(orgData[1]);
-		String orgName = orgData[2];
-		
-		return new OrgBean(orgId, parentOrgId, orgName);
-	}
-
-	/**
-	 * Constructs an UserBean given a line of data with this format:
-	 * <p>
-	 *  userId, orgId, fileCount, byteCount
-	 * 
-	 * @param currentLine		the line containing the userId, orgId, fileCount, byteCount
-	 * @return OrgBean			the UserBean constructed using the currentLine data
-	 * @throws OrgDataLoaderException	thrown if there are not four data items separated by commas,
-	 *                          the userId, orgId, fileCount, and/or byteCount aren't numbers
-	 */
-	UserBean constructUserBean(String currentLine) throws OrgDataLoaderException {
-		
-		String userData[] = currentLine.split(SEPARATOR);
-		if (userData.length != 4) {
-			throw new OrgDataLoaderException("ERROR with User File (not 4 items on line): "+ currentLine);
-		}
-		if (!isInteger(userData[0])) {
-			throw new OrgDataLoaderException("ERROR with User File (invalid user id): "+ currentLine);
-		}
-		if (!isInteger(userData[1])) {
-			throw new OrgDataLoaderException("ERROR with User File (invalid org id): "+ currentLine);
-		}
-		if (!isInteger(userData[2])) {
-			throw new OrgDataLoaderException("ERROR with User File (invalid fileCount): "+ currentLine);
-		}
-		if (!isInteger(userData[3])) {
-			throw new OrgDataLoaderException("ERROR with User File (invalid fileByte): "+ currentLine);
-		}
-
-		Integer userId = Integer.valueOf(userData[0]);
-		Integer orgId = Integer.valueOf(userData[1]);
-		Integer fileCount = Integer.valueOf(userData[2]);
-		Long byteCount = Long.valueOf(userData[3]);
-		
-		return new UserBean(userId, orgId, fileCount, byteCount);
-	}
-}
+package orgstats.load;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import orgstats.DataCompression;
+import orgstats.OrgBean;
+import orgstats.OrgCollection;
+import orgstats.metrics.OrgStatsMetrics;
+
+/**
+ * Loader for creating a collection of organizations from an org data file
+ * and a use data file.  Either file can be gzip or block gzip compressed, see
+ * DataCompression, and is decompressed while it is read.
+ */
+public class OrgUserDataFileLoader implements OrgDataLoader {
+	
+	private static final Logger logger = Logger.getLogger(OrgUserDataFileLoader.class.getName());
+	
+	private File orgFile;
+	private File userFile;
+	private UserLoadMode userLoadMode;
+	private int threadCount;
+	
+	/**
+	 * Constructs a new OrgDataLoader given a org data File and user data File. 
+	 * Every user is stored on its organization.
+	 * 
+	 * @param orgFile
+	 * @param userFile
+	 * 
+	 * @throws OrgDataLoaderException   Thrown if either the orgFile or userFile do not exist.
+	 */
+	public OrgUserDataFileLoader(File orgFile, File userFile) throws OrgDataLoaderException {
+		this(orgFile, userFile, UserLoadMode.USERS);
+	}
+	
+	/**
+	 * Constructs a new OrgDataLoader given a org data File, user data File and 
+	 * what to keep in memory for the users. 
+	 * 
+	 * @param orgFile
+	 * @param userFile
+	 * @param userLoadMode		USERS to store every user, AGGREGATES_ONLY to only keep
+	 * 							the usage totals for each organization
+	 * 
+	 * @throws OrgDataLoaderException   Thrown if either the orgFile or userFile do not exist.
+	 */
+	public OrgUserDataFileLoader(File orgFile, File userFile, UserLoadMode userLoadMode) 
+			throws OrgDataLoaderException {
+		this(orgFile, userFile, userLoadMode, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Constructs a new OrgDataLoader given a org data File, user data File,
+	 * what to keep in memory for the users and the number of threads that parse 
+	 * the data Files. 
+	 * 
+	 * @param orgFile
+	 * @param userFile
+	 * @param userLoadMode		USERS to store every user, AGGREGATES_ONLY to only keep
+	 * 							the usage totals for each organization
+	 * @param threadCount		the number of threads that parse the data Files, the users
+	 * 							are added to the collection on the calling thread except for
+	 * 							AGGREGATES_ONLY with more than one thread
+	 * 
+	 * @throws OrgDataLoaderException   Thrown if either the orgFile or userFile do not exist.
+	 */
+	public OrgUserDataFileLoader(File orgFile, File userFile, UserLoadMode userLoadMode, int threadCount) 
+			throws OrgDataLoaderException {
+		
+		if (!orgFile.exists() || !orgFile.canRead()) {
+			String errMsg = "Organization file specified is not valid.";
+			logger.log(Level.SEVERE, errMsg);
+			throw new OrgDataLoaderException(errMsg);
+		}
+		
+		if (!userFile.exists() || !userFile.canRead()) {
+			String errMsg = "User file specified is not valid.";
+			logger.log(Level.SEVERE, errMsg);
+			throw new OrgDataLoaderException(errMsg);
+		}
+	
+		this.orgFile = orgFile;
+		this.userFile = userFile;
+		this.userLoadMode = userLoadMode;
+		this.threadCount = Math.max(1, threadCount);
+	}
+
+	/**
+	 * Populates organization, user, and file usage data into an OrgCollection from two
+	 * separate input files.  The throughput of the load is recorded in OrgStatsMetrics.LOADER.
+	 * 
+	 * @return orgCollection		the OrgCollection containing a tree of OrgBeans			
+	 */
+	@Override
+	public OrgCollection loadData() throws OrgDataLoaderException {
+
+		long startNanos = OrgStatsMetrics.LOADER.startLoad();
+		try {
+			OrgCollection orgCollection = new OrgCollection();
+			populateOrgs(orgCollection);
+			populateUsers(orgCollection);
+			orgCollection.computeTotals();
+			return orgCollection;
+		} finally {
+			OrgStatsMetrics.LOADER.endLoad(startNanos);
+		}
+	}
+	
+	/**
+	 * Populates the orgCollection with OrgBeans constructed from each line in the data file.
+	 * All of the OrgBeans are read before they are linked to their parents, so the lines
+	 * can be in any order.  The file is read, parsed and added in a PipelinedFileReader.
+	 *  
+	 * @param orgCollection		the OrgCollection to be populated with OrgBeans
+	 * @throws OrgDataLoaderException	thrown if there are not three data items separated by commas,
+	 *                          the orgId, and parentOrgId aren't integers, or the orgName doesn't
+	 *                          contain a number or letter
+	 */
+	void populateOrgs(final OrgCollection orgCollection) throws OrgDataLoaderException {
+		
+		FileInputStream orgInput = null;
+		try {
+			logger.log(Level.INFO, "Reading org hierarchy data file...");
+			orgInput = new FileInputStream(orgFile);
+			final List<OrgBean> orgBeans = new ArrayList<OrgBean>();
+			new PipelinedFileReader<List<OrgBean>>(threadCount) {
+				List<OrgBean> parseBlock(DataFileParser parser, byte[] block, int length, List<OrgBean> batch)
+						throws OrgDataLoaderException {
+					final List<OrgBean> blockOrgs = batch != null ? batch : new ArrayList<OrgBean>();
+					blockOrgs.clear();
+					parser.parseOrgs(block, length, new OrgRecordHandler() {
+						public void handleOrg(int orgId, int parentOrgId, String name) {
+							blockOrgs.add(new OrgBean(orgId, parentOrgId, name));
+						}
+					});
+					return blockOrgs;
+				}
+				void attach(List<OrgBean> batch) {
+					orgBeans.addAll(batch);
+				}
+			}.read(orgInput.getChannel());
+			orgCollection.addAll(orgBeans);
+			
+		} catch (IOException ioEx) {
+			String errMsg = "ERROR processing org data file (I/O error)";
+			logger.log(Level.SEVERE, errMsg, ioEx);
+			throw new OrgDataLoaderException(errMsg, ioEx);	
+		} finally {
+			try {
+				if (orgInput != null) {
+					orgInput.close();
+				}
+			} catch (IOException ioEx) {
+				logger.log(Level.WARNING, "Error closing org data file", ioEx);
+			}
+		}
+	}
+	
+	/**
+	 * Populates the orgCollection with the users from each line in the data file.
+	 * The users are stored on the appropriate OrgBean without constructing UserBeans.  The file
+	 * is read, parsed into batches of users and the batches added to the OrgBeans in a 
+	 * PipelinedFileReader, so reading, parsing and adding overlap.  When only aggregates are 
+	 * loaded, the users aren't stored and only the usage is added to the OrgBean.  With more than
+	 * one thread an uncompressed file is then read in chunks on several threads and the totals of
+	 * the chunks are added to the OrgBeans at the end.
+	 * 
+	 * @param orgCollection 			the OrgCollection to be populated with users
+	 * @throws OrgDataLoaderException	thrown if there are not four data items separated by commas,
+	 *                          the userId, orgId, fileCount, and/or byteCount aren't numbers
+	 */
+	void populateUsers(final OrgCollection orgCollection) throws OrgDataLoaderException {
+		
+		FileInputStream userInput = null;
+		try {
+			logger.log(Level.INFO, "Reading user hierarchy data file...");
+			userInput = new FileInputStream(userFile);
+			FileChannel userChannel = userInput.getChannel();
+			boolean compressed = DataCompression.detect(userChannel) != DataCompression.NONE;
+			long orphanUserCount;
+			if (userLoadMode == UserLoadMode.AGGREGATES_ONLY && threadCount > 1 && !compressed) {
+				orphanUserCount = new ChunkedUserFileReader(threadCount).readTotals(userChannel).addTo(orgCollection);
+			} else if (userLoadMode == UserLoadMode.AGGREGATES_ONLY) {
+				UserBatchReader userReader = new UserBatchReader(threadCount) {
+					void attach(UserRecordBatch batch) {
+						for (int i = 0; i < batch.size(); i++) {
+							if (!orgCollection.addUserUsage(batch.getOrgId(i), batch.getNumFiles(i), batch.getNumBytes(i))) {
+								orphanUserCount++;
+							}
+						}
+					}
+				};
+				userReader.read(userChannel);
+				orphanUserCount = userReader.orphanUserCount;
+			} else {
+				UserBatchReader userReader = new UserBatchReader(threadCount) {
+					void attach(UserRecordBatch batch) {
+						for (int i = 0; i < batch.size(); i++) {
+							if (!orgCollection.addUser(batch.getUserId(i), batch.getOrgId(i), batch.getNumFiles(i), 
+									batch.getNumBytes(i))) {
+								orphanUserCount++;
+							}
+						}
+					}
+				};
+				userReader.read(userChannel);
+				orphanUserCount = userReader.orphanUserCount;
+			}
+			if (orphanUserCount > 0) {
+				logger.log(Level.WARNING, orphanUserCount + " users not added.  Their orgs don't exist.");
+			}
+			
+		} catch (IOException ioEx) {
+			String errMsg = "ERROR processing user data file (I/O error)";
+			logger.log(Level.SEVERE, errMsg, ioEx);
+			throw new OrgDataLoaderException(errMsg, ioEx);	
+		} finally {
+			try {
+				if (userInput != null) {
+					userInput.close();
+				}
+			} catch (IOException ioEx) {
+				logger.log(Level.WARNING, "Error closing user data file", ioEx);
+			}
+		}
+	}
+
+	/*
+	 * Reads a user data file in a pipeline with the users of each block in a UserRecordBatch.
+	 */
+	private abstract static class UserBatchReader extends PipelinedFileReader<UserRecordBatch> {
+
+		// The users whose org doesn't exist, counted by attach() on the calling thread
+		long orphanUserCount;
+
+		UserBatchReader(int parserCount) {
+			super(parserCount);
+		}
+
+		UserRecordBatch parseBlock(DataFileParser parser, byte[] block, int length, UserRecordBatch batch)
+				throws OrgDataLoaderException {
+
+			UserRecordBatch blockUsers = batch != null ? batch : new UserRecordBatch();
+			blockUsers.clear();
+			parser.parseUsers(block, length, blockUsers);
+			return blockUsers;
+		}
+	}
+}
@@ -0,0 +1,557 @@
+package orgstats.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Inflater;
+
+import orgstats.BlockGzip;
+import orgstats.DataCompression;
+import orgstats.metrics.LoaderMetrics.Stage;
+import orgstats.metrics.OrgStatsMetrics;
+
+/**
+ * Reads a data file in three stages connected by bounded queues, so reading the file, parsing
+ * its lines and adding the records to a collection overlap:
+ * <p>
+ *  READ		one thread reads blocks of whole lines from the file<br>
+ *  PARSE		parserCount threads parse the blocks into batches of records, see parseBlock()<br>
+ *  ATTACH		the calling thread adds the batches to the collection, see attach()
+ * <p>
+ * The blocks are dealt to the parsers in turn and the batches are taken from the parsers in
+ * the same turn, so the batches are attached in file order without sorting them and an invalid
+ * line is reported the same way as on one thread.  Each parser has a queue of queueCapacity
+ * blocks and one of queueCapacity batches.  A full queue blocks the stage that fills it, so a
+ * slow stage slows down the stages before it instead of the file being buffered in memory.
+ * Blocks and batches are reused once they have been parsed and attached.
+ * <p>
+ * Any error of the READ and PARSE stages, including an Error such as an OutOfMemoryError, is
+ * passed on in file order and thrown by read().  The ATTACH stage also checks that the other 
+ * stages are still running while it waits, so a stage thread that ends without passing on its
+ * error fails the load instead of leaving read() waiting for ever.
+ * <p>
+ * A gzip file is decompressed by the READ stage, so decompressing overlaps parsing.  The members
+ * of a block gzip file (BlockGzip) are read as they are and each PARSE thread decompresses the
+ * members it parses, so a block gzip file is decompressed on parserCount threads.
+ * <p>
+ * The time each stage works and is blocked on a queue is added to OrgStatsMetrics.LOADER and
+ * logged, the stage that works the most is the bottleneck.
+ *
+ * @param <T>		the type of a batch of records
+ */
+abstract class PipelinedFileReader<T> {
+
+	private static final Logger logger = Logger.getLogger(PipelinedFileReader.class.getName());
+
+	static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+	static final int DEFAULT_QUEUE_CAPACITY = 2;
+	private static final int MIN_BLOCK_SIZE = 64;
+	private static final long WORKER_CHECK_MILLIS = 100;
+
+	private final int parserCount;
+	private final int blockSize;
+	private final int queueCapacity;
+	private final Queue<byte[]> freeBlocks = new ConcurrentLinkedQueue<byte[]>();
+	private final Queue<T> freeBatches = new ConcurrentLinkedQueue<T>();
+	private final AtomicLongArray busyNanos = new AtomicLongArray(Stage.values().length);
+	private final AtomicLongArray blockedNanos = new AtomicLongArray(Stage.values().length);
+
+	// The number of blocks the read stage has sent and the parse threads it sends them to, only
+	// used by its thread.
+	private int sentCount;
+	private List<Future<?>> parseThreads;
+
+	/**
+	 * Constructs a reader with parserCount parse threads and the default block size.
+	 *
+	 * @param parserCount		the number of threads parsing blocks
+	 */
+	PipelinedFileReader(int parserCount) {
+		this(parserCount, DEFAULT_BLOCK_SIZE, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * Constructs a reader with parserCount parse threads.
+	 *
+	 * @param parserCount		the number of threads parsing blocks
+	 * @param blockSize			the number of bytes read at a time, a block grows for a longer line
+	 * @param queueCapacity		the number of blocks and of batches queued for each parser
+	 */
+	PipelinedFileReader(int parserCount, int blockSize, int queueCapacity) {
+		this.parserCount = Math.max(1, parserCount);
+		this.blockSize = Math.max(MIN_BLOCK_SIZE, blockSize);
+		this.queueCapacity = Math.max(1, queueCapacity);
+	}
+
+	/**
+	 * Parses the lines of a block into a batch, called on the parse threads.
+	 *
+	 * @param parser			the DataFileParser of the parse thread
+	 * @param block				the bytes of whole lines
+	 * @param length			the number of bytes in the block
+	 * @param batch				a batch that was attached and can be reused, or null
+	 * @return					the batch of records of the block
+	 * @throws OrgDataLoaderException	thrown for an invalid line
+	 */
+	abstract T parseBlock(DataFileParser parser, byte[] block, int length, T batch) throws OrgDataLoaderException;
+
+	/**
+	 * Adds a batch to the collection, called on the thread that called read() in file order.
+	 * The batch is reused once attach() returns.
+	 *
+	 * @param batch				the batch of records of a block
+	 * @throws OrgDataLoaderException	thrown if the records can't be added
+	 */
+	abstract void attach(T batch) throws OrgDataLoaderException;
+
+	/**
+	 * Reads, parses and attaches every line of the file from the position of the channel and 
+	 * returns once the last batch is attached or the first error is found.  The compression of 
+	 * the file is found from its first bytes, see DataCompression.detect().
+	 *
+	 * @param channel			the FileChannel of the data file
+	 * @throws IOException		if any unexpected I/O error occurs
+	 * @throws OrgDataLoaderException	thrown for the first invalid line in the file
+	 */
+	void read(final FileChannel channel) throws IOException, OrgDataLoaderException {
+
+		final List<BlockingQueue<Block>> blockQueues = new ArrayList<BlockingQueue<Block>>();
+		List<BlockingQueue<Batch<T>>> batchQueues = new ArrayList<BlockingQueue<Batch<T>>>();
+		List<Future<?>> workers = new ArrayList<Future<?>>();
+		ExecutorService executor = Executors.newFixedThreadPool(parserCount + 1);
+		sentCount = 0;
+		try {
+			for (int parser = 0; parser < parserCount; parser++) {
+				final BlockingQueue<Block> blocks = new ArrayBlockingQueue<Block>(queueCapacity);
+				final BlockingQueue<Batch<T>> batches = new ArrayBlockingQueue<Batch<T>>(queueCapacity);
+				blockQueues.add(blocks);
+				batchQueues.add(batches);
+				workers.add(executor.submit(new Runnable() {
+					public void run() {
+						parseBlocks(blocks, batches);
+					}
+				}));
+			}
+			parseThreads = new ArrayList<Future<?>>(workers);
+			workers.add(executor.submit(new Runnable() {
+				public void run() {
+					readBlocks(channel, blockQueues);
+				}
+			}));
+			attachBatches(batchQueues, workers);
+		} finally {
+			executor.shutdownNow();
+			recordStageTimes();
+		}
+	}
+
+	/**
+	 * Returns the time a stage spent working, added up over its threads.
+	 *
+	 * @param stage				the stage
+	 * @return					the time in nanoseconds
+	 */
+	long getBusyNanos(Stage stage) {
+		return busyNanos.get(stage.ordinal());
+	}
+
+	/**
+	 * Returns the time a stage spent blocked on its queues, added up over its threads.
+	 *
+	 * @param stage				the stage
+	 * @return					the time in nanoseconds
+	 */
+	long getBlockedNanos(Stage stage) {
+		return blockedNanos.get(stage.ordinal());
+	}
+
+	/*
+	 * Reads the file into blocks and sends them to the parsers in turn, followed by the end of
+	 * the file or the error that stopped the reading.  A gzip file is decompressed here, the members of a block gzip
+	 * file are sent as they are and decompressed by the parsers.
+	 */
+	private void readBlocks(FileChannel channel, List<BlockingQueue<Block>> blockQueues) {
+
+		try {
+			InputStream input = null;
+			try {
+				DataCompression compression = DataCompression.detect(channel);
+				if (compression == DataCompression.BLOCK_GZIP) {
+					readMembers(channel, blockQueues);
+				} else if (compression == DataCompression.GZIP) {
+					input = compression.decompress(Channels.newInputStream(channel));
+					readLines(Channels.newChannel(input), blockSize, blockQueues);
+				} else {
+					readLines(channel, channel.size() - channel.position(), blockQueues);
+				}
+			} catch (InterruptedException interruptedEx) {
+				throw interruptedEx;
+			} catch (Throwable failure) {
+				send(blockQueues, new Block(null, 0, failure, false));
+			} finally {
+				closeInput(input);
+			}
+			for (int i = 0; i < parserCount; i++) {
+				send(blockQueues, Block.END);
+			}
+		} catch (InterruptedException interruptedEx) {
+			// The load ended before the file was read.
+		}
+	}
+
+	/*
+	 * Reads the input into blocks that end after the last newline read, the rest of the line is
+	 * moved to the start of the next block.
+	 */
+	private void readLines(ReadableByteChannel input, long sizeHint, List<BlockingQueue<Block>> blockQueues) 
+			throws IOException, InterruptedException {
+
+		byte[] block = new byte[(int) Math.max(MIN_BLOCK_SIZE, Math.min(blockSize, sizeHint))];
+		int filled = 0;
+		while (true) {
+			long startNanos = System.nanoTime();
+			ByteBuffer byteBuffer = ByteBuffer.wrap(block, filled, block.length - filled);
+			boolean endOfFile = false;
+			while (byteBuffer.hasRemaining() && !endOfFile) {
+				endOfFile = input.read(byteBuffer) < 0;
+			}
+			filled = byteBuffer.position();
+			int length = endOfFile ? filled : lastNewline(block, filled) + 1;
+			if (length == 0 && !endOfFile) {
+				// A line longer than the block.
+				block = Arrays.copyOf(block, block.length * 2);
+				addNanos(busyNanos, Stage.READ, startNanos);
+				continue;
+			}
+			byte[] nextBlock = null;
+			if (!endOfFile) {
+				nextBlock = takeFreeBlock(filled - length + 1);
+				System.arraycopy(block, length, nextBlock, 0, filled - length);
+			}
+			addNanos(busyNanos, Stage.READ, startNanos);
+			if (length > 0) {
+				send(blockQueues, new Block(block, length, null, false));
+			}
+			if (endOfFile) {
+				return;
+			}
+			block = nextBlock;
+			filled = filled - length;
+		}
+	}
+
+	/*
+	 * Reads the members of a block gzip file into blocks of their own.
+	 */
+	private void readMembers(FileChannel channel, List<BlockingQueue<Block>> blockQueues) 
+			throws IOException, InterruptedException {
+
+		long size = channel.size();
+		long position = channel.position();
+		byte[] header = new byte[BlockGzip.HEADER_LENGTH];
+		while (position < size) {
+			long startNanos = System.nanoTime();
+			int headerLength = readFully(channel, header, 0, header.length, position);
+			int memberLength = BlockGzip.memberLength(header, 0, headerLength);
+			if (memberLength < 0) {
+				throw new IOException("Invalid block gzip member at position " + position);
+			}
+			if (memberLength > size - position) {
+				// A corrupt length is checked before a block that long is allocated.
+				throw new IOException("Block gzip file ends in a member at position " + position);
+			}
+			byte[] block = takeFreeBlock(memberLength);
+			System.arraycopy(header, 0, block, 0, header.length);
+			int length = header.length + readFully(channel, block, header.length, memberLength - header.length, 
+					position + header.length);
+			if (length < memberLength) {
+				throw new IOException("Block gzip file ends in a member at position " + position);
+			}
+			position = position + memberLength;
+			addNanos(busyNanos, Stage.READ, startNanos);
+			send(blockQueues, new Block(block, memberLength, null, true));
+		}
+	}
+
+	/*
+	 * Sends a block to the parser whose turn it is.  If that parse thread has ended nothing
+	 * takes its blocks any more, so the reading stops as if interrupted and the ATTACH stage
+	 * throws the error of the parse thread.
+	 */
+	private void send(List<BlockingQueue<Block>> blockQueues, Block block) throws InterruptedException {
+
+		BlockingQueue<Block> blocks = blockQueues.get(sentCount % parserCount);
+		if (!blocks.offer(block)) {
+			long startNanos = System.nanoTime();
+			Future<?> parseThread = parseThreads.get(sentCount % parserCount);
+			while (!blocks.offer(block, WORKER_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+				if (parseThread.isDone()) {
+					throw new InterruptedException("Parse thread ended");
+				}
+			}
+			addNanos(blockedNanos, Stage.READ, startNanos);
+		}
+		sentCount = sentCount + 1;
+	}
+
+	/*
+	 * Closes the decompressing stream, which closes the channel too.
+	 */
+	private static void closeInput(InputStream input) {
+
+		try {
+			if (input != null) {
+				input.close();
+			}
+		} catch (IOException ioEx) {
+			logger.log(Level.WARNING, "Error closing compressed data file", ioEx);
+		}
+	}
+
+	/*
+	 * Reads up to length bytes at the position, fewer only at the end of the file.
+	 */
+	private static int readFully(FileChannel channel, byte[] bytes, int offset, int length, long position) 
+			throws IOException {
+
+		ByteBuffer byteBuffer = ByteBuffer.wrap(bytes, offset, length);
+		while (byteBuffer.hasRemaining()) {
+			int read = channel.read(byteBuffer, position + byteBuffer.position() - offset);
+			if (read < 0) {
+				break;
+			}
+		}
+		return byteBuffer.position() - offset;
+	}
+
+	/*
+	 * Parses the blocks of one parser into batches until the end of the file.  An error, even
+	 * an Error, is passed on as a batch, so it is reported in file order.
+	 */
+	private void parseBlocks(BlockingQueue<Block> blocks, BlockingQueue<Batch<T>> batches) {
+
+		DataFileParser parser = new DataFileParser();
+		Inflater inflater = null;
+		byte[] inflated = null;
+		try {
+			while (true) {
+				Block block = take(blocks, Stage.PARSE);
+				if (block == Block.END) {
+					put(batches, new Batch<T>(null, null), Stage.PARSE);
+					return;
+				}
+				Batch<T> batch;
+				if (block.failure != null) {
+					batch = new Batch<T>(null, block.failure);
+				} else {
+					long startNanos = System.nanoTime();
+					try {
+						if (block.compressed) {
+							if (inflater == null) {
+								inflater = new Inflater(true);
+							}
+							int length = BlockGzip.uncompressedLength(block.bytes, block.length);
+							if (inflated == null || inflated.length < length) {
+								inflated = new byte[Math.max(blockSize, length)];
+							}
+							length = BlockGzip.inflateMember(block.bytes, block.length, inflater, inflated);
+							batch = new Batch<T>(parseBlock(parser, inflated, length, freeBatches.poll()), null);
+						} else {
+							batch = new Batch<T>(parseBlock(parser, block.bytes, block.length, freeBatches.poll()), null);
+						}
+					} catch (Throwable failure) {
+						batch = new Batch<T>(null, failure);
+					}
+					freeBlocks.offer(block.bytes);
+					addNanos(busyNanos, Stage.PARSE, startNanos);
+				}
+				put(batches, batch, Stage.PARSE);
+			}
+		} catch (InterruptedException interruptedEx) {
+			// The load ended before the file was parsed.
+		} finally {
+			if (inflater != null) {
+				inflater.end();
+			}
+		}
+	}
+
+	/*
+	 * Attaches the batches of the parsers in turn until the end of the file.
+	 */
+	private void attachBatches(List<BlockingQueue<Batch<T>>> batchQueues, List<Future<?>> workers) 
+			throws IOException, OrgDataLoaderException {
+
+		try {
+			for (int next = 0; ; next++) {
+				Batch<T> batch = takeBatch(batchQueues.get(next % parserCount), workers);
+				if (batch.failure != null) {
+					throwFailure(batch.failure);
+				}
+				if (batch.records == null) {
+					return;
+				}
+				long startNanos = System.nanoTime();
+				attach(batch.records);
+				addNanos(busyNanos, Stage.ATTACH, startNanos);
+				freeBatches.offer(batch.records);
+			}
+		} catch (InterruptedException interruptedEx) {
+			Thread.currentThread().interrupt();
+			throw new OrgDataLoaderException("Interrupted reading data file", interruptedEx);
+		}
+	}
+
+	/*
+	 * Takes the next batch of a parser, and throws the error of a READ or PARSE thread that 
+	 * ended without passing it on while waiting for it.
+	 */
+	private Batch<T> takeBatch(BlockingQueue<Batch<T>> batches, List<Future<?>> workers) 
+			throws IOException, OrgDataLoaderException, InterruptedException {
+
+		Batch<T> batch = batches.poll();
+		if (batch == null) {
+			long startNanos = System.nanoTime();
+			while ((batch = batches.poll(WORKER_CHECK_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+				for (Future<?> worker : workers) {
+					if (worker.isDone()) {
+						try {
+							worker.get();
+						} catch (ExecutionException executionEx) {
+							throwFailure(executionEx.getCause());
+						}
+					}
+				}
+			}
+			addNanos(blockedNanos, Stage.ATTACH, startNanos);
+		}
+		return batch;
+	}
+
+	private static void throwFailure(Throwable failure) throws IOException, OrgDataLoaderException {
+
+		if (failure instanceof OrgDataLoaderException) {
+			throw (OrgDataLoaderException) failure;
+		}
+		if (failure instanceof IOException) {
+			throw (IOException) failure;
+		}
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		}
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+		throw new OrgDataLoaderException("ERROR processing data file", failure);
+	}
+
+	private <E> void put(BlockingQueue<E> queue, E element, Stage stage) throws InterruptedException {
+
+		if (!queue.offer(element)) {
+			long startNanos = System.nanoTime();
+			queue.put(element);
+			addNanos(blockedNanos, stage, startNanos);
+		}
+	}
+
+	private <E> E take(BlockingQueue<E> queue, Stage stage) throws InterruptedException {
+
+		E element = queue.poll();
+		if (element == null) {
+			long startNanos = System.nanoTime();
+			element = queue.take();
+			addNanos(blockedNanos, stage, startNanos);
+		}
+		return element;
+	}
+
+	/*
+	 * Returns a block that was parsed, or a new block, with room for at least minSize bytes.
+	 */
+	private byte[] takeFreeBlock(int minSize) {
+
+		byte[] block = freeBlocks.poll();
+		return block != null && block.length >= minSize ? block : new byte[Math.max(blockSize, minSize)];
+	}
+
+	private static void addNanos(AtomicLongArray nanos, Stage stage, long startNanos) {
+		nanos.addAndGet(stage.ordinal(), System.nanoTime() - startNanos);
+	}
+
+	private static int lastNewline(byte[] block, int filled) {
+
+		for (int i = filled - 1; i >= 0; i--) {
+			if (block[i] == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * Adds the stage times of this read to the loader metrics and logs them.
+	 */
+	private void recordStageTimes() {
+
+		StringBuilder stageTimes = new StringBuilder("Pipeline stage times (busy/blocked ms):");
+		for (Stage stage : Stage.values()) {
+			OrgStatsMetrics.LOADER.addStageNanos(stage, getBusyNanos(stage), getBlockedNanos(stage));
+			stageTimes.append(' ').append(stage).append(' ').append(getBusyNanos(stage) / 1000000)
+					.append('/').append(getBlockedNanos(stage) / 1000000);
+		}
+		logger.log(Level.INFO, stageTimes.toString());
+	}
+
+	/*
+	 * A block of whole lines or a block gzip member of whole lines from the reader, or the error
+	 * that ended the reading.
+	 */
+	private static final class Block {
+
+		static final Block END = new Block(null, 0, null, false);
+
+		final byte[] bytes;
+		final int length;
+		final Throwable failure;
+		final boolean compressed;
+
+		Block(byte[] bytes, int length, Throwable failure, boolean compressed) {
+			this.bytes = bytes;
+			this.length = length;
+			this.failure = failure;
+			this.compressed = compressed;
+		}
+	}
+
+	/*
+	 * The records of a block, the error parsing it, or neither at the end of the file.
+	 */
+	private static final class Batch<R> {
+
+		final R records;
+		final Throwable failure;
+
+		Batch(R records, Throwable failure) {
+			this.records = records;
+			this.failure = failure;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package orgstats.load;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import orgstats.DataCompression;
+import orgstats.OrgCollection;
+import orgstats.UserDelta;
+
+/**
+ * Loader for applying a user delta file to an OrgCollection that is already loaded, 
+ * instead of reloading the whole user data file.  Each line is one change, see
+ * DataFileParser.parseDeltas() for the format, and is applied in the order of the file 
+ * with OrgCollection.applyDelta().
+ */
+public class UserDeltaFileLoader {
+	
+	private static final Logger logger = Logger.getLogger(UserDeltaFileLoader.class.getName());
+	
+	private File deltaFile;
+	
+	/**
+	 * Constructs a new UserDeltaFileLoader given a user delta File.
+	 * 
+	 * @param deltaFile
+	 * 
+	 * @throws OrgDataLoaderException   Thrown if the deltaFile does not exist.
+	 */
+	public UserDeltaFileLoader(File deltaFile) throws OrgDataLoaderException {
+		
+		if (!deltaFile.exists() || !deltaFile.canRead()) {
+			String errMsg = "User delta file specified is not valid.";
+			logger.log(Level.SEVERE, errMsg);
+			throw new OrgDataLoaderException(errMsg);
+		}
+		this.deltaFile = deltaFile;
+	}
+	
+	/**
+	 * Applies every change in the delta file to the orgCollection.  Changes that can't be 
+	 * applied, e.g. because the org doesn't exist, are logged and skipped like users that 
+	 * can't be added when loading.  A line that can't be parsed stops the changes, the 
+	 * changes on the lines before it stay applied.
+	 * 
+	 * @param orgCollection		the OrgCollection to apply the changes to, it can't be sealed
+	 * @return					the number of changes that were applied
+	 * @throws OrgDataLoaderException	thrown if a line doesn't have the delta format or the
+	 * 							file can't be read
+	 */
+	public int applyTo(final OrgCollection orgCollection) throws OrgDataLoaderException {
+		
+		FileInputStream deltaInput = null;
+		try {
+			logger.log(Level.INFO, "Applying user delta file...");
+			long start = System.currentTimeMillis();
+			deltaInput = new FileInputStream(deltaFile);
+			if (DataCompression.detect(deltaInput.getChannel()) != DataCompression.NONE) {
+				throw new OrgDataLoaderException("Compressed user delta files can't be applied.");
+			}
+			final int[] appliedCount = new int[1];
+			new DataFileParser().parseDeltas(deltaInput.getChannel(), new UserDeltaHandler() {
+				public void handleDelta(UserDelta userDelta) {
+					if (orgCollection.applyDelta(userDelta)) {
+						appliedCount[0] = appliedCount[0] + 1;
+					}
+				}
+			});
+			logger.log(Level.INFO, "Applied " + appliedCount[0] + " user deltas in " 
+					+ (System.currentTimeMillis() - start) + "ms");
+			return appliedCount[0];
+			
+		} catch (IOException ioEx) {
+			String errMsg = "ERROR processing user delta file (I/O error)";
+			logger.log(Level.SEVERE, errMsg, ioEx);
+			throw new OrgDataLoaderException(errMsg, ioEx);	
+		} finally {
+			try {
+				if (deltaInput != null) {
+					deltaInput.close();
+				}
+			} catch (IOException ioEx) {
+				logger.log(Level.WARNING, "Error closing user delta file", ioEx);
+			}
+		}
+	}
+}
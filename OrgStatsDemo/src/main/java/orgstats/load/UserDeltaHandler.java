@@ -0,0 +1,17 @@
+package orgstats.load;
+
+import orgstats.UserDelta;
+
+/**
+ * Receives the change on each line of a user delta file from the DataFileParser.
+ */
+interface UserDeltaHandler {
+
+	/**
+	 * Handles the change from one line of a user delta file.
+	 * 
+	 * @param userDelta		the change to a user
+	 * @throws OrgDataLoaderException	thrown if the change can't be handled
+	 */
+	void handleDelta(UserDelta userDelta) throws OrgDataLoaderException;
+}
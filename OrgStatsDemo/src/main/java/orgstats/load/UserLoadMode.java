@@ -0,0 +1,19 @@
+package orgstats.load;
+
+/**
+ * Determines what is kept in memory when the user data is loaded.
+ */
+public enum UserLoadMode {
+
+	/**
+	 * Every user is stored on its organization, so OrgBean.getUsers() returns the users.
+	 */
+	USERS,
+	
+	/**
+	 * Only the user count, file count and byte count of each organization are kept.
+	 * The users are not stored, so memory use depends on the number of organizations
+	 * instead of the number of users.
+	 */
+	AGGREGATES_ONLY
+}
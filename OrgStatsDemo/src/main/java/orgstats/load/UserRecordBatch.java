@@ -0,0 +1,70 @@
+package orgstats.load;
+
+import java.util.Arrays;
+
+/**
+ * The users parsed from a block of a user data file, kept in primitive arrays so no object
+ * is created for a user.  A batch is cleared and reused once its users have been added to
+ * the collection.
+ */
+final class UserRecordBatch implements UserRecordHandler {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private int[] userIds = new int[INITIAL_CAPACITY];
+	private int[] orgIds = new int[INITIAL_CAPACITY];
+	private int[] numFiles = new int[INITIAL_CAPACITY];
+	private long[] numBytes = new long[INITIAL_CAPACITY];
+	private int size;
+
+	/**
+	 * Appends the values of one user line.
+	 */
+	public void handleUser(int userId, int orgId, int numFiles, long numBytes) {
+
+		if (size == userIds.length) {
+			grow();
+		}
+		this.userIds[size] = userId;
+		this.orgIds[size] = orgId;
+		this.numFiles[size] = numFiles;
+		this.numBytes[size] = numBytes;
+		size = size + 1;
+	}
+
+	/**
+	 * Removes the users, the arrays are kept for the next block.
+	 */
+	void clear() {
+		size = 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int getUserId(int index) {
+		return userIds[index];
+	}
+
+	int getOrgId(int index) {
+		return orgIds[index];
+	}
+
+	int getNumFiles(int index) {
+		return numFiles[index];
+	}
+
+	long getNumBytes(int index) {
+		return numBytes[index];
+	}
+
+	private void grow() {
+
+		int capacity = userIds.length * 2;
+		userIds = Arrays.copyOf(userIds, capacity);
+		orgIds = Arrays.copyOf(orgIds, capacity);
+		numFiles = Arrays.copyOf(numFiles, capacity);
+		numBytes = Arrays.copyOf(numBytes, capacity);
+	}
+}
@@ -0,0 +1,18 @@
+package orgstats.load;
+
+/**
+ * Receives the values of each line of a user data file from the DataFileParser.
+ */
+interface UserRecordHandler {
+
+	/**
+	 * Handles the values of one line of user data.
+	 * 
+	 * @param userId		the unique identifier for the user
+	 * @param orgId			the organization the user is associated to
+	 * @param numFiles		the total number of files for the user
+	 * @param numBytes		the total number of bytes for the user
+	 * @throws OrgDataLoaderException	thrown if the user can't be handled
+	 */
+	void handleUser(int userId, int orgId, int numFiles, long numBytes) throws OrgDataLoaderException;
+}
@@ -0,0 +1,143 @@
+package orgstats.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in nanoseconds that can be recorded from many threads at once.
+ * <p>
+ * The buckets are allocated up front, four for each power of two, so a latency is counted
+ * within 25% of its value and recording it only increments two striped counters (LongAdder)
+ * without locking or allocating.  The percentiles are the upper bound of the bucket they
+ * fall in.  Reads while latencies are recorded are not an exact snapshot.
+ */
+public class LatencyHistogram {
+
+	// Four buckets for each power of two: the two bits after the highest one bit.
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+	private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+	private final LongAdder totalNanos = new LongAdder();
+
+	/**
+	 * Constructs an empty histogram.
+	 */
+	public LatencyHistogram() {
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Records one latency.
+	 *
+	 * @param nanos		the latency in nanoseconds, negative values are recorded as 0
+	 */
+	public void record(long nanos) {
+
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		buckets[bucketIndex(nanos)].increment();
+		totalNanos.add(nanos);
+	}
+
+	/**
+	 * Returns the number of latencies recorded.
+	 */
+	public long getCount() {
+
+		long count = 0;
+		for (LongAdder bucket : buckets) {
+			count = count + bucket.sum();
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the mean of the latencies recorded in nanoseconds, 0 if none were recorded.
+	 */
+	public double getMeanNanos() {
+
+		long count = getCount();
+		return count == 0 ? 0 : (double) totalNanos.sum() / count;
+	}
+
+	/**
+	 * Returns the latency that the fraction of the recorded latencies are at or below, rounded
+	 * up to the bucket it falls in.
+	 *
+	 * @param fraction		the fraction of latencies, e.g. 0.99 for the 99th percentile
+	 * @return				the latency in nanoseconds, 0 if none were recorded
+	 */
+	public long getPercentileNanos(double fraction) {
+
+		long[] counts = new long[buckets.length];
+		long count = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			counts[i] = buckets[i].sum();
+			count = count + counts[i];
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(count * Math.min(1.0, Math.max(0.0, fraction))));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen = seen + counts[i];
+			if (seen >= rank) {
+				return bucketUpperBound(i);
+			}
+		}
+		return bucketUpperBound(counts.length - 1);
+	}
+
+	/**
+	 * Returns the upper bound of the highest bucket with a recorded latency in nanoseconds.
+	 */
+	public long getMaxNanos() {
+
+		for (int i = buckets.length - 1; i >= 0; i--) {
+			if (buckets[i].sum() > 0) {
+				return bucketUpperBound(i);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Clears the recorded latencies.  Latencies recorded at the same time may be kept.
+	 */
+	public void reset() {
+
+		for (LongAdder bucket : buckets) {
+			bucket.reset();
+		}
+		totalNanos.reset();
+	}
+
+	/*
+	 * Values below SUB_BUCKET_COUNT have a bucket each, larger values are bucketed by the
+	 * position of their highest one bit and the SUB_BUCKET_BITS bits after it.
+	 */
+	static int bucketIndex(long nanos) {
+
+		if (nanos < SUB_BUCKET_COUNT) {
+			return (int) nanos;
+		}
+		int highestBit = 63 - Long.numberOfLeadingZeros(nanos);
+		int subBucket = (int) (nanos >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+		return (highestBit - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	static long bucketUpperBound(int index) {
+
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long lowerBound = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+		return lowerBound + (1l << shift) - 1;
+	}
+}
@@ -0,0 +1,98 @@
+package orgstats.metrics;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Records the latency of a random sample of the calls of an operation in a LatencyHistogram.
+ * Reading the clock twice, or even incrementing a shared counter, costs more than a lookup in
+ * the org index, so only one call in SAMPLE_RATE is timed and counted and the other calls
+ * only draw a thread local random number.  The number of calls is estimated from the sample
+ * and the percentiles are those of the sample.
+ * <p>
+ * Used as:
+ * <pre>
+ *  long startNanos = sampler.start();
+ *  ...
+ *  sampler.end(startNanos);
+ * </pre>
+ */
+public class LatencySampler {
+
+	/**
+	 * One call in SAMPLE_RATE is timed, a power of two.
+	 */
+	public static final int SAMPLE_RATE = 64;
+
+	private static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+	private final LatencyHistogram histogram = new LatencyHistogram();
+	private final int sampleRate;
+	private final int sampleMask;
+
+	/**
+	 * Constructs a sampler that times one call in SAMPLE_RATE.
+	 */
+	public LatencySampler() {
+		this(SAMPLE_RATE);
+	}
+
+	/**
+	 * Constructs a sampler that times one call in sampleRate, 1 to time every call.
+	 *
+	 * @param sampleRate	a power of two
+	 */
+	public LatencySampler(int sampleRate) {
+
+		if (sampleRate < 1 || Integer.bitCount(sampleRate) != 1) {
+			throw new IllegalArgumentException("Invalid sample rate " + sampleRate);
+		}
+		this.sampleRate = sampleRate;
+		this.sampleMask = sampleRate - 1;
+	}
+
+	/**
+	 * Returns the start time if the call is timed.
+	 *
+	 * @return		the value to pass to end()
+	 */
+	public long start() {
+
+		if ((ThreadLocalRandom.current().nextInt() & sampleMask) != 0) {
+			return NOT_SAMPLED;
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * Records the latency of a call if it is timed.
+	 *
+	 * @param startNanos	the value returned by start()
+	 */
+	public void end(long startNanos) {
+
+		if (startNanos != NOT_SAMPLED) {
+			histogram.record(System.nanoTime() - startNanos);
+		}
+	}
+
+	/**
+	 * Returns the estimated number of calls, the number of timed calls times the sample rate.
+	 */
+	public long getCallCount() {
+		return histogram.getCount() * sampleRate;
+	}
+
+	/**
+	 * Returns the histogram of the timed calls.
+	 */
+	public LatencyHistogram getHistogram() {
+		return histogram;
+	}
+
+	/**
+	 * Clears the histogram.
+	 */
+	public void reset() {
+		histogram.reset();
+	}
+}
@@ -0,0 +1,214 @@
+package orgstats.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the lines and bytes the loaders read and the lines and users they reject, once the
+ * metrics are enabled, see OrgStatsMetrics.enable().  The counters are striped (LongAdder), 
+ * so the threads that read chunks of a file can add to them at the same time.  The parser 
+ * adds its counts once for each part of a file it parses, not for each line.
+ * <p>
+ * The rates of the last load assume that loads are done one at a time.
+ * <p>
+ * A pipelined load adds the time each Stage spent working and the time it was blocked on the
+ * queue before or after it.  The stage that works the most is the bottleneck, the stages
+ * before it are blocked on full queues and the stages after it on empty queues.
+ */
+public class LoaderMetrics implements LoaderMetricsMBean {
+
+	/**
+	 * The stages of a pipelined load.
+	 */
+	public enum Stage {
+
+		/**
+		 * Reads blocks of the data file.
+		 */
+		READ,
+
+		/**
+		 * Parses the blocks into batches of records, the time of every parse thread is added.
+		 */
+		PARSE,
+
+		/**
+		 * Adds the batches to the collection.
+		 */
+		ATTACH
+	}
+
+	private final LongAdder loadCount = new LongAdder();
+	private final LongAdder linesRead = new LongAdder();
+	private final LongAdder bytesRead = new LongAdder();
+	private final LongAdder rejectedLines = new LongAdder();
+	private final LongAdder orphanUsers = new LongAdder();
+	private final LongAdder[] stageBusyNanos = newAdders(Stage.values().length);
+	private final LongAdder[] stageBlockedNanos = newAdders(Stage.values().length);
+
+	private static final long NOT_STARTED = Long.MIN_VALUE;
+
+	private volatile boolean enabled;
+
+	// The counts when the last load started and its duration.
+	private volatile long loadStartLines;
+	private volatile long loadStartBytes;
+	private volatile long lastLoadNanos;
+	private volatile long lastLoadLines;
+	private volatile long lastLoadBytes;
+
+	/**
+	 * Records the start of a load.
+	 *
+	 * @return		the start time to pass to endLoad(), or a value endLoad() ignores if the
+	 * 				metrics aren't enabled
+	 */
+	public long startLoad() {
+
+		if (!enabled) {
+			return NOT_STARTED;
+		}
+		loadStartLines = linesRead.sum();
+		loadStartBytes = bytesRead.sum();
+		return System.nanoTime();
+	}
+
+	/**
+	 * Records the end of a load, whether it failed or not.
+	 *
+	 * @param startNanos	the start time returned by startLoad()
+	 */
+	public void endLoad(long startNanos) {
+
+		if (startNanos == NOT_STARTED) {
+			return;
+		}
+		lastLoadLines = linesRead.sum() - loadStartLines;
+		lastLoadBytes = bytesRead.sum() - loadStartBytes;
+		lastLoadNanos = System.nanoTime() - startNanos;
+		loadCount.increment();
+	}
+
+	/**
+	 * Adds the lines and bytes parsed from a data file.
+	 *
+	 * @param lineCount		the number of lines parsed
+	 * @param byteCount		the number of bytes read
+	 */
+	public void addLinesRead(long lineCount, long byteCount) {
+
+		if (enabled) {
+			linesRead.add(lineCount);
+			bytesRead.add(byteCount);
+		}
+	}
+
+	/**
+	 * Counts a line that couldn't be parsed.
+	 */
+	public void addRejectedLine() {
+
+		if (enabled) {
+			rejectedLines.increment();
+		}
+	}
+
+	/**
+	 * Adds users that weren't added because their org doesn't exist.
+	 *
+	 * @param userCount		the number of users
+	 */
+	public void addOrphanUsers(long userCount) {
+
+		if (enabled) {
+			orphanUsers.add(userCount);
+		}
+	}
+
+	/**
+	 * Adds the time a stage of a pipelined load spent working and blocked on its queues.
+	 *
+	 * @param stage			the stage
+	 * @param busyNanos		the time spent reading, parsing or attaching
+	 * @param blockedNanos	the time spent waiting on a queue
+	 */
+	public void addStageNanos(Stage stage, long busyNanos, long blockedNanos) {
+
+		if (enabled) {
+			stageBusyNanos[stage.ordinal()].add(busyNanos);
+			stageBlockedNanos[stage.ordinal()].add(blockedNanos);
+		}
+	}
+
+	void enable() {
+		enabled = true;
+	}
+
+	public long getLoadCount() {
+		return loadCount.sum();
+	}
+
+	public long getLinesRead() {
+		return linesRead.sum();
+	}
+
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	public long getRejectedLines() {
+		return rejectedLines.sum();
+	}
+
+	public long getOrphanUsers() {
+		return orphanUsers.sum();
+	}
+
+	public long getLastLoadMillis() {
+		return lastLoadNanos / 1000000;
+	}
+
+	public long getLastLoadLinesPerSecond() {
+		return perSecond(lastLoadLines, lastLoadNanos);
+	}
+
+	public long getLastLoadBytesPerSecond() {
+		return perSecond(lastLoadBytes, lastLoadNanos);
+	}
+
+	public long getReadStageMillis() {
+		return stageBusyNanos[Stage.READ.ordinal()].sum() / 1000000;
+	}
+
+	public long getReadStageBlockedMillis() {
+		return stageBlockedNanos[Stage.READ.ordinal()].sum() / 1000000;
+	}
+
+	public long getParseStageMillis() {
+		return stageBusyNanos[Stage.PARSE.ordinal()].sum() / 1000000;
+	}
+
+	public long getParseStageBlockedMillis() {
+		return stageBlockedNanos[Stage.PARSE.ordinal()].sum() / 1000000;
+	}
+
+	public long getAttachStageMillis() {
+		return stageBusyNanos[Stage.ATTACH.ordinal()].sum() / 1000000;
+	}
+
+	public long getAttachStageBlockedMillis() {
+		return stageBlockedNanos[Stage.ATTACH.ordinal()].sum() / 1000000;
+	}
+
+	private static LongAdder[] newAdders(int count) {
+
+		LongAdder[] adders = new LongAdder[count];
+		for (int i = 0; i < count; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+
+	private static long perSecond(long count, long nanos) {
+		return nanos <= 0 ? 0 : (long) (count * 1000000000.0 / nanos);
+	}
+}
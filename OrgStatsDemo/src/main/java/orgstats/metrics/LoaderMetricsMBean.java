@@ -0,0 +1,79 @@
+package orgstats.metrics;
+
+/**
+ * Data file loading attributes, registered as "orgstats:type=Loader".
+ */
+public interface LoaderMetricsMBean {
+
+	/**
+	 * Returns the number of loads finished, including loads that failed.
+	 */
+	long getLoadCount();
+
+	/**
+	 * Returns the number of lines parsed from org, user and user delta data files.
+	 */
+	long getLinesRead();
+
+	/**
+	 * Returns the number of bytes read from org, user and user delta data files.
+	 */
+	long getBytesRead();
+
+	/**
+	 * Returns the number of lines that couldn't be parsed.  A rejected line stops its load.
+	 */
+	long getRejectedLines();
+
+	/**
+	 * Returns the number of users that weren't added because their org doesn't exist.
+	 */
+	long getOrphanUsers();
+
+	/**
+	 * Returns the duration of the last load in milliseconds.
+	 */
+	long getLastLoadMillis();
+
+	/**
+	 * Returns the lines parsed per second by the last load.
+	 */
+	long getLastLoadLinesPerSecond();
+
+	/**
+	 * Returns the bytes read per second by the last load.
+	 */
+	long getLastLoadBytesPerSecond();
+
+	/**
+	 * Returns the time pipelined loads spent reading blocks of data files in milliseconds.
+	 */
+	long getReadStageMillis();
+
+	/**
+	 * Returns the time the read stage waited for a parser to take a block in milliseconds.
+	 */
+	long getReadStageBlockedMillis();
+
+	/**
+	 * Returns the time the parse threads of pipelined loads spent parsing blocks in milliseconds,
+	 * added up over the threads.
+	 */
+	long getParseStageMillis();
+
+	/**
+	 * Returns the time the parse threads waited for a block or for the attach stage to take
+	 * a batch in milliseconds, added up over the threads.
+	 */
+	long getParseStageBlockedMillis();
+
+	/**
+	 * Returns the time pipelined loads spent adding batches to the collection in milliseconds.
+	 */
+	long getAttachStageMillis();
+
+	/**
+	 * Returns the time the attach stage waited for the next batch in milliseconds.
+	 */
+	long getAttachStageBlockedMillis();
+}
@@ -0,0 +1,91 @@
+package orgstats.metrics;
+
+/**
+ * Records the size of one OrgCollection and samples the latency of its getOrg() and 
+ * getOrgTree() calls with LatencySamplers, see OrgCollection.enableMetrics().
+ */
+public class OrgCollectionMetrics implements OrgCollectionMetricsMBean {
+
+	private final LatencySampler getOrgLatency = new LatencySampler();
+	private final LatencySampler getOrgTreeLatency = new LatencySampler();
+	private volatile int orgCount;
+	private volatile int treeDepth;
+
+	/**
+	 * Records the size of the OrgCollection when its metrics are enabled and when it is sealed.
+	 *
+	 * @param orgCount		the number of orgs
+	 * @param treeDepth		the number of levels of the deepest org tree
+	 */
+	public void recordSize(int orgCount, int treeDepth) {
+		this.orgCount = orgCount;
+		this.treeDepth = treeDepth;
+	}
+
+	/**
+	 * Returns the sampler getOrg() records its latency with.
+	 */
+	public LatencySampler getOrgLatency() {
+		return getOrgLatency;
+	}
+
+	/**
+	 * Returns the sampler getOrgTree() records its latency with.
+	 */
+	public LatencySampler getOrgTreeLatency() {
+		return getOrgTreeLatency;
+	}
+
+	public int getOrgCount() {
+		return orgCount;
+	}
+
+	public int getTreeDepth() {
+		return treeDepth;
+	}
+
+	public long getGetOrgCount() {
+		return getOrgLatency.getCallCount();
+	}
+
+	public double getGetOrgMeanNanos() {
+		return getOrgLatency.getHistogram().getMeanNanos();
+	}
+
+	public long getGetOrgP50Nanos() {
+		return getOrgLatency.getHistogram().getPercentileNanos(0.50);
+	}
+
+	public long getGetOrgP99Nanos() {
+		return getOrgLatency.getHistogram().getPercentileNanos(0.99);
+	}
+
+	public long getGetOrgMaxNanos() {
+		return getOrgLatency.getHistogram().getMaxNanos();
+	}
+
+	public long getGetOrgTreeCount() {
+		return getOrgTreeLatency.getCallCount();
+	}
+
+	public double getGetOrgTreeMeanNanos() {
+		return getOrgTreeLatency.getHistogram().getMeanNanos();
+	}
+
+	public long getGetOrgTreeP50Nanos() {
+		return getOrgTreeLatency.getHistogram().getPercentileNanos(0.50);
+	}
+
+	public long getGetOrgTreeP99Nanos() {
+		return getOrgTreeLatency.getHistogram().getPercentileNanos(0.99);
+	}
+
+	public long getGetOrgTreeMaxNanos() {
+		return getOrgTreeLatency.getHistogram().getMaxNanos();
+	}
+
+	public void resetLatencies() {
+		getOrgLatency.reset();
+		getOrgTreeLatency.reset();
+	}
+}
@@ -0,0 +1,46 @@
+package orgstats.metrics;
+
+/**
+ * OrgCollection attributes, registered as "orgstats:type=OrgCollection,name=..." for each
+ * collection.  The org count and tree depth are those of the collection when its metrics were
+ * enabled or when it was sealed.  The call counts and latencies in nanoseconds are for the 
+ * collection's calls since its metrics were enabled and are estimated from the calls 
+ * LatencySampler timed.
+ */
+public interface OrgCollectionMetricsMBean {
+
+	/**
+	 * Returns the number of orgs in the OrgCollection.
+	 */
+	int getOrgCount();
+
+	/**
+	 * Returns the number of levels of the deepest org tree in the OrgCollection.
+	 */
+	int getTreeDepth();
+
+	long getGetOrgCount();
+
+	double getGetOrgMeanNanos();
+
+	long getGetOrgP50Nanos();
+
+	long getGetOrgP99Nanos();
+
+	long getGetOrgMaxNanos();
+
+	long getGetOrgTreeCount();
+
+	double getGetOrgTreeMeanNanos();
+
+	long getGetOrgTreeP50Nanos();
+
+	long getGetOrgTreeP99Nanos();
+
+	long getGetOrgTreeMaxNanos();
+
+	/**
+	 * Clears the getOrg() and getOrgTree() latencies.
+	 */
+	void resetLatencies();
+}
@@ -0,0 +1,112 @@
+package orgstats.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The metrics of the loaders and stores in this JVM and the registration of the metrics of
+ * OrgCollections.  Nothing is recorded until the metrics are enabled, register() enables them
+ * and makes them readable over JMX, e.g. with jconsole:
+ * <p>
+ *  orgstats:type=Loader					LoaderMetricsMBean<br>
+ *  orgstats:type=Store						StoreMetricsMBean<br>
+ *  orgstats:type=OrgCollection,name=...	OrgCollectionMetricsMBean, see register(OrgCollectionMetrics, String)
+ * <p>
+ * The metrics of an OrgCollection are kept by the collection, see OrgCollection.enableMetrics(),
+ * so each collection is registered under its own name.
+ */
+public final class OrgStatsMetrics {
+
+	private static final Logger logger = Logger.getLogger(OrgStatsMetrics.class.getName());
+
+	public static final LoaderMetrics LOADER = new LoaderMetrics();
+	public static final StoreMetrics STORE = new StoreMetrics();
+
+	static final String LOADER_NAME = "orgstats:type=Loader";
+	static final String STORE_NAME = "orgstats:type=Store";
+	static final String COLLECTION_NAME_PREFIX = "orgstats:type=OrgCollection,name=";
+
+	private OrgStatsMetrics() {
+	}
+
+	/**
+	 * Starts recording the loader and store metrics without registering them.
+	 */
+	public static void enable() {
+		LOADER.enable();
+		STORE.enable();
+	}
+
+	/**
+	 * Enables the loader and store metrics and registers them with the platform MBeanServer.
+	 * Metrics that are already registered are skipped and a failure is logged, the metrics are
+	 * recorded either way.
+	 */
+	public static synchronized void register() {
+
+		enable();
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		try {
+			register(mBeanServer, LOADER, new ObjectName(LOADER_NAME));
+			register(mBeanServer, STORE, new ObjectName(STORE_NAME));
+		} catch (JMException jmEx) {
+			logger.log(Level.WARNING, "Error registering the metrics MBeans", jmEx);
+		}
+	}
+
+	/**
+	 * Registers the metrics of an OrgCollection with the platform MBeanServer, replacing the
+	 * metrics registered under the same name, e.g. those of the collection it was reloaded from.
+	 *
+	 * @param collectionMetrics		the metrics returned by OrgCollection.enableMetrics()
+	 * @param name					the name of the collection, e.g. its org file
+	 */
+	public static synchronized void register(OrgCollectionMetrics collectionMetrics, String name) {
+
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = getCollectionName(name);
+			if (mBeanServer.isRegistered(objectName)) {
+				mBeanServer.unregisterMBean(objectName);
+			}
+			register(mBeanServer, collectionMetrics, objectName);
+		} catch (JMException jmEx) {
+			logger.log(Level.WARNING, "Error registering the metrics MBean of " + name, jmEx);
+		}
+	}
+
+	/**
+	 * Removes the metrics of an OrgCollection from the platform MBeanServer, e.g. once the 
+	 * collection is dropped.
+	 *
+	 * @param name		the name the metrics were registered under
+	 */
+	public static synchronized void unregister(String name) {
+
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = getCollectionName(name);
+			if (mBeanServer.isRegistered(objectName)) {
+				mBeanServer.unregisterMBean(objectName);
+			}
+		} catch (JMException jmEx) {
+			logger.log(Level.WARNING, "Error unregistering the metrics MBean of " + name, jmEx);
+		}
+	}
+
+	static ObjectName getCollectionName(String name) throws JMException {
+		return new ObjectName(COLLECTION_NAME_PREFIX + ObjectName.quote(name));
+	}
+
+	private static void register(MBeanServer mBeanServer, Object mBean, ObjectName objectName) throws JMException {
+
+		if (!mBeanServer.isRegistered(objectName)) {
+			mBeanServer.registerMBean(mBean, objectName);
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package orgstats.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the duration and the bytes written of each OrgStatsFileStore.storeData() once the
+ * metrics are enabled, see OrgStatsMetrics.enable().
+ */
+public class StoreMetrics implements StoreMetricsMBean {
+
+	private final LongAdder storeCount = new LongAdder();
+	private final LongAdder totalStoreNanos = new LongAdder();
+	private final LongAdder bytesWritten = new LongAdder();
+	private volatile long lastStoreNanos;
+	private volatile long lastBytesWritten;
+	private volatile boolean enabled;
+
+	void enable() {
+		enabled = true;
+	}
+
+	/**
+	 * Records a finished storeData(), whether it failed or not.
+	 *
+	 * @param nanos			the duration in nanoseconds
+	 * @param byteCount		the number of bytes written
+	 */
+	public void addStore(long nanos, long byteCount) {
+
+		if (!enabled) {
+			return;
+		}
+		lastStoreNanos = nanos;
+		lastBytesWritten = byteCount;
+		totalStoreNanos.add(nanos);
+		bytesWritten.add(byteCount);
+		storeCount.increment();
+	}
+
+	public long getStoreCount() {
+		return storeCount.sum();
+	}
+
+	public long getLastStoreMillis() {
+		return lastStoreNanos / 1000000;
+	}
+
+	public long getTotalStoreMillis() {
+		return totalStoreNanos.sum() / 1000000;
+	}
+
+	public long getLastBytesWritten() {
+		return lastBytesWritten;
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+}
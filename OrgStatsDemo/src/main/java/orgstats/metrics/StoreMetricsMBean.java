@@ -0,0 +1,32 @@
+package orgstats.metrics;
+
+/**
+ * Output file attributes of OrgStatsFileStore, registered as "orgstats:type=Store".
+ */
+public interface StoreMetricsMBean {
+
+	/**
+	 * Returns the number of output files written, including writes that failed.
+	 */
+	long getStoreCount();
+
+	/**
+	 * Returns the duration of the last storeData() in milliseconds.
+	 */
+	long getLastStoreMillis();
+
+	/**
+	 * Returns the duration of every storeData() in milliseconds.
+	 */
+	long getTotalStoreMillis();
+
+	/**
+	 * Returns the number of bytes written by the last storeData().
+	 */
+	long getLastBytesWritten();
+
+	/**
+	 * Returns the number of bytes written by every storeData().
+	 */
+	long getBytesWritten();
+}
@@ -0,0 +1,299 @@
+package orgstats.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import orgstats.OrgBean;
+import orgstats.OrgCollection;
+import orgstats.PublishedOrgCollection;
+
+/**
+ * Line based TCP server that answers the OrgStatsTool menu requests for the published
+ * OrgCollection, so other programs can query the collection in memory.  Each request is one
+ * line and each response is zero or more lines followed by an empty line:
+ * <p>
+ *  ORG orgId				the stats of the org<br>
+ *  TREE orgId				the stats of every org below the org (exclusive)<br>
+ *  TREE_INCLUSIVE orgId	the stats of the org and every org below it (inclusive)<br>
+ *  QUIT					closes the connection
+ * <p>
+ * The stats lines are OrgBean.getStatsString().  A request that can't be answered gets one
+ * line starting with "ERROR".  A connection can send any number of requests and each is answered
+ * in order.  Tree responses are written through a fixed size buffer as the orgs are iterated, see
+ * OrgCollection.getOrgTreeIterator(), so neither the list of orgs nor the response of a large
+ * tree is built in memory.
+ * <p>
+ * Each connection is handled on its own thread.  Virtual threads are used when the JVM has them
+ * (Java 21 and later), otherwise pooled platform threads.  The server listens on the loopback
+ * address unless another address is given.
+ */
+public class OrgStatsServer {
+
+	private static final Logger logger = Logger.getLogger(OrgStatsServer.class.getName());
+
+	public static final String ORG_REQUEST = "ORG";
+	public static final String TREE_REQUEST = "TREE";
+	public static final String TREE_INCLUSIVE_REQUEST = "TREE_INCLUSIVE";
+	public static final String QUIT_REQUEST = "QUIT";
+	public static final String ERROR_PREFIX = "ERROR ";
+
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	private static final int BUFFER_SIZE = 8 * 1024;
+	private static final int BACKLOG = 1024;
+
+	private final PublishedOrgCollection publishedCollection;
+	private final InetSocketAddress bindAddress;
+	private final Set<Socket> connections = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+	private ServerSocket serverSocket;
+	private ExecutorService connectionExecutor;
+	private Thread acceptThread;
+
+	/**
+	 * Constructs a server for the published collection on the loopback address.
+	 *
+	 * @param publishedCollection	the collection that is queried, reloads are seen by new requests
+	 * @param port					the port to listen on, 0 picks a free port
+	 */
+	public OrgStatsServer(PublishedOrgCollection publishedCollection, int port) {
+		this(publishedCollection, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+	}
+
+	/**
+	 * Constructs a server for the published collection on the address given.
+	 *
+	 * @param publishedCollection	the collection that is queried, reloads are seen by new requests
+	 * @param bindAddress			the address and port to listen on
+	 */
+	public OrgStatsServer(PublishedOrgCollection publishedCollection, InetSocketAddress bindAddress) {
+		this.publishedCollection = publishedCollection;
+		this.bindAddress = bindAddress;
+	}
+
+	/**
+	 * Starts listening and accepting connections on a background thread.
+	 *
+	 * @throws IOException		if the server socket can't be bound
+	 */
+	public synchronized void start() throws IOException {
+
+		if (serverSocket != null) {
+			throw new IllegalStateException("OrgStatsServer is already started.");
+		}
+		serverSocket = new ServerSocket();
+		serverSocket.bind(bindAddress, BACKLOG);
+		connectionExecutor = createConnectionExecutor();
+		acceptThread = new Thread(new Runnable() {
+			public void run() {
+				acceptConnections();
+			}
+		}, "OrgStatsServer-accept");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+		logger.log(Level.INFO, "OrgStatsServer listening on " + serverSocket.getLocalSocketAddress());
+	}
+
+	/**
+	 * Returns the port the server listens on, e.g. the port picked for port 0.
+	 *
+	 * @return		the local port of the server socket
+	 */
+	public synchronized int getPort() {
+
+		if (serverSocket == null) {
+			throw new IllegalStateException("OrgStatsServer is not started.");
+		}
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Stops accepting connections, closes the open connections and waits for the
+	 * connection threads to finish.
+	 */
+	public synchronized void stop() {
+
+		if (serverSocket == null) {
+			return;
+		}
+		closeQuietly(serverSocket);
+		try {
+			acceptThread.join();
+			for (Socket connection : connections) {
+				closeQuietly(connection);
+			}
+			connectionExecutor.shutdown();
+			connectionExecutor.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		serverSocket = null;
+		logger.log(Level.INFO, "OrgStatsServer stopped");
+	}
+
+	/*
+	 * Accepts connections until the server socket is closed.
+	 */
+	private void acceptConnections() {
+
+		while (true) {
+			final Socket connection;
+			try {
+				connection = serverSocket.accept();
+			} catch (IOException ioEx) {
+				if (!serverSocket.isClosed()) {
+					logger.log(Level.SEVERE, "ERROR accepting connection (I/O error)", ioEx);
+				}
+				return;
+			}
+			connections.add(connection);
+			try {
+				connectionExecutor.execute(new Runnable() {
+					public void run() {
+						handleConnection(connection);
+					}
+				});
+			} catch (RuntimeException ex) {
+				// The executor can't take the connection.
+				connections.remove(connection);
+				closeQuietly(connection);
+				return;
+			}
+		}
+	}
+
+	/*
+	 * Answers the requests of one connection until it sends QUIT or closes.
+	 */
+	private void handleConnection(Socket connection) {
+
+		try {
+			connection.setTcpNoDelay(true);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), CHARSET));
+			Writer writer = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), CHARSET), BUFFER_SIZE);
+			String request;
+			while ((request = reader.readLine()) != null) {
+				if (QUIT_REQUEST.equalsIgnoreCase(request.trim())) {
+					break;
+				}
+				handleRequest(request, writer);
+				// Only flush when no other request is waiting, so pipelined requests share writes.
+				if (!reader.ready()) {
+					writer.flush();
+				}
+			}
+			writer.flush();
+		} catch (SocketException socketEx) {
+			// The client closed the connection or the server is stopping.
+		} catch (IOException ioEx) {
+			logger.log(Level.WARNING, "ERROR with connection (I/O error)", ioEx);
+		} finally {
+			connections.remove(connection);
+			closeQuietly(connection);
+		}
+	}
+
+	/*
+	 * Writes the response to one request, ending with an empty line.
+	 */
+	private void handleRequest(String request, Writer writer) throws IOException {
+
+		String[] fields = request.trim().split("\\s+");
+		if (fields.length != 2) {
+			writeLine(writer, ERROR_PREFIX + "expected a request and an org id: " + request);
+		} else {
+			String requestName = fields[0].toUpperCase();
+			int orgId = parseOrgId(fields[1]);
+			// Every line of the response comes from the same collection, even during a reload.
+			OrgCollection orgCollection = publishedCollection.get();
+			OrgBean orgBean = orgId < 0 ? null : orgCollection.getOrg(orgId);
+			boolean knownRequest = ORG_REQUEST.equals(requestName) || TREE_REQUEST.equals(requestName)
+					|| TREE_INCLUSIVE_REQUEST.equals(requestName);
+
+			if (!knownRequest) {
+				writeLine(writer, ERROR_PREFIX + "unknown request: " + request);
+			} else if (orgId < 0) {
+				writeLine(writer, ERROR_PREFIX + "invalid org id: " + fields[1]);
+			} else if (orgBean == null) {
+				writeLine(writer, ERROR_PREFIX + "org not found: " + orgId);
+			} else if (ORG_REQUEST.equals(requestName)) {
+				writeLine(writer, orgBean.getStatsString());
+			} else {
+				Iterator<OrgBean> orgTree = orgCollection.getOrgTreeIterator(orgId, TREE_INCLUSIVE_REQUEST.equals(requestName));
+				while (orgTree.hasNext()) {
+					writeLine(writer, orgTree.next().getStatsString());
+				}
+			}
+		}
+		writer.write('\n');
+	}
+
+	private static void writeLine(Writer writer, String line) throws IOException {
+		writer.write(line);
+		writer.write('\n');
+	}
+
+	/*
+	 * Returns the org id or -1 if the field isn't a non-negative int.
+	 */
+	private static int parseOrgId(String field) {
+
+		try {
+			int orgId = Integer.parseInt(field);
+			return orgId < 0 ? -1 : orgId;
+		} catch (NumberFormatException ex) {
+			return -1;
+		}
+	}
+
+	/*
+	 * Uses Executors.newVirtualThreadPerTaskExecutor() when the JVM has it, the code is
+	 * compiled for Java 8 so it is looked up by name.
+	 */
+	private static ExecutorService createConnectionExecutor() {
+
+		try {
+			Method virtualThreadExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) virtualThreadExecutor.invoke(null);
+		} catch (Exception ex) {
+			logger.log(Level.FINE, "Virtual threads aren't available, using platform threads");
+		}
+		final AtomicInteger threadCount = new AtomicInteger();
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "OrgStatsServer-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (IOException ioEx) {
+			logger.log(Level.FINE, "Error closing socket", ioEx);
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package orgstats.store;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import orgstats.DataCompression;
+
+/**
+ * A channel that compresses the bytes written to it on a thread of its own, so formatting the
+ * output and compressing it overlap.  Each write() copies the bytes into a buffer that is 
+ * queued for the compressing thread.  The queue is bounded, so a compressor that falls behind
+ * blocks the writer instead of the output being buffered in memory, and the buffers are reused.
+ * close() waits for the compressing thread and throws its error.  Once the compressing thread
+ * fails, with an I/O error or a RuntimeException of the compression, write() throws the failure
+ * as an IOException instead of queueing more bytes.
+ * <p>
+ * A CompressingChannel must only be written by one thread at a time.
+ */
+final class CompressingChannel implements WritableByteChannel {
+
+	private static final int QUEUE_CAPACITY = 4;
+	private static final long PUT_TIMEOUT_MILLIS = 100;
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	private final BlockingQueue<ByteBuffer> buffers = new ArrayBlockingQueue<ByteBuffer>(QUEUE_CAPACITY);
+	private final Queue<ByteBuffer> freeBuffers = new ConcurrentLinkedQueue<ByteBuffer>();
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+	private final Future<Void> compressor;
+	private boolean open = true;
+
+	// The first error of the compressing thread, null until it fails.
+	private volatile IOException failure;
+
+	/**
+	 * Constructs a channel that writes the bytes to the output compressed.
+	 *
+	 * @param output			the stream of the file, closed by close()
+	 * @param compression		the compression of the file
+	 * @throws IOException		if the header can't be written
+	 */
+	CompressingChannel(OutputStream output, DataCompression compression) throws IOException {
+
+		final OutputStream compressedOutput = compression.compress(output);
+		compressor = executor.submit(new Callable<Void>() {
+			public Void call() throws IOException, InterruptedException {
+				compress(compressedOutput);
+				return null;
+			}
+		});
+	}
+
+	public int write(ByteBuffer source) throws IOException {
+
+		if (!open) {
+			throw new ClosedChannelException();
+		}
+		IOException compressorFailure = failure;
+		if (compressorFailure != null) {
+			throw new IOException("ERROR compressing output file", compressorFailure);
+		} else if (compressor.isDone()) {
+			throw new IOException("ERROR compressing output file, the compressing thread ended");
+		}
+		int length = source.remaining();
+		ByteBuffer buffer = freeBuffers.poll();
+		if (buffer == null || buffer.capacity() < length) {
+			buffer = ByteBuffer.allocate(length);
+		}
+		buffer.clear();
+		buffer.put(source);
+		buffer.flip();
+		put(buffer);
+		return length;
+	}
+
+	public boolean isOpen() {
+		return open;
+	}
+
+	/**
+	 * Compresses the rest of the bytes, closes the output and throws the error of the 
+	 * compressing thread if it had one.
+	 */
+	public void close() throws IOException {
+
+		if (!open) {
+			return;
+		}
+		open = false;
+		try {
+			put(END);
+			compressor.get();
+		} catch (InterruptedException interruptedEx) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted compressing output file");
+		} catch (ExecutionException executionEx) {
+			Throwable cause = executionEx.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException("ERROR compressing output file", cause);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/*
+	 * Writes the queued buffers to the compressed output until close().  After an error the
+	 * buffers are still taken, so the writer isn't blocked, and the error is thrown at the end.
+	 */
+	private void compress(OutputStream compressedOutput) throws IOException, InterruptedException {
+
+		try {
+			while (true) {
+				ByteBuffer buffer = buffers.take();
+				if (buffer == END) {
+					break;
+				}
+				if (failure == null) {
+					try {
+						compressedOutput.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+					} catch (IOException ioEx) {
+						failure = ioEx;
+					} catch (RuntimeException runtimeEx) {
+						failure = new IOException("ERROR compressing output file", runtimeEx);
+					}
+				}
+				freeBuffers.offer(buffer);
+			}
+		} finally {
+			try {
+				compressedOutput.close();
+			} catch (IOException ioEx) {
+				if (failure == null) {
+					failure = ioEx;
+				}
+			} catch (RuntimeException runtimeEx) {
+				if (failure == null) {
+					failure = new IOException("ERROR compressing output file", runtimeEx);
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/*
+	 * Queues a buffer for the compressing thread.  If the thread has ended, e.g. on an Error,
+	 * nothing takes the buffers any more, so the buffer is dropped and close() throws the error.
+	 */
+	private void put(ByteBuffer buffer) throws InterruptedIOException {
+
+		try {
+			while (!buffers.offer(buffer, PUT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				if (compressor.isDone()) {
+					return;
+				}
+			}
+		} catch (InterruptedException interruptedEx) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted compressing output file");
+		}
+	}
+}
@@ -1,130 +1,223 @@
-package orgstats.store;
-
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.Collections;
-import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
-import orgstats.OrgBean;
-import orgstats.OrgCollection;
-
-/**
- * Data store for organizational hierarchy usage statistics using a File.
- */
-public class OrgStatsFileStore implements OrgStatsStore {
-
-	private static final Logger logger = Logger.getLogger(OrgStatsFileStore.class.getName());
-	private static final String INDENT = "  ";
-	private File outputFile;
-	
-	/**
-	 * Constructs OrgStatsFileStore with the File to be used for output
-	 * 
-	 * @param outputFile	the File used to write the org summary data
-	 */
-	public OrgStatsFileStore(File outputFile) throws OrgStatsStoreException {	
-		
-		try {
-			if ((outputFile.exists() && !outputFile.canWrite())
-					|| (!outputFile.exists() && !outputFile.createNewFile())) {
-				String errMsg = "Output file specified is not valid.";
-				logger.log(Level.SEVERE, errMsg);
-				throw new OrgStatsStoreException(errMsg);
-			}
-		} catch (IOException ioEx) {
-			String errMsg = "ERROR creating output data file (I/O error)";
-			logger.log(Level.SEVERE, errMsg, ioEx);
-			throw new OrgStatsStoreException(errMsg, ioEx);	
-		} 
-	
-		this.outputFile = outputFile;
-	}
-
-	/**
-	 * Stores organization, user, and file usage data from memory into a file
-	 * 
-	 * @return orgCollection		the OrgCollection containing a tree of OrgBeans			
-	 */
-	@Override
-	public void storeData(OrgCollection orgCollection) throws OrgStatsStoreException {
-		
-		BufferedWriter outputWriter = null;
-		
-		try {
-			logger.log(Level.INFO, "Writing org tree summary data...");
-			outputWriter = new BufferedWriter(new FileWriter(outputFile));
-			outputOrgData(outputWriter, orgCollection.getTopLevelOrgs(), 0);
-		} catch (IOException ioEx) {
-			String errMsg = "ERROR writing data file (I/O error)";
-			logger.log(Level.SEVERE, errMsg, ioEx);
-			throw new OrgStatsStoreException(errMsg, ioEx);	
-		} finally {
-			try {
-				if (outputWriter != null) {
-					outputWriter.close();
-				}
-			} catch (IOException ioEx) {
-				logger.log(Level.WARNING, "Error storing data file", ioEx);
-			}
-		}
-	}
-	
-	/**
-	 * Write the orgBean at the appropriate level for a particular bean.
-	 * 
-	 * @param outputWriter		the BufferedWriter to output character data to
-	 * @param orgBean			the OrgBean that will be written on the current line
-	 * @param level				the indentation level of the OrgBean in relation to it's parent
-	 * @throws IOException		if any unexpected I/O error occurs
-	 */
-	void outputOrgData(BufferedWriter outputWriter, OrgBean orgBean, int level) throws IOException {
-		outputWriter.append(getIndent(level) + getOutputString(orgBean));
-		outputWriter.newLine();
-	}
-	
-	/**
-	 * Write the list of OrgBeans and recursively the child beans at the appropriate level for a particular bean.
-	 * 
-	 * @param outputWriter		the BufferedWriter to output character data to
-	 * @param orgBeans			the OrgBeans that will be written on subsequent current line
-	 * @param level				the indentation level of the OrgBean in relation to it's parent
-	 * @throws IOException		if any unexpected I/O error occurs
-	 */
-	void outputOrgData(BufferedWriter outputWriter, List<OrgBean> orgBeans, int level) throws IOException {
-		
-		Collections.sort(orgBeans);
-		for (OrgBean orgBean : orgBeans) {
-			if (orgBeans.indexOf(orgBean) == 0) {
-				level = level + 1;
-			}
-			outputOrgData(outputWriter, orgBean, level);
-			
-			outputOrgData(outputWriter, orgBean.getChildOrgs(), level);
-		}
-	}
-	
-	/*
-	 * Returns the child indentation for the file.
-	 */
-	private static String getIndent(int level) {
-		StringBuilder indent = new StringBuilder(level*INDENT.length());
-		for (int i = 0; i < level-1; i++) {
-			indent.append(INDENT);
-		}
-		return indent.toString();
-	}
-	
-
-	/*
-	 * Constructs the output string for each org.
-	 */
-	public static String getOutputString(OrgBean orgBean) {
-		return orgBean.getOrgId() + ", " + orgBean.getTotalNumUsers() + ", " + orgBean.getTotalNumFiles()
-				+ ", " + orgBean.getTotalNumBytes();
-	}
-
-}
+package orgstats.store;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import orgstats.DataCompression;
+import orgstats.OrgBean;
+import orgstats.OrgCollection;
+import orgstats.OrgTreeVisitor;
+import orgstats.OrgTreeWalker;
+import orgstats.metrics.OrgStatsMetrics;
+
+/**
+ * Data store for organizational hierarchy usage statistics using a File.  The File is 
+ * compressed when its name ends with ".gz", see DataCompression.forOutputFile(), on another
+ * thread than the one formatting the lines.
+ */
+public class OrgStatsFileStore implements OrgStatsStore {
+
+	private static final Logger logger = Logger.getLogger(OrgStatsFileStore.class.getName());
+	private static final String INDENT = "  ";
+	private static final byte[] SEPARATOR = { ',', ' ' };
+	private static final byte[] LINE_SEPARATOR = System.getProperty("line.separator").getBytes();
+	private static final int MAX_LINE_LENGTH = 4 * 20 + 3 * 2 + LINE_SEPARATOR.length;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private File outputFile;
+	private DataCompression compression;
+	
+	/**
+	 * Constructs OrgStatsFileStore with the File to be used for output, compressed when its
+	 * name ends with ".gz".
+	 * 
+	 * @param outputFile	the File used to write the org summary data
+	 */
+	public OrgStatsFileStore(File outputFile) throws OrgStatsStoreException {
+		this(outputFile, DataCompression.forOutputFile(outputFile));
+	}
+	
+	/**
+	 * Constructs OrgStatsFileStore with the File to be used for output and its compression.
+	 * 
+	 * @param outputFile	the File used to write the org summary data
+	 * @param compression	how the File is compressed
+	 */
+	public OrgStatsFileStore(File outputFile, DataCompression compression) throws OrgStatsStoreException {	
+		
+		try {
+			if ((outputFile.exists() && !outputFile.canWrite())
+					|| (!outputFile.exists() && !outputFile.createNewFile())) {
+				String errMsg = "Output file specified is not valid.";
+				logger.log(Level.SEVERE, errMsg);
+				throw new OrgStatsStoreException(errMsg);
+			}
+		} catch (IOException ioEx) {
+			String errMsg = "ERROR creating output data file (I/O error)";
+			logger.log(Level.SEVERE, errMsg, ioEx);
+			throw new OrgStatsStoreException(errMsg, ioEx);	
+		} 
+	
+		this.outputFile = outputFile;
+		this.compression = compression;
+	}
+
+	/**
+	 * Stores organization, user, and file usage data from memory into a file.  The totals that
+	 * aren't cached are computed first, in parallel for a large collection, instead of tree by 
+	 * tree as the lines are written.  The duration and the bytes written to the file, compressed
+	 * or not, are recorded in OrgStatsMetrics.STORE.
+	 * 
+	 * @return orgCollection		the OrgCollection containing a tree of OrgBeans			
+	 */
+	@Override
+	public void storeData(OrgCollection orgCollection) throws OrgStatsStoreException {
+		
+		FileOutputStream outputStream = null;
+		long startNanos = System.nanoTime();
+		long bytesWritten = 0;
+		
+		try {
+			logger.log(Level.INFO, "Writing org tree summary data...");
+			orgCollection.computeTotals();
+			outputStream = new FileOutputStream(outputFile);
+			if (compression == DataCompression.NONE) {
+				FileChannel outputChannel = outputStream.getChannel();
+				outputOrgData(outputChannel, orgCollection.getTopLevelOrgs());
+				bytesWritten = outputChannel.position();
+			} else {
+				CompressingChannel outputChannel = new CompressingChannel(outputStream, compression);
+				try {
+					outputOrgData(outputChannel, orgCollection.getTopLevelOrgs());
+				} finally {
+					outputChannel.close();
+				}
+				bytesWritten = outputFile.length();
+			}
+		} catch (IOException ioEx) {
+			String errMsg = "ERROR writing data file (I/O error)";
+			logger.log(Level.SEVERE, errMsg, ioEx);
+			throw new OrgStatsStoreException(errMsg, ioEx);	
+		} finally {
+			try {
+				if (outputStream != null) {
+					outputStream.close();
+				}
+			} catch (IOException ioEx) {
+				logger.log(Level.WARNING, "Error storing data file", ioEx);
+			}
+			OrgStatsMetrics.STORE.addStore(System.nanoTime() - startNanos, bytesWritten);
+		}
+	}
+	
+	/**
+	 * Write the OrgBeans and their child OrgBeans in one pass, each OrgBean is followed by its
+	 * children sorted by org id and indented one level more than its parent.  The tree is walked
+	 * with an OrgTreeWalker instead of recursion and the lines are encoded into one reusable 
+	 * buffer.  Sibling lists that are not sorted are sorted in a copy, so the OrgCollection is 
+	 * not changed.
+	 * 
+	 * @param outputChannel		the channel to write the lines to
+	 * @param topLevelOrgs		the OrgBeans written without indentation
+	 * @throws IOException		if any unexpected I/O error occurs
+	 */
+	void outputOrgData(final WritableByteChannel outputChannel, List<OrgBean> topLevelOrgs) throws IOException {
+		
+		final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		new OrgTreeWalker(true).walk(topLevelOrgs, new OrgTreeVisitor<IOException>() {
+			public boolean preVisit(OrgBean orgBean, int depth) throws IOException {
+				putLine(outputChannel, buffer, orgBean, depth);
+				return true;
+			}
+
+			public void postVisit(OrgBean orgBean, int depth) {
+			}
+		});
+		flush(outputChannel, buffer);
+	}
+	
+	/*
+	 * Encodes the indentation and the output string of an OrgBean into the buffer, the same
+	 * characters as getOutputString() without creating any Strings.
+	 */
+	private static void putLine(WritableByteChannel outputChannel, ByteBuffer buffer, OrgBean orgBean, int level) 
+			throws IOException {
+		
+		for (int i = 0; i < level * INDENT.length(); i++) {
+			ensureRemaining(outputChannel, buffer, 1);
+			buffer.put((byte) ' ');
+		}
+		ensureRemaining(outputChannel, buffer, MAX_LINE_LENGTH);
+		putNumber(buffer, orgBean.getOrgId());
+		buffer.put(SEPARATOR);
+		putNumber(buffer, orgBean.getTotalNumUsers());
+		buffer.put(SEPARATOR);
+		putNumber(buffer, orgBean.getTotalNumFiles());
+		buffer.put(SEPARATOR);
+		putNumber(buffer, orgBean.getTotalNumBytes());
+		buffer.put(LINE_SEPARATOR);
+	}
+	
+	/*
+	 * Puts the decimal digits of the number, the digits are computed from a negative value 
+	 * so Long.MIN_VALUE works too.
+	 */
+	private static void putNumber(ByteBuffer buffer, long number) {
+		
+		long value = number;
+		if (value < 0) {
+			buffer.put((byte) '-');
+		} else {
+			value = -value;
+		}
+		byte[] bytes = buffer.array();
+		int start = buffer.arrayOffset() + buffer.position();
+		int end = start;
+		do {
+			bytes[end] = (byte) ('0' - value % 10);
+			value = value / 10;
+			end = end + 1;
+		} while (value != 0);
+		buffer.position(buffer.position() + end - start);
+		
+		for (end = end - 1; start < end; start++, end--) {
+			byte digit = bytes[start];
+			bytes[start] = bytes[end];
+			bytes[end] = digit;
+		}
+	}
+	
+	/*
+	 * Writes the buffer to the channel if it doesn't have room for the bytes.
+	 */
+	private static void ensureRemaining(WritableByteChannel outputChannel, ByteBuffer buffer, int byteCount) 
+			throws IOException {
+		if (buffer.remaining() < byteCount) {
+			flush(outputChannel, buffer);
+		}
+	}
+	
+	private static void flush(WritableByteChannel outputChannel, ByteBuffer buffer) throws IOException {
+		
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			outputChannel.write(buffer);
+		}
+		buffer.clear();
+	}
+	
+	/*
+	 * Constructs the output string for each org.
+	 */
+	public static String getOutputString(OrgBean orgBean) {
+		return orgBean.getOrgId() + ", " + orgBean.getTotalNumUsers() + ", " + orgBean.getTotalNumFiles()
+				+ ", " + orgBean.getTotalNumBytes();
+	}
+
+}
@@ -0,0 +1,242 @@
+package orgstats.store;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import orgstats.OrgBean;
+import orgstats.OrgCollection;
+import orgstats.OrgTreeVisitor;
+import orgstats.OrgTreeWalker;
+import orgstats.UserColumns;
+
+/**
+ * Data store that writes an OrgCollection to a binary snapshot File, so it can be restored
+ * with orgstats.load.OrgStatsSnapshotLoader instead of parsing the org and user data files again.
+ * <p>
+ * The snapshot is keyed by the size and last modified time of the org and user data files
+ * it was loaded from.  All values are big-endian and the sections follow each other:
+ * <ul>
+ * 	<li>header:  magic, version, flags, org count, org file size and modified time, user file
+ * 		size and modified time, name byte count and user count
+ * 	<li>org table:  one fixed size record per org with the org id, parent org id, the org's own
+ * 		user, file and byte counts, the totals, the name length and the user count
+ * 	<li>names:  the UTF-8 org names in org table order
+ * 	<li>users (only with USERS_FLAG):  every user id, then every file count, then every byte count,
+ * 		in org table order
+ * </ul>
+ * The orgs are written parents first in tree order, so adding them to an OrgCollection in
+ * table order rebuilds the same tree.
+ */
+public class OrgStatsSnapshotStore implements OrgStatsStore {
+
+	private static final Logger logger = Logger.getLogger(OrgStatsSnapshotStore.class.getName());
+
+	public static final int MAGIC = 0x4F53534E;
+	public static final int VERSION = 1;
+	public static final int USERS_FLAG = 1;
+	public static final int HEADER_SIZE = 64;
+	public static final int ORG_RECORD_SIZE = 48;
+	public static final Charset NAME_CHARSET = Charset.forName("UTF-8");
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private File snapshotFile;
+	private File orgFile;
+	private File userFile;
+	private boolean storeUsers;
+
+	/**
+	 * Constructs OrgStatsSnapshotStore with the snapshot File to write and the data files
+	 * the OrgCollection is loaded from.  The users of each org are stored.
+	 *
+	 * @param snapshotFile	the File used to write the snapshot
+	 * @param orgFile		the File that contains the org data
+	 * @param userFile		the File that contains the user data
+	 */
+	public OrgStatsSnapshotStore(File snapshotFile, File orgFile, File userFile) {
+		this(snapshotFile, orgFile, userFile, true);
+	}
+
+	/**
+	 * Constructs OrgStatsSnapshotStore with the snapshot File to write and the data files
+	 * the OrgCollection is loaded from.
+	 *
+	 * @param snapshotFile	the File used to write the snapshot
+	 * @param orgFile		the File that contains the org data
+	 * @param userFile		the File that contains the user data
+	 * @param storeUsers	true to store the users of each org, false to only store the org usage
+	 */
+	public OrgStatsSnapshotStore(File snapshotFile, File orgFile, File userFile, boolean storeUsers) {
+
+		this.snapshotFile = snapshotFile;
+		this.orgFile = orgFile;
+		this.userFile = userFile;
+		this.storeUsers = storeUsers;
+	}
+
+	/**
+	 * Writes the OrgCollection to a temporary file next to the snapshot File and renames it,
+	 * so an interrupted write never leaves a partial snapshot behind.
+	 *
+	 * @param orgCollection		the OrgCollection containing a tree of OrgBeans
+	 */
+	@Override
+	public void storeData(OrgCollection orgCollection) throws OrgStatsStoreException {
+
+		File tempFile = new File(snapshotFile.getAbsolutePath() + ".tmp");
+		FileOutputStream snapshotOutput = null;
+		try {
+			logger.log(Level.INFO, "Writing org snapshot file...");
+			List<OrgBean> orgBeans = getOrgsInTreeOrder(orgCollection);
+			snapshotOutput = new FileOutputStream(tempFile);
+			writeSnapshot(snapshotOutput.getChannel(), orgBeans);
+			snapshotOutput.getFD().sync();
+			snapshotOutput.close();
+			snapshotOutput = null;
+
+			if ((snapshotFile.exists() && !snapshotFile.delete()) || !tempFile.renameTo(snapshotFile)) {
+				String errMsg = "ERROR replacing snapshot file " + snapshotFile;
+				logger.log(Level.SEVERE, errMsg);
+				throw new OrgStatsStoreException(errMsg);
+			}
+		} catch (IOException ioEx) {
+			String errMsg = "ERROR writing snapshot file (I/O error)";
+			logger.log(Level.SEVERE, errMsg, ioEx);
+			throw new OrgStatsStoreException(errMsg, ioEx);
+		} finally {
+			try {
+				if (snapshotOutput != null) {
+					snapshotOutput.close();
+				}
+			} catch (IOException ioEx) {
+				logger.log(Level.WARNING, "Error closing snapshot file", ioEx);
+			}
+			if (tempFile.exists() && !tempFile.delete()) {
+				logger.log(Level.WARNING, "Error removing temporary snapshot file " + tempFile);
+			}
+		}
+	}
+
+	/*
+	 * Returns the orgs with each parent before its children, the top level orgs and the children
+	 * in their collection order.
+	 */
+	private static List<OrgBean> getOrgsInTreeOrder(OrgCollection orgCollection) {
+
+		final List<OrgBean> orgBeans = new ArrayList<OrgBean>();
+		new OrgTreeWalker().walk(orgCollection.getTopLevelOrgs(), new OrgTreeVisitor<RuntimeException>() {
+			public boolean preVisit(OrgBean orgBean, int depth) {
+				orgBeans.add(orgBean);
+				return true;
+			}
+
+			public void postVisit(OrgBean orgBean, int depth) {
+			}
+		});
+		return orgBeans;
+	}
+
+	/*
+	 * Writes the header and the sections through a reusable buffer.
+	 */
+	private void writeSnapshot(FileChannel channel, List<OrgBean> orgBeans) throws IOException {
+
+		byte[][] names = new byte[orgBeans.size()][];
+		long nameByteCount = 0;
+		long userCount = 0;
+		for (int i = 0; i < names.length; i++) {
+			OrgBean orgBean = orgBeans.get(i);
+			names[i] = orgBean.getName() == null ? new byte[0] : orgBean.getName().getBytes(NAME_CHARSET);
+			nameByteCount = nameByteCount + names[i].length;
+			userCount = userCount + (storeUsers ? orgBean.getUserColumns().size() : 0);
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(storeUsers ? USERS_FLAG : 0);
+		buffer.putInt(orgBeans.size());
+		buffer.putLong(orgFile.length());
+		buffer.putLong(orgFile.lastModified());
+		buffer.putLong(userFile.length());
+		buffer.putLong(userFile.lastModified());
+		buffer.putLong(nameByteCount);
+		buffer.putLong(userCount);
+
+		for (int i = 0; i < names.length; i++) {
+			OrgBean orgBean = orgBeans.get(i);
+			ensureRemaining(channel, buffer, ORG_RECORD_SIZE);
+			buffer.putInt(orgBean.getOrgId());
+			buffer.putInt(orgBean.getParentOrgId());
+			buffer.putInt(orgBean.getNumUsers());
+			buffer.putInt(orgBean.getNumFiles());
+			buffer.putLong(orgBean.getNumBytes());
+			buffer.putInt(orgBean.getTotalNumUsers());
+			buffer.putInt(orgBean.getTotalNumFiles());
+			buffer.putLong(orgBean.getTotalNumBytes());
+			buffer.putInt(names[i].length);
+			buffer.putInt(storeUsers ? orgBean.getUserColumns().size() : 0);
+		}
+
+		for (byte[] name : names) {
+			int offset = 0;
+			while (offset < name.length) {
+				ensureRemaining(channel, buffer, 1);
+				int length = Math.min(buffer.remaining(), name.length - offset);
+				buffer.put(name, offset, length);
+				offset = offset + length;
+			}
+		}
+
+		if (storeUsers) {
+			for (OrgBean orgBean : orgBeans) {
+				UserColumns users = orgBean.getUserColumns();
+				for (int i = 0; i < users.size(); i++) {
+					ensureRemaining(channel, buffer, 4);
+					buffer.putInt(users.getUserId(i));
+				}
+			}
+			for (OrgBean orgBean : orgBeans) {
+				UserColumns users = orgBean.getUserColumns();
+				for (int i = 0; i < users.size(); i++) {
+					ensureRemaining(channel, buffer, 4);
+					buffer.putInt(users.getNumFiles(i));
+				}
+			}
+			for (OrgBean orgBean : orgBeans) {
+				UserColumns users = orgBean.getUserColumns();
+				for (int i = 0; i < users.size(); i++) {
+					ensureRemaining(channel, buffer, 8);
+					buffer.putLong(users.getNumBytes(i));
+				}
+			}
+		}
+		flush(channel, buffer);
+	}
+
+	/*
+	 * Writes the buffer to the channel if it doesn't have room for the bytes.
+	 */
+	private static void ensureRemaining(FileChannel channel, ByteBuffer buffer, int byteCount) throws IOException {
+		if (buffer.remaining() < byteCount) {
+			flush(channel, buffer);
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,216 @@
+package orgstats;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import orgstats.load.CompactOrgDataLoader;
+import orgstats.load.OrgUserDataFileLoader;
+import orgstats.load.UserLoadMode;
+import orgstats.store.OrgStatsFileStore;
+
+public class CompactOrgCollectionTest {
+
+	private static final String DATA_PATH = new java.io.File("").getAbsolutePath() + "//data//";
+	private static final File ORG_FILE = new File(DATA_PATH + "SmallOrgsTestFile.txt");
+	private static final File USER_FILE = new File(DATA_PATH + "SmallUsersTestFile.txt");
+
+	/**
+	 * Builds a random forest with orgs whose parent doesn't exist in random order and compares
+	 * every query with a sealed OrgCollection of the same orgs.
+	 */
+	@Test
+	public void testSameAsOrgCollection() {
+
+		int orgCount = 5000;
+		Random random = new Random(7);
+		List<OrgBean> orgBeans = new ArrayList<OrgBean>(orgCount);
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			int parentOrgId = orgId == 1 || random.nextInt(20) == 0 ? 0 : 1 + random.nextInt(orgId - 1);
+			if (random.nextInt(100) == 0) {
+				parentOrgId = orgCount + orgId;
+			}
+			orgBeans.add(new OrgBean(orgId, parentOrgId, "Org" + orgId));
+		}
+		Collections.shuffle(orgBeans, random);
+
+		OrgCollection orgCollection = new OrgCollection();
+		orgCollection.addAll(orgBeans);
+		CompactOrgCollection.Builder builder = new CompactOrgCollection.Builder();
+		for (OrgBean orgBean : orgBeans) {
+			builder.addOrg(orgBean.getOrgId(), orgBean.getParentOrgId(), orgBean.getName());
+		}
+		for (int i = 0; i < 20000; i++) {
+			int orgId = 1 + random.nextInt(orgCount);
+			int fileCount = random.nextInt(1000);
+			long byteCount = random.nextInt(1000000) * 1000l;
+			orgCollection.addUsage(orgId, 1, fileCount, byteCount);
+			builder.addUsage(orgId, 1, fileCount, byteCount);
+		}
+		orgCollection.seal();
+		CompactOrgCollection compactCollection = builder.build();
+
+		Assert.assertEquals("Org count invalid.", orgCollection.getOrgCount(), compactCollection.getOrgCount());
+		Assert.assertEquals("Tree depth invalid.", orgCollection.getTreeDepth(), compactCollection.getTreeDepth());
+		Assert.assertEquals("Top level orgs invalid.", orgIds(orgCollection.getTopLevelOrgs()),
+				orgIds(compactCollection.getTopLevelOrgs()));
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			OrgBean orgBean = orgCollection.getOrg(orgId);
+			OrgBean compactOrg = compactCollection.getOrg(orgId);
+			Assert.assertEquals("Org id invalid.", orgBean.getOrgId(), compactOrg.getOrgId());
+			Assert.assertEquals("Parent org id invalid.", orgBean.getParentOrgId(), compactOrg.getParentOrgId());
+			Assert.assertEquals("Name invalid.", orgBean.getName(), compactOrg.getName());
+			Assert.assertEquals("Stats invalid.", orgBean.getStatsString(), compactOrg.getStatsString());
+			Assert.assertEquals("User count invalid.", orgBean.getNumUsers(), compactOrg.getNumUsers());
+			Assert.assertEquals("Byte count invalid.", orgBean.getNumBytes(), compactOrg.getNumBytes());
+			Assert.assertEquals("Parent org invalid.", orgBean.getParentOrg() == null ? null : orgBean.getParentOrg().getOrgId(),
+					compactOrg.getParentOrg() == null ? null : compactOrg.getParentOrg().getOrgId());
+			Assert.assertEquals("Views of the same org not equal.", compactOrg, compactCollection.getOrg(orgId));
+			Assert.assertEquals("Child orgs invalid.", orgIds(orgBean.getChildOrgs()), orgIds(compactOrg.getChildOrgs()));
+			Assert.assertEquals("Org tree invalid.", orgIds(orgCollection.getOrgTree(orgId, false)),
+					orgIds(compactCollection.getOrgTree(orgId, false)));
+			int ancestorOrgId = 1 + random.nextInt(orgCount);
+			Assert.assertEquals("isDescendant() invalid.", orgCollection.isDescendant(orgId, ancestorOrgId),
+					compactCollection.isDescendant(orgId, ancestorOrgId));
+		}
+
+		// Pages of every level and of the levels down to maxDepth.
+		for (OrgBean topLevelOrg : orgCollection.getTopLevelOrgs()) {
+			int orgId = topLevelOrg.getOrgId();
+			for (int maxDepth : new int[] { 0, 1, 2, OrgCollection.ALL_LEVELS }) {
+				for (int offset : new int[] { 0, 3, 50 }) {
+					Assert.assertEquals("Org tree page invalid.",
+							orgIds(orgCollection.getOrgTreeIterator(orgId, true, offset, 40, maxDepth)),
+							orgIds(compactCollection.getOrgTreeIterator(orgId, true, offset, 40, maxDepth)));
+					Assert.assertEquals("Exclusive org tree page invalid.",
+							orgIds(orgCollection.getOrgTreeIterator(orgId, false, offset, 40, maxDepth)),
+							orgIds(compactCollection.getOrgTreeIterator(orgId, false, offset, 40, maxDepth)));
+				}
+			}
+		}
+		// Top orgs and thresholds, the totals of most small orgs are equal.
+		for (UsageMetric metric : UsageMetric.values()) {
+			Assert.assertEquals("Top orgs by " + metric + " invalid.", orgIds(orgCollection.getTopOrgs(metric, 100)),
+					orgIds(compactCollection.getTopOrgs(metric, 100)));
+			Assert.assertEquals("Orgs over a threshold of " + metric + " invalid.",
+					orgIds(orgCollection.getOrgsOver(metric, 10)), orgIds(compactCollection.getOrgsOver(metric, 10)));
+			for (int orgId = 1; orgId <= orgCount; orgId = orgId + 97) {
+				Assert.assertEquals("Top orgs by " + metric + " invalid.",
+						orgIds(orgCollection.getTopOrgs(orgId, true, metric, 5)),
+						orgIds(compactCollection.getTopOrgs(orgId, true, metric, 5)));
+				Assert.assertEquals("Orgs over a threshold of " + metric + " invalid.",
+						orgIds(orgCollection.getOrgsOver(orgId, false, metric, 3)),
+						orgIds(compactCollection.getOrgsOver(orgId, false, metric, 3)));
+			}
+		}
+		Assert.assertTrue("Users stored.", compactCollection.getTopUsers(1, UsageMetric.BYTES, 5).isEmpty());
+		Assert.assertNull("Missing org found.", compactCollection.getOrg(orgCount + 1));
+		Assert.assertTrue("Missing org tree not empty.", compactCollection.getOrgTree(orgCount + 1, true).isEmpty());
+	}
+
+	/**
+	 * Loads the data files into both collections and compares the output files.
+	 */
+	@Test
+	public void testLoadAndStore() throws Exception {
+
+		File outputFile = File.createTempFile("Output", ".txt");
+		File compactOutputFile = File.createTempFile("CompactOutput", ".txt");
+		try {
+			OrgCollection orgCollection = new OrgUserDataFileLoader(ORG_FILE, USER_FILE,
+					UserLoadMode.AGGREGATES_ONLY, 1).loadData();
+			new OrgStatsFileStore(outputFile).storeData(orgCollection);
+			for (int threadCount : new int[] { 1, 4 }) {
+				OrgCollection compactCollection = new CompactOrgDataLoader(ORG_FILE, USER_FILE, threadCount).loadData();
+				Assert.assertTrue("Not a CompactOrgCollection.", compactCollection instanceof CompactOrgCollection);
+				new OrgStatsFileStore(compactOutputFile).storeData(compactCollection);
+				Assert.assertEquals("Output file invalid for threadCount=" + threadCount,
+						Files.readAllLines(outputFile.toPath()), Files.readAllLines(compactOutputFile.toPath()));
+			}
+		} finally {
+			outputFile.delete();
+			compactOutputFile.delete();
+		}
+	}
+
+	/**
+	 * The collection and its views can't be changed.
+	 */
+	@Test
+	public void testReadOnly() {
+
+		CompactOrgCollection.Builder builder = new CompactOrgCollection.Builder();
+		builder.addOrg(1, 0, "Org1");
+		builder.addOrg(2, 1, null);
+		Assert.assertFalse("Usage added to a missing org.", builder.addUsage(3, 1, 1, 1l));
+		CompactOrgCollection compactCollection = builder.build();
+		Assert.assertTrue("Collection not sealed.", compactCollection.isSealed());
+		Assert.assertNull("Null name invalid.", compactCollection.getOrg(2).getName());
+		compactCollection.seal();
+		compactCollection.computeTotals();
+
+		try {
+			compactCollection.add(new OrgBean(3, 1, "Org3"));
+			Assert.fail("Org added to a CompactOrgCollection.");
+		} catch (IllegalStateException expected) {
+		}
+		try {
+			compactCollection.addUsage(1, 1, 1, 1l);
+			Assert.fail("Usage added to a CompactOrgCollection.");
+		} catch (IllegalStateException expected) {
+		}
+		try {
+			compactCollection.getOrg(1).addUsage(1, 1, 1l);
+			Assert.fail("Usage added to a view.");
+		} catch (IllegalStateException expected) {
+		}
+		try {
+			compactCollection.getOrgTree(1, true).remove(0);
+			Assert.fail("Org removed from an org tree.");
+		} catch (UnsupportedOperationException expected) {
+		}
+	}
+
+	/**
+	 * Builds and walks a chain of a million orgs, which a recursive walk can't.
+	 */
+	@Test
+	public void testMillionDeepChain() {
+
+		int orgCount = 1000000;
+		CompactOrgCollection.Builder builder = new CompactOrgCollection.Builder();
+		for (int orgId = orgCount; orgId >= 1; orgId--) {
+			builder.addOrg(orgId, orgId - 1, "Org" + orgId);
+		}
+		builder.addUsage(orgCount, 1, 2, 3l);
+		CompactOrgCollection compactCollection = builder.build();
+
+		Assert.assertEquals("Tree depth invalid.", orgCount, compactCollection.getTreeDepth());
+		Assert.assertEquals("Root total user count invalid.", 1, compactCollection.getOrg(1).getTotalNumUsers());
+		Assert.assertEquals("Org tree size invalid.", orgCount, compactCollection.getOrgTree(1, true).size());
+		Assert.assertTrue("Last org not below the root.", compactCollection.isDescendant(orgCount, 1));
+		Iterator<OrgBean> page = compactCollection.getOrgTreeIterator(1, false, orgCount - 2, 10, OrgCollection.ALL_LEVELS);
+		Assert.assertEquals("Last org invalid.", orgCount, page.next().getOrgId());
+		Assert.assertFalse("Page past the end of the tree.", page.hasNext());
+	}
+
+	private static List<Integer> orgIds(List<OrgBean> orgBeans) {
+		return orgIds(orgBeans.iterator());
+	}
+
+	private static List<Integer> orgIds(Iterator<OrgBean> orgBeans) {
+
+		List<Integer> orgIds = new ArrayList<Integer>();
+		while (orgBeans.hasNext()) {
+			orgIds.add(orgBeans.next().getOrgId());
+		}
+		return orgIds;
+	}
+}
@@ -0,0 +1,574 @@
+package orgstats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OrgCollectionTest {
+
+	@Test
+	public void testGetOrgOutOfOrder() {
+
+		OrgCollection orgCollection = new OrgCollection();
+
+		// Children arrive before their parents.
+		orgCollection.add(new OrgBean(4, 3, "Org4"));
+		orgCollection.add(new OrgBean(3, 2, "Org3"));
+		orgCollection.add(new OrgBean(2, 1, "Org2"));
+		orgCollection.add(new OrgBean(1, 0, "Org1"));
+		orgCollection.add(new OrgBean(5, 1, "Org5"));
+
+		for (int orgId = 1; orgId <= 5; orgId++) {
+			OrgBean orgBean = orgCollection.getOrg(orgId);
+			Assert.assertNotNull("Org" + orgId + " is null.", orgBean);
+			Assert.assertEquals("Org" + orgId + " has wrong id.", orgId, orgBean.getOrgId());
+		}
+		Assert.assertNull("Org6 doesn't exist.", orgCollection.getOrg(6));
+
+		List<OrgBean> orgTree = orgCollection.getOrgTree(1, true);
+		Assert.assertEquals("Total org count for getOrgTree(1, true) is incorrect.", 5, orgTree.size());
+		Assert.assertEquals("Total org count for getOrgTree(3, false) is incorrect.", 1,
+				orgCollection.getOrgTree(3, false).size());
+
+		Assert.assertTrue("User not added to Org4.", orgCollection.addUser(new UserBean(1, 4, 10, 100l)));
+		Assert.assertFalse("User added to missing Org6.", orgCollection.addUser(new UserBean(2, 6, 10, 100l)));
+		Assert.assertEquals("Org1 total user count invalid.", 1, orgCollection.getOrg(1).getTotalNumUsers());
+	}
+
+	@Test
+	public void testAddAllReverseOrder() {
+
+		int orgCount = 100000;
+		List<OrgBean> orgBeans = new ArrayList<OrgBean>(orgCount);
+		for (int orgId = orgCount; orgId >= 1; orgId--) {
+			orgBeans.add(new OrgBean(orgId, orgId / 2, "Org" + orgId));
+		}
+
+		OrgCollection orgCollection = new OrgCollection();
+		orgCollection.addAll(orgBeans);
+
+		Assert.assertEquals("Top level org count is incorrect.", 1, orgCollection.getTopLevelOrgs().size());
+		Assert.assertEquals("Total org count for getOrgTree(1, true) is incorrect.", orgCount,
+				orgCollection.getOrgTree(1, true).size());
+		Assert.assertEquals("Org2 child count is incorrect.", 2, orgCollection.getOrg(2).getChildOrgs().size());
+	}
+
+	@Test
+	public void testAddOrphansWithSameParent() {
+
+		OrgCollection orgCollection = new OrgCollection();
+		orgCollection.add(new OrgBean(2, 1, "Org2"));
+		orgCollection.add(new OrgBean(3, 1, "Org3"));
+		orgCollection.add(new OrgBean(4, 1, "Org4"));
+		Assert.assertEquals("Orphans not at top level.", 3, orgCollection.getTopLevelOrgs().size());
+
+		orgCollection.add(new OrgBean(1, 0, "Org1"));
+		Assert.assertEquals("Orphans left at top level.", 1, orgCollection.getTopLevelOrgs().size());
+		Assert.assertEquals("Org1 child count is incorrect.", 3, orgCollection.getOrg(1).getChildOrgs().size());
+	}
+
+	@Test
+	public void testCachedTotalsAfterAdds() {
+
+		OrgCollection orgCollection = new OrgCollection();
+		orgCollection.add(new OrgBean(1, 0, "Org1"));
+		orgCollection.add(new OrgBean(2, 1, "Org2"));
+		orgCollection.addUser(new UserBean(1, 1, 5, 50l));
+		orgCollection.addUser(new UserBean(2, 2, 7, 70l));
+		orgCollection.computeTotals();
+
+		OrgBean orgBean1 = orgCollection.getOrg(1);
+		Assert.assertEquals("Org1 total user count invalid.", 2, orgBean1.getTotalNumUsers());
+		Assert.assertEquals("Org1 total file count invalid.", 12, orgBean1.getTotalNumFiles());
+		Assert.assertEquals("Org1 total byte count invalid.", 120l, orgBean1.getTotalNumBytes());
+
+		// Users and orgs added after the totals are cached update the whole parent chain.
+		orgCollection.addUser(new UserBean(3, 2, 1, 10l));
+		orgCollection.add(new OrgBean(4, 3, "Org4"));
+		orgCollection.addUser(new UserBean(4, 4, 2, 20l));
+		orgCollection.add(new OrgBean(3, 2, "Org3"));
+
+		Assert.assertEquals("Org1 total user count invalid.", 4, orgBean1.getTotalNumUsers());
+		Assert.assertEquals("Org1 total file count invalid.", 15, orgBean1.getTotalNumFiles());
+		Assert.assertEquals("Org1 total byte count invalid.", 150l, orgBean1.getTotalNumBytes());
+		Assert.assertEquals("Org2 total user count invalid.", 3, orgCollection.getOrg(2).getTotalNumUsers());
+		Assert.assertEquals("Org3 total byte count invalid.", 20l, orgCollection.getOrg(3).getTotalNumBytes());
+	}
+
+	/**
+	 * A child added to the child list directly is counted once the totals are invalidated, 
+	 * even though its parent org isn't set.
+	 */
+	@Test
+	public void testChildAddedToChildList() {
+
+		OrgBean parentOrg = new OrgBean(1, 0, "Org1");
+		parentOrg.addUser(1, 5, 50l);
+		Assert.assertEquals("Org1 total user count invalid.", 1, parentOrg.getTotalNumUsers());
+
+		OrgBean childOrg = new OrgBean(2, 1, "Org2");
+		childOrg.addUser(2, 7, 70l);
+		OrgBean grandchildOrg = new OrgBean(3, 2, "Org3");
+		grandchildOrg.addUser(3, 1, 10l);
+		childOrg.getChildOrgs().add(grandchildOrg);
+		parentOrg.getChildOrgs().add(childOrg);
+		parentOrg.invalidateTotals();
+
+		Assert.assertNull("Parent org set.", childOrg.getParentOrg());
+		Assert.assertEquals("Org1 total user count invalid.", 3, parentOrg.getTotalNumUsers());
+		Assert.assertEquals("Org1 total file count invalid.", 13, parentOrg.getTotalNumFiles());
+		Assert.assertEquals("Org1 total byte count invalid.", 130l, parentOrg.getTotalNumBytes());
+		Assert.assertEquals("Org2 total byte count invalid.", 80l, childOrg.getTotalNumBytes());
+	}
+
+	@Test
+	public void testIntHashMap() {
+
+		IntHashMap<String> map = new IntHashMap<String>();
+		for (int key = -1000; key <= 1000; key++) {
+			map.put(key, String.valueOf(key));
+		}
+		Assert.assertEquals("Map size is incorrect.", 2001, map.size());
+
+		// Remove every other key so probe chains have gaps.
+		for (int key = -1000; key <= 1000; key = key + 2) {
+			Assert.assertEquals("Removed value is incorrect.", String.valueOf(key), map.remove(key));
+		}
+		Assert.assertEquals("Map size after removal is incorrect.", 1000, map.size());
+		for (int key = -1000; key <= 1000; key++) {
+			if ((key & 1) == 0) {
+				Assert.assertNull("Removed key " + key + " still mapped.", map.get(key));
+			} else {
+				Assert.assertEquals("Value for key " + key + " is incorrect.", String.valueOf(key), map.get(key));
+			}
+		}
+		Assert.assertEquals("Replaced value is incorrect.", "1", map.put(1, "one"));
+		Assert.assertEquals("Replacement not stored.", "one", map.get(1));
+	}
+
+	@Test
+	public void testApplyDelta() {
+
+		OrgCollection orgCollection = new OrgCollection();
+		orgCollection.add(new OrgBean(1, 0, "Org1"));
+		orgCollection.add(new OrgBean(2, 1, "Org2"));
+		orgCollection.add(new OrgBean(3, 2, "Org3"));
+		orgCollection.add(new OrgBean(4, 1, "Org4"));
+		orgCollection.addUser(1, 3, 10, 100l);
+		orgCollection.addUser(2, 3, 20, 200l);
+		orgCollection.addUser(3, 4, 30, 300l);
+		orgCollection.computeTotals();
+		OrgBean orgBean1 = orgCollection.getOrg(1);
+		OrgBean orgBean2 = orgCollection.getOrg(2);
+
+		Assert.assertTrue("Update not applied.", orgCollection.applyDelta(UserDelta.updated(1, 3, 15, 150l)));
+		Assert.assertEquals("Org2 total file count invalid.", 35, orgBean2.getTotalNumFiles());
+		Assert.assertEquals("Org1 total byte count invalid.", 650l, orgBean1.getTotalNumBytes());
+
+		Assert.assertTrue("Move not applied.", orgCollection.applyDelta(UserDelta.moved(2, 3, 4)));
+		Assert.assertEquals("Org2 total user count invalid.", 1, orgBean2.getTotalNumUsers());
+		Assert.assertEquals("Org4 total byte count invalid.", 500l, orgCollection.getOrg(4).getTotalNumBytes());
+		Assert.assertEquals("Org1 total user count invalid.", 3, orgBean1.getTotalNumUsers());
+
+		Assert.assertTrue("Remove not applied.", orgCollection.applyDelta(UserDelta.removed(1, 3)));
+		Assert.assertTrue("Add not applied.", orgCollection.applyDelta(UserDelta.added(5, 2, 1, 1l)));
+		Assert.assertEquals("Org3 user count invalid.", 0, orgCollection.getOrg(3).getUsers().size());
+		Assert.assertEquals("Org2 total file count invalid.", 1, orgBean2.getTotalNumFiles());
+		Assert.assertEquals("Org1 total byte count invalid.", 501l, orgBean1.getTotalNumBytes());
+
+		Assert.assertFalse("User added twice.", orgCollection.applyDelta(UserDelta.added(5, 2, 1, 1l)));
+		Assert.assertFalse("User removed from the wrong org.", orgCollection.applyDelta(UserDelta.removed(3, 2)));
+		Assert.assertFalse("User updated in missing org.", orgCollection.applyDelta(UserDelta.updated(3, 9, 1, 1l)));
+		Assert.assertFalse("User moved to missing org.", orgCollection.applyDelta(UserDelta.moved(3, 4, 9)));
+		Assert.assertEquals("Org4 user count invalid.", 2, orgCollection.getOrg(4).getNumUsers());
+		Assert.assertEquals("Org1 total user count invalid.", 3, orgBean1.getTotalNumUsers());
+
+		orgCollection.seal();
+		try {
+			orgCollection.applyDelta(UserDelta.removed(3, 4));
+			Assert.fail("Delta applied to sealed collection.");
+		} catch (IllegalStateException ex) {
+			Assert.assertEquals("OrgCollection is sealed and can't be changed.", ex.getMessage());
+		}
+		try {
+			orgCollection.getOrg(4).indexOfUser(3);
+			Assert.fail("Users of a sealed org indexed.");
+		} catch (IllegalStateException ex) {
+			Assert.assertEquals("OrgBean is sealed and can't be changed. orgId=4", ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testIntIntHashMap() {
+
+		IntIntHashMap map = new IntIntHashMap(0, -1);
+		for (int key = -1000; key <= 1000; key++) {
+			map.put(key, key * 2);
+		}
+		Assert.assertEquals("Map size is incorrect.", 2001, map.size());
+
+		// Remove every other key so probe chains have gaps.
+		for (int key = -1000; key <= 1000; key = key + 2) {
+			Assert.assertEquals("Removed value is incorrect.", key * 2, map.remove(key));
+		}
+		Assert.assertEquals("Map size after removal is incorrect.", 1000, map.size());
+		for (int key = -1000; key <= 1000; key++) {
+			int expected = (key & 1) == 0 ? -1 : key * 2;
+			Assert.assertEquals("Value for key " + key + " is incorrect.", expected, map.get(key));
+		}
+		Assert.assertEquals("Missing key removed.", -1, map.remove(2000));
+	}
+
+	@Test
+	public void testSealedOrgTree() {
+
+		// A random tree with parents before children and a few extra top level orgs.
+		int orgCount = 2000;
+		Random random = new Random(14);
+		OrgCollection orgCollection = new OrgCollection();
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			int parentOrgId = orgId % 100 == 1 ? 0 : 1 + random.nextInt(orgId - 1);
+			orgCollection.add(new OrgBean(orgId, parentOrgId, "Org" + orgId));
+		}
+
+		List<List<OrgBean>> walkedTrees = new ArrayList<List<OrgBean>>();
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			walkedTrees.add(orgCollection.getOrgTree(orgId, true));
+		}
+		boolean[][] walkedDescendants = new boolean[100][100];
+		for (int orgId = 1; orgId <= 100; orgId++) {
+			for (int ancestorOrgId = 1; ancestorOrgId <= 100; ancestorOrgId++) {
+				walkedDescendants[orgId - 1][ancestorOrgId - 1] = orgCollection.isDescendant(orgId, ancestorOrgId);
+			}
+		}
+
+		orgCollection.seal();
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			List<OrgBean> walkedTree = walkedTrees.get(orgId - 1);
+			Assert.assertEquals("Org" + orgId + " inclusive tree is incorrect.", walkedTree, orgCollection.getOrgTree(orgId, true));
+			Assert.assertEquals("Org" + orgId + " exclusive tree is incorrect.", walkedTree.subList(1, walkedTree.size()),
+					orgCollection.getOrgTree(orgId, false));
+		}
+		for (int orgId = 1; orgId <= 100; orgId++) {
+			for (int ancestorOrgId = 1; ancestorOrgId <= 100; ancestorOrgId++) {
+				Assert.assertEquals("isDescendant(" + orgId + ", " + ancestorOrgId + ") is incorrect.",
+						walkedDescendants[orgId - 1][ancestorOrgId - 1], orgCollection.isDescendant(orgId, ancestorOrgId));
+			}
+		}
+		Assert.assertTrue("Org2 is not below Org1.", orgCollection.isDescendant(2, 1));
+		Assert.assertFalse("Org1 is below itself.", orgCollection.isDescendant(1, 1));
+		Assert.assertFalse("Missing org is a descendant.", orgCollection.isDescendant(orgCount + 1, 1));
+		Assert.assertTrue("Missing org has a tree.", orgCollection.getOrgTree(orgCount + 1, true).isEmpty());
+
+		try {
+			orgCollection.getOrgTree(1, true).clear();
+			Assert.fail("Sealed org tree changed.");
+		} catch (UnsupportedOperationException ex) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testDeepOrgTree() {
+
+		int orgCount = 5000;
+		List<OrgBean> orgBeans = new ArrayList<OrgBean>(orgCount);
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			orgBeans.add(new OrgBean(orgId, orgId - 1, "Org" + orgId));
+		}
+		OrgCollection orgCollection = new OrgCollection();
+		orgCollection.addAll(orgBeans);
+
+		Assert.assertEquals("Walked tree size is incorrect.", orgCount - 1, orgCollection.getOrgTree(1, false).size());
+		Assert.assertTrue("Last org is not below Org1.", orgCollection.isDescendant(orgCount, 1));
+		orgCollection.seal();
+		List<OrgBean> orgTree = orgCollection.getOrgTree(2, false);
+		Assert.assertEquals("Sealed tree size is incorrect.", orgCount - 2, orgTree.size());
+		Assert.assertEquals("Sealed tree order is incorrect.", 3, orgTree.get(0).getOrgId());
+		Assert.assertEquals("Sealed tree order is incorrect.", orgCount, orgTree.get(orgCount - 3).getOrgId());
+		Assert.assertTrue("Last org is not below Org1.", orgCollection.isDescendant(orgCount, 1));
+		Assert.assertFalse("Org1 is below the last org.", orgCollection.isDescendant(1, orgCount));
+	}
+
+	/**
+	 * A chain far deeper than a recursive walk's stack allows is totalled, walked and sealed
+	 * by the collection, see OrgTreeWalker.
+	 */
+	@Test
+	public void testDeepOrgTreeWalkedIteratively() {
+
+		int orgCount = 200000;
+		OrgCollection orgCollection = new OrgCollection();
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			orgCollection.add(new OrgBean(orgId, orgId - 1, "Org" + orgId));
+			orgCollection.addUser(orgId, orgId, 1, 2l);
+		}
+
+		orgCollection.computeTotals();
+		Assert.assertEquals("Org1 total user count invalid.", orgCount, orgCollection.getOrg(1).getTotalNumUsers());
+		Assert.assertEquals("Walked tree size is incorrect.", orgCount, orgCollection.getOrgTree(1, true).size());
+		Assert.assertEquals("Tree depth is incorrect.", orgCount, orgCollection.getTreeDepth());
+		orgCollection.seal();
+		Assert.assertEquals("Sealed tree size is incorrect.", orgCount / 2, orgCollection.getOrgTree(orgCount / 2, false).size());
+		Assert.assertEquals("Org2 total byte count invalid.", 2l * (orgCount - 1), orgCollection.getOrg(2).getTotalNumBytes());
+	}
+
+	@Test
+	public void testOrgTreeIterator() {
+
+		int orgCount = 1000;
+		Random random = new Random(15);
+		OrgCollection orgCollection = new OrgCollection();
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			orgCollection.add(new OrgBean(orgId, orgId == 1 ? 0 : 1 + random.nextInt(orgId - 1), "Org" + orgId));
+		}
+
+		for (int pass = 1; pass <= 2; pass++) {
+			// The first pass walks the tree, the second uses the pre-order of the sealed collection.
+			for (int orgId = 1; orgId <= orgCount; orgId = orgId + 7) {
+				for (boolean inclusive : new boolean[] { true, false }) {
+					List<OrgBean> orgTree = orgCollection.getOrgTree(orgId, inclusive);
+					Assert.assertEquals("Org" + orgId + " iterated tree is incorrect.", orgTree,
+							toList(orgCollection.getOrgTreeIterator(orgId, inclusive)));
+
+					List<OrgBean> pagedTree = new ArrayList<OrgBean>();
+					for (int offset = 0; offset <= orgTree.size(); offset = offset + 3) {
+						pagedTree.addAll(toList(orgCollection.getOrgTreeIterator(orgId, inclusive, offset, 3,
+								OrgCollection.ALL_LEVELS)));
+					}
+					Assert.assertEquals("Org" + orgId + " paged tree is incorrect.", orgTree, pagedTree);
+
+					for (int maxDepth = 0; maxDepth <= 3; maxDepth++) {
+						List<OrgBean> levelsTree = new ArrayList<OrgBean>();
+						for (OrgBean orgBean : orgTree) {
+							if (depthBelow(orgBean, orgId) <= maxDepth) {
+								levelsTree.add(orgBean);
+							}
+						}
+						Assert.assertEquals("Org" + orgId + " tree for maxDepth " + maxDepth + " is incorrect.",
+								levelsTree.subList(Math.min(1, levelsTree.size()), levelsTree.size()),
+								toList(orgCollection.getOrgTreeIterator(orgId, inclusive, 1, orgCount, maxDepth)));
+					}
+				}
+			}
+			orgCollection.seal();
+		}
+
+		Assert.assertFalse("Missing org has a tree.", orgCollection.getOrgTreeIterator(orgCount + 1, true).hasNext());
+		Assert.assertFalse("Offset past the tree returned orgs.",
+				orgCollection.getOrgTreeIterator(1, true, orgCount, 10, 2).hasNext());
+		try {
+			orgCollection.getOrgTreeIterator(1, true, -1, 10, OrgCollection.ALL_LEVELS);
+			Assert.fail("Negative offset accepted.");
+		} catch (IllegalArgumentException ex) {
+			Assert.assertEquals("Invalid org tree page: offset=-1 limit=10 maxDepth=2147483647", ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testTopOrgsAndThresholds() {
+
+		// Few distinct file and byte counts, so many totals are equal.
+		int orgCount = 2000;
+		Random random = new Random(20);
+		OrgCollection orgCollection = new OrgCollection();
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			int parentOrgId = orgId % 500 == 1 ? 0 : 1 + random.nextInt(orgId - 1);
+			orgCollection.add(new OrgBean(orgId, parentOrgId, "Org" + orgId));
+		}
+		for (int userId = 1; userId <= 5000; userId++) {
+			orgCollection.addUser(userId, 1 + random.nextInt(orgCount), random.nextInt(10), random.nextInt(10) * 1000l);
+		}
+
+		for (int pass = 1; pass <= 2; pass++) {
+			// The first pass walks the tree, the second uses the rankings of the sealed collection.
+			for (UsageMetric metric : UsageMetric.values()) {
+				List<OrgBean> allOrgs = new ArrayList<OrgBean>();
+				for (OrgBean topLevelOrg : orgCollection.getTopLevelOrgs()) {
+					allOrgs.addAll(orgCollection.getOrgTree(topLevelOrg.getOrgId(), true));
+				}
+				Collections.sort(allOrgs, metric.orgComparator());
+				for (int count : new int[] { 0, 1, 20, orgCount + 1, Integer.MAX_VALUE }) {
+					Assert.assertEquals("Top " + count + " orgs by " + metric + " are incorrect.",
+							allOrgs.subList(0, Math.min(count, orgCount)), orgCollection.getTopOrgs(metric, count));
+				}
+				for (long threshold : new long[] { -1, 0, 5, 500, 5000, 50000, Long.MAX_VALUE }) {
+					Assert.assertEquals("Orgs over " + threshold + " " + metric + " are incorrect.",
+							orgsOver(allOrgs, metric, threshold), orgCollection.getOrgsOver(metric, threshold));
+				}
+
+				// Large trees are read from the sorted orgs, small trees from a heap.
+				for (int orgId = 1; orgId <= orgCount; orgId = orgId + 13) {
+					for (boolean inclusive : new boolean[] { true, false }) {
+						List<OrgBean> orgTree = new ArrayList<OrgBean>(orgCollection.getOrgTree(orgId, inclusive));
+						Collections.sort(orgTree, metric.orgComparator());
+						for (int count : new int[] { 1, 3, 50, Integer.MAX_VALUE }) {
+							Assert.assertEquals("Org" + orgId + " top " + count + " orgs by " + metric + " are incorrect.",
+									orgTree.subList(0, Math.min(count, orgTree.size())),
+									orgCollection.getTopOrgs(orgId, inclusive, metric, count));
+						}
+						for (long threshold : new long[] { 0, 20, 20000 }) {
+							Assert.assertEquals("Org" + orgId + " orgs over " + threshold + " " + metric + " are incorrect.",
+									orgsOver(orgTree, metric, threshold),
+									orgCollection.getOrgsOver(orgId, inclusive, metric, threshold));
+						}
+					}
+				}
+			}
+
+			for (int orgId = 1; orgId <= orgCount; orgId = orgId + 101) {
+				List<UserBean> users = new ArrayList<UserBean>();
+				for (OrgBean orgBean : orgCollection.getOrgTree(orgId, true)) {
+					users.addAll(orgBean.getUsers());
+				}
+				for (UsageMetric metric : new UsageMetric[] { UsageMetric.FILES, UsageMetric.BYTES }) {
+					Collections.sort(users, metric.userComparator());
+					List<UserBean> topUsers = orgCollection.getTopUsers(orgId, metric, 10);
+					Assert.assertEquals("Org" + orgId + " top users by " + metric + " are incorrect.",
+							users.subList(0, Math.min(10, users.size())), topUsers);
+					for (int i = 0; i < topUsers.size(); i++) {
+						Assert.assertEquals("Org" + orgId + " top user has the wrong org.", users.get(i).getOrgId(),
+								topUsers.get(i).getOrgId());
+						Assert.assertEquals("Org" + orgId + " top user has the wrong bytes.", users.get(i).getNumBytes(),
+								topUsers.get(i).getNumBytes());
+					}
+					Assert.assertEquals("Org" + orgId + " all users by " + metric + " are incorrect.",
+							users, orgCollection.getTopUsers(orgId, metric, Integer.MAX_VALUE));
+				}
+			}
+			orgCollection.seal();
+		}
+
+		Assert.assertTrue("Missing org has top orgs.", orgCollection.getTopOrgs(orgCount + 1, true, UsageMetric.BYTES, 5).isEmpty());
+		Assert.assertTrue("Missing org has top users.", orgCollection.getTopUsers(orgCount + 1, UsageMetric.BYTES, 5).isEmpty());
+		try {
+			orgCollection.getTopUsers(1, UsageMetric.USERS, 5);
+			Assert.fail("Users ranked by users.");
+		} catch (IllegalArgumentException ex) {
+			// Expected
+		}
+		try {
+			orgCollection.getTopOrgs(UsageMetric.FILES, -1);
+			Assert.fail("Negative count accepted.");
+		} catch (IllegalArgumentException ex) {
+			Assert.assertEquals("Invalid count -1", ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testUsageDistributions() {
+
+		int orgCount = 1000;
+		Random random = new Random(21);
+		OrgCollection orgCollection = new OrgCollection();
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			int parentOrgId = orgId % 250 == 1 ? 0 : 1 + random.nextInt(orgId - 1);
+			orgCollection.add(new OrgBean(orgId, parentOrgId, "Org" + orgId));
+		}
+		int[] userOrgIds = new int[20001];
+		for (int userId = 1; userId <= 20000; userId++) {
+			userOrgIds[userId] = 1 + random.nextInt(orgCount);
+			orgCollection.addUser(userId, userOrgIds[userId], random.nextInt(1000), (long) Math.exp(random.nextDouble() * 25));
+		}
+		for (int userId = 1; userId <= 20000; userId = userId + 7) {
+			OrgBean orgBean = orgCollection.getOrg(userOrgIds[userId]);
+			if (userId % 2 == 0) {
+				orgBean.removeUser(userId);
+			} else {
+				orgBean.updateUser(userId, random.nextInt(10), random.nextInt(100));
+			}
+		}
+
+		// The first pass merges the distributions of the tree, the second reads the sealed totals.
+		List<List<Long>> quantiles = new ArrayList<List<Long>>();
+		for (int pass = 1; pass <= 2; pass++) {
+			int orgIndex = 0;
+			for (int orgId = 1; orgId <= orgCount; orgId = orgId + 17) {
+				OrgBean orgBean = orgCollection.getOrg(orgId);
+				for (UsageMetric metric : new UsageMetric[] { UsageMetric.FILES, UsageMetric.BYTES }) {
+					List<Long> values = new ArrayList<Long>();
+					for (OrgBean treeOrg : orgCollection.getOrgTree(orgId, true)) {
+						for (UserBean userBean : treeOrg.getUsers()) {
+							values.add(metric.getValue(userBean));
+						}
+					}
+					Collections.sort(values);
+
+					UsageSketch sketch = orgBean.getTotalUsageSketch(metric);
+					Assert.assertEquals("Org" + orgId + " " + metric + " distribution count is incorrect.",
+							values.size(), sketch.getCount());
+					List<Long> orgQuantiles = new ArrayList<Long>();
+					for (double fraction : new double[] { 0, 0.5, 0.95, 1 }) {
+						long quantile = sketch.getQuantile(fraction);
+						long expected = values.isEmpty() ? 0 : values.get(Math.max(0, (int) Math.ceil(fraction * values.size()) - 1));
+						Assert.assertTrue("Org" + orgId + " " + metric + " quantile " + fraction + " " + quantile
+								+ " too far from " + expected, Math.abs(quantile - expected) <= Math.max(1, expected * 0.0625));
+						orgQuantiles.add(quantile);
+					}
+					if (pass == 1) {
+						quantiles.add(orgQuantiles);
+					} else {
+						Assert.assertEquals("Org" + orgId + " sealed " + metric + " distribution differs.",
+								quantiles.get(orgIndex), orgQuantiles);
+					}
+					orgIndex = orgIndex + 1;
+					Assert.assertEquals("Org" + orgId + " own " + metric + " distribution count is incorrect.",
+							orgBean.getUsers().size(), orgBean.getUsageSketch(metric).getCount());
+				}
+			}
+			orgCollection.seal();
+		}
+
+		OrgBean topLevelOrg = orgCollection.getTopLevelOrgs().get(0);
+		Assert.assertSame("Sealed distribution not cached.", topLevelOrg.getTotalUsageSketch(UsageMetric.BYTES),
+				topLevelOrg.getTotalUsageSketch(UsageMetric.BYTES));
+		Assert.assertTrue("Sealed distribution can be changed.", topLevelOrg.getTotalUsageSketch(UsageMetric.FILES).isSealed());
+		try {
+			topLevelOrg.getTotalUsageSketch(UsageMetric.USERS);
+			Assert.fail("Distribution of users per user.");
+		} catch (IllegalArgumentException ex) {
+			// Expected
+		}
+	}
+
+	/*
+	 * Returns the orgs in rank order with a total over the threshold.
+	 */
+	private static List<OrgBean> orgsOver(List<OrgBean> rankedOrgs, UsageMetric metric, long threshold) {
+
+		List<OrgBean> orgsOver = new ArrayList<OrgBean>();
+		for (OrgBean orgBean : rankedOrgs) {
+			if (metric.getTotal(orgBean) > threshold) {
+				orgsOver.add(orgBean);
+			}
+		}
+		return orgsOver;
+	}
+
+	/*
+	 * Returns the number of levels the org is below the org for orgId.
+	 */
+	private static int depthBelow(OrgBean orgBean, int orgId) {
+
+		int depth = 0;
+		while (orgBean.getOrgId() != orgId) {
+			orgBean = orgBean.getParentOrg();
+			depth = depth + 1;
+		}
+		return depth;
+	}
+
+	private static List<OrgBean> toList(Iterator<OrgBean> orgBeans) {
+
+		List<OrgBean> orgList = new ArrayList<OrgBean>();
+		while (orgBeans.hasNext()) {
+			orgList.add(orgBeans.next());
+		}
+		return orgList;
+	}
+}
@@ -0,0 +1,109 @@
+package orgstats;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import orgstats.TestFilesGenerator.OrgFileOrder;
+
+/**
+ * An integration test that loads the same generated org data with the lines sorted, 
+ * reversed and shuffled and checks that the org trees and output files are the same.
+ */
+public class OrgFileOrderIntegTest {
+
+	private static final String DATA_PATH = new java.io.File("").getAbsolutePath() + "//data//";
+	private static final long timestamp = System.currentTimeMillis();
+	private static final String ORG_FILENAME = "OrderOrgsData" + timestamp + ".txt";
+	private static final String USER_FILENAME = "OrderUsersData" + timestamp + ".txt";
+	
+	/*
+	 * Generate Files
+	 */
+	@Before
+	public void setup() throws IOException {
+		
+		TestFilesGenerator.generateData(ORG_FILENAME, USER_FILENAME);
+		for (OrgFileOrder orgFileOrder : OrgFileOrder.values()) {
+			TestFilesGenerator.reorderOrgData(ORG_FILENAME, getOrgFilename(orgFileOrder), orgFileOrder);
+		}
+	}
+	
+	@After
+	public void cleanup() {
+		
+		new File(DATA_PATH + ORG_FILENAME).delete();
+		new File(DATA_PATH + USER_FILENAME).delete();
+		for (OrgFileOrder orgFileOrder : OrgFileOrder.values()) {
+			new File(DATA_PATH + getOrgFilename(orgFileOrder)).delete();
+			new File(DATA_PATH + getOutputFilename(orgFileOrder)).delete();
+		}
+	}
+	
+	@Test
+	public void testOrgFileOrder() throws Exception {
+		
+		OrgCollection sortedCollection = loadData(OrgFileOrder.SORTED);
+		byte[] sortedOutput = readOutput(OrgFileOrder.SORTED);
+		
+		for (OrgFileOrder orgFileOrder : Arrays.asList(OrgFileOrder.REVERSED, OrgFileOrder.SHUFFLED)) {
+			
+			OrgCollection orgCollection = loadData(orgFileOrder);
+			Assert.assertEquals("Top level org count is incorrect for " + orgFileOrder, 
+					sortedCollection.getTopLevelOrgs().size(), orgCollection.getTopLevelOrgs().size());
+			
+			for (OrgBean sortedOrg : sortedCollection.getTopLevelOrgs()) {
+				OrgBean orgBean = orgCollection.getOrg(sortedOrg.getOrgId());
+				Assert.assertNotNull("Top level org is missing for " + orgFileOrder, orgBean);
+				Assert.assertNull("Top level org has a parent for " + orgFileOrder, orgBean.getParentOrg());
+				Assert.assertEquals("Org tree size is incorrect for " + orgFileOrder, 
+						sortedCollection.getOrgTree(sortedOrg.getOrgId(), true).size(),
+						orgCollection.getOrgTree(sortedOrg.getOrgId(), true).size());
+				Assert.assertEquals("Total byte count is incorrect for " + orgFileOrder, 
+						sortedOrg.getTotalNumBytes(), orgBean.getTotalNumBytes());
+			}
+			Assert.assertTrue("Output file is different for " + orgFileOrder, 
+					Arrays.equals(sortedOutput, readOutput(orgFileOrder)));
+		}
+	}
+	
+	private OrgCollection loadData(OrgFileOrder orgFileOrder) throws Exception {
+		
+		OrgStatsTool tool = new OrgStatsTool(
+				new File(DATA_PATH + getOrgFilename(orgFileOrder)),
+				new File(DATA_PATH + USER_FILENAME),
+				new File(DATA_PATH + getOutputFilename(orgFileOrder)));
+		return tool.getOrgCollection();
+	}
+	
+	private static byte[] readOutput(OrgFileOrder orgFileOrder) throws IOException {
+		
+		File outputFile = new File(DATA_PATH + getOutputFilename(orgFileOrder));
+		byte[] output = new byte[(int) outputFile.length()];
+		InputStream input = new FileInputStream(outputFile);
+		try {
+			int offset = 0;
+			while (offset < output.length) {
+				offset = offset + input.read(output, offset, output.length - offset);
+			}
+		} finally {
+			input.close();
+		}
+		return output;
+	}
+	
+	private static String getOrgFilename(OrgFileOrder orgFileOrder) {
+		return "OrderOrgsData" + orgFileOrder + timestamp + ".txt";
+	}
+	
+	private static String getOutputFilename(OrgFileOrder orgFileOrder) {
+		return "OrderOutput" + orgFileOrder + timestamp + ".txt";
+	}
+}
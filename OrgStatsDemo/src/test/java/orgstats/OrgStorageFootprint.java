@@ -0,0 +1,66 @@
+package orgstats;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the heap used by a sealed OrgCollection of OrgBeans with the heap used by a
+ * CompactOrgCollection of the same orgs.  Every org has a name and 10 users are added to every
+ * org as aggregates.  Run with a heap large enough for the OrgCollection, for example:
+ * <p>
+ *  java -Xmx2g -cp &lt;classpath&gt; orgstats.OrgStorageFootprint 1000000
+ */
+public class OrgStorageFootprint {
+
+	private static final int DEFAULT_ORG_COUNT = 1000000;
+	private static final int CHILD_COUNT = 10;
+
+	public static void main(String args[]) {
+
+		int orgCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ORG_COUNT;
+
+		long baseline = usedHeap();
+		List<OrgBean> orgBeans = new ArrayList<OrgBean>(orgCount);
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			orgBeans.add(new OrgBean(orgId, orgId / CHILD_COUNT, "Org" + orgId));
+		}
+		OrgCollection orgCollection = new OrgCollection();
+		orgCollection.addAll(orgBeans);
+		orgBeans = null;
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			orgCollection.addUsage(orgId, 10, orgId % 20000, orgId * 1024l);
+		}
+		orgCollection.seal();
+		long orgCollectionBytes = usedHeap() - baseline;
+		System.out.println("OrgCollection:        " + orgCollection.getOrgCount() + " orgs "
+				+ toMegabytes(orgCollectionBytes) + " MB (" + orgCollectionBytes / orgCount + " bytes per org)");
+		orgCollection = null;
+
+		baseline = usedHeap();
+		CompactOrgCollection.Builder builder = new CompactOrgCollection.Builder();
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			builder.addOrg(orgId, orgId / CHILD_COUNT, "Org" + orgId);
+		}
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			builder.addUsage(orgId, 10, orgId % 20000, orgId * 1024l);
+		}
+		CompactOrgCollection compactCollection = builder.build();
+		builder = null;
+		long compactBytes = usedHeap() - baseline;
+		System.out.println("CompactOrgCollection: " + compactCollection.getOrgCount() + " orgs "
+				+ toMegabytes(compactBytes) + " MB (" + compactBytes / orgCount + " bytes per org)");
+	}
+
+	private static long usedHeap() {
+
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static long toMegabytes(long bytes) {
+		return bytes / (1024 * 1024);
+	}
+}
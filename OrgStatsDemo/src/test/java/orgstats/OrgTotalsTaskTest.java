@@ -0,0 +1,115 @@
+package orgstats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OrgTotalsTaskTest {
+
+	private static final int GIANT_ORG_COUNT = 200000;
+	private static final int TINY_ORG_COUNT = 5000;
+	private static final int CHAIN_LENGTH = 100000;
+	private static final int ORG_COUNT = GIANT_ORG_COUNT + TINY_ORG_COUNT + CHAIN_LENGTH;
+
+	/**
+	 * One giant org tree, thousands of tiny trees and a deep chain get the same totals in
+	 * parallel as in one walk.
+	 */
+	@Test
+	public void testSkewedForest() {
+
+		OrgCollection serialCollection = createSkewedForest(24);
+		OrgCollection parallelCollection = createSkewedForest(24);
+		new OrgTreeWalker().walk(serialCollection.getTopLevelOrgs(), OrgBean.TOTALS_VISITOR);
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			int computedCount = parallelCollection.computeTotals(pool);
+			Assert.assertEquals("Every org not computed once.", ORG_COUNT, computedCount);
+		} finally {
+			pool.shutdown();
+		}
+		assertSameTotals(serialCollection, parallelCollection);
+	}
+
+	/**
+	 * Only the orgs without cached totals are computed again.
+	 */
+	@Test
+	public void testCachedTotalsSkipped() {
+
+		OrgCollection orgCollection = createSkewedForest(25);
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			orgCollection.computeTotals(pool);
+			orgCollection.addUsage(GIANT_ORG_COUNT / 2, 2, 3, 4l);
+			Assert.assertEquals("Cached totals computed again.", 0, orgCollection.computeTotals(pool));
+
+			// The middle of the chain and the orgs above it up to its top level org
+			OrgBean chainOrg = orgCollection.getOrg(GIANT_ORG_COUNT + TINY_ORG_COUNT + CHAIN_LENGTH / 2);
+			chainOrg.addUsage(1, 0, 0l);
+			chainOrg.invalidateTotals();
+			Assert.assertEquals("Invalid totals not computed.", CHAIN_LENGTH / 2, orgCollection.computeTotals(pool));
+		} finally {
+			pool.shutdown();
+		}
+		OrgCollection serialCollection = createSkewedForest(25);
+		serialCollection.addUsage(GIANT_ORG_COUNT / 2, 2, 3, 4l);
+		serialCollection.addUsage(GIANT_ORG_COUNT + TINY_ORG_COUNT + CHAIN_LENGTH / 2, 1, 0, 0l);
+		new OrgTreeWalker().walk(serialCollection.getTopLevelOrgs(), OrgBean.TOTALS_VISITOR);
+		assertSameTotals(serialCollection, orgCollection);
+	}
+
+	/*
+	 * Creates a random tree of GIANT_ORG_COUNT orgs, TINY_ORG_COUNT top level orgs with up
+	 * to two children and a chain of CHAIN_LENGTH orgs, each org with random usage.
+	 */
+	private static OrgCollection createSkewedForest(long seed) {
+
+		Random random = new Random(seed);
+		List<OrgBean> orgBeans = new ArrayList<OrgBean>();
+		orgBeans.add(new OrgBean(1, 0, null));
+		for (int orgId = 2; orgId <= GIANT_ORG_COUNT; orgId++) {
+			orgBeans.add(new OrgBean(orgId, 1 + random.nextInt(orgId - 1), null));
+		}
+		int orgId = GIANT_ORG_COUNT;
+		while (orgId < GIANT_ORG_COUNT + TINY_ORG_COUNT) {
+			orgId++;
+			int parentOrgId = orgId % 3 == 0 ? 0 : orgId - 1 - random.nextInt(orgId % 3);
+			orgBeans.add(new OrgBean(orgId, parentOrgId, null));
+		}
+		for (int chainIndex = 0; chainIndex < CHAIN_LENGTH; chainIndex++) {
+			orgId++;
+			orgBeans.add(new OrgBean(orgId, chainIndex == 0 ? 0 : orgId - 1, null));
+		}
+		OrgCollection orgCollection = new OrgCollection();
+		orgCollection.addAll(orgBeans);
+		for (OrgBean orgBean : orgBeans) {
+			orgBean.addUsage(random.nextInt(3), random.nextInt(1000), (long) (random.nextDouble() * 10737418240l));
+		}
+		return orgCollection;
+	}
+
+	/*
+	 * Compares the totals of every org of the two collections, the orgs of the second must
+	 * already have totals.
+	 */
+	private static void assertSameTotals(OrgCollection expectedCollection, OrgCollection orgCollection) {
+
+		for (int orgId = 1; orgId <= ORG_COUNT; orgId++) {
+			OrgBean expectedOrg = expectedCollection.getOrg(orgId);
+			OrgBean orgBean = orgCollection.getOrg(orgId);
+			Assert.assertTrue("Org" + orgId + " totals not computed.", orgBean.hasTotals());
+			Assert.assertEquals("Org" + orgBean.getOrgId() + " total users invalid.",
+					expectedOrg.getTotalNumUsers(), orgBean.getTotalNumUsers());
+			Assert.assertEquals("Org" + orgBean.getOrgId() + " total files invalid.",
+					expectedOrg.getTotalNumFiles(), orgBean.getTotalNumFiles());
+			Assert.assertEquals("Org" + orgBean.getOrgId() + " total bytes invalid.",
+					expectedOrg.getTotalNumBytes(), orgBean.getTotalNumBytes());
+		}
+	}
+}
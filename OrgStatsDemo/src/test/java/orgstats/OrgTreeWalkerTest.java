@@ -0,0 +1,157 @@
+package orgstats;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import orgstats.load.OrgStatsSnapshotLoader;
+import orgstats.load.UserLoadMode;
+import orgstats.store.OrgStatsSnapshotStore;
+
+public class OrgTreeWalkerTest {
+
+	private static final int MILLION = 1000000;
+
+	// The snapshot records the data files it was written for, any existing files will do.
+	private static final String DATA_PATH = new java.io.File("").getAbsolutePath() + "//data//";
+	private static final File ORG_FILE = new File(DATA_PATH + "VerySmallOrgsTestFile.txt");
+	private static final File USER_FILE = new File(DATA_PATH + "VerySmallUsersTestFile.txt");
+
+	@Test
+	public void testVisitOrder() {
+
+		OrgCollection orgCollection = new OrgCollection();
+		orgCollection.add(new OrgBean(1, 0, "Org1"));
+		orgCollection.add(new OrgBean(4, 1, "Org4"));
+		orgCollection.add(new OrgBean(2, 1, "Org2"));
+		orgCollection.add(new OrgBean(3, 2, "Org3"));
+		orgCollection.add(new OrgBean(6, 0, "Org6"));
+		orgCollection.add(new OrgBean(5, 0, "Org5"));
+
+		Assert.assertEquals(Arrays.asList("+1@0", "+4@1", "-4@1", "+2@1", "+3@2", "-3@2", "-2@1", "-1@0",
+				"+6@0", "-6@0", "+5@0", "-5@0"), walk(new OrgTreeWalker(), orgCollection.getTopLevelOrgs(), 0));
+		Assert.assertEquals("Children not sorted.", Arrays.asList("+1@0", "+2@1", "+3@2", "-3@2", "-2@1",
+				"+4@1", "-4@1", "-1@0", "+5@0", "-5@0", "+6@0", "-6@0"),
+				walk(new OrgTreeWalker(true), orgCollection.getTopLevelOrgs(), 0));
+		Assert.assertEquals("Skipped org was walked.", Arrays.asList("+1@0", "+4@1", "-4@1", "+2@1", "-1@0"),
+				walk(new OrgTreeWalker(), Arrays.asList(orgCollection.getOrg(1)), 2));
+		Assert.assertEquals("Child list not walked.", Arrays.asList("+3@0", "-3@0"),
+				walk(new OrgTreeWalker(), orgCollection.getOrg(2).getChildOrgs(), 0));
+		Assert.assertEquals("Empty list walked.", 0,
+				walk(new OrgTreeWalker(), orgCollection.getOrg(3).getChildOrgs(), 0).size());
+		Assert.assertEquals("Top level orgs were sorted.", 6, orgCollection.getTopLevelOrgs().get(1).getOrgId());
+	}
+
+	/**
+	 * A chain of one million orgs, each the only child of the one before.  Walking it by
+	 * recursion overflows the default thread stack.
+	 */
+	@Test
+	public void testMillionDeepChain() throws Exception {
+
+		List<OrgBean> orgBeans = new ArrayList<OrgBean>(MILLION);
+		for (int orgId = 1; orgId <= MILLION; orgId++) {
+			orgBeans.add(new OrgBean(orgId, orgId - 1, null));
+		}
+		OrgCollection orgCollection = new OrgCollection();
+		orgCollection.addAll(orgBeans);
+		orgCollection.addUsage(MILLION, 1, 2, 3l);
+		orgCollection.addUsage(1, 1, 2, 3l);
+
+		Assert.assertEquals("Org1 total user count invalid.", 2, orgCollection.getOrg(1).getTotalNumUsers());
+		Assert.assertEquals("Middle org total byte count invalid.", 3l, orgCollection.getOrg(MILLION / 2).getTotalNumBytes());
+		orgCollection.getOrg(MILLION).addUsage(1, 0, 0l);
+		orgCollection.getOrg(MILLION).invalidateTotals();
+		Assert.assertEquals("Recomputed total user count invalid.", 3, orgCollection.getOrg(1).getTotalNumUsers());
+
+		final int[] maxDepth = new int[1];
+		new OrgTreeWalker().walk(orgCollection.getOrg(1), new OrgTreeVisitor<RuntimeException>() {
+			public boolean preVisit(OrgBean orgBean, int depth) {
+				maxDepth[0] = Math.max(maxDepth[0], depth);
+				return true;
+			}
+
+			public void postVisit(OrgBean orgBean, int depth) {
+				Assert.assertEquals("Post-order depth invalid.", orgBean.getOrgId() - 1, depth);
+			}
+		});
+		Assert.assertEquals("Max depth invalid.", MILLION - 1, maxDepth[0]);
+		Assert.assertEquals("Walked tree size is incorrect.", MILLION - 1, orgCollection.getOrgTree(1, false).size());
+
+		orgCollection.seal();
+		Assert.assertEquals("Sealed tree size is incorrect.", MILLION / 2, orgCollection.getOrgTree(MILLION / 2 + 1, true).size());
+		Assert.assertTrue("Last org is not below Org1.", orgCollection.isDescendant(MILLION, 1));
+
+		File snapshotFile = File.createTempFile("OrgTreeWalkerTest", ".snapshot");
+		try {
+			new OrgStatsSnapshotStore(snapshotFile, ORG_FILE, USER_FILE, false).storeData(orgCollection);
+			OrgCollection restoredCollection = new OrgStatsSnapshotLoader(snapshotFile, ORG_FILE, USER_FILE,
+					UserLoadMode.AGGREGATES_ONLY).loadData();
+			Assert.assertEquals("Restored total user count invalid.", 3, restoredCollection.getOrg(1).getTotalNumUsers());
+			Assert.assertTrue("Restored last org is not below Org1.", restoredCollection.isDescendant(MILLION, 1));
+		} finally {
+			snapshotFile.delete();
+		}
+	}
+
+	/**
+	 * One org with one million children in descending order.
+	 */
+	@Test
+	public void testMillionWideFan() {
+
+		OrgCollection orgCollection = new OrgCollection();
+		orgCollection.add(new OrgBean(1, 0, null));
+		for (int orgId = MILLION + 1; orgId > 1; orgId--) {
+			orgCollection.add(new OrgBean(orgId, 1, null));
+			orgCollection.addUsage(orgId, 1, 1, 1l);
+		}
+		Assert.assertEquals("Org1 total user count invalid.", MILLION, orgCollection.getOrg(1).getTotalNumUsers());
+
+		final int[] visitCounts = new int[2];
+		final int[] lastOrgId = new int[1];
+		new OrgTreeWalker(true).walk(orgCollection.getTopLevelOrgs(), new OrgTreeVisitor<RuntimeException>() {
+			public boolean preVisit(OrgBean orgBean, int depth) {
+				Assert.assertTrue("Children not sorted.", orgBean.getOrgId() > lastOrgId[0]);
+				lastOrgId[0] = orgBean.getOrgId();
+				visitCounts[0]++;
+				return true;
+			}
+
+			public void postVisit(OrgBean orgBean, int depth) {
+				visitCounts[1]++;
+			}
+		});
+		Assert.assertEquals("Pre-order visit count invalid.", MILLION + 1, visitCounts[0]);
+		Assert.assertEquals("Post-order visit count invalid.", MILLION + 1, visitCounts[1]);
+		Assert.assertEquals("Child list was sorted.", MILLION + 1, orgCollection.getOrg(1).getChildOrgs().get(0).getOrgId());
+
+		orgCollection.seal();
+		Assert.assertEquals("Sealed tree size is incorrect.", MILLION, orgCollection.getOrgTree(1, false).size());
+		Assert.assertEquals("Leaf tree size is incorrect.", 1, orgCollection.getOrgTree(2, true).size());
+	}
+
+	/*
+	 * Returns "+orgId@depth" for each preVisit() and "-orgId@depth" for each postVisit(),
+	 * skipping the children of the org with skipOrgId.
+	 */
+	private static List<String> walk(OrgTreeWalker walker, List<OrgBean> orgBeans, final int skipOrgId) {
+
+		final List<String> visits = new ArrayList<String>();
+		walker.walk(orgBeans, new OrgTreeVisitor<RuntimeException>() {
+			public boolean preVisit(OrgBean orgBean, int depth) {
+				visits.add("+" + orgBean.getOrgId() + "@" + depth);
+				return orgBean.getOrgId() != skipOrgId;
+			}
+
+			public void postVisit(OrgBean orgBean, int depth) {
+				visits.add("-" + orgBean.getOrgId() + "@" + depth);
+			}
+		});
+		return visits;
+	}
+}
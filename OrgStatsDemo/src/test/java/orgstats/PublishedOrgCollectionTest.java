@@ -0,0 +1,146 @@
+package orgstats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import orgstats.load.OrgDataLoader;
+
+public class PublishedOrgCollectionTest {
+
+	private static final int READER_COUNT = 8;
+	private static final int RELOAD_COUNT = 50;
+
+	@Test
+	public void testSealed() {
+
+		OrgCollection orgCollection = createCollection(10, 1);
+		orgCollection.seal();
+		Assert.assertTrue("Collection is not sealed.", orgCollection.isSealed());
+		Assert.assertEquals("Org1 total user count invalid.", 10, orgCollection.getOrg(1).getTotalNumUsers());
+		Assert.assertEquals("Org tree size invalid.", 10, orgCollection.getOrgTree(1, true).size());
+
+		try {
+			orgCollection.add(new OrgBean(11, 1, "Org11"));
+			Assert.fail("Org added to sealed collection.");
+		} catch (IllegalStateException ex) {
+			Assert.assertEquals("OrgCollection is sealed and can't be changed.", ex.getMessage());
+		}
+		try {
+			orgCollection.getOrg(2).addUser(100, 1, 1l);
+			Assert.fail("User added to sealed org.");
+		} catch (IllegalStateException ex) {
+			Assert.assertEquals("OrgBean is sealed and can't be changed. orgId=2", ex.getMessage());
+		}
+		try {
+			orgCollection.getOrg(1).getChildOrgs().clear();
+			Assert.fail("Child orgs of sealed org changed.");
+		} catch (UnsupportedOperationException ex) {
+			// Expected
+		}
+		try {
+			orgCollection.getTopLevelOrgs().add(new OrgBean(12));
+			Assert.fail("Top level orgs of sealed collection changed.");
+		} catch (UnsupportedOperationException ex) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Readers query the published collection while it is reloaded with trees of different sizes.
+	 * Every org has one user, so in each collection a reader sees the org tree size has to match
+	 * the user total of the top level org.
+	 */
+	@Test
+	public void testReadDuringReloads() throws Exception {
+
+		final PublishedOrgCollection publishedCollection = new PublishedOrgCollection(createCollection(1000, 1));
+		final AtomicBoolean reloading = new AtomicBoolean(true);
+		final AtomicReference<Throwable> readerError = new AtomicReference<Throwable>();
+		final AtomicLong readCount = new AtomicLong();
+		final CountDownLatch readersStarted = new CountDownLatch(READER_COUNT);
+
+		List<Thread> readers = new ArrayList<Thread>();
+		for (int i = 0; i < READER_COUNT; i++) {
+			final Random random = new Random(i);
+			Thread reader = new Thread(new Runnable() {
+				public void run() {
+					readersStarted.countDown();
+					try {
+						while (reloading.get()) {
+							OrgCollection orgCollection = publishedCollection.get();
+							OrgBean orgBean1 = orgCollection.getOrg(1);
+							Assert.assertNotNull("Org1 is null.", orgBean1);
+							List<OrgBean> orgTree = orgCollection.getOrgTree(1, true);
+							Assert.assertEquals("Org tree doesn't match the totals.",
+									orgBean1.getTotalNumUsers(), orgTree.size());
+
+							int orgId = 1 + random.nextInt(orgTree.size());
+							OrgBean orgBean = orgCollection.getOrg(orgId);
+							Assert.assertNotNull("Org" + orgId + " is null.", orgBean);
+							Assert.assertEquals("Org" + orgId + " tree doesn't match the totals.",
+									orgBean.getTotalNumUsers(), orgCollection.getOrgTree(orgId, true).size());
+							Assert.assertFalse("Org tree is empty.", publishedCollection.getOrgTree(1, false).isEmpty());
+							readCount.incrementAndGet();
+						}
+					} catch (Throwable ex) {
+						readerError.compareAndSet(null, ex);
+					}
+				}
+			});
+			reader.start();
+			readers.add(reader);
+		}
+
+		readersStarted.await();
+		try {
+			for (int reload = 1; reload <= RELOAD_COUNT; reload++) {
+				final int orgCount = 1000 + 100 * (reload % 7);
+				final int childCount = 1 + reload % 4;
+				publishedCollection.reload(new OrgDataLoader() {
+					public OrgCollection loadData() {
+						return createCollection(orgCount, childCount);
+					}
+				});
+				Assert.assertEquals("Reloaded collection not published.", orgCount,
+						publishedCollection.getOrg(1).getTotalNumUsers());
+			}
+		} finally {
+			reloading.set(false);
+			for (Thread reader : readers) {
+				reader.join();
+			}
+		}
+
+		if (readerError.get() != null) {
+			throw new AssertionError(readerError.get());
+		}
+		Assert.assertTrue("Readers didn't read.", readCount.get() > 0);
+	}
+
+	/*
+	 * Creates a tree where org i has the parent i / childCount, added children first,
+	 * with one user per org.
+	 */
+	private static OrgCollection createCollection(int orgCount, int childCount) {
+
+		List<OrgBean> orgBeans = new ArrayList<OrgBean>(orgCount);
+		for (int orgId = orgCount; orgId >= 1; orgId--) {
+			int parentOrgId = childCount == 1 ? orgId - 1 : (orgId + childCount - 2) / childCount;
+			orgBeans.add(new OrgBean(orgId, parentOrgId, "Org" + orgId));
+		}
+		OrgCollection orgCollection = new OrgCollection();
+		orgCollection.addAll(orgBeans);
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			orgCollection.addUser(orgId, orgId, 1, 1l);
+		}
+		return orgCollection;
+	}
+}
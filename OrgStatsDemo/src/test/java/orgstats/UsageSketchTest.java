@@ -0,0 +1,110 @@
+package orgstats;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UsageSketchTest {
+
+	@Test
+	public void testBuckets() {
+
+		Assert.assertEquals("Bucket of 0 invalid.", 0, UsageSketch.bucketOf(0));
+		Assert.assertEquals("Bucket of a negative value invalid.", 0, UsageSketch.bucketOf(-5));
+		Assert.assertEquals("Bucket of the largest value invalid.", 487, UsageSketch.bucketOf(Long.MAX_VALUE));
+		for (int bucket = 0; bucket <= 487; bucket++) {
+			long lowest = UsageSketch.lowestValueOf(bucket);
+			Assert.assertEquals("Lowest value of bucket " + bucket + " invalid.", bucket, UsageSketch.bucketOf(lowest));
+			if (bucket > 0) {
+				Assert.assertEquals("Bucket " + bucket + " doesn't follow the previous bucket.", bucket - 1,
+						UsageSketch.bucketOf(lowest - 1));
+			}
+		}
+	}
+
+	@Test
+	public void testQuantiles() {
+
+		Random random = new Random(21);
+		int valueCount = 100000;
+		long[] values = new long[valueCount];
+		UsageSketch sketch = new UsageSketch();
+		for (int i = 0; i < valueCount; i++) {
+			values[i] = (long) Math.exp(random.nextDouble() * 30);
+			sketch.add(values[i]);
+		}
+		Arrays.sort(values);
+
+		Assert.assertEquals("Count invalid.", valueCount, sketch.getCount());
+		for (double fraction : new double[] { 0, 0.01, 0.25, 0.5, 0.9, 0.95, 0.99, 1 }) {
+			long expected = values[Math.max(0, (int) Math.ceil(fraction * valueCount) - 1)];
+			long quantile = sketch.getQuantile(fraction);
+			Assert.assertTrue("Quantile " + fraction + " " + quantile + " too far from " + expected,
+					Math.abs(quantile - expected) <= Math.max(1, expected * 0.0625));
+		}
+		Assert.assertTrue("Too many buckets.", sketch.getBucketCount() <= 488);
+		Assert.assertEquals("Empty sketch has a median.", 0, new UsageSketch().getQuantile(0.5));
+	}
+
+	@Test
+	public void testMergeAndRemove() {
+
+		Random random = new Random(22);
+		UsageSketch allValues = new UsageSketch();
+		UsageSketch smallValues = new UsageSketch();
+		UsageSketch largeValues = new UsageSketch();
+		for (int i = 0; i < 1000; i++) {
+			long smallValue = random.nextInt(100);
+			long largeValue = 1000000l + random.nextInt(1000000000);
+			allValues.add(smallValue);
+			allValues.add(largeValue);
+			smallValues.add(smallValue);
+			largeValues.add(largeValue);
+		}
+
+		UsageSketch merged = new UsageSketch(largeValues);
+		merged.merge(smallValues);
+		Assert.assertEquals("Merged count invalid.", 2000, merged.getCount());
+		for (double fraction : new double[] { 0, 0.3, 0.5, 0.7, 1 }) {
+			Assert.assertEquals("Merged quantile " + fraction + " invalid.", allValues.getQuantile(fraction),
+					merged.getQuantile(fraction));
+		}
+		Assert.assertEquals("Copy changed by merge.", 1000, largeValues.getCount());
+
+		merged.remove(5000000000000l);
+		Assert.assertEquals("Value that wasn't added removed.", 2000, merged.getCount());
+		UsageSketch removed = new UsageSketch(allValues);
+		removed.add(5);
+		removed.remove(5);
+		Assert.assertEquals("Remove invalid.", allValues.getQuantile(0.5), removed.getQuantile(0.5));
+	}
+
+	@Test
+	public void testSeal() {
+
+		UsageSketch sketch = new UsageSketch();
+		sketch.add(1000000);
+		sketch.add(10);
+		sketch.remove(10);
+		sketch.seal();
+		Assert.assertEquals("Empty buckets not trimmed.", 1, sketch.getBucketCount());
+		Assert.assertEquals("Sealed sketch median invalid.", 1015807, sketch.getQuantile(0.5));
+		try {
+			sketch.add(5);
+			Assert.fail("Value added to a sealed sketch.");
+		} catch (IllegalStateException ex) {
+			// Expected
+		}
+		try {
+			UsageSketch.EMPTY.merge(sketch);
+			Assert.fail("Empty sketch changed.");
+		} catch (IllegalStateException ex) {
+			// Expected
+		}
+		UsageSketch copy = new UsageSketch(sketch);
+		copy.add(5);
+		Assert.assertEquals("Copy of a sealed sketch not changed.", 2, copy.getCount());
+	}
+}
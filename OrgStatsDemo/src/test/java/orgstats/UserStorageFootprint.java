@@ -0,0 +1,55 @@
+package orgstats;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the heap used to hold users as a List of UserBeans with the heap used
+ * by UserColumns.  Run with a heap large enough for the UserBean list, for example:
+ * <p>
+ *  java -Xmx2g -cp &lt;classpath&gt; orgstats.UserStorageFootprint 10000000
+ */
+public class UserStorageFootprint {
+
+	private static final int DEFAULT_USER_COUNT = 10000000;
+
+	public static void main(String args[]) {
+
+		int userCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_USER_COUNT;
+
+		long baseline = usedHeap();
+		List<UserBean> userBeans = new ArrayList<UserBean>();
+		for (int i = 0; i < userCount; i++) {
+			userBeans.add(new UserBean(i, 1, i % 20000, i * 1024l));
+		}
+		long userBeanBytes = usedHeap() - baseline;
+		System.out.println("List<UserBean>: " + userBeans.size() + " users " + toMegabytes(userBeanBytes)
+				+ " MB (" + userBeanBytes / userCount + " bytes per user)");
+		userBeans = null;
+
+		baseline = usedHeap();
+		UserColumns userColumns = new UserColumns();
+		for (int i = 0; i < userCount; i++) {
+			userColumns.add(i, i % 20000, i * 1024l);
+		}
+		long growingBytes = usedHeap() - baseline;
+		userColumns.trimToSize();
+		long trimmedBytes = usedHeap() - baseline;
+		System.out.println("UserColumns:    " + userColumns.size() + " users " + toMegabytes(growingBytes)
+				+ " MB (" + growingBytes / userCount + " bytes per user), " + toMegabytes(trimmedBytes)
+				+ " MB after trimToSize() (" + trimmedBytes / userCount + " bytes per user)");
+	}
+
+	private static long usedHeap() {
+
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static long toMegabytes(long bytes) {
+		return bytes / (1024 * 1024);
+	}
+}
@@ -0,0 +1,127 @@
+package orgstats.load;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DataFileParserTest {
+
+	@Test
+	public void testParseUsers() throws Exception {
+
+		// A small buffer makes the parser move partial lines and grow the buffer.
+		List<String> users = parseUsers("1, 2, 3, 4\r\n10, 20, 30, 40000000000\n7, 8, 9, 10, \n"
+				+ "2147483647, 1, 0, 9223372036854775807", 8);
+		Assert.assertEquals("User count is incorrect.", 4, users.size());
+		Assert.assertEquals("1 2 3 4", users.get(0));
+		Assert.assertEquals("10 20 30 40000000000", users.get(1));
+		Assert.assertEquals("7 8 9 10", users.get(2));
+		Assert.assertEquals("2147483647 1 0 9223372036854775807", users.get(3));
+	}
+
+	@Test
+	public void testUserErrors() throws Exception {
+
+		assertUserError("1, 2, 3", "ERROR with User File (not 4 items on line): 1, 2, 3");
+		assertUserError("1, 2, 3, 4\n\n", "ERROR with User File (not 4 items on line): ");
+		assertUserError("1, 2, 3, 4, 5", "ERROR with User File (not 4 items on line): 1, 2, 3, 4, 5");
+		assertUserError("1,2, 3, 4, 5", "ERROR with User File (invalid user id): 1,2, 3, 4, 5");
+		assertUserError("a, 2, 3, 4", "ERROR with User File (invalid user id): a, 2, 3, 4");
+		assertUserError("1, -2, 3, 4", "ERROR with User File (invalid org id): 1, -2, 3, 4");
+		assertUserError("1, 2, 3x, 4", "ERROR with User File (invalid fileCount): 1, 2, 3x, 4");
+		assertUserError("1, 2, 3,  4", "ERROR with User File (invalid fileByte): 1, 2, 3,  4");
+		assertUserError("1, 2147483648, 3, 4", "ERROR with User File (invalid org id): 1, 2147483648, 3, 4");
+		assertUserError("99999999999, 2, 3, x", "ERROR with User File (invalid fileByte): 99999999999, 2, 3, x");
+	}
+
+	@Test
+	public void testParseOrgs() throws Exception {
+
+		final List<String> orgs = new ArrayList<String>();
+		parse("1, null, Org1\r\n2, 1, Org 2\r\n", 4, null, new OrgRecordHandler() {
+			public void handleOrg(int orgId, int parentOrgId, String name) {
+				orgs.add(orgId + " " + parentOrgId + " " + name);
+			}
+		});
+		Assert.assertEquals("Org count is incorrect.", 2, orgs.size());
+		Assert.assertEquals("1 0 Org1", orgs.get(0));
+		Assert.assertEquals("2 1 Org 2", orgs.get(1));
+	}
+
+	@Test
+	public void testOrgErrors() throws Exception {
+
+		assertOrgError("1, null", "ERROR with Org File (not 3 items on line): 1, null");
+		assertOrgError("1, null, Org, 1", "ERROR with Org File (not 3 items on line): 1, null, Org, 1");
+		assertOrgError("x, null, Org1", "ERROR with Org File (invalid org id): x, null, Org1");
+		assertOrgError("1, nul, Org1", "ERROR with Org File (invalid parent org id): 1, nul, Org1");
+		assertOrgError("1, 2, ..", "ERROR with Org File (invalid org name): 1, 2, ..");
+	}
+
+	private static void assertUserError(String line, String message) throws IOException {
+
+		try {
+			parseUsers(line, DataFileParser.DEFAULT_BUFFER_SIZE);
+			Assert.fail("No error for user line: " + line);
+		} catch (OrgDataLoaderException ex) {
+			Assert.assertEquals(message, ex.getMessage());
+		}
+	}
+
+	private static void assertOrgError(String line, String message) throws IOException {
+
+		try {
+			parse(line, DataFileParser.DEFAULT_BUFFER_SIZE, null, new OrgRecordHandler() {
+				public void handleOrg(int orgId, int parentOrgId, String name) {
+				}
+			});
+			Assert.fail("No error for org line: " + line);
+		} catch (OrgDataLoaderException ex) {
+			Assert.assertEquals(message, ex.getMessage());
+		}
+	}
+
+	private static List<String> parseUsers(String data, int bufferSize) throws IOException, OrgDataLoaderException {
+
+		final List<String> users = new ArrayList<String>();
+		parse(data, bufferSize, new UserRecordHandler() {
+			public void handleUser(int userId, int orgId, int numFiles, long numBytes) {
+				users.add(userId + " " + orgId + " " + numFiles + " " + numBytes);
+			}
+		}, null);
+		return users;
+	}
+
+	private static void parse(String data, int bufferSize, UserRecordHandler userHandler,
+			OrgRecordHandler orgHandler) throws IOException, OrgDataLoaderException {
+
+		File dataFile = File.createTempFile("DataFileParserTest", ".txt");
+		FileInputStream input = null;
+		try {
+			FileOutputStream output = new FileOutputStream(dataFile);
+			output.write(data.getBytes("US-ASCII"));
+			output.close();
+
+			input = new FileInputStream(dataFile);
+			FileChannel channel = input.getChannel();
+			DataFileParser parser = new DataFileParser(bufferSize);
+			if (userHandler != null) {
+				parser.parseUsers(channel, 0, channel.size(), userHandler);
+			} else {
+				parser.parseOrgs(channel, orgHandler);
+			}
+		} finally {
+			if (input != null) {
+				input.close();
+			}
+			dataFile.delete();
+		}
+	}
+}
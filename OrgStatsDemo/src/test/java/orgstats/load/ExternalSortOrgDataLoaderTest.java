@@ -0,0 +1,195 @@
+package orgstats.load;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import orgstats.OrgBean;
+import orgstats.OrgCollection;
+import orgstats.store.OrgStatsFileStore;
+
+public class ExternalSortOrgDataLoaderTest {
+
+	private static final String DATA_PATH = new java.io.File("").getAbsolutePath() + "//data//";
+	private static final File ORG_FILE = new File(DATA_PATH + "SmallOrgsTestFile.txt");
+	private static final int ORG_COUNT = 19;
+
+	// The forked JVM's heap is well below the size of the user file it sorts.
+	private static final String SMALL_HEAP = "-Xmx16m";
+	private static final int SMALL_HEAP_USER_COUNT = 1500000;
+	private static final long SMALL_HEAP_MEMORY_BUDGET = 4 * 1024 * 1024;
+	private static final String SPILL_FILE_COUNT_PREFIX = "spillFileCount=";
+
+	/**
+	 * Sorts a user file into many spill files that are merged in several passes and
+	 * compares the totals with loading only the aggregates.
+	 */
+	@Test
+	public void testMergePasses() throws Exception {
+
+		File userFile = writeUserFile(20000, 1);
+		File spillDirectory = createSpillDirectory();
+		try {
+			OrgCollection aggregatesCollection = new OrgUserDataFileLoader(ORG_FILE, userFile,
+					UserLoadMode.AGGREGATES_ONLY, 1).loadData();
+			ExternalSortOrgDataLoader sortLoader = new ExternalSortOrgDataLoader(ORG_FILE, userFile, spillDirectory, 700, 3);
+			OrgCollection sortedCollection = sortLoader.loadData();
+			Assert.assertTrue("Spill files merged in one pass: " + sortLoader.getSpillFileCount(), 
+					sortLoader.getSpillFileCount() > 3 * 3);
+
+			for (int orgId = 1; orgId <= ORG_COUNT; orgId++) {
+				OrgBean orgBean = aggregatesCollection.getOrg(orgId);
+				OrgBean sortedOrg = sortedCollection.getOrg(orgId);
+				Assert.assertEquals("Org user count invalid.", orgBean.getNumUsers(), sortedOrg.getNumUsers());
+				Assert.assertEquals("Total user count invalid.", orgBean.getTotalNumUsers(), sortedOrg.getTotalNumUsers());
+				Assert.assertEquals("Total file count invalid.", orgBean.getTotalNumFiles(), sortedOrg.getTotalNumFiles());
+				Assert.assertEquals("Total byte count invalid.", orgBean.getTotalNumBytes(), sortedOrg.getTotalNumBytes());
+				Assert.assertEquals("Users stored.", 0, sortedOrg.getUsers().size());
+			}
+			Assert.assertEquals("Spill files not deleted.", 0, spillDirectory.list().length);
+		} finally {
+			userFile.delete();
+			deleteDirectory(spillDirectory);
+		}
+	}
+
+	@Test
+	public void testUserFileError() throws Exception {
+
+		File userFile = File.createTempFile("ExternalSortOrgDataLoaderTest", ".txt");
+		File spillDirectory = createSpillDirectory();
+		try {
+			BufferedWriter userWriter = new BufferedWriter(new FileWriter(userFile));
+			try {
+				for (int userId = 1; userId <= 100; userId++) {
+					userWriter.append(userId + ", 1, 2, 3");
+					userWriter.newLine();
+				}
+				userWriter.append("101, 1, x, 3");
+			} finally {
+				userWriter.close();
+			}
+			new ExternalSortOrgDataLoader(ORG_FILE, userFile, spillDirectory, 10, 2).loadData();
+			Assert.fail("Invalid line not reported.");
+		} catch (OrgDataLoaderException ex) {
+			Assert.assertEquals("ERROR with User File (invalid fileCount): 101, 1, x, 3", ex.getMessage());
+			Assert.assertEquals("Spill files not deleted.", 0, spillDirectory.list().length);
+		} finally {
+			userFile.delete();
+			deleteDirectory(spillDirectory);
+		}
+	}
+
+	/**
+	 * Loads a user file several times larger than the heap in a forked JVM and compares the
+	 * output file with the one written from the aggregates loaded here.
+	 */
+	@Test
+	public void testHeapSmallerThanUserFile() throws Exception {
+
+		File userFile = writeUserFile(SMALL_HEAP_USER_COUNT, 2);
+		File expectedFile = File.createTempFile("ExternalSortOrgDataLoaderTest", ".expected");
+		File outputFile = File.createTempFile("ExternalSortOrgDataLoaderTest", ".output");
+		try {
+			Assert.assertTrue("User file isn't larger than the heap.", userFile.length() > 32 * 1024 * 1024);
+			OrgCollection aggregatesCollection = new OrgUserDataFileLoader(ORG_FILE, userFile,
+					UserLoadMode.AGGREGATES_ONLY).loadData();
+			new OrgStatsFileStore(expectedFile).storeData(aggregatesCollection);
+
+			String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+			Process process = new ProcessBuilder(java, SMALL_HEAP, "-cp", System.getProperty("java.class.path"),
+					ExternalSortOrgDataLoaderTest.class.getName(), ORG_FILE.getPath(), userFile.getPath(),
+					outputFile.getPath()).redirectErrorStream(true).start();
+			String processOutput = new String(readAll(process), "UTF-8");
+			Assert.assertEquals("Forked loader failed: " + processOutput, 0, process.waitFor());
+			// The spill file count is the last line of the output.
+			int countIndex = processOutput.lastIndexOf(SPILL_FILE_COUNT_PREFIX);
+			Assert.assertTrue("Spill file count not printed: " + processOutput, countIndex >= 0);
+			int spillFileCount = Integer.parseInt(processOutput.substring(countIndex + SPILL_FILE_COUNT_PREFIX.length()).trim());
+			Assert.assertTrue("Users not sorted into several spill files: " + spillFileCount, spillFileCount > 1);
+			Assert.assertTrue("Output file is different.", Arrays.equals(Files.readAllBytes(expectedFile.toPath()),
+					Files.readAllBytes(outputFile.toPath())));
+		} finally {
+			userFile.delete();
+			expectedFile.delete();
+			outputFile.delete();
+		}
+	}
+
+	/**
+	 * Loads the data files with a small memory budget, writes the output file and prints the
+	 * number of spill files, run in the forked JVM of testHeapSmallerThanUserFile().
+	 */
+	public static void main(String[] args) throws Exception {
+
+		ExternalSortOrgDataLoader sortLoader = new ExternalSortOrgDataLoader(new File(args[0]), new File(args[1]),
+				SMALL_HEAP_MEMORY_BUDGET);
+		OrgCollection orgCollection = sortLoader.loadData();
+		new OrgStatsFileStore(new File(args[2])).storeData(orgCollection);
+		System.out.println(SPILL_FILE_COUNT_PREFIX + sortLoader.getSpillFileCount());
+	}
+
+	private static byte[] readAll(Process process) throws IOException {
+
+		List<Byte> bytes = new ArrayList<Byte>();
+		int b;
+		while ((b = process.getInputStream().read()) >= 0) {
+			bytes.add((byte) b);
+		}
+		byte[] result = new byte[bytes.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = bytes.get(i);
+		}
+		return result;
+	}
+
+	/*
+	 * Writes a user file for the orgs in the small org file with large byte counts, so the
+	 * lines are long.
+	 */
+	private static File writeUserFile(int lineCount, long seed) throws IOException {
+
+		Random random = new Random(seed);
+		File userFile = File.createTempFile("ExternalSortOrgDataLoaderTest", ".txt");
+		BufferedWriter userWriter = new BufferedWriter(new FileWriter(userFile), 64 * 1024);
+		try {
+			for (int userId = 1; userId <= lineCount; userId++) {
+				userWriter.append(userId + ", " + (1 + random.nextInt(ORG_COUNT)) + ", " + random.nextInt(1000)
+						+ ", " + (1000000000000l + random.nextInt(1000000000)));
+				userWriter.newLine();
+			}
+		} finally {
+			userWriter.close();
+		}
+		return userFile;
+	}
+
+	private static File createSpillDirectory() throws IOException {
+
+		File spillDirectory = File.createTempFile("ExternalSortOrgDataLoaderTest", "");
+		if (!spillDirectory.delete() || !spillDirectory.mkdir()) {
+			throw new IOException("Unable to create " + spillDirectory);
+		}
+		return spillDirectory;
+	}
+
+	private static void deleteDirectory(File directory) {
+
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+}
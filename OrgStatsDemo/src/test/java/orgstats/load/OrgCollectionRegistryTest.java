@@ -0,0 +1,189 @@
+package orgstats.load;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import orgstats.OrgBean;
+import orgstats.OrgCollection;
+
+public class OrgCollectionRegistryTest {
+
+	private static final String DATA_PATH = new java.io.File("").getAbsolutePath() + "//data//";
+	private static final File ORG_FILE = new File(DATA_PATH + "SmallOrgsTestFile.txt");
+	private static final File USER_FILE = new File(DATA_PATH + "SmallUsersTestFile.txt");
+
+	/**
+	 * The same files are loaded once, and again once they change.
+	 */
+	@Test
+	public void testCachedUntilChanged() throws Exception {
+
+		File orgFile = File.createTempFile("OrgCollectionRegistryTest", ".txt");
+		try {
+			OrgCollectionRegistry registry = new OrgCollectionRegistry(1024 * 1024 * 1024);
+			CountingLoader loader = new CountingLoader(10, 0);
+			OrgCollection orgCollection = registry.loadData(orgFile, USER_FILE, UserLoadMode.USERS, loader);
+			Assert.assertTrue("Cached collection not sealed.", orgCollection.isSealed());
+			Assert.assertEquals("Rankings not in the heap estimate.", 10 * (OrgCollection.ORG_HEAP_BYTES 
+					+ OrgCollection.USER_HEAP_BYTES + OrgCollection.SKETCH_HEAP_BYTES + OrgCollection.RANKINGS_HEAP_BYTES), 
+					orgCollection.getEstimatedHeapBytes());
+			Assert.assertSame("Cached collection not returned.", orgCollection,
+					registry.getLoader(new File(orgFile.getParentFile(), "." + File.separator + orgFile.getName()),
+							USER_FILE, UserLoadMode.USERS, loader).loadData());
+			Assert.assertNotSame("Collection of another load mode returned.", orgCollection,
+					registry.loadData(orgFile, USER_FILE, UserLoadMode.AGGREGATES_ONLY, loader));
+			Assert.assertEquals("Files not loaded once for each mode.", 2, loader.loadCount.get());
+			Assert.assertEquals("Hit count invalid.", 1, registry.getHitCount());
+			Assert.assertEquals("Heap estimate invalid.", 2 * orgCollection.getEstimatedHeapBytes(), registry.getHeapBytes());
+
+			Assert.assertTrue(orgFile.setLastModified(orgFile.lastModified() - 10000));
+			OrgCollection changedCollection = registry.loadData(orgFile, USER_FILE, UserLoadMode.USERS, loader);
+			Assert.assertNotSame("Collection of the changed file returned.", orgCollection, changedCollection);
+			Assert.assertEquals("Changed file not loaded again.", 3, loader.loadCount.get());
+			Assert.assertEquals("Collection of the old file kept.", 2, registry.getEntryCount());
+		} finally {
+			orgFile.delete();
+		}
+	}
+
+	/**
+	 * The least recently used collections are evicted by their estimated heap, and a collection
+	 * over the budget isn't kept.
+	 */
+	@Test
+	public void testLeastRecentlyUsedEviction() throws Exception {
+
+		List<File> orgFiles = new ArrayList<File>();
+		try {
+			for (int i = 0; i < 4; i++) {
+				orgFiles.add(File.createTempFile("OrgCollectionRegistryTest", ".txt"));
+			}
+			OrgCollection sealedCollection = new CountingLoader(1000, 0).loadData();
+			sealedCollection.seal();
+			long orgsHeapBytes = sealedCollection.getEstimatedHeapBytes();
+			OrgCollectionRegistry registry = new OrgCollectionRegistry(orgsHeapBytes * 5 / 2);
+			CountingLoader loader = new CountingLoader(1000, 0);
+			registry.loadData(orgFiles.get(0), USER_FILE, UserLoadMode.USERS, loader);
+			registry.loadData(orgFiles.get(1), USER_FILE, UserLoadMode.USERS, loader);
+			registry.loadData(orgFiles.get(0), USER_FILE, UserLoadMode.USERS, loader);
+			registry.loadData(orgFiles.get(2), USER_FILE, UserLoadMode.USERS, loader);
+			Assert.assertEquals("Collections not evicted.", 2, registry.getEntryCount());
+			Assert.assertEquals("Eviction count invalid.", 1, registry.getEvictionCount());
+			Assert.assertTrue("Heap over the budget: " + registry.getHeapBytes(), registry.getHeapBytes() <= orgsHeapBytes * 5 / 2);
+
+			registry.loadData(orgFiles.get(0), USER_FILE, UserLoadMode.USERS, loader);
+			registry.loadData(orgFiles.get(2), USER_FILE, UserLoadMode.USERS, loader);
+			Assert.assertEquals("Recently used collections evicted.", 3, loader.loadCount.get());
+			registry.loadData(orgFiles.get(1), USER_FILE, UserLoadMode.USERS, loader);
+			Assert.assertEquals("Least recently used collection not evicted.", 4, loader.loadCount.get());
+
+			CountingLoader largeLoader = new CountingLoader(3000, 0);
+			Assert.assertEquals(3000, registry.loadData(orgFiles.get(3), USER_FILE, UserLoadMode.USERS, largeLoader).getOrgCount());
+			Assert.assertEquals("Collection over the budget evicted the others.", 2, registry.getEntryCount());
+			registry.loadData(orgFiles.get(3), USER_FILE, UserLoadMode.USERS, largeLoader);
+			Assert.assertEquals("Collection over the budget cached.", 2, largeLoader.loadCount.get());
+		} finally {
+			for (File orgFile : orgFiles) {
+				orgFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Threads asking for the same files at the same time share one load.
+	 */
+	@Test
+	public void testSingleLoad() throws Exception {
+
+		final OrgCollectionRegistry registry = new OrgCollectionRegistry(1024 * 1024 * 1024);
+		final CountingLoader loader = new CountingLoader(1000, 200);
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<OrgCollection>> loads = new ArrayList<Future<OrgCollection>>();
+			for (int i = 0; i < 8; i++) {
+				loads.add(executor.submit(new Callable<OrgCollection>() {
+					public OrgCollection call() throws Exception {
+						startLatch.await();
+						return registry.loadData(ORG_FILE, USER_FILE, UserLoadMode.USERS, loader);
+					}
+				}));
+			}
+			startLatch.countDown();
+			OrgCollection orgCollection = loads.get(0).get();
+			for (Future<OrgCollection> load : loads) {
+				Assert.assertSame("Threads got different collections.", orgCollection, load.get());
+			}
+			Assert.assertEquals("Files loaded more than once.", 1, loader.loadCount.get());
+			Assert.assertEquals("Hit count invalid.", 7, registry.getHitCount());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * A load that fails is tried again by the next request.
+	 */
+	@Test
+	public void testFailedLoadNotCached() throws Exception {
+
+		OrgCollectionRegistry registry = new OrgCollectionRegistry(1024 * 1024 * 1024);
+		try {
+			registry.loadData(ORG_FILE, USER_FILE, UserLoadMode.USERS, new OrgDataLoader() {
+				public OrgCollection loadData() throws OrgDataLoaderException {
+					throw new OrgDataLoaderException("ERROR with Org File (invalid orgId): x");
+				}
+			});
+			Assert.fail("Load failure not thrown.");
+		} catch (OrgDataLoaderException ex) {
+			Assert.assertEquals("ERROR with Org File (invalid orgId): x", ex.getMessage());
+		}
+		Assert.assertEquals("Failed load kept.", 0, registry.getEntryCount());
+
+		OrgCollection orgCollection = registry.loadData(ORG_FILE, USER_FILE, UserLoadMode.USERS,
+				new OrgUserDataFileLoader(ORG_FILE, USER_FILE));
+		Assert.assertEquals("Data files not loaded after a failure.",
+				new OrgUserDataFileLoader(ORG_FILE, USER_FILE).loadData().getOrgCount(), orgCollection.getOrgCount());
+	}
+
+	/*
+	 * Loads a collection of top level orgs with a user each, after sleeping for the delay.
+	 */
+	private static final class CountingLoader implements OrgDataLoader {
+
+		private final int orgCount;
+		private final long delayMillis;
+		private final AtomicInteger loadCount = new AtomicInteger();
+
+		CountingLoader(int orgCount, long delayMillis) {
+			this.orgCount = orgCount;
+			this.delayMillis = delayMillis;
+		}
+
+		public OrgCollection loadData() throws OrgDataLoaderException {
+
+			loadCount.incrementAndGet();
+			try {
+				Thread.sleep(delayMillis);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			OrgCollection orgCollection = new OrgCollection();
+			for (int orgId = 1; orgId <= orgCount; orgId++) {
+				orgCollection.add(new OrgBean(orgId, 0, "Org" + orgId));
+				orgCollection.addUser(orgId, orgId, 1, 2l);
+			}
+			return orgCollection;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package orgstats.load;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import orgstats.OrgBean;
+import orgstats.OrgCollection;
+import orgstats.UsageMetric;
+import orgstats.UsageSketch;
+import orgstats.store.OrgStatsSnapshotStore;
+
+public class OrgStatsSnapshotLoaderTest {
+
+	private static final String DATA_PATH = new java.io.File("").getAbsolutePath() + "//data//";
+	private static final File ORG_FILE = new File(DATA_PATH + "SmallOrgsTestFile.txt");
+	private static final File USER_FILE = new File(DATA_PATH + "SmallUsersTestFile.txt");
+
+	private File snapshotFile;
+
+	@Before
+	public void setUp() throws IOException {
+		snapshotFile = File.createTempFile("OrgStatsSnapshotLoaderTest", ".snapshot");
+		snapshotFile.delete();
+	}
+
+	@After
+	public void tearDown() {
+		snapshotFile.delete();
+	}
+
+	@Test
+	public void testRoundTripUsers() throws Exception {
+
+		OrgCollection loadedCollection = new OrgUserDataFileLoader(ORG_FILE, USER_FILE).loadData();
+		OrgStatsSnapshotLoader snapshotLoader = new OrgStatsSnapshotLoader(snapshotFile, ORG_FILE, USER_FILE,
+				UserLoadMode.USERS);
+		Assert.assertFalse("Missing snapshot is valid.", snapshotLoader.isValid());
+
+		new OrgStatsSnapshotStore(snapshotFile, ORG_FILE, USER_FILE).storeData(loadedCollection);
+		Assert.assertTrue("Snapshot is not valid.", snapshotLoader.isValid());
+		OrgCollection restoredCollection = snapshotLoader.loadData();
+
+		assertSameTrees(loadedCollection.getTopLevelOrgs(), restoredCollection.getTopLevelOrgs(), true);
+		Assert.assertEquals("Org3 total user count invalid.", 80, restoredCollection.getOrg(3).getTotalNumUsers());
+		Assert.assertEquals("Org3 total byte count invalid.", 427587370095l, restoredCollection.getOrg(3).getTotalNumBytes());
+
+		// Users in the snapshot can be skipped when only aggregates are needed.
+		OrgCollection aggregatesCollection = new OrgStatsSnapshotLoader(snapshotFile, ORG_FILE, USER_FILE,
+				UserLoadMode.AGGREGATES_ONLY).loadData();
+		assertSameTrees(loadedCollection.getTopLevelOrgs(), aggregatesCollection.getTopLevelOrgs(), false);
+		// but are still added to the distributions.
+		for (UsageMetric metric : new UsageMetric[] { UsageMetric.FILES, UsageMetric.BYTES }) {
+			UsageSketch expectedSketch = loadedCollection.getOrg(3).getTotalUsageSketch(metric);
+			UsageSketch actualSketch = aggregatesCollection.getOrg(3).getTotalUsageSketch(metric);
+			Assert.assertEquals("Distribution count is different.", 80, actualSketch.getCount());
+			Assert.assertEquals("Distribution median is different.", expectedSketch.getQuantile(0.5), 
+					actualSketch.getQuantile(0.5));
+		}
+	}
+
+	@Test
+	public void testAggregatesOnlySnapshot() throws Exception {
+
+		OrgCollection loadedCollection = new OrgUserDataFileLoader(ORG_FILE, USER_FILE,
+				UserLoadMode.AGGREGATES_ONLY).loadData();
+		new OrgStatsSnapshotStore(snapshotFile, ORG_FILE, USER_FILE, false).storeData(loadedCollection);
+
+		Assert.assertFalse("Snapshot without users is valid for users.",
+				new OrgStatsSnapshotLoader(snapshotFile, ORG_FILE, USER_FILE, UserLoadMode.USERS).isValid());
+		OrgStatsSnapshotLoader snapshotLoader = new OrgStatsSnapshotLoader(snapshotFile, ORG_FILE, USER_FILE,
+				UserLoadMode.AGGREGATES_ONLY);
+		Assert.assertTrue("Snapshot is not valid.", snapshotLoader.isValid());
+		assertSameTrees(loadedCollection.getTopLevelOrgs(), snapshotLoader.loadData().getTopLevelOrgs(), false);
+	}
+
+	@Test
+	public void testChangedDataFile() throws Exception {
+
+		File userFile = File.createTempFile("OrgStatsSnapshotLoaderTest", ".txt");
+		try {
+			writeFile(userFile, "1, 2, 3, 4\n");
+			new OrgStatsSnapshotStore(snapshotFile, ORG_FILE, userFile).storeData(
+					new OrgUserDataFileLoader(ORG_FILE, userFile).loadData());
+			OrgStatsSnapshotLoader snapshotLoader = new OrgStatsSnapshotLoader(snapshotFile, ORG_FILE, userFile,
+					UserLoadMode.USERS);
+			Assert.assertTrue("Snapshot is not valid.", snapshotLoader.isValid());
+
+			writeFile(userFile, "1, 2, 3, 4\n5, 2, 3, 4\n");
+			Assert.assertFalse("Snapshot of changed file is valid.", snapshotLoader.isValid());
+			try {
+				snapshotLoader.loadData();
+				Assert.fail("Snapshot of changed file loaded.");
+			} catch (OrgDataLoaderException ex) {
+				Assert.assertEquals("Snapshot file is not valid, the org or user file has changed.", ex.getMessage());
+			}
+		} finally {
+			userFile.delete();
+		}
+	}
+
+	private static void assertSameTrees(List<OrgBean> expectedOrgs, List<OrgBean> actualOrgs, boolean users) {
+
+		Assert.assertEquals("Org count is different.", expectedOrgs.size(), actualOrgs.size());
+		for (int i = 0; i < expectedOrgs.size(); i++) {
+			OrgBean expected = expectedOrgs.get(i);
+			OrgBean actual = actualOrgs.get(i);
+			Assert.assertEquals("Org id is different.", expected.getOrgId(), actual.getOrgId());
+			Assert.assertEquals("Parent org id is different.", expected.getParentOrgId(), actual.getParentOrgId());
+			Assert.assertEquals("Org name is different.", expected.getName(), actual.getName());
+			Assert.assertEquals("Org user count is different.", expected.getNumUsers(), actual.getNumUsers());
+			Assert.assertEquals("Org byte count is different.", expected.getNumBytes(), actual.getNumBytes());
+			Assert.assertEquals("Total stats are different.", expected.getStatsString(), actual.getStatsString());
+			if (users) {
+				for (int j = 0; j < expected.getUsers().size(); j++) {
+					Assert.assertEquals("User is different.", expected.getUsers().get(j).toString(),
+							actual.getUsers().get(j).toString());
+				}
+				Assert.assertEquals("User count is different.", expected.getUsers().size(), actual.getUsers().size());
+			} else {
+				Assert.assertEquals("Users restored.", 0, actual.getUsers().size());
+			}
+			assertSameTrees(expected.getChildOrgs(), actual.getChildOrgs(), users);
+		}
+	}
+
+	private static void writeFile(File file, String data) throws IOException {
+
+		FileOutputStream output = new FileOutputStream(file);
+		try {
+			output.write(data.getBytes("US-ASCII"));
+		} finally {
+			output.close();
+		}
+	}
+}
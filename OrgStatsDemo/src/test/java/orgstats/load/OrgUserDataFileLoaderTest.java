@@ -0,0 +1,216 @@
+package orgstats.load;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import orgstats.OrgBean;
+import orgstats.OrgCollection;
+import orgstats.UsageMetric;
+import orgstats.UsageSketch;
+
+public class OrgUserDataFileLoaderTest {
+
+	private static final String DATA_PATH = new java.io.File("").getAbsolutePath() + "//data//";
+	private static final File ORG_FILE = new File(DATA_PATH + "SmallOrgsTestFile.txt");
+	private static final File USER_FILE = new File(DATA_PATH + "SmallUsersTestFile.txt");
+
+	@Test
+	public void testAggregatesOnly() throws OrgDataLoaderException {
+
+		OrgCollection usersCollection = new OrgUserDataFileLoader(ORG_FILE, USER_FILE, UserLoadMode.USERS).loadData();
+		OrgCollection aggregatesCollection = new OrgUserDataFileLoader(ORG_FILE, USER_FILE, 
+				UserLoadMode.AGGREGATES_ONLY).loadData();
+
+		for (OrgBean orgBean : usersCollection.getOrgTree(2, true)) {
+			OrgBean aggregatesOrg = aggregatesCollection.getOrg(orgBean.getOrgId());
+			Assert.assertEquals("Users stored for aggregates only.", 0, aggregatesOrg.getUsers().size());
+			Assert.assertEquals("Org user count invalid.", orgBean.getUsers().size(), aggregatesOrg.getNumUsers());
+			Assert.assertEquals("Total user count invalid.", orgBean.getTotalNumUsers(), aggregatesOrg.getTotalNumUsers());
+			Assert.assertEquals("Total file count invalid.", orgBean.getTotalNumFiles(), aggregatesOrg.getTotalNumFiles());
+			Assert.assertEquals("Total byte count invalid.", orgBean.getTotalNumBytes(), aggregatesOrg.getTotalNumBytes());
+		}
+		Assert.assertEquals("Org3 total user count invalid.", 80, aggregatesCollection.getOrg(3).getTotalNumUsers());
+		Assert.assertEquals("Org3 total file count invalid.", 809976, aggregatesCollection.getOrg(3).getTotalNumFiles());
+		Assert.assertEquals("Org3 total byte count invalid.", 427587370095l, aggregatesCollection.getOrg(3).getTotalNumBytes());
+	}
+
+	@Test
+	public void testChunkedAggregates() throws Exception {
+
+		File userFile = writeUserFile(20000, null);
+		FileInputStream userInput = new FileInputStream(userFile);
+		try {
+			OrgCollection serialCollection = new OrgUserDataFileLoader(ORG_FILE, userFile, 
+					UserLoadMode.AGGREGATES_ONLY, 1).loadData();
+
+			// Small chunks so the file is split into many ranges.
+			ChunkedUserFileReader chunkedReader = new ChunkedUserFileReader(4, 1000);
+			FileChannel userChannel = userInput.getChannel();
+			Assert.assertTrue("File not split into chunks.", chunkedReader.findChunkBoundaries(userChannel).length > 4);
+
+			OrgCollection chunkedCollection = new OrgCollection();
+			new OrgUserDataFileLoader(ORG_FILE, userFile).populateOrgs(chunkedCollection);
+			chunkedReader.readTotals(userChannel).addTo(chunkedCollection);
+			chunkedCollection.computeTotals();
+
+			for (OrgBean orgBean : serialCollection.getOrgTree(2, true)) {
+				OrgBean chunkedOrg = chunkedCollection.getOrg(orgBean.getOrgId());
+				Assert.assertEquals("Total user count invalid.", orgBean.getTotalNumUsers(), chunkedOrg.getTotalNumUsers());
+				Assert.assertEquals("Total file count invalid.", orgBean.getTotalNumFiles(), chunkedOrg.getTotalNumFiles());
+				Assert.assertEquals("Total byte count invalid.", orgBean.getTotalNumBytes(), chunkedOrg.getTotalNumBytes());
+			}
+		} finally {
+			userInput.close();
+			userFile.delete();
+		}
+	}
+
+	@Test
+	public void testAggregatesDistributions() throws Exception {
+
+		File userFile = writeUserFile(20000, null);
+		FileInputStream userInput = new FileInputStream(userFile);
+		try {
+			OrgCollection usersCollection = new OrgUserDataFileLoader(ORG_FILE, userFile, UserLoadMode.USERS).loadData();
+			OrgCollection serialCollection = new OrgUserDataFileLoader(ORG_FILE, userFile, 
+					UserLoadMode.AGGREGATES_ONLY, 1).loadData();
+			OrgCollection chunkedCollection = new OrgCollection();
+			new OrgUserDataFileLoader(ORG_FILE, userFile).populateOrgs(chunkedCollection);
+			new ChunkedUserFileReader(4, 1000).readTotals(userInput.getChannel()).addTo(chunkedCollection);
+			chunkedCollection.computeTotals();
+
+			// The distributions are merged from the same buckets, so the quantiles are equal.
+			for (OrgBean orgBean : usersCollection.getOrgTree(2, true)) {
+				for (OrgCollection aggregatesCollection : new OrgCollection[] { serialCollection, chunkedCollection }) {
+					OrgBean aggregatesOrg = aggregatesCollection.getOrg(orgBean.getOrgId());
+					for (UsageMetric metric : new UsageMetric[] { UsageMetric.FILES, UsageMetric.BYTES }) {
+						UsageSketch sketch = orgBean.getTotalUsageSketch(metric);
+						UsageSketch aggregatesSketch = aggregatesOrg.getTotalUsageSketch(metric);
+						Assert.assertEquals("Org" + orgBean.getOrgId() + " " + metric + " distribution count invalid.",
+								sketch.getCount(), aggregatesSketch.getCount());
+						for (double fraction : new double[] { 0, 0.5, 0.95, 1 }) {
+							Assert.assertEquals("Org" + orgBean.getOrgId() + " " + metric + " quantile " + fraction + " invalid.",
+									sketch.getQuantile(fraction), aggregatesSketch.getQuantile(fraction));
+						}
+					}
+				}
+			}
+			Assert.assertEquals("Org2 distribution count invalid.", usersCollection.getOrg(2).getTotalNumUsers(),
+					usersCollection.getOrg(2).getTotalUsageSketch(UsageMetric.BYTES).getCount());
+		} finally {
+			userInput.close();
+			userFile.delete();
+		}
+	}
+
+	@Test
+	public void testChunkedAggregatesError() throws Exception {
+
+		File userFile = writeUserFile(20000, "15000, 3, x, 4");
+		FileInputStream userInput = new FileInputStream(userFile);
+		try {
+			new ChunkedUserFileReader(4, 1000).readTotals(userInput.getChannel());
+			Assert.fail("Invalid line not reported.");
+		} catch (OrgDataLoaderException ex) {
+			Assert.assertEquals("ERROR with User File (invalid fileCount): 15000, 3, x, 4", ex.getMessage());
+		} finally {
+			userInput.close();
+			userFile.delete();
+		}
+	}
+
+	/**
+	 * The users of orgs that don't exist are skipped and logged once with their count.
+	 */
+	@Test
+	public void testMissingOrgsLoggedOnce() throws Exception {
+
+		File userFile = File.createTempFile("OrgUserDataFileLoaderTest", ".txt");
+		BufferedWriter userWriter = new BufferedWriter(new FileWriter(userFile));
+		try {
+			for (int userId = 1; userId <= 1000; userId++) {
+				userWriter.append(userId + ", " + (userId % 10 == 0 ? 100 : 1 + userId % 19) + ", 1, 2");
+				userWriter.newLine();
+			}
+		} finally {
+			userWriter.close();
+		}
+		final List<String> warnings = new ArrayList<String>();
+		Handler warningHandler = new Handler() {
+			public void publish(LogRecord record) {
+				if (record.getLevel().intValue() >= Level.WARNING.intValue()) {
+					warnings.add(record.getMessage());
+				}
+			}
+			public void flush() {
+			}
+			public void close() {
+			}
+		};
+		Logger[] loggers = new Logger[] { Logger.getLogger(OrgUserDataFileLoader.class.getName()),
+				Logger.getLogger(OrgCollection.class.getName()) };
+		for (Logger logger : loggers) {
+			logger.addHandler(warningHandler);
+		}
+		try {
+			for (UserLoadMode userLoadMode : UserLoadMode.values()) {
+				for (int threadCount : new int[] { 1, 4 }) {
+					warnings.clear();
+					OrgCollection orgCollection = new OrgUserDataFileLoader(ORG_FILE, userFile, userLoadMode, 
+							threadCount).loadData();
+					int totalUserCount = 0;
+					for (OrgBean orgBean : orgCollection.getTopLevelOrgs()) {
+						totalUserCount = totalUserCount + orgBean.getTotalNumUsers();
+					}
+					Assert.assertEquals(userLoadMode + " users of missing orgs added.", 900, totalUserCount);
+					Assert.assertEquals(userLoadMode + " missing orgs not logged once: " + warnings, 1, warnings.size());
+					Assert.assertEquals("100 users not added.  Their orgs don't exist.", warnings.get(0));
+				}
+			}
+		} finally {
+			for (Logger logger : loggers) {
+				logger.removeHandler(warningHandler);
+			}
+			userFile.delete();
+		}
+	}
+
+	/*
+	 * Writes a user file for the orgs in the small org file, with invalidLine replacing
+	 * the line at 3/4 of the file if it isn't null.
+	 */
+	private static File writeUserFile(int lineCount, String invalidLine) throws IOException {
+
+		Random random = new Random(lineCount);
+		File userFile = File.createTempFile("OrgUserDataFileLoaderTest", ".txt");
+		BufferedWriter userWriter = new BufferedWriter(new FileWriter(userFile));
+		try {
+			for (int userId = 1; userId <= lineCount; userId++) {
+				if (invalidLine != null && userId == lineCount * 3 / 4) {
+					userWriter.append(invalidLine);
+				} else {
+					userWriter.append(userId + ", " + (1 + random.nextInt(19)) + ", " + random.nextInt(20001)
+							+ ", " + (long) (random.nextDouble() * 10737418240l));
+				}
+				userWriter.newLine();
+			}
+		} finally {
+			userWriter.close();
+		}
+		return userFile;
+	}
+}
@@ -0,0 +1,379 @@
+package orgstats.load;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import orgstats.BlockGzip;
+import orgstats.BlockGzipOutputStream;
+import orgstats.DataCompression;
+import orgstats.metrics.LoaderMetrics.Stage;
+
+public class PipelinedFileReaderTest {
+
+	/**
+	 * Small blocks, lines longer than a block and CRLF lines are attached in file order.
+	 */
+	@Test
+	public void testBlocksInFileOrder() throws Exception {
+
+		File userFile = File.createTempFile("PipelinedFileReaderTest", ".txt");
+		List<String> expected = new ArrayList<String>();
+		Random random = new Random(22);
+		BufferedWriter userWriter = new BufferedWriter(new FileWriter(userFile));
+		try {
+			for (int userId = 1; userId <= 5000; userId++) {
+				int orgId = 1 + random.nextInt(100);
+				int numFiles = random.nextInt(1000);
+				long numBytes = userId % 1000 == 0 ? Long.MAX_VALUE : (long) (random.nextDouble() * 10737418240l);
+				String padding = userId % 700 == 0 ? "0000000000000000000000000000000000000000000000000000000000" : "";
+				userWriter.append(userId + ", " + orgId + ", " + numFiles + ", " + padding + numBytes);
+				if (userId < 5000) {
+					userWriter.append(userId % 3 == 0 ? "\r\n" : "\n");
+				}
+				expected.add(userId + " " + orgId + " " + numFiles + " " + numBytes);
+			}
+		} finally {
+			userWriter.close();
+		}
+
+		try {
+			for (int parserCount : new int[] { 1, 3 }) {
+				List<String> attached = new ArrayList<String>();
+				readUsers(userFile, parserCount, 64, 1, attached, null);
+				Assert.assertEquals("Users with " + parserCount + " parsers not attached in file order.", expected, attached);
+			}
+		} finally {
+			userFile.delete();
+		}
+	}
+
+	/**
+	 * The first invalid line is reported even if a later block fails first.
+	 */
+	@Test
+	public void testFirstInvalidLine() throws Exception {
+
+		File userFile = File.createTempFile("PipelinedFileReaderTest", ".txt");
+		BufferedWriter userWriter = new BufferedWriter(new FileWriter(userFile));
+		try {
+			for (int userId = 1; userId <= 2000; userId++) {
+				if (userId == 1500) {
+					userWriter.append("1500, 3, x, 4");
+				} else if (userId == 1900) {
+					userWriter.append("1900, 3");
+				} else {
+					userWriter.append(userId + ", 3, 4, 5");
+				}
+				userWriter.newLine();
+			}
+		} finally {
+			userWriter.close();
+		}
+
+		try {
+			readUsers(userFile, 4, 256, 2, new ArrayList<String>(), null);
+			Assert.fail("Invalid line not reported.");
+		} catch (OrgDataLoaderException ex) {
+			Assert.assertEquals("ERROR with User File (invalid fileCount): 1500, 3, x, 4", ex.getMessage());
+		} finally {
+			userFile.delete();
+		}
+	}
+
+	/**
+	 * An Error of a parse thread fails the load instead of the attach stage waiting for its batch.
+	 */
+	@Test
+	public void testParserError() throws Exception {
+
+		File userFile = File.createTempFile("PipelinedFileReaderTest", ".txt");
+		BufferedWriter userWriter = new BufferedWriter(new FileWriter(userFile));
+		try {
+			for (int userId = 1; userId <= 2000; userId++) {
+				userWriter.append(userId + ", 3, 4, 5");
+				userWriter.newLine();
+			}
+		} finally {
+			userWriter.close();
+		}
+
+		final int[] parsedCount = new int[1];
+		PipelinedFileReader<Integer> reader = new PipelinedFileReader<Integer>(3, 256, 2) {
+			Integer parseBlock(DataFileParser parser, byte[] block, int length, Integer batch) {
+				synchronized (parsedCount) {
+					if (++parsedCount[0] == 5) {
+						throw new OutOfMemoryError("Parser failed");
+					}
+				}
+				return length;
+			}
+			void attach(Integer batch) {
+			}
+		};
+		FileInputStream userInput = new FileInputStream(userFile);
+		try {
+			reader.read(userInput.getChannel());
+			Assert.fail("Parser error not thrown.");
+		} catch (OutOfMemoryError error) {
+			Assert.assertEquals("Parser failed", error.getMessage());
+		} finally {
+			userInput.close();
+			userFile.delete();
+		}
+	}
+
+	/**
+	 * A slow attach stage blocks the read stage instead of more blocks being read into memory.
+	 */
+	@Test
+	public void testBackpressure() throws Exception {
+
+		File userFile = File.createTempFile("PipelinedFileReaderTest", ".txt");
+		BufferedWriter userWriter = new BufferedWriter(new FileWriter(userFile));
+		try {
+			for (int userId = 1; userId <= 2000; userId++) {
+				userWriter.append(userId + ", 3, 4, 5");
+				userWriter.newLine();
+			}
+		} finally {
+			userWriter.close();
+		}
+
+		try {
+			Map<byte[], Boolean> blocks = Collections.synchronizedMap(new IdentityHashMap<byte[], Boolean>());
+			List<String> attached = new ArrayList<String>();
+			PipelinedFileReader<List<String>> reader = readUsers(userFile, 2, 256, 1, attached, blocks);
+
+			Assert.assertEquals("Users not attached.", 2000, attached.size());
+			Assert.assertTrue("Too many blocks in memory: " + blocks.size(), blocks.size() <= 2 * (1 + 1) + 2);
+			Assert.assertTrue("Read stage not blocked.", reader.getBlockedNanos(Stage.READ) > 0);
+			Assert.assertTrue("Attach stage time not recorded.", reader.getBusyNanos(Stage.ATTACH) >= 50 * 1000000l);
+		} finally {
+			userFile.delete();
+		}
+	}
+
+	/**
+	 * Gzip and block gzip files are read the same as the plain file, and a damaged member is
+	 * reported.
+	 */
+	@Test
+	public void testCompressedFiles() throws Exception {
+
+		File userFile = File.createTempFile("PipelinedFileReaderTest", ".txt");
+		File gzipFile = File.createTempFile("PipelinedFileReaderTest", ".gz");
+		File blockGzipFile = File.createTempFile("PipelinedFileReaderTest", ".gz");
+		try {
+			BufferedWriter userWriter = new BufferedWriter(new FileWriter(userFile));
+			try {
+				Random random = new Random(23);
+				for (int userId = 1; userId <= 5000; userId++) {
+					userWriter.append(userId + ", " + (1 + random.nextInt(100)) + ", " + random.nextInt(1000) + ", "
+							+ random.nextInt(Integer.MAX_VALUE));
+					userWriter.newLine();
+				}
+			} finally {
+				userWriter.close();
+			}
+			compressFile(userFile, new GZIPOutputStream(new FileOutputStream(gzipFile)));
+			compressFile(userFile, new BlockGzipOutputStream(new FileOutputStream(blockGzipFile), 4096));
+			Assert.assertEquals("Gzip file not detected.", DataCompression.GZIP, detect(gzipFile));
+			Assert.assertEquals("Block gzip file not detected.", DataCompression.BLOCK_GZIP, detect(blockGzipFile));
+			Assert.assertEquals("Plain file not detected.", DataCompression.NONE, detect(userFile));
+
+			List<String> expected = new ArrayList<String>();
+			readUsers(userFile, 1, 4096, 2, expected, null);
+			for (File compressedFile : new File[] { gzipFile, blockGzipFile }) {
+				for (int parserCount : new int[] { 1, 3 }) {
+					List<String> attached = new ArrayList<String>();
+					readUsers(compressedFile, parserCount, 4096, 2, attached, null);
+					Assert.assertEquals("Users of " + detect(compressedFile) + " file with " + parserCount 
+							+ " parsers are incorrect.", expected, attached);
+				}
+			}
+
+			// Damage the deflate data of the second member.
+			RandomAccessFile damagedFile = new RandomAccessFile(blockGzipFile, "rw");
+			try {
+				byte[] header = new byte[BlockGzip.HEADER_LENGTH];
+				damagedFile.readFully(header);
+				int secondMember = BlockGzip.memberLength(header, 0, header.length);
+				damagedFile.seek(secondMember + BlockGzip.HEADER_LENGTH + 10);
+				damagedFile.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+			} finally {
+				damagedFile.close();
+			}
+			try {
+				readUsers(blockGzipFile, 3, 4096, 2, new ArrayList<String>(), null);
+				Assert.fail("Damaged member not reported.");
+			} catch (IOException ex) {
+				Assert.assertTrue("Damaged member error is incorrect: " + ex.getMessage(), 
+						ex.getMessage().startsWith("Invalid block gzip member"));
+			}
+		} finally {
+			userFile.delete();
+			gzipFile.delete();
+			blockGzipFile.delete();
+		}
+	}
+
+	/**
+	 * A corrupt member length or uncompressed length is reported instead of a block that long
+	 * being allocated.
+	 */
+	@Test
+	public void testCorruptBlockGzipLengths() throws Exception {
+
+		File userFile = File.createTempFile("PipelinedFileReaderTest", ".txt");
+		File blockGzipFile = File.createTempFile("PipelinedFileReaderTest", ".gz");
+		try {
+			BufferedWriter userWriter = new BufferedWriter(new FileWriter(userFile));
+			try {
+				for (int userId = 1; userId <= 2000; userId++) {
+					userWriter.append(userId + ", 3, 4, 5");
+					userWriter.newLine();
+				}
+			} finally {
+				userWriter.close();
+			}
+			byte[] maxLength = { (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x7f };
+			compressFile(userFile, new BlockGzipOutputStream(new FileOutputStream(blockGzipFile), 4096));
+			RandomAccessFile damagedFile = new RandomAccessFile(blockGzipFile, "rw");
+			try {
+				damagedFile.seek(BlockGzip.HEADER_LENGTH - 4);
+				damagedFile.write(maxLength);
+			} finally {
+				damagedFile.close();
+			}
+			try {
+				readUsers(blockGzipFile, 2, 4096, 2, new ArrayList<String>(), null);
+				Assert.fail("Corrupt member length not reported.");
+			} catch (IOException ex) {
+				Assert.assertEquals("Block gzip file ends in a member at position 0", ex.getMessage());
+			}
+
+			compressFile(userFile, new BlockGzipOutputStream(new FileOutputStream(blockGzipFile), 4096));
+			damagedFile = new RandomAccessFile(blockGzipFile, "rw");
+			try {
+				byte[] header = new byte[BlockGzip.HEADER_LENGTH];
+				damagedFile.readFully(header);
+				damagedFile.seek(BlockGzip.memberLength(header, 0, header.length) - 4);
+				damagedFile.write(maxLength);
+			} finally {
+				damagedFile.close();
+			}
+			try {
+				readUsers(blockGzipFile, 2, 4096, 2, new ArrayList<String>(), null);
+				Assert.fail("Corrupt uncompressed length not reported.");
+			} catch (IOException ex) {
+				Assert.assertEquals("Invalid block gzip member, uncompressed length " + Integer.MAX_VALUE, ex.getMessage());
+			}
+
+			// A member long enough for the deflate ratio still can't claim more than a block.
+			byte[] member = new byte[1024 * 1024];
+			int uncompressedLength = BlockGzip.MAX_BLOCK_SIZE + 1;
+			for (int i = 0; i < 4; i++) {
+				member[member.length - 4 + i] = (byte) (uncompressedLength >>> (8 * i));
+			}
+			try {
+				BlockGzip.uncompressedLength(member, member.length);
+				Assert.fail("Uncompressed length over the block size accepted.");
+			} catch (IOException ex) {
+				Assert.assertEquals("Invalid block gzip member, uncompressed length " + uncompressedLength, ex.getMessage());
+			}
+			try {
+				new BlockGzipOutputStream(new ByteArrayOutputStream()).write(new byte[BlockGzip.MAX_BLOCK_SIZE + 1]);
+				Assert.fail("Line longer than the block size written.");
+			} catch (IOException ex) {
+				Assert.assertTrue("Long line error is incorrect: " + ex.getMessage(), ex.getMessage().startsWith("Line longer than"));
+			}
+		} finally {
+			userFile.delete();
+			blockGzipFile.delete();
+		}
+	}
+
+	/*
+	 * Reads the users of the file into attached as "userId orgId numFiles numBytes", sleeping
+	 * for each batch when the blocks are kept.
+	 */
+	private static PipelinedFileReader<List<String>> readUsers(File userFile, int parserCount, int blockSize,
+			int queueCapacity, final List<String> attached, final Map<byte[], Boolean> blocks)
+			throws IOException, OrgDataLoaderException {
+
+		PipelinedFileReader<List<String>> reader = new PipelinedFileReader<List<String>>(parserCount, blockSize, queueCapacity) {
+			List<String> parseBlock(DataFileParser parser, byte[] block, int length, List<String> batch)
+					throws OrgDataLoaderException {
+				if (blocks != null) {
+					blocks.put(block, Boolean.TRUE);
+				}
+				final List<String> users = new ArrayList<String>();
+				parser.parseUsers(block, length, new UserRecordHandler() {
+					public void handleUser(int userId, int orgId, int numFiles, long numBytes) {
+						users.add(userId + " " + orgId + " " + numFiles + " " + numBytes);
+					}
+				});
+				return users;
+			}
+			void attach(List<String> batch) {
+				attached.addAll(batch);
+				if (blocks != null) {
+					try {
+						Thread.sleep(1);
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		};
+		FileInputStream userInput = new FileInputStream(userFile);
+		try {
+			reader.read(userInput.getChannel());
+		} finally {
+			userInput.close();
+		}
+		return reader;
+	}
+	/*
+	 * Copies the file to the compressing stream and closes it.
+	 */
+	private static void compressFile(File inputFile, OutputStream output) throws IOException {
+
+		try {
+			Files.copy(inputFile.toPath(), output);
+		} finally {
+			output.close();
+		}
+	}
+
+	/*
+	 * Returns how the file is compressed.
+	 */
+	private static DataCompression detect(File file) throws IOException {
+
+		FileInputStream input = new FileInputStream(file);
+		try {
+			return DataCompression.detect(input.getChannel());
+		} finally {
+			input.close();
+		}
+	}
+}
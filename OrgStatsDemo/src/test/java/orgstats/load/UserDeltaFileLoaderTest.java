@@ -0,0 +1,158 @@
+package orgstats.load;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import orgstats.OrgBean;
+import orgstats.OrgCollection;
+
+public class UserDeltaFileLoaderTest {
+
+	private static final String DATA_PATH = new java.io.File("").getAbsolutePath() + "//data//";
+	private static final File ORG_FILE = new File(DATA_PATH + "SmallOrgsTestFile.txt");
+	private static final int ORG_COUNT = 19;
+	private static final int USER_COUNT = 5000;
+	private static final int DELTA_COUNT = 20000;
+
+	/**
+	 * Applies random changes to a loaded collection and compares every org with a collection
+	 * loaded from a user file that has the changes.  The changes that can't be applied, users
+	 * in the wrong org and orgs that don't exist, are skipped.
+	 */
+	@Test
+	public void testDeltasMatchReload() throws Exception {
+
+		Random random = new Random(12);
+		List<long[]> users = new ArrayList<long[]>();
+		for (int userId = 1; userId <= USER_COUNT; userId++) {
+			users.add(new long[] { userId, 1 + random.nextInt(ORG_COUNT), random.nextInt(20001), random.nextInt(1000000000) });
+		}
+		File userFile = writeUserFile(users);
+		File deltaFile = File.createTempFile("UserDeltaFileLoaderTest", ".txt");
+		File changedUserFile = null;
+		try {
+			OrgCollection orgCollection = new OrgUserDataFileLoader(ORG_FILE, userFile).loadData();
+
+			int expectedCount = 0;
+			int nextUserId = USER_COUNT + 1;
+			BufferedWriter deltaWriter = new BufferedWriter(new FileWriter(deltaFile));
+			try {
+				for (int i = 0; i < DELTA_COUNT; i++) {
+					int kind = random.nextInt(5);
+					if (kind == 0 || users.isEmpty()) {
+						long[] user = { nextUserId++, 1 + random.nextInt(ORG_COUNT), random.nextInt(20001), random.nextInt(1000000000) };
+						users.add(user);
+						deltaWriter.append("A, " + user[0] + ", " + user[1] + ", " + user[2] + ", " + user[3]);
+						expectedCount++;
+					} else if (kind == 4) {
+						// The user isn't in this org, or the org doesn't exist.
+						long[] user = users.get(random.nextInt(users.size()));
+						deltaWriter.append("R, " + user[0] + ", " + (random.nextBoolean() ? user[1] % ORG_COUNT + 1 : 99));
+					} else {
+						int index = random.nextInt(users.size());
+						long[] user = users.get(index);
+						if (kind == 1) {
+							users.set(index, users.get(users.size() - 1));
+							users.remove(users.size() - 1);
+							deltaWriter.append("R, " + user[0] + ", " + user[1]);
+						} else if (kind == 2) {
+							user[2] = random.nextInt(20001);
+							user[3] = random.nextInt(1000000000);
+							deltaWriter.append("U, " + user[0] + ", " + user[1] + ", " + user[2] + ", " + user[3]);
+						} else {
+							long newOrgId = user[1] % ORG_COUNT + 1;
+							deltaWriter.append("M, " + user[0] + ", " + user[1] + ", " + newOrgId);
+							user[1] = newOrgId;
+						}
+						expectedCount++;
+					}
+					deltaWriter.newLine();
+				}
+			} finally {
+				deltaWriter.close();
+			}
+
+			int appliedCount = new UserDeltaFileLoader(deltaFile).applyTo(orgCollection);
+			Assert.assertEquals("Applied delta count is incorrect.", expectedCount, appliedCount);
+
+			changedUserFile = writeUserFile(users);
+			OrgCollection reloadedCollection = new OrgUserDataFileLoader(ORG_FILE, changedUserFile).loadData();
+			for (int orgId = 1; orgId <= ORG_COUNT; orgId++) {
+				OrgBean orgBean = orgCollection.getOrg(orgId);
+				OrgBean reloadedOrg = reloadedCollection.getOrg(orgId);
+				Assert.assertEquals("Org user count invalid.", reloadedOrg.getNumUsers(), orgBean.getNumUsers());
+				Assert.assertEquals("Stored user count invalid.", reloadedOrg.getUsers().size(), orgBean.getUsers().size());
+				Assert.assertEquals("Total user count invalid.", reloadedOrg.getTotalNumUsers(), orgBean.getTotalNumUsers());
+				Assert.assertEquals("Total file count invalid.", reloadedOrg.getTotalNumFiles(), orgBean.getTotalNumFiles());
+				Assert.assertEquals("Total byte count invalid.", reloadedOrg.getTotalNumBytes(), orgBean.getTotalNumBytes());
+			}
+		} finally {
+			userFile.delete();
+			deltaFile.delete();
+			if (changedUserFile != null) {
+				changedUserFile.delete();
+			}
+		}
+	}
+
+	@Test
+	public void testDeltaErrors() throws Exception {
+
+		assertDeltaError("A, 1, 2, 3", "ERROR with User Delta File (not 5 items on line): A, 1, 2, 3");
+		assertDeltaError("R, 1, 2, 3", "ERROR with User Delta File (not 3 items on line): R, 1, 2, 3");
+		assertDeltaError("M, 1, 2", "ERROR with User Delta File (not 4 items on line): M, 1, 2");
+		assertDeltaError("X, 1, 2", "ERROR with User Delta File (invalid delta type): X, 1, 2");
+		assertDeltaError("AU, 1, 2", "ERROR with User Delta File (invalid delta type): AU, 1, 2");
+		assertDeltaError("R, x, 2", "ERROR with User Delta File (invalid user id): R, x, 2");
+		assertDeltaError("R, 1, -2", "ERROR with User Delta File (invalid org id): R, 1, -2");
+		assertDeltaError("M, 1, 2, 2147483648", "ERROR with User Delta File (invalid new org id): M, 1, 2, 2147483648");
+		assertDeltaError("U, 1, 2, 3x, 4", "ERROR with User Delta File (invalid fileCount): U, 1, 2, 3x, 4");
+		assertDeltaError("A, 1, 2, 3, 4x", "ERROR with User Delta File (invalid fileByte): A, 1, 2, 3, 4x");
+	}
+
+	private static void assertDeltaError(String line, String message) throws IOException {
+
+		File deltaFile = File.createTempFile("UserDeltaFileLoaderTest", ".txt");
+		try {
+			BufferedWriter deltaWriter = new BufferedWriter(new FileWriter(deltaFile));
+			try {
+				deltaWriter.append("A, 1, 1, 1, 1");
+				deltaWriter.newLine();
+				deltaWriter.append(line);
+			} finally {
+				deltaWriter.close();
+			}
+			OrgCollection orgCollection = new OrgCollection();
+			orgCollection.add(new OrgBean(1, 0, "Org1"));
+			new UserDeltaFileLoader(deltaFile).applyTo(orgCollection);
+			Assert.fail("No error for delta line: " + line);
+		} catch (OrgDataLoaderException ex) {
+			Assert.assertEquals(message, ex.getMessage());
+		} finally {
+			deltaFile.delete();
+		}
+	}
+
+	private static File writeUserFile(List<long[]> users) throws IOException {
+
+		File userFile = File.createTempFile("UserDeltaFileLoaderTest", ".txt");
+		BufferedWriter userWriter = new BufferedWriter(new FileWriter(userFile));
+		try {
+			for (long[] user : users) {
+				userWriter.append(user[0] + ", " + user[1] + ", " + user[2] + ", " + user[3]);
+				userWriter.newLine();
+			}
+		} finally {
+			userWriter.close();
+		}
+		return userFile;
+	}
+}
@@ -0,0 +1,113 @@
+package orgstats.load;
+
+import static orgstats.OrgStatsHelper.isInteger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * Compares the lines per second of reading a user data file with BufferedReader.readLine()
+ * and String.split(), the way the loader used to, with the DataFileParser.
+ * <p>
+ *  java -cp &lt;classpath&gt; orgstats.load.UserFileParseBenchmark [lineCount]
+ */
+public class UserFileParseBenchmark {
+
+	private static final int DEFAULT_LINE_COUNT = 10000000;
+	private static final int ROUNDS = 3;
+
+	public static void main(String args[]) throws Exception {
+
+		int lineCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_LINE_COUNT;
+		File userFile = File.createTempFile("UserFileParseBenchmark", ".txt");
+		try {
+			writeUserFile(userFile, lineCount);
+			System.out.println("User file: " + lineCount + " lines, " + userFile.length() / (1024 * 1024) + " MB");
+
+			for (int round = 1; round <= ROUNDS; round++) {
+				long start = System.nanoTime();
+				long readerSum = readWithSplit(userFile);
+				long readerNanos = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				long parserSum = readWithParser(userFile);
+				long parserNanos = System.nanoTime() - start;
+
+				if (readerSum != parserSum) {
+					throw new IllegalStateException("Byte totals are different: " + readerSum + " " + parserSum);
+				}
+				System.out.println("Round " + round + ":  readLine/split " + linesPerSecond(lineCount, readerNanos)
+						+ " lines/s, DataFileParser " + linesPerSecond(lineCount, parserNanos) + " lines/s ("
+						+ String.format("%.1f", (double) readerNanos / parserNanos) + "x)");
+			}
+		} finally {
+			userFile.delete();
+		}
+	}
+
+	private static long readWithSplit(File userFile) throws IOException {
+
+		long byteTotal = 0;
+		BufferedReader userReader = new BufferedReader(new FileReader(userFile));
+		try {
+			String currentLine;
+			while ((currentLine = userReader.readLine()) != null) {
+				String userData[] = currentLine.split(", ");
+				if (userData.length != 4 || !isInteger(userData[0]) || !isInteger(userData[1])
+						|| !isInteger(userData[2]) || !isInteger(userData[3])) {
+					throw new IllegalStateException("Invalid line: " + currentLine);
+				}
+				Integer.valueOf(userData[0]);
+				Integer.valueOf(userData[1]);
+				Integer.valueOf(userData[2]);
+				byteTotal = byteTotal + Long.valueOf(userData[3]);
+			}
+		} finally {
+			userReader.close();
+		}
+		return byteTotal;
+	}
+
+	private static long readWithParser(File userFile) throws IOException, OrgDataLoaderException {
+
+		final long[] byteTotal = new long[1];
+		FileInputStream userInput = new FileInputStream(userFile);
+		try {
+			FileChannel userChannel = userInput.getChannel();
+			new DataFileParser().parseUsers(userChannel, 0, userChannel.size(), new UserRecordHandler() {
+				public void handleUser(int userId, int orgId, int numFiles, long numBytes) {
+					byteTotal[0] = byteTotal[0] + numBytes;
+				}
+			});
+		} finally {
+			userInput.close();
+		}
+		return byteTotal[0];
+	}
+
+	private static void writeUserFile(File userFile, int lineCount) throws IOException {
+
+		Random random = new Random(1);
+		BufferedWriter userWriter = new BufferedWriter(new FileWriter(userFile), 1024 * 1024);
+		try {
+			for (int userId = 1; userId <= lineCount; userId++) {
+				userWriter.append(userId + ", " + (1 + random.nextInt(1000)) + ", " + random.nextInt(20001)
+						+ ", " + (long) (random.nextDouble() * 10737418240l));
+				userWriter.newLine();
+			}
+		} finally {
+			userWriter.close();
+		}
+	}
+
+	private static long linesPerSecond(int lineCount, long nanos) {
+		return lineCount * 1000000000l / nanos;
+	}
+}
@@ -0,0 +1,235 @@
+package orgstats.metrics;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import orgstats.OrgBean;
+import orgstats.OrgCollection;
+import orgstats.load.OrgDataLoaderException;
+import orgstats.load.OrgUserDataFileLoader;
+import orgstats.store.OrgStatsFileStore;
+
+/**
+ * The loader and store metrics are shared by every test in the JVM once they are enabled, so
+ * the tests check how much they change.
+ */
+public class OrgStatsMetricsTest {
+
+	private static final String DATA_PATH = new java.io.File("").getAbsolutePath() + "//data//";
+	private static final File ORG_FILE = new File(DATA_PATH + "VerySmallOrgsTestFile.txt");
+	private static final File USER_FILE = new File(DATA_PATH + "VerySmallUsersTestFile.txt");
+	private static final int ORG_COUNT = 9;
+	private static final int TREE_DEPTH = 5;
+
+	/**
+	 * Records latencies across the bucket ranges and checks the count, mean and percentiles.
+	 */
+	@Test
+	public void testLatencyHistogram() {
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		Assert.assertEquals("Empty histogram percentile invalid.", 0, histogram.getPercentileNanos(0.99));
+		for (long nanos = 1; nanos <= 1000; nanos++) {
+			histogram.record(nanos);
+		}
+		histogram.record(1000000000l);
+
+		Assert.assertEquals("Count invalid.", 1001, histogram.getCount());
+		Assert.assertEquals("Mean invalid.", (500500 + 1000000000l) / 1001.0, histogram.getMeanNanos(), 0.001);
+		assertWithinBucket("P50 invalid.", 501, histogram.getPercentileNanos(0.50));
+		assertWithinBucket("P99 invalid.", 991, histogram.getPercentileNanos(0.99));
+		assertWithinBucket("Max invalid.", 1000000000l, histogram.getMaxNanos());
+
+		histogram.reset();
+		Assert.assertEquals("Count not reset.", 0, histogram.getCount());
+		Assert.assertEquals("Max not reset.", 0, histogram.getMaxNanos());
+	}
+
+	/**
+	 * Each value is at or below the upper bound of its bucket and above the one before it.
+	 */
+	@Test
+	public void testBucketBounds() {
+
+		long[] values = { 0, 1, 3, 4, 5, 7, 8, 9, 1023, 1024, 123456789, Long.MAX_VALUE };
+		for (long value : values) {
+			int index = LatencyHistogram.bucketIndex(value);
+			Assert.assertTrue("Value above its bucket: " + value, value <= LatencyHistogram.bucketUpperBound(index));
+			if (index > 0) {
+				Assert.assertTrue("Value in a later bucket: " + value,
+						value > LatencyHistogram.bucketUpperBound(index - 1));
+			}
+		}
+		Assert.assertEquals("Largest bucket invalid.", Long.MAX_VALUE,
+				LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(Long.MAX_VALUE)));
+	}
+
+	/**
+	 * Times every call or about one in SAMPLE_RATE and estimates the number of calls.
+	 */
+	@Test
+	public void testLatencySampler() {
+
+		LatencySampler everyCall = new LatencySampler(1);
+		LatencySampler sampled = new LatencySampler();
+		int callCount = 100000;
+		for (int i = 0; i < callCount; i++) {
+			everyCall.end(everyCall.start());
+			sampled.end(sampled.start());
+		}
+		Assert.assertEquals("Call count invalid.", callCount, everyCall.getCallCount());
+		Assert.assertEquals("Every call not timed.", callCount, everyCall.getHistogram().getCount());
+		assertEstimate("Sampled call count invalid.", callCount, sampled.getCallCount());
+		Assert.assertEquals("Sampled call count not estimated from the sample.", 
+				sampled.getHistogram().getCount() * LatencySampler.SAMPLE_RATE, sampled.getCallCount());
+
+		sampled.reset();
+		Assert.assertEquals("Samples not reset.", 0, sampled.getHistogram().getCount());
+	}
+
+	/**
+	 * Counts the lines and bytes of both data files for a load.
+	 */
+	@Test
+	public void testLoaderMetrics() throws Exception {
+
+		OrgStatsMetrics.enable();
+		LoaderMetrics loaderMetrics = OrgStatsMetrics.LOADER;
+		long loadCount = loaderMetrics.getLoadCount();
+		long linesRead = loaderMetrics.getLinesRead();
+		long bytesRead = loaderMetrics.getBytesRead();
+
+		new OrgUserDataFileLoader(ORG_FILE, USER_FILE).loadData();
+
+		long lineCount = Files.readAllLines(ORG_FILE.toPath()).size() + Files.readAllLines(USER_FILE.toPath()).size();
+		long byteCount = ORG_FILE.length() + USER_FILE.length();
+		Assert.assertEquals("Load count invalid.", loadCount + 1, loaderMetrics.getLoadCount());
+		Assert.assertEquals("Lines read invalid.", linesRead + lineCount, loaderMetrics.getLinesRead());
+		Assert.assertEquals("Bytes read invalid.", bytesRead + byteCount, loaderMetrics.getBytesRead());
+		Assert.assertTrue("Lines per second invalid.", loaderMetrics.getLastLoadLinesPerSecond() > 0);
+	}
+
+	/**
+	 * Counts the users of orgs that don't exist and the lines that can't be parsed.
+	 */
+	@Test
+	public void testRejectedUsers() throws Exception {
+
+		OrgStatsMetrics.enable();
+		LoaderMetrics loaderMetrics = OrgStatsMetrics.LOADER;
+		long orphanUsers = loaderMetrics.getOrphanUsers();
+		long rejectedLines = loaderMetrics.getRejectedLines();
+
+		OrgCollection orgCollection = new OrgCollection();
+		orgCollection.add(new OrgBean(1, 0, "Org1"));
+		orgCollection.addUser(1, 1, 10, 100);
+		orgCollection.addUser(2, 99, 10, 100);
+		orgCollection.addUsage(99, 5, 50, 500);
+		Assert.assertEquals("Orphan users invalid.", orphanUsers + 6, loaderMetrics.getOrphanUsers());
+
+		File userFile = File.createTempFile("RejectedUsers", ".txt");
+		try {
+			Files.write(userFile.toPath(), "1, 1, x, 3\n".getBytes());
+			new OrgUserDataFileLoader(ORG_FILE, userFile).loadData();
+			Assert.fail("Invalid user line loaded.");
+		} catch (OrgDataLoaderException loaderEx) {
+			Assert.assertEquals("Rejected lines invalid.", rejectedLines + 1, loaderMetrics.getRejectedLines());
+		} finally {
+			userFile.delete();
+		}
+	}
+
+	/**
+	 * Reads the collection and store metrics through the platform MBeanServer.
+	 */
+	@Test
+	public void testMBeans() throws Exception {
+
+		OrgStatsMetrics.register();
+		OrgStatsMetrics.register();
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		ObjectName collectionName = OrgStatsMetrics.getCollectionName("OrgStatsMetricsTest");
+		ObjectName storeName = new ObjectName(OrgStatsMetrics.STORE_NAME);
+		Assert.assertTrue("Loader not registered.", mBeanServer.isRegistered(new ObjectName(OrgStatsMetrics.LOADER_NAME)));
+
+		OrgCollection orgCollection = new OrgUserDataFileLoader(ORG_FILE, USER_FILE).loadData();
+		OrgStatsMetrics.register(orgCollection.enableMetrics(), "OrgStatsMetricsTest");
+		Assert.assertEquals("Unsealed org count invalid.", ORG_COUNT, mBeanServer.getAttribute(collectionName, "OrgCount"));
+		orgCollection.seal();
+		Assert.assertEquals("Org count invalid.", ORG_COUNT, mBeanServer.getAttribute(collectionName, "OrgCount"));
+		Assert.assertEquals("Tree depth invalid.", TREE_DEPTH, mBeanServer.getAttribute(collectionName, "TreeDepth"));
+
+		mBeanServer.invoke(collectionName, "resetLatencies", null, null);
+		int callCount = 100000;
+		for (int i = 0; i < callCount; i++) {
+			orgCollection.getOrg(1 + i % ORG_COUNT);
+			orgCollection.getOrgTree(1, true);
+		}
+		assertEstimate("getOrg() count invalid.", callCount, (Long) mBeanServer.getAttribute(collectionName, "GetOrgCount"));
+		assertEstimate("getOrgTree() count invalid.", callCount, 
+				(Long) mBeanServer.getAttribute(collectionName, "GetOrgTreeCount"));
+		Assert.assertTrue("getOrg() p99 invalid.", (Long) mBeanServer.getAttribute(collectionName, "GetOrgP99Nanos") 
+				<= (Long) mBeanServer.getAttribute(collectionName, "GetOrgMaxNanos"));
+		mBeanServer.invoke(collectionName, "resetLatencies", null, null);
+		Assert.assertEquals("Latencies not reset.", 0l, mBeanServer.getAttribute(collectionName, "GetOrgCount"));
+
+		File outputFile = File.createTempFile("MetricsOutput", ".txt");
+		try {
+			long storeCount = (Long) mBeanServer.getAttribute(storeName, "StoreCount");
+			new OrgStatsFileStore(outputFile).storeData(orgCollection);
+			Assert.assertEquals("Store count invalid.", storeCount + 1, mBeanServer.getAttribute(storeName, "StoreCount"));
+			Assert.assertEquals("Bytes written invalid.", outputFile.length(),
+					mBeanServer.getAttribute(storeName, "LastBytesWritten"));
+		} finally {
+			outputFile.delete();
+			OrgStatsMetrics.unregister("OrgStatsMetricsTest");
+		}
+		Assert.assertFalse("Collection not unregistered.", mBeanServer.isRegistered(collectionName));
+	}
+
+	/**
+	 * A collection only records its metrics once they are enabled, and each collection keeps
+	 * its own.
+	 */
+	@Test
+	public void testCollectionMetricsPerCollection() throws Exception {
+
+		OrgCollection orgCollection = new OrgUserDataFileLoader(ORG_FILE, USER_FILE).loadData();
+		OrgCollection otherCollection = new OrgUserDataFileLoader(ORG_FILE, USER_FILE).loadData();
+		orgCollection.getOrg(1);
+		Assert.assertNull("Metrics recorded before they were enabled.", orgCollection.getMetrics());
+
+		OrgCollectionMetrics collectionMetrics = orgCollection.enableMetrics();
+		Assert.assertSame("Metrics enabled twice.", collectionMetrics, orgCollection.enableMetrics());
+		OrgCollectionMetrics otherMetrics = otherCollection.enableMetrics();
+		Assert.assertNotSame("Collections share their metrics.", collectionMetrics, otherMetrics);
+		for (int i = 0; i < 1000; i++) {
+			orgCollection.getOrg(1 + i % ORG_COUNT);
+		}
+		Assert.assertTrue("getOrg() calls not counted.", collectionMetrics.getGetOrgCount() > 0);
+		Assert.assertEquals("getOrg() calls counted for another collection.", 0, otherMetrics.getGetOrgCount());
+	}
+
+	/*
+	 * The sampled counts are far closer than half or double, see LatencySampler.
+	 */
+	private static void assertEstimate(String message, long expected, long actual) {
+		Assert.assertTrue(message + " expected=" + expected + " actual=" + actual,
+				actual > expected / 2 && actual < expected * 2);
+	}
+
+	/*
+	 * The buckets are within 25% of the values in them.
+	 */
+	private static void assertWithinBucket(String message, long expected, long actual) {
+		Assert.assertTrue(message + " expected=" + expected + " actual=" + actual,
+				actual >= expected && actual <= expected + expected / 4);
+	}
+}
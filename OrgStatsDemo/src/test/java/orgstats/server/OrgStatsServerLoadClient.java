@@ -0,0 +1,159 @@
+package orgstats.server;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import orgstats.OrgBean;
+import orgstats.OrgCollection;
+import orgstats.PublishedOrgCollection;
+
+/**
+ * Measures the request latency of OrgStatsServer with many concurrent connections on localhost.
+ * Every connection sends its requests one at a time and waits for each response, 80% ORG
+ * requests and 10% each TREE and TREE_INCLUSIVE requests for random orgs.  Without a port an
+ * in process server is started for a tree where each org has 10 children and one user.
+ * <p>
+ *  java -cp &lt;classpath&gt; orgstats.server.OrgStatsServerLoadClient [connections] [requestsPerConnection] [orgCount] [port]
+ */
+public class OrgStatsServerLoadClient {
+
+	private static final int DEFAULT_CONNECTION_COUNT = 2000;
+	private static final int DEFAULT_REQUEST_COUNT = 100;
+	private static final int DEFAULT_ORG_COUNT = 100000;
+
+	public static void main(String args[]) throws Exception {
+
+		int connectionCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CONNECTION_COUNT;
+		final int requestCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_REQUEST_COUNT;
+		final int orgCount = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ORG_COUNT;
+		OrgStatsServer server = null;
+		final int port;
+		if (args.length > 3) {
+			port = Integer.parseInt(args[3]);
+		} else {
+			Logger.getLogger(OrgStatsServer.class.getName()).setLevel(Level.WARNING);
+			server = new OrgStatsServer(new PublishedOrgCollection(createTree(orgCount)), 0);
+			server.start();
+			port = server.getPort();
+		}
+
+		final long[][] latencies = new long[connectionCount][];
+		final CountDownLatch connected = new CountDownLatch(connectionCount);
+		final CountDownLatch startRequests = new CountDownLatch(1);
+		final AtomicReference<Throwable> clientError = new AtomicReference<Throwable>();
+		List<Thread> clients = new ArrayList<Thread>(connectionCount);
+		for (int i = 0; i < connectionCount; i++) {
+			final int clientIndex = i;
+			Thread client = new Thread(new Runnable() {
+				public void run() {
+					try {
+						latencies[clientIndex] = sendRequests(port, requestCount, orgCount,
+								new Random(clientIndex), connected, startRequests);
+					} catch (Throwable ex) {
+						clientError.compareAndSet(null, ex);
+						connected.countDown();
+					}
+				}
+			});
+			client.start();
+			clients.add(client);
+		}
+
+		connected.await();
+		long start = System.nanoTime();
+		startRequests.countDown();
+		for (Thread client : clients) {
+			client.join();
+		}
+		long elapsedNanos = System.nanoTime() - start;
+		if (server != null) {
+			server.stop();
+		}
+		if (clientError.get() != null) {
+			throw new AssertionError(clientError.get());
+		}
+
+		long[] allLatencies = new long[connectionCount * requestCount];
+		for (int i = 0; i < connectionCount; i++) {
+			System.arraycopy(latencies[i], 0, allLatencies, i * requestCount, requestCount);
+		}
+		Arrays.sort(allLatencies);
+		System.out.println(connectionCount + " connections, " + allLatencies.length + " requests in "
+				+ elapsedNanos / 1000000 + " ms (" + allLatencies.length * 1000000000l / elapsedNanos + " requests/s)");
+		System.out.println("p50 " + micros(allLatencies, 0.50) + " us, p90 " + micros(allLatencies, 0.90)
+				+ " us, p99 " + micros(allLatencies, 0.99) + " us, p99.9 " + micros(allLatencies, 0.999)
+				+ " us, max " + allLatencies[allLatencies.length - 1] / 1000 + " us");
+	}
+
+	/*
+	 * Connects, waits for every connection and sends the requests, returns the latency
+	 * of each request in nanoseconds.
+	 */
+	private static long[] sendRequests(int port, int requestCount, int orgCount, Random random,
+			CountDownLatch connected, CountDownLatch startRequests) throws Exception {
+
+		long[] latencies = new long[requestCount];
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		try {
+			socket.setTcpNoDelay(true);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			Writer writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+			connected.countDown();
+			startRequests.await();
+
+			for (int i = 0; i < requestCount; i++) {
+				int kind = random.nextInt(10);
+				String request = kind < 8 ? OrgStatsServer.ORG_REQUEST
+						: kind == 8 ? OrgStatsServer.TREE_REQUEST : OrgStatsServer.TREE_INCLUSIVE_REQUEST;
+				long start = System.nanoTime();
+				writer.write(request + " " + (1 + random.nextInt(orgCount)) + "\n");
+				writer.flush();
+				String line;
+				while ((line = reader.readLine()) != null && line.length() > 0) {
+					if (line.startsWith(OrgStatsServer.ERROR_PREFIX)) {
+						throw new IllegalStateException(line);
+					}
+				}
+				latencies[i] = System.nanoTime() - start;
+			}
+			writer.write(OrgStatsServer.QUIT_REQUEST + "\n");
+			writer.flush();
+		} finally {
+			socket.close();
+		}
+		return latencies;
+	}
+
+	private static long micros(long[] sortedLatencies, double percentile) {
+		return sortedLatencies[(int) Math.min(sortedLatencies.length - 1, sortedLatencies.length * percentile)] / 1000;
+	}
+
+	/*
+	 * Org i has the parent i / 10, with one user per org.
+	 */
+	private static OrgCollection createTree(int orgCount) {
+
+		List<OrgBean> orgBeans = new ArrayList<OrgBean>(orgCount);
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			orgBeans.add(new OrgBean(orgId, orgId / 10, "Org" + orgId));
+		}
+		OrgCollection orgCollection = new OrgCollection();
+		orgCollection.addAll(orgBeans);
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			orgCollection.addUser(orgId, orgId, orgId % 100, orgId * 1000l);
+		}
+		return orgCollection;
+	}
+}
@@ -0,0 +1,152 @@
+package orgstats.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import orgstats.OrgBean;
+import orgstats.OrgCollection;
+import orgstats.PublishedOrgCollection;
+
+public class OrgStatsServerTest {
+
+	private PublishedOrgCollection publishedCollection;
+	private OrgStatsServer server;
+
+	@Before
+	public void startServer() throws IOException {
+
+		OrgCollection orgCollection = new OrgCollection();
+		orgCollection.add(new OrgBean(1, 0, "Org1"));
+		orgCollection.add(new OrgBean(2, 1, "Org2"));
+		orgCollection.add(new OrgBean(3, 2, "Org3"));
+		orgCollection.add(new OrgBean(4, 1, "Org4"));
+		orgCollection.addUser(1, 3, 10, 100l);
+		orgCollection.addUser(2, 4, 20, 200l);
+		publishedCollection = new PublishedOrgCollection(orgCollection);
+		server = new OrgStatsServer(publishedCollection, 0);
+		server.start();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop();
+	}
+
+	@Test
+	public void testRequests() throws IOException {
+
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			Writer writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+
+			// Several requests on one connection, sent before any response is read.
+			writer.write("ORG 2\nTREE 2\nTREE_INCLUSIVE 1\ntree 4\nORG 9\nORG x\nSTATS 1\nORG\n");
+			writer.flush();
+
+			List<String> response = readResponse(reader);
+			Assert.assertEquals("Org2(2)  Total Users: 1 Total Files: 10 Total Bytes: 100", response.get(0));
+			Assert.assertEquals("ORG line count is incorrect.", 1, response.size());
+
+			response = readResponse(reader);
+			Assert.assertEquals("TREE line count is incorrect.", 1, response.size());
+			Assert.assertEquals("Org3(3)  Total Users: 1 Total Files: 10 Total Bytes: 100", response.get(0));
+
+			response = readResponse(reader);
+			Assert.assertEquals("TREE_INCLUSIVE line count is incorrect.", 4, response.size());
+			Assert.assertEquals("Org1(1)  Total Users: 2 Total Files: 30 Total Bytes: 300", response.get(0));
+
+			Assert.assertEquals("Lower case request not answered.", 0, readResponse(reader).size());
+			Assert.assertEquals("ERROR org not found: 9", readResponse(reader).get(0));
+			Assert.assertEquals("ERROR invalid org id: x", readResponse(reader).get(0));
+			Assert.assertEquals("ERROR unknown request: STATS 1", readResponse(reader).get(0));
+			Assert.assertEquals("ERROR expected a request and an org id: ORG", readResponse(reader).get(0));
+
+			writer.write("QUIT\n");
+			writer.flush();
+			Assert.assertNull("Connection not closed after QUIT.", reader.readLine());
+		} finally {
+			socket.close();
+		}
+	}
+
+	@Test
+	public void testConcurrentConnectionsDuringReload() throws Exception {
+
+		// Every collection is a chain of orgs with one user each.
+		publishedCollection.publish(createChain(5));
+		final AtomicReference<Throwable> clientError = new AtomicReference<Throwable>();
+		List<Thread> clients = new ArrayList<Thread>();
+		for (int i = 0; i < 20; i++) {
+			Thread client = new Thread(new Runnable() {
+				public void run() {
+					try {
+						Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+						try {
+							BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+							Writer writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+							for (int request = 0; request < 100; request++) {
+								writer.write("TREE_INCLUSIVE 1\n");
+								writer.flush();
+								List<String> response = readResponse(reader);
+								// Org1's user total matches the number of orgs in the same collection.
+								Assert.assertTrue("Response mixes collections.", response.get(0).contains(
+										"Total Users: " + response.size() + " "));
+							}
+						} finally {
+							socket.close();
+						}
+					} catch (Throwable ex) {
+						clientError.compareAndSet(null, ex);
+					}
+				}
+			});
+			client.start();
+			clients.add(client);
+		}
+
+		for (int reload = 1; reload <= 20; reload++) {
+			publishedCollection.publish(createChain(5 + reload));
+		}
+		for (Thread client : clients) {
+			client.join();
+		}
+		if (clientError.get() != null) {
+			throw new AssertionError(clientError.get());
+		}
+	}
+
+	private static OrgCollection createChain(int orgCount) {
+
+		OrgCollection orgCollection = new OrgCollection();
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			orgCollection.add(new OrgBean(orgId, orgId - 1, "Org" + orgId));
+			orgCollection.addUser(orgId, orgId, 1, 1l);
+		}
+		return orgCollection;
+	}
+
+	private static List<String> readResponse(BufferedReader reader) throws IOException {
+
+		List<String> lines = new ArrayList<String>();
+		String line;
+		while ((line = reader.readLine()) != null && line.length() > 0) {
+			lines.add(line);
+		}
+		Assert.assertNotNull("Response not ended with an empty line.", line);
+		return lines;
+	}
+}
@@ -0,0 +1,116 @@
+package orgstats.store;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import orgstats.OrgBean;
+import orgstats.OrgCollection;
+
+/**
+ * Compares the time to write the output file for wide org trees, every org under one parent,
+ * with the recursive writer OrgStatsFileStore used to have and the current single pass writer.
+ * The old writer is only run up to its own limit of orgs since it is quadratic.
+ * <p>
+ *  java -cp &lt;classpath&gt; orgstats.store.OrgStatsFileStoreBenchmark [maxOrgCount] [maxOldOrgCount]
+ */
+public class OrgStatsFileStoreBenchmark {
+
+	private static final int DEFAULT_MAX_ORG_COUNT = 1600000;
+	private static final int DEFAULT_MAX_OLD_ORG_COUNT = 100000;
+	private static final int MIN_ORG_COUNT = 12500;
+	private static final int ROUNDS = 3;
+
+	public static void main(String args[]) throws Exception {
+
+		int maxOrgCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MAX_ORG_COUNT;
+		int maxOldOrgCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_OLD_ORG_COUNT;
+		Logger.getLogger(OrgStatsFileStore.class.getName()).setLevel(Level.WARNING);
+
+		File outputFile = File.createTempFile("OrgStatsFileStoreBenchmark", ".txt");
+		try {
+			for (int orgCount = MIN_ORG_COUNT; orgCount <= maxOrgCount; orgCount = orgCount * 2) {
+				OrgCollection orgCollection = createWideTree(orgCount);
+				OrgStatsFileStore orgStatsStore = new OrgStatsFileStore(outputFile);
+
+				long bestNanos = Long.MAX_VALUE;
+				for (int round = 1; round <= ROUNDS; round++) {
+					long start = System.nanoTime();
+					orgStatsStore.storeData(orgCollection);
+					bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+				}
+				String result = orgCount + " orgs:  single pass " + bestNanos / 1000000 + " ms ("
+						+ bestNanos / orgCount + " ns/org)";
+
+				if (orgCount <= maxOldOrgCount) {
+					long start = System.nanoTime();
+					storeDataRecursive(outputFile, orgCollection);
+					long oldNanos = System.nanoTime() - start;
+					result = result + ", recursive " + oldNanos / 1000000 + " ms (" + oldNanos / orgCount + " ns/org)";
+				}
+				System.out.println(result);
+			}
+		} finally {
+			outputFile.delete();
+		}
+	}
+
+	/*
+	 * One top level org with every other org as its child, added in random order.
+	 */
+	private static OrgCollection createWideTree(int orgCount) {
+
+		List<OrgBean> orgBeans = new ArrayList<OrgBean>(orgCount);
+		orgBeans.add(new OrgBean(1, 0, "Org1"));
+		for (int orgId = 2; orgId <= orgCount; orgId++) {
+			orgBeans.add(new OrgBean(orgId, 1, "Org" + orgId));
+		}
+		Collections.shuffle(orgBeans.subList(1, orgCount), new Random(1));
+
+		OrgCollection orgCollection = new OrgCollection();
+		orgCollection.addAll(orgBeans);
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			orgCollection.addUsage(orgId, 1, orgId, orgId * 1000l);
+		}
+		orgCollection.computeTotals();
+		return orgCollection;
+	}
+
+	/*
+	 * The writer OrgStatsFileStore used before, without sorting the lists in place so every
+	 * round sees the same unsorted children.
+	 */
+	private static void storeDataRecursive(File outputFile, OrgCollection orgCollection) throws IOException {
+
+		BufferedWriter outputWriter = new BufferedWriter(new FileWriter(outputFile));
+		try {
+			outputOrgData(outputWriter, new ArrayList<OrgBean>(orgCollection.getTopLevelOrgs()), 0);
+		} finally {
+			outputWriter.close();
+		}
+	}
+
+	private static void outputOrgData(BufferedWriter outputWriter, List<OrgBean> orgBeans, int level) throws IOException {
+
+		Collections.sort(orgBeans);
+		for (OrgBean orgBean : orgBeans) {
+			if (orgBeans.indexOf(orgBean) == 0) {
+				level = level + 1;
+			}
+			StringBuilder indent = new StringBuilder();
+			for (int i = 0; i < level - 1; i++) {
+				indent.append("  ");
+			}
+			outputWriter.append(indent + OrgStatsFileStore.getOutputString(orgBean));
+			outputWriter.newLine();
+			outputOrgData(outputWriter, new ArrayList<OrgBean>(orgBean.getChildOrgs()), level);
+		}
+	}
+}
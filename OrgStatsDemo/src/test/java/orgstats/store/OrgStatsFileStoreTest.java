@@ -0,0 +1,158 @@
+package orgstats.store;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import orgstats.DataCompression;
+import orgstats.OrgBean;
+import orgstats.OrgCollection;
+
+public class OrgStatsFileStoreTest {
+
+	@Test
+	public void testUnsortedChildren() throws Exception {
+
+		OrgCollection orgCollection = new OrgCollection();
+		orgCollection.add(new OrgBean(1, 0, "Org1"));
+		orgCollection.add(new OrgBean(4, 1, "Org4"));
+		orgCollection.add(new OrgBean(2, 1, "Org2"));
+		orgCollection.add(new OrgBean(3, 2, "Org3"));
+		orgCollection.add(new OrgBean(10, 0, "Org10"));
+		orgCollection.add(new OrgBean(5, 0, "Org5"));
+		orgCollection.addUser(1, 3, 7, 9223372036854775000l);
+		orgCollection.addUser(2, 4, 2000000000, 3l);
+		orgCollection.computeTotals();
+
+		List<String> lines = storeData(orgCollection);
+		Assert.assertEquals("1, 2, 2000000007, 9223372036854775003", lines.get(0));
+		Assert.assertEquals("  2, 1, 7, 9223372036854775000", lines.get(1));
+		Assert.assertEquals("    3, 1, 7, 9223372036854775000", lines.get(2));
+		Assert.assertEquals("  4, 1, 2000000000, 3", lines.get(3));
+		Assert.assertEquals("5, 0, 0, 0", lines.get(4));
+		Assert.assertEquals("10, 0, 0, 0", lines.get(5));
+		Assert.assertEquals("Line count is incorrect.", 6, lines.size());
+
+		// The sibling lists are sorted in a copy.
+		Assert.assertEquals("Top level orgs were sorted.", 10, orgCollection.getTopLevelOrgs().get(1).getOrgId());
+		Assert.assertEquals("Child orgs were sorted.", 4, orgCollection.getOrg(1).getChildOrgs().get(0).getOrgId());
+	}
+
+	@Test
+	public void testDeepTree() throws Exception {
+
+		int orgCount = 2000;
+		List<OrgBean> orgBeans = new ArrayList<OrgBean>(orgCount);
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			orgBeans.add(new OrgBean(orgId, orgId - 1, "Org" + orgId));
+		}
+		OrgCollection orgCollection = new OrgCollection();
+		orgCollection.addAll(orgBeans);
+		orgCollection.addUsage(orgCount, 1, 2, 3l);
+		orgCollection.computeTotals();
+
+		List<String> lines = storeData(orgCollection);
+		Assert.assertEquals("Line count is incorrect.", orgCount, lines.size());
+		for (int i = 0; i < orgCount; i++) {
+			String line = lines.get(i);
+			Assert.assertEquals("Indentation is incorrect.", 2 * i, line.indexOf(String.valueOf(i + 1)));
+			Assert.assertTrue("Totals are incorrect.", line.endsWith(", 1, 2, 3"));
+		}
+	}
+
+	@Test
+	public void testCompressedOutput() throws Exception {
+
+		int orgCount = 50000;
+		List<OrgBean> orgBeans = new ArrayList<OrgBean>(orgCount);
+		for (int orgId = 1; orgId <= orgCount; orgId++) {
+			orgBeans.add(new OrgBean(orgId, orgId / 10, "Org" + orgId));
+		}
+		OrgCollection orgCollection = new OrgCollection();
+		orgCollection.addAll(orgBeans);
+		for (int orgId = 1; orgId <= orgCount; orgId = orgId + 3) {
+			orgCollection.addUsage(orgId, 1, orgId, orgId * 1000l);
+		}
+		orgCollection.computeTotals();
+
+		List<String> lines = storeData(orgCollection, ".txt", null);
+		Assert.assertEquals("Block gzip output is incorrect.", lines, storeData(orgCollection, ".gz", DataCompression.BLOCK_GZIP));
+		Assert.assertEquals("Gzip output is incorrect.", lines, storeData(orgCollection, ".txt", DataCompression.GZIP));
+	}
+
+	/**
+	 * A RuntimeException of the compressing thread is thrown by write() and close() instead of
+	 * the writer blocking on the full queue.
+	 */
+	@Test
+	public void testCompressorFailure() throws Exception {
+
+		CompressingChannel channel = new CompressingChannel(new OutputStream() {
+			@Override
+			public void write(int b) {
+				throw new IllegalStateException("Compressor failed");
+			}
+		}, DataCompression.NONE);
+		try {
+			for (int i = 0; i < 1000; i++) {
+				channel.write(ByteBuffer.wrap(new byte[100]));
+			}
+			Assert.fail("Compressor failure not thrown by write().");
+		} catch (IOException ex) {
+			Assert.assertTrue("Compressor failure is incorrect.", ex.getCause().getCause() instanceof IllegalStateException);
+		}
+		try {
+			channel.close();
+			Assert.fail("Compressor failure not thrown by close().");
+		} catch (IOException ex) {
+			Assert.assertEquals("Compressor failure is incorrect.", "Compressor failed", ex.getCause().getMessage());
+		}
+	}
+
+	private static List<String> storeData(OrgCollection orgCollection) throws IOException, OrgStatsStoreException {
+		return storeData(orgCollection, ".txt", null);
+	}
+
+	/*
+	 * Stores the collection in a file with the suffix and returns its lines, after checking that
+	 * the file has the compression given if it isn't null.
+	 */
+	private static List<String> storeData(OrgCollection orgCollection, String suffix, DataCompression compression) 
+			throws IOException, OrgStatsStoreException {
+
+		File outputFile = File.createTempFile("OrgStatsFileStoreTest", suffix);
+		try {
+			if (compression == DataCompression.GZIP) {
+				new OrgStatsFileStore(outputFile, compression).storeData(orgCollection);
+			} else {
+				new OrgStatsFileStore(outputFile).storeData(orgCollection);
+			}
+			List<String> lines = new ArrayList<String>();
+			FileInputStream outputInput = new FileInputStream(outputFile);
+			try {
+				DataCompression outputCompression = DataCompression.detect(outputInput.getChannel());
+				Assert.assertEquals("Output file compression is incorrect.", 
+						compression == null ? DataCompression.NONE : compression, outputCompression);
+				BufferedReader outputReader = new BufferedReader(new InputStreamReader(outputCompression.decompress(outputInput)));
+				String line;
+				while ((line = outputReader.readLine()) != null) {
+					lines.add(line);
+				}
+			} finally {
+				outputInput.close();
+			}
+			return lines;
+		} finally {
+			outputFile.delete();
+		}
+	}
+}